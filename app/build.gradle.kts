@@ -54,6 +54,15 @@ android {
         targetCompatibility = JavaVersion.VERSION_11
     }
     
+    testOptions {
+        unitTests.all { test ->
+            // Forward the benchmark switches (-Dpitstopper.benchmark=true etc.) to the test JVM
+            System.getProperties().stringPropertyNames()
+                .filter { it.startsWith("pitstopper.") }
+                .forEach { test.systemProperty(it, System.getProperty(it)) }
+        }
+    }
+
     packaging {
         resources {
             excludes += "/META-INF/INDEX.LIST"
@@ -73,6 +82,9 @@ dependencies {
     
     // MQTT Server - Moquette broker
     implementation("io.moquette:moquette-broker:0.17")
+
+    // MQTT client - hub mode reads the leaderboard from another device's broker
+    implementation("org.eclipse.paho:org.eclipse.paho.client.mqttv3:1.2.5")
     
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
@@ -0,0 +1,84 @@
+/*
+ * Pit-wall dashboard: shows the retained state topics of the current car and echoes the
+ * app's latency probes once an update is on screen.
+ */
+(function () {
+    "use strict";
+
+    var config = window.PITSTOPPER_CONFIG;
+    var prefix = config.topicPrefix;
+    var decoder = new TextDecoder();
+
+    function element(id) {
+        return document.getElementById(id);
+    }
+
+    function formatCountdown(seconds) {
+        var value = Math.max(0, parseInt(seconds, 10) || 0);
+        var minutes = Math.floor(value / 60);
+        var rest = value % 60;
+        return minutes + ":" + (rest < 10 ? "0" : "") + rest;
+    }
+
+    var handlers = {
+        "state/alert": function (value) {
+            document.body.className = value === "ON_ALERT" ? "alert" : "";
+            element("alert").textContent = value === "ON_ALERT" ? "BOX BOX" : "Idle";
+        },
+        "state/countdown": function (value) {
+            element("countdown").textContent = formatCountdown(value);
+        },
+        "state/window": function (value) {
+            var index = parseInt(value, 10);
+            element("window").textContent = index >= 0 ? "Window " + (index + 1) : "Before first window";
+        },
+        "state/position": function (value) {
+            element("position").textContent = "P" + value;
+        },
+        "state/gap_ahead": function (value) {
+            element("gapAhead").textContent = value;
+        },
+        "state/gap_behind": function (value) {
+            element("gapBehind").textContent = value;
+        },
+        "state/standstill": function (value) {
+            element("standstill").textContent = value === "STOPPED" ? "In the pits" : "On track";
+        }
+    };
+
+    var clientId = "dashboard-" + Math.random().toString(36).substring(2, 10);
+    var client = new MqttClient("ws://" + location.hostname + ":" + config.websocketPort + "/mqtt", clientId);
+
+    client.onConnect = function () {
+        element("connection").textContent = "Connected";
+        client.subscribe(prefix + "state/#", 1);
+        client.subscribe(prefix + "dashboard/ping", 0);
+    };
+
+    client.onMessage = function (topic, payload) {
+        var subtopic = topic.substring(prefix.length);
+        var value = decoder.decode(payload);
+        if (subtopic === "dashboard/ping") {
+            if (value) {
+                // Echo once the state published before the probe has been painted
+                requestAnimationFrame(function () {
+                    setTimeout(function () {
+                        client.publish(prefix + "dashboard/pong", value);
+                    }, 0);
+                });
+            }
+            return;
+        }
+        var handler = handlers[subtopic];
+        if (handler) {
+            handler(value);
+        }
+    };
+
+    client.onClose = function () {
+        element("connection").textContent = "Disconnected, retrying...";
+        setTimeout(function () { client.connect(); }, 2000);
+    };
+
+    client.connect();
+})();
@@ -0,0 +1,137 @@
+/*
+ * Minimal MQTT 3.1.1 client over WebSocket, just enough for the dashboard: connect,
+ * subscribe, receive QoS 0/1 messages and publish QoS 0 messages.
+ *
+ * Usage:
+ *   var client = new MqttClient("ws://host:8083/mqtt", "dashboard-1");
+ *   client.onMessage = function (topic, payloadBytes) { ... };
+ *   client.onConnect = function () { client.subscribe("pitstopper/42/state/#", 1); };
+ *   client.connect();
+ */
+(function (global) {
+    "use strict";
+
+    var KEEP_ALIVE_SECONDS = 30;
+
+    function encodeString(text) {
+        var bytes = new TextEncoder().encode(text);
+        var out = new Uint8Array(bytes.length + 2);
+        out[0] = bytes.length >> 8;
+        out[1] = bytes.length & 0xff;
+        out.set(bytes, 2);
+        return out;
+    }
+
+    function concat(parts) {
+        var length = 0;
+        parts.forEach(function (part) { length += part.length; });
+        var out = new Uint8Array(length);
+        var offset = 0;
+        parts.forEach(function (part) {
+            out.set(part, offset);
+            offset += part.length;
+        });
+        return out;
+    }
+
+    // Fixed header: packet type and flags, then the remaining length as a varint
+    function packet(header, body) {
+        var length = [];
+        var remaining = body.length;
+        do {
+            var digit = remaining % 128;
+            remaining = Math.floor(remaining / 128);
+            length.push(remaining > 0 ? digit | 0x80 : digit);
+        } while (remaining > 0);
+        return concat([new Uint8Array([header]), new Uint8Array(length), body]);
+    }
+
+    function MqttClient(url, clientId) {
+        this.url = url;
+        this.clientId = clientId;
+        this.onConnect = function () {};
+        this.onMessage = function () {};
+        this.onClose = function () {};
+        this.nextPacketId = 1;
+        this.buffer = new Uint8Array(0);
+    }
+
+    MqttClient.prototype.connect = function () {
+        var self = this;
+        var socket = new WebSocket(this.url, "mqtt");
+        socket.binaryType = "arraybuffer";
+        socket.onopen = function () {
+            var variableHeader = concat([encodeString("MQTT"),
+                new Uint8Array([4, 0x02, KEEP_ALIVE_SECONDS >> 8, KEEP_ALIVE_SECONDS & 0xff])]);
+            socket.send(packet(0x10, concat([variableHeader, encodeString(self.clientId)])));
+            self.pingTimer = setInterval(function () {
+                socket.send(new Uint8Array([0xc0, 0x00]));
+            }, KEEP_ALIVE_SECONDS * 500);
+        };
+        socket.onmessage = function (event) {
+            self.buffer = concat([self.buffer, new Uint8Array(event.data)]);
+            self.readPackets();
+        };
+        socket.onclose = function () {
+            clearInterval(self.pingTimer);
+            self.buffer = new Uint8Array(0);
+            self.onClose();
+        };
+        this.socket = socket;
+    };
+
+    // A WebSocket frame may carry a partial packet or several packets
+    MqttClient.prototype.readPackets = function () {
+        while (this.buffer.length >= 2) {
+            var remaining = 0;
+            var multiplier = 1;
+            var index = 1;
+            var digit;
+            do {
+                if (index >= this.buffer.length) {
+                    return; // Length not complete yet
+                }
+                digit = this.buffer[index++];
+                remaining += (digit & 0x7f) * multiplier;
+                multiplier *= 128;
+            } while (digit & 0x80);
+            if (this.buffer.length < index + remaining) {
+                return;
+            }
+            this.handlePacket(this.buffer[0], this.buffer.subarray(index, index + remaining));
+            this.buffer = this.buffer.slice(index + remaining);
+        }
+    };
+
+    MqttClient.prototype.handlePacket = function (header, body) {
+        var type = header >> 4;
+        if (type === 2) { // CONNACK
+            if (body[1] === 0) {
+                this.onConnect();
+            }
+        } else if (type === 3) { // PUBLISH
+            var qos = (header >> 1) & 3;
+            var topicLength = (body[0] << 8) | body[1];
+            var topic = new TextDecoder().decode(body.subarray(2, 2 + topicLength));
+            var offset = 2 + topicLength;
+            if (qos > 0) {
+                this.socket.send(new Uint8Array([0x40, 0x02, body[offset], body[offset + 1]])); // PUBACK
+                offset += 2;
+            }
+            this.onMessage(topic, body.subarray(offset));
+        }
+    };
+
+    MqttClient.prototype.subscribe = function (topicFilter, qos) {
+        var id = this.nextPacketId;
+        this.nextPacketId = id % 65535 + 1;
+        this.socket.send(packet(0x82, concat([new Uint8Array([id >> 8, id & 0xff]),
+            encodeString(topicFilter), new Uint8Array([qos])])));
+    };
+
+    MqttClient.prototype.publish = function (topic, text) {
+        this.socket.send(packet(0x30, concat([encodeString(topic), new TextEncoder().encode(text)])));
+    };
+
+    global.MqttClient = MqttClient;
+})(window);
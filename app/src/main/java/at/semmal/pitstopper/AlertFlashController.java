@@ -0,0 +1,113 @@
+package at.semmal.pitstopper;
+
+import android.graphics.drawable.AnimatedVectorDrawable;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+/**
+ * Drives the full-screen alert flash shown while a pit window is open.
+ *
+ * The flash is an animated vector drawable on an overlay view behind the UI. Once started
+ * it runs on the RenderThread (API 25+), so the main thread only has to call show() or
+ * stop() on AlertState transitions or when the pattern changes - never per frame.
+ *
+ * Usage:
+ * 1. Create with the overlay view (full-screen, behind all other content)
+ * 2. Call show() with the desired pattern while ON_ALERT; repeated calls are no-ops
+ * 3. Call stop() when returning to IDLE or when the activity is paused
+ */
+public class AlertFlashController {
+
+    /**
+     * Available flash patterns.
+     */
+    public enum FlashPattern {
+        /** 2 s green / 2 s black, for most of the pit window */
+        NORMAL(R.drawable.alert_flash_normal),
+        /** 0.5 s green / 0.5 s black, for the last minute of the pit window */
+        URGENT(R.drawable.alert_flash_urgent);
+
+        @DrawableRes
+        private final int drawableRes;
+
+        FlashPattern(@DrawableRes int drawableRes) {
+            this.drawableRes = drawableRes;
+        }
+    }
+
+    private final View overlay;
+    private FlashPattern currentPattern;
+    private Drawable currentDrawable;
+
+    /**
+     * Creates a new AlertFlashController.
+     *
+     * @param overlay View covering the screen behind all content, initially GONE
+     */
+    public AlertFlashController(@NonNull View overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * Starts flashing with the given pattern. Does nothing if this pattern is already running.
+     *
+     * @param pattern Flash pattern to show
+     */
+    public void show(@NonNull FlashPattern pattern) {
+        if (pattern == currentPattern) {
+            return;
+        }
+
+        stopDrawable();
+
+        // Each pattern gets a fresh drawable so its animation starts at the green phase
+        Drawable drawable = ContextCompat.getDrawable(overlay.getContext(), pattern.drawableRes);
+        overlay.setBackground(drawable);
+        overlay.setVisibility(View.VISIBLE);
+        if (drawable instanceof AnimatedVectorDrawable) {
+            ((AnimatedVectorDrawable) drawable).start();
+        }
+
+        currentPattern = pattern;
+        currentDrawable = drawable;
+    }
+
+    /**
+     * Stops flashing and hides the overlay. Does nothing if not flashing.
+     */
+    public void stop() {
+        if (currentPattern == null) {
+            return;
+        }
+
+        stopDrawable();
+        overlay.setVisibility(View.GONE);
+        overlay.setBackground(null);
+        currentPattern = null;
+    }
+
+    /**
+     * Check if the flash is currently running.
+     */
+    public boolean isFlashing() {
+        return currentPattern != null;
+    }
+
+    /**
+     * Gets the pattern currently shown, or null if not flashing.
+     */
+    public FlashPattern getCurrentPattern() {
+        return currentPattern;
+    }
+
+    private void stopDrawable() {
+        if (currentDrawable instanceof AnimatedVectorDrawable) {
+            ((AnimatedVectorDrawable) currentDrawable).stop();
+        }
+        currentDrawable = null;
+    }
+}
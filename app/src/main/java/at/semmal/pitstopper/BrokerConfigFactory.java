@@ -0,0 +1,89 @@
+package at.semmal.pitstopper;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Builds the Moquette configuration for the embedded broker.
+ *
+ * The default is in-memory persistence: sessions, queued messages and retained messages
+ * live on the heap only and are gone after a restart. The app republishes its whole race
+ * state whenever the broker starts (see RaceStatePublisher), so nothing live is lost, and
+ * the broker starts faster and never writes to flash per message. File persistence keeps
+ * Moquette's store below the app's files directory, for clients that rely on persistent
+ * sessions surviving a restart.
+ *
+ * In both modes Moquette drops QoS 0 messages for a client whose connection can't take more
+ * data, and keeps QoS 1 messages in its session until acknowledged. session_queue_size is
+ * not a per-client bound but the command queue of each session loop (see BrokerTuning).
+ */
+public final class BrokerConfigFactory {
+
+    /**
+     * Where the broker keeps sessions, queues and retained messages.
+     */
+    public enum Persistence {
+        MEMORY,
+        FILE
+    }
+
+    // Directory below the app's files directory for file persistence
+    static final String STORE_DIR = "mqtt";
+
+    // MQTT-over-WebSocket port for browser dashboards, served on the path /mqtt
+    public static final int WEBSOCKET_PORT = 8083;
+
+    private BrokerConfigFactory() {
+    }
+
+    /**
+     * Create the broker properties.
+     *
+     * @param port        MQTT port
+     * @param websocket   Also accept MQTT over WebSocket on WEBSOCKET_PORT
+     * @param persistence Persistence mode
+     * @param tuning      Transport tuning preset
+     * @param epoll       Use the native epoll transport; only pass true if it is available
+     * @param filesDir    App files directory, only used for file persistence
+     */
+    public static Properties create(int port, boolean websocket, Persistence persistence, BrokerTuning tuning,
+                                    boolean epoll, File filesDir) {
+        Properties props = new Properties();
+
+        // Basic server settings
+        props.setProperty("port", String.valueOf(port));
+        props.setProperty("host", "0.0.0.0");  // Bind to all interfaces
+        props.setProperty("allow_anonymous", "true");
+
+        // No SSL; WebSocket only for browser dashboards
+        props.setProperty("ssl_port", "0");
+        props.setProperty("websocket_port", websocket ? String.valueOf(WEBSOCKET_PORT) : "0");
+
+        // Transport tuning
+        props.setProperty("netty.epoll", String.valueOf(epoll));
+        props.setProperty("netty.tcp_nodelay", String.valueOf(tuning.isTcpNoDelay()));
+        props.setProperty("netty.so_backlog", String.valueOf(tuning.getAcceptBacklog()));
+        props.setProperty("netty.mqtt.message_size", String.valueOf(tuning.getMaxMessageBytes()));
+        // Not the older immediate_buffer_flush: false there means never flushing on a timer
+        props.setProperty("buffer_flush_millis", String.valueOf(tuning.getBufferFlushMillis()));
+        props.setProperty("session_queue_size", String.valueOf(tuning.getSessionQueueSize()));
+
+        if (persistence == Persistence.FILE) {
+            String storeDir = new File(filesDir, STORE_DIR).getAbsolutePath();
+            props.setProperty("persistence_enabled", "true");
+            props.setProperty("persistent_store", storeDir);
+            props.setProperty("data_path", storeDir);
+        } else {
+            // No store path: Moquette falls back to its in-memory repositories
+            props.setProperty("persistence_enabled", "false");
+        }
+        return props;
+    }
+
+    /**
+     * Parse a persistence mode stored in preferences, defaulting to MEMORY.
+     */
+    public static Persistence parsePersistence(String value) {
+        return Persistence.FILE.name().equals(value) ? Persistence.FILE : Persistence.MEMORY;
+    }
+}
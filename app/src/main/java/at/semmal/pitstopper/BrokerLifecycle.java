@@ -0,0 +1,190 @@
+package at.semmal.pitstopper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Start/stop state machine for the embedded broker.
+ *
+ * Requests only record the desired state and return at once; the slow broker start and
+ * stop run on a worker executor, one at a time. While a transition is in progress, further
+ * requests are coalesced: when it completes, the state machine moves on towards the latest
+ * desired state only. Rapid start/stop/start toggling therefore ends with one running
+ * broker, without overlapping starts or a stop racing a start.
+ *
+ * STOPPED -> STARTING -> RUNNING -> STOPPING -> STOPPED; a failed start goes back to
+ * STOPPED.
+ *
+ * Thread safe.
+ */
+public class BrokerLifecycle {
+
+    public enum State {
+        STOPPED,
+        STARTING,
+        RUNNING,
+        STOPPING
+    }
+
+    /**
+     * The broker being managed. Methods are called on the worker thread only.
+     */
+    public interface Broker {
+        void start(int port) throws Exception;
+
+        /**
+         * Stop the broker. Must not throw; a broker that fails to stop cleanly is considered
+         * stopped anyway.
+         */
+        void stop();
+    }
+
+    /**
+     * Lifecycle events, called on the worker thread except for onStateChanged().
+     */
+    public interface Listener {
+        /**
+         * Called on every state change, on the requesting or the worker thread with the
+         * state machine's lock held. Must not block.
+         */
+        void onStateChanged(State state);
+
+        /**
+         * The broker is ready for clients.
+         *
+         * @param startupMillis   Time the broker start itself took
+         * @param coldStartMillis Time from the first start request to ready, including
+         *                        waiting for a previous stop
+         */
+        void onRunning(int port, long startupMillis, long coldStartMillis);
+
+        /**
+         * The broker is stopped and no start is pending. Also called when a stop is
+         * requested while already stopped.
+         */
+        void onStopped();
+
+        /**
+         * The broker failed to start. It is stopped, and pending requests are dropped.
+         */
+        void onError(int port, Exception error);
+    }
+
+    private final Broker broker;
+    private final Executor worker;
+    private final Listener listener;
+
+    private State state = State.STOPPED;
+    private int runningPort;
+    private boolean desiredRunning = false;
+    private int desiredPort;
+    private long requestNanos = -1;
+
+    /**
+     * Creates a new BrokerLifecycle.
+     *
+     * @param worker Executor running one task at a time, e.g. a HandlerThread's handler
+     */
+    public BrokerLifecycle(Broker broker, Executor worker, Listener listener) {
+        this.broker = broker;
+        this.worker = worker;
+        this.listener = listener;
+    }
+
+    /**
+     * Request the broker to run on the given port. Restarts it if it runs on another port.
+     */
+    public synchronized void requestStart(int port) {
+        desiredRunning = true;
+        desiredPort = port;
+        if (requestNanos < 0) {
+            requestNanos = System.nanoTime();
+        }
+        advance();
+    }
+
+    /**
+     * Request the broker to stop.
+     */
+    public synchronized void requestStop() {
+        desiredRunning = false;
+        requestNanos = -1;
+        if (state == State.STOPPED) {
+            worker.execute(listener::onStopped);
+            return;
+        }
+        advance();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Start the next transition towards the desired state, unless one is in progress.
+     */
+    private void advance() {
+        if (state == State.STARTING || state == State.STOPPING) {
+            return; // Picked up when the transition completes
+        }
+
+        if (state == State.STOPPED && desiredRunning) {
+            int port = desiredPort;
+            setState(State.STARTING);
+            worker.execute(() -> start(port));
+        } else if (state == State.RUNNING && (!desiredRunning || desiredPort != runningPort)) {
+            setState(State.STOPPING);
+            worker.execute(this::stop);
+        }
+    }
+
+    private void start(int port) {
+        long startNanos = System.nanoTime();
+        try {
+            broker.start(port);
+        } catch (Exception e) {
+            synchronized (this) {
+                desiredRunning = false;
+                requestNanos = -1;
+                setState(State.STOPPED);
+            }
+            listener.onError(port, e);
+            return;
+        }
+
+        long now = System.nanoTime();
+        long coldStartNanos;
+        synchronized (this) {
+            runningPort = port;
+            coldStartNanos = now - (requestNanos >= 0 ? requestNanos : startNanos);
+            requestNanos = -1;
+            setState(State.RUNNING);
+        }
+        listener.onRunning(port, (now - startNanos) / 1_000_000L, coldStartNanos / 1_000_000L);
+
+        synchronized (this) {
+            advance();
+        }
+    }
+
+    private void stop() {
+        broker.stop();
+
+        boolean stayStopped;
+        synchronized (this) {
+            setState(State.STOPPED);
+            stayStopped = !desiredRunning;
+        }
+        if (stayStopped) {
+            listener.onStopped();
+        }
+
+        synchronized (this) {
+            advance();
+        }
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        listener.onStateChanged(newState);
+    }
+}
@@ -0,0 +1,238 @@
+package at.semmal.pitstopper;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load and latency figures of the embedded broker, fed from its interceptor and from the
+ * app's publish thread, and published periodically below $SYS/broker/ (see MQTT_TOPICS.md).
+ *
+ * Rates cover the interval since the previous snapshot. Latency percentiles cover the last
+ * LATENCY_SAMPLES messages:
+ * - handoff: from RaceStatePublisher queuing a message until the broker took it
+ * - ack: from the broker taking a QoS 1 message until a client acknowledged it. Only
+ *   known for clients that connect with a username (see SubscriberTracker)
+ *
+ * Thread safe.
+ */
+public class BrokerMetrics {
+
+    static final String TOPIC_PREFIX = "$SYS/broker/";
+
+    // Latencies kept for the percentiles
+    static final int LATENCY_SAMPLES = 512;
+
+    /**
+     * Figures at the time of a snapshot.
+     */
+    public static final class Snapshot {
+        private final int connectedClients;
+        private final float receivedPerSecond;
+        private final float publishedPerSecond;
+        private final float routedPerSecond;
+        private final int publishQueueDepth;
+        private final int clientQueueDepth;
+        private final long conflated;
+        private final long[] handoffMillis;
+        private final long[] ackMillis;
+
+        Snapshot(int connectedClients, float receivedPerSecond, float publishedPerSecond, float routedPerSecond,
+                 int publishQueueDepth, int clientQueueDepth, long conflated, long[] handoffMillis, long[] ackMillis) {
+            this.connectedClients = connectedClients;
+            this.receivedPerSecond = receivedPerSecond;
+            this.publishedPerSecond = publishedPerSecond;
+            this.routedPerSecond = routedPerSecond;
+            this.publishQueueDepth = publishQueueDepth;
+            this.clientQueueDepth = clientQueueDepth;
+            this.conflated = conflated;
+            this.handoffMillis = handoffMillis;
+            this.ackMillis = ackMillis;
+        }
+
+        public int getConnectedClients() {
+            return connectedClients;
+        }
+
+        /**
+         * Get the messages per second published by clients.
+         */
+        public float getReceivedPerSecond() {
+            return receivedPerSecond;
+        }
+
+        /**
+         * Get the messages per second the app handed to the broker.
+         */
+        public float getPublishedPerSecond() {
+            return publishedPerSecond;
+        }
+
+        /**
+         * Get the messages per second routed to client subscriptions.
+         */
+        public float getRoutedPerSecond() {
+            return routedPerSecond;
+        }
+
+        /**
+         * Get the number of messages waiting for the app's publish thread.
+         */
+        public int getPublishQueueDepth() {
+            return publishQueueDepth;
+        }
+
+        /**
+         * Get the number of QoS 1 messages not acknowledged yet, over all clients.
+         */
+        public int getClientQueueDepth() {
+            return clientQueueDepth;
+        }
+
+        public long getConflated() {
+            return conflated;
+        }
+
+        /**
+         * Get the handoff latency at the given percentile (e.g. 95), or -1 without samples.
+         */
+        public long getHandoffMillis(int percentile) {
+            return percentile(handoffMillis, percentile);
+        }
+
+        /**
+         * Get the ack latency at the given percentile (e.g. 95), or -1 without samples.
+         */
+        public long getAckMillis(int percentile) {
+            return percentile(ackMillis, percentile);
+        }
+
+        /**
+         * Get the payload of every metrics topic, by full topic name.
+         */
+        public Map<String, String> toTopics() {
+            Map<String, String> topics = new LinkedHashMap<>();
+            topics.put(TOPIC_PREFIX + "clients/connected", Integer.toString(connectedClients));
+            topics.put(TOPIC_PREFIX + "load/received", formatRate(receivedPerSecond));
+            topics.put(TOPIC_PREFIX + "load/published", formatRate(publishedPerSecond));
+            topics.put(TOPIC_PREFIX + "load/routed", formatRate(routedPerSecond));
+            topics.put(TOPIC_PREFIX + "queue/publish", Integer.toString(publishQueueDepth));
+            topics.put(TOPIC_PREFIX + "queue/clients", Integer.toString(clientQueueDepth));
+            topics.put(TOPIC_PREFIX + "messages/conflated", Long.toString(conflated));
+            topics.put(TOPIC_PREFIX + "latency/handoff", formatPercentiles(handoffMillis));
+            topics.put(TOPIC_PREFIX + "latency/ack", formatPercentiles(ackMillis));
+            return topics;
+        }
+
+        private static String formatRate(float perSecond) {
+            return String.format(Locale.US, "%.1f", perSecond);
+        }
+
+        private static String formatPercentiles(long[] sorted) {
+            return String.format(Locale.US, "{\"p50\":%d,\"p95\":%d,\"p99\":%d,\"samples\":%d}",
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), sorted.length);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return -1;
+            }
+            // Nearest rank
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+    }
+
+    private final Samples handoff = new Samples();
+    private final Samples ack = new Samples();
+    private long received;
+    private long published;
+    private long routed;
+    private long intervalStartNanos = -1;
+
+    /**
+     * Record a message published by a client.
+     */
+    public synchronized void onReceived() {
+        received++;
+    }
+
+    /**
+     * Record a message of the app handed to the broker.
+     *
+     * @param handoffNanos Time since it was queued
+     * @param routedClients Number of clients it was routed to
+     */
+    public synchronized void onPublished(long handoffNanos, int routedClients) {
+        published++;
+        routed += routedClients;
+        handoff.add(handoffNanos / 1_000_000L);
+    }
+
+    /**
+     * Record an acknowledgement of a QoS 1 message by a client.
+     */
+    public synchronized void onAcknowledged(long ackMillis) {
+        ack.add(ackMillis);
+    }
+
+    /**
+     * Take a snapshot and start a new rate interval.
+     *
+     * @param nowNanos System.nanoTime()
+     */
+    public synchronized Snapshot snapshot(long nowNanos, int connectedClients, int publishQueueDepth,
+                                          int clientQueueDepth, long conflated) {
+        float seconds = intervalStartNanos < 0 ? 0 : (nowNanos - intervalStartNanos) / 1e9f;
+        Snapshot snapshot = new Snapshot(connectedClients, rate(received, seconds), rate(published, seconds),
+                rate(routed, seconds), publishQueueDepth, clientQueueDepth, conflated, handoff.sorted(), ack.sorted());
+        received = 0;
+        published = 0;
+        routed = 0;
+        intervalStartNanos = nowNanos;
+        return snapshot;
+    }
+
+    /**
+     * Forget all figures, e.g. when the broker stops.
+     */
+    public synchronized void clear() {
+        handoff.clear();
+        ack.clear();
+        received = 0;
+        published = 0;
+        routed = 0;
+        intervalStartNanos = -1;
+    }
+
+    private static float rate(long count, float seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    /**
+     * The last LATENCY_SAMPLES latencies, in a ring.
+     */
+    private static final class Samples {
+        final long[] values = new long[LATENCY_SAMPLES];
+        int count;
+        int next;
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % LATENCY_SAMPLES;
+            count = Math.min(count + 1, LATENCY_SAMPLES);
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(values, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        void clear() {
+            count = 0;
+            next = 0;
+        }
+    }
+}
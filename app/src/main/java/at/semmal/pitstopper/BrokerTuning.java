@@ -0,0 +1,100 @@
+package at.semmal.pitstopper;
+
+/**
+ * Transport tuning presets for the embedded broker.
+ *
+ * Netty defaults to server sizing (two event loop threads per core) and Moquette flushes
+ * every message at once. On a phone that mostly serves a couple of dashboards, fewer
+ * threads and flushing in batches every few milliseconds save battery; as a pit-wall hub
+ * serving about 30 clients, more threads keep slow clients from holding up the rest.
+ * Moquette always runs one session loop per core; it has no setting for that.
+ *
+ * The session queue is not a per-client buffer: each session loop has one command queue
+ * (connects, subscribes, publishes) shared by all clients on that loop, and Moquette fails
+ * any command routed to a full queue. So no preset goes below Moquette's default of
+ * MIN_SESSION_QUEUE_SIZE, and the hub, where 30 clients reconnect at once after a Wi-Fi
+ * drop, gets more.
+ *
+ * Applied by BrokerConfigFactory when the broker starts.
+ */
+public enum BrokerTuning {
+
+    /** One or two dashboards, battery first */
+    LOW_POWER_PHONE(1, 50, false, 16, 1024, 16 * 1024),
+
+    /** A handful of clients, the previous defaults without server sized thread pools */
+    BALANCED(2, 0, true, 64, 1024, 64 * 1024),
+
+    /** Around 30 clients on the pit wall Wi-Fi, phone on a charger */
+    PIT_WALL_HUB(4, 0, true, 128, 2048, 256 * 1024);
+
+    // Moquette's default session queue size
+    static final int MIN_SESSION_QUEUE_SIZE = 1024;
+
+    /** Netty event loop threads, shared by the acceptor and the client connections */
+    private final int eventLoopThreads;
+
+    /**
+     * Flush queued writes to the sockets this often, or 0 to write every message at once.
+     * Never negative: Moquette then only flushes when a client sends something itself.
+     */
+    private final int bufferFlushMillis;
+
+    /** Disable Nagle, trading more packets for lower latency */
+    private final boolean tcpNoDelay;
+
+    /** Pending connections the listening socket accepts */
+    private final int acceptBacklog;
+
+    /** Commands queued per session loop, shared by all its clients; a full queue fails the command */
+    private final int sessionQueueSize;
+
+    /** Largest MQTT message accepted, in bytes */
+    private final int maxMessageBytes;
+
+    BrokerTuning(int eventLoopThreads, int bufferFlushMillis, boolean tcpNoDelay, int acceptBacklog,
+                 int sessionQueueSize, int maxMessageBytes) {
+        this.eventLoopThreads = eventLoopThreads;
+        this.bufferFlushMillis = bufferFlushMillis;
+        this.tcpNoDelay = tcpNoDelay;
+        this.acceptBacklog = acceptBacklog;
+        this.sessionQueueSize = sessionQueueSize;
+        this.maxMessageBytes = maxMessageBytes;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public int getBufferFlushMillis() {
+        return bufferFlushMillis;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public int getSessionQueueSize() {
+        return sessionQueueSize;
+    }
+
+    public int getMaxMessageBytes() {
+        return maxMessageBytes;
+    }
+
+    /**
+     * Parse a preset stored in preferences, defaulting to BALANCED.
+     */
+    public static BrokerTuning fromName(String name) {
+        for (BrokerTuning tuning : values()) {
+            if (tuning.name().equals(name)) {
+                return tuning;
+            }
+        }
+        return BALANCED;
+    }
+}
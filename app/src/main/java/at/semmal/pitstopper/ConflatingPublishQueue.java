@@ -0,0 +1,147 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queue of messages waiting to be handed to the broker, keeping only the latest message
+ * per topic.
+ *
+ * Telemetry topics carry state, not events: when the broker falls behind, a countdown
+ * that was superseded before it went out is worthless. Such messages are conflated, so
+ * the queue never holds more than one message per topic and never grows with a backlog.
+ * Reliable messages (alert transitions) are events a client must see, so they are kept in
+ * order and never dropped; they are also taken before conflated ones.
+ *
+ * This only bounds the backlog in front of the broker. Moquette keeps every QoS 1 message
+ * for each subscriber until it is acknowledged, so a lagging client still receives all
+ * reliable messages; that is why only rare transitions are published reliably.
+ *
+ * Superseded messages are handed to the Releaser, e.g. to free pooled buffers.
+ *
+ * Thread safe.
+ *
+ * @param <M> Message type
+ */
+public class ConflatingPublishQueue<M> {
+
+    /**
+     * Frees a message that won't be published.
+     */
+    public interface Releaser<M> {
+        void release(M message);
+    }
+
+    /**
+     * A message taken from the queue.
+     */
+    public static final class Pending<M> {
+        private final String topic;
+        private final M message;
+        private final boolean reliable;
+        private final long queuedNanos;
+
+        Pending(String topic, M message, boolean reliable, long queuedNanos) {
+            this.topic = topic;
+            this.message = message;
+            this.reliable = reliable;
+            this.queuedNanos = queuedNanos;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public M getMessage() {
+            return message;
+        }
+
+        public boolean isReliable() {
+            return reliable;
+        }
+
+        /**
+         * Get System.nanoTime() when the message was queued.
+         */
+        public long getQueuedNanos() {
+            return queuedNanos;
+        }
+    }
+
+    private final Releaser<M> releaser;
+    private final ArrayDeque<Pending<M>> reliable = new ArrayDeque<>();
+    private final Map<String, Pending<M>> latest = new LinkedHashMap<>();
+    private long conflatedCount = 0;
+
+    public ConflatingPublishQueue(Releaser<M> releaser) {
+        this.releaser = releaser;
+    }
+
+    /**
+     * Queue a message. A pending conflatable message of the same topic is replaced; the
+     * topic keeps its place in the queue.
+     *
+     * @param reliable true to keep the message even if a newer one follows
+     */
+    public synchronized void offer(String topic, M message, boolean reliable) {
+        long nowNanos = System.nanoTime();
+        if (reliable) {
+            this.reliable.add(new Pending<>(topic, message, true, nowNanos));
+            return;
+        }
+
+        Pending<M> superseded = latest.put(topic, new Pending<>(topic, message, false, nowNanos));
+        if (superseded != null) {
+            conflatedCount++;
+            releaser.release(superseded.getMessage());
+        }
+    }
+
+    /**
+     * Take the next message: reliable ones first, then conflated ones in the order their
+     * topics were queued.
+     *
+     * @return The message, or null if the queue is empty
+     */
+    public synchronized Pending<M> poll() {
+        Pending<M> next = reliable.poll();
+        if (next != null) {
+            return next;
+        }
+
+        Iterator<Pending<M>> oldest = latest.values().iterator();
+        if (!oldest.hasNext()) {
+            return null;
+        }
+        next = oldest.next();
+        oldest.remove();
+        return next;
+    }
+
+    /**
+     * Release and remove everything queued.
+     */
+    public synchronized void clear() {
+        for (Pending<M> pending : reliable) {
+            releaser.release(pending.getMessage());
+        }
+        reliable.clear();
+        for (Pending<M> pending : latest.values()) {
+            releaser.release(pending.getMessage());
+        }
+        latest.clear();
+    }
+
+    public synchronized int size() {
+        return reliable.size() + latest.size();
+    }
+
+    /**
+     * Get the number of messages replaced by a newer one before they were published.
+     */
+    public synchronized long getConflatedCount() {
+        return conflatedCount;
+    }
+}
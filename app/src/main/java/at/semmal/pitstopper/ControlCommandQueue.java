@@ -0,0 +1,318 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Commands from the pit wall, received on the embedded broker below
+ * pitstopper/&lt;car&gt;/control/ (see MQTT_TOPICS.md) and applied by MainActivity.
+ *
+ * Each command carries a sequence number chosen by the sender: "&lt;seq&gt;" or
+ * "&lt;seq&gt; &lt;argument&gt;". Every command is answered on control/ack with
+ * "&lt;seq&gt; OK &lt;ms&gt;" once it is applied and on screen (ms counted from its
+ * arrival at the broker), or "&lt;seq&gt; ERROR &lt;reason&gt;". A sequence number the
+ * same client sent recently is acknowledged again as "&lt;seq&gt; DUPLICATE" without
+ * applying the command, so a QoS 1 redelivery can't shift the schedule twice. Sequence
+ * numbers are forgotten when the client connects with a clean session (there is nothing
+ * to redeliver then, so a restarted tool can count from 1 again) and when the broker stops.
+ *
+ * Anyone on the pit wall Wi-Fi can publish, so commands are only accepted once enabled
+ * in the settings (setEnabled()); until then they are acknowledged as "ERROR disabled".
+ *
+ * Commands arrive on the broker's threads; the listener is told about each one so the
+ * main thread can apply it right away instead of on the next clock tick.
+ *
+ * Thread safe.
+ */
+public class ControlCommandQueue {
+
+    static final String CONTROL_PREFIX = "control/";
+    static final String TOPIC_ACK = CONTROL_PREFIX + "ack";
+
+    // Recently seen sequence numbers per client, for duplicate detection
+    static final int TRACKED = 32;
+
+    // Clients whose sequence numbers are tracked; the one heard from least recently is forgotten
+    static final int MAX_CLIENTS = 64;
+
+    // Commands waiting for the main thread; more are rejected
+    static final int MAX_PENDING = 16;
+
+    // Largest schedule shift accepted in one command
+    static final int MAX_SHIFT_MINUTES = 120;
+
+    public enum Type {
+        CLEAR_ALERT("clear_alert"),
+        FORCE_ALERT("force_alert"),
+        SHIFT_SCHEDULE("shift_schedule"),
+        SET_CAR_NUMBER("car_number");
+
+        private final String subtopic;
+
+        Type(String subtopic) {
+            this.subtopic = CONTROL_PREFIX + subtopic;
+        }
+
+        /**
+         * Get the topic below pitstopper/&lt;car&gt;/ the command is published on.
+         */
+        public String getSubtopic() {
+            return subtopic;
+        }
+
+        static Type fromSubtopic(String subtopic) {
+            for (Type type : values()) {
+                if (type.subtopic.equals(subtopic)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A received command.
+     */
+    public static final class Command {
+        private final Type type;
+        private final int seq;
+        private final String argument;
+        private final long receivedNanos;
+
+        Command(Type type, int seq, String argument, long receivedNanos) {
+            this.type = type;
+            this.seq = seq;
+            this.argument = argument;
+            this.receivedNanos = receivedNanos;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getSeq() {
+            return seq;
+        }
+
+        /**
+         * Get the minutes of a SHIFT_SCHEDULE command.
+         */
+        public int getMinutes() {
+            return Integer.parseInt(argument);
+        }
+
+        /**
+         * Get the car number of a SET_CAR_NUMBER command.
+         */
+        public String getCarNumber() {
+            return argument;
+        }
+
+        public long getReceivedNanos() {
+            return receivedNanos;
+        }
+    }
+
+    /**
+     * Told about every queued command, on the thread that received it.
+     */
+    public interface Listener {
+        void onCommandQueued();
+    }
+
+    private static final ControlCommandQueue INSTANCE = new ControlCommandQueue(RaceStatePublisher.getInstance());
+
+    private final RaceStatePublisher publisher;
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    private final Map<String, SeenSeqs> seen = new LinkedHashMap<String, SeenSeqs>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SeenSeqs> eldest) {
+            return size() > MAX_CLIENTS;
+        }
+    };
+    private volatile Listener listener;
+    private volatile boolean enabled = false;
+
+    ControlCommandQueue(RaceStatePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    public static ControlCommandQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the listener told about queued commands, or null.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Accept commands, or acknowledge them as "ERROR disabled" without applying them.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Call when a client connects. A clean session starts its sequence numbers over.
+     */
+    public synchronized void onClientConnected(String clientId, boolean cleanSession) {
+        if (cleanSession) {
+            seen.remove(clientId);
+        }
+    }
+
+    /**
+     * Take a message published by a client. Messages on other topics are ignored.
+     *
+     * @param clientId ID of the client that published it
+     * @param topic Full topic of the message
+     * @param payload Payload as text
+     * @param receivedNanos System.nanoTime() when the broker got the message
+     * @return true if the topic is a control topic, whether or not the command was accepted
+     */
+    public boolean offer(String clientId, String topic, String payload, long receivedNanos) {
+        String prefix = publisher.getTopic(CONTROL_PREFIX);
+        if (!topic.startsWith(prefix)) {
+            return false;
+        }
+        Type type = Type.fromSubtopic(CONTROL_PREFIX + topic.substring(prefix.length()));
+        if (type == null) {
+            return !topic.equals(publisher.getTopic(TOPIC_ACK)); // Our own acks aren't commands
+        }
+
+        String text = payload.trim();
+        int space = text.indexOf(' ');
+        String argument = space < 0 ? "" : text.substring(space + 1).trim();
+        int seq;
+        try {
+            seq = Integer.parseInt(space < 0 ? text : text.substring(0, space));
+        } catch (NumberFormatException e) {
+            return true; // Nothing to acknowledge without a sequence number
+        }
+        if (seq <= 0) {
+            return true;
+        }
+
+        String error = enabled ? validate(type, argument) : "disabled";
+        if (error != null) {
+            ack(seq, "ERROR " + error);
+            return true;
+        }
+
+        Listener current;
+        synchronized (this) {
+            SeenSeqs clientSeen = seen.get(clientId);
+            if (clientSeen != null && clientSeen.contains(seq)) {
+                ack(seq, "DUPLICATE");
+                return true;
+            }
+            if (pending.size() >= MAX_PENDING) {
+                ack(seq, "ERROR busy");
+                return true;
+            }
+            if (clientSeen == null) {
+                clientSeen = new SeenSeqs();
+                seen.put(clientId, clientSeen);
+            }
+            clientSeen.add(seq);
+            pending.add(new Command(type, seq, argument, receivedNanos));
+            current = listener;
+        }
+        if (current != null) {
+            current.onCommandQueued();
+        }
+        return true;
+    }
+
+    /**
+     * Take the next command to apply, or null if there is none.
+     */
+    public synchronized Command poll() {
+        return pending.poll();
+    }
+
+    /**
+     * Acknowledge a command the app applied and has on screen.
+     */
+    public void ackApplied(Command command, long nowNanos) {
+        ack(command.getSeq(), "OK " + (nowNanos - command.getReceivedNanos()) / 1_000_000L);
+    }
+
+    /**
+     * Acknowledge a command the app could not apply.
+     */
+    public void ackFailed(Command command, String reason) {
+        ack(command.getSeq(), "ERROR " + reason);
+    }
+
+    /**
+     * Drop pending commands and forget all sequence numbers, e.g. when the broker stops.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        seen.clear();
+    }
+
+    private void ack(int seq, String result) {
+        publisher.publishControlAck(seq + " " + result);
+    }
+
+    /**
+     * The last TRACKED sequence numbers of one client.
+     */
+    private static final class SeenSeqs {
+        private final int[] seqs = new int[TRACKED];
+        private int count = 0;
+        private int next = 0;
+
+        boolean contains(int seq) {
+            for (int i = 0; i < count; i++) {
+                if (seqs[i] == seq) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(int seq) {
+            seqs[next] = seq;
+            next = (next + 1) % TRACKED;
+            count = Math.min(count + 1, TRACKED);
+        }
+    }
+
+    /**
+     * Check the argument of a command.
+     *
+     * @return The reason it is invalid, or null if it is valid
+     */
+    static String validate(Type type, String argument) {
+        switch (type) {
+            case SHIFT_SCHEDULE:
+                try {
+                    int minutes = Integer.parseInt(argument);
+                    return Math.abs(minutes) <= MAX_SHIFT_MINUTES ? null : "shift out of range";
+                } catch (NumberFormatException e) {
+                    return "minutes required";
+                }
+            case SET_CAR_NUMBER:
+                if (argument.isEmpty()) {
+                    return "car number required";
+                }
+                // The car number becomes part of the topics
+                for (int i = 0; i < argument.length(); i++) {
+                    char c = argument.charAt(i);
+                    if (c == '/' || c == '+' || c == '#' || Character.isWhitespace(c)) {
+                        return "invalid car number";
+                    }
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package at.semmal.pitstopper;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the browser dashboard page from the app's assets (assets/dashboard/).
+ *
+ * The page connects to the broker's MQTT-over-WebSocket port itself, so this only serves a
+ * handful of static files plus config.js, which tells the page the WebSocket port and the
+ * topic prefix of the current car. A minimal HTTP/1.1 server is enough for that; every
+ * response closes the connection.
+ */
+public class DashboardServer {
+
+    private static final String TAG = "DashboardServer";
+
+    public static final int PORT = 8080;
+
+    private static final String ASSET_DIR = "dashboard";
+    private static final String INDEX = "index.html";
+    private static final String CONFIG = "config.js";
+    private static final int SOCKET_TIMEOUT_MILLIS = 5000;
+
+    private final AssetManager assets;
+    private final int websocketPort;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    public DashboardServer(AssetManager assets, int websocketPort) {
+        this.assets = assets;
+        this.websocketPort = websocketPort;
+    }
+
+    /**
+     * Start accepting connections on PORT.
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        ServerSocket socket = new ServerSocket(PORT);
+        serverSocket = socket;
+        // One thread accepts, one serves; a dashboard loads three small files once
+        executor = Executors.newFixedThreadPool(2);
+        executor.execute(() -> accept(socket));
+        Log.i(TAG, "Dashboard served on port " + PORT);
+    }
+
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing dashboard socket", e);
+        }
+        executor.shutdownNow();
+        serverSocket = null;
+        executor = null;
+    }
+
+    private void accept(ServerSocket socket) {
+        ExecutorService connections = executor;
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                connections.execute(() -> serve(client));
+            } catch (SocketException e) {
+                return; // Closed by stop()
+            } catch (Exception e) {
+                Log.w(TAG, "Error accepting dashboard connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String requestLine = in.readLine();
+            OutputStream out = socket.getOutputStream();
+            if (requestLine == null) {
+                return;
+            }
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2 || !parts[0].equals("GET")) {
+                respond(out, "405 Method Not Allowed", "text/plain", "GET only".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            String name = fileName(parts[1]);
+            if (name == null) {
+                respond(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+            } else if (name.equals(CONFIG)) {
+                respond(out, "200 OK", contentType(name), config().getBytes(StandardCharsets.UTF_8));
+            } else {
+                try (InputStream asset = assets.open(ASSET_DIR + "/" + name)) {
+                    respond(out, "200 OK", contentType(name), readAll(asset));
+                } catch (FileNotFoundException e) {
+                    respond(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Dashboard request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the asset name for a request path, or null if it doesn't name a dashboard file.
+     * Only plain file names are accepted, so requests can't leave the dashboard directory.
+     */
+    static String fileName(String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.equals("/")) {
+            return INDEX;
+        }
+        if (!path.matches("/[A-Za-z0-9_-]+\\.(html|js|css)")) {
+            return null;
+        }
+        return path.substring(1);
+    }
+
+    private String config() {
+        String prefix = RaceStatePublisher.getInstance().getTopic("");
+        return String.format(Locale.US, "var PITSTOPPER_CONFIG = {websocketPort: %d, topicPrefix: \"%s\"};\n",
+                websocketPort, prefix.replace("\\", "\\\\").replace("\"", "\\\""));
+    }
+
+    private static String contentType(String name) {
+        if (name.endsWith(".html")) {
+            return "text/html; charset=utf-8";
+        } else if (name.endsWith(".js")) {
+            return "application/javascript; charset=utf-8";
+        }
+        return "text/css; charset=utf-8";
+    }
+
+    private static void respond(OutputStream out, String status, String contentType, byte[] body)
+            throws IOException {
+        String header = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -26,6 +26,7 @@ public class DemoSpeedHiveManager extends SpeedHiveManager {
     private final List<DemoCar> cars;
     private final Random random;
     private int pollCount = 0;
+    private final LeaderboardSnapshot leaderboardSnapshot = new LeaderboardSnapshot();
     
     /**
      * Demo car data structure
@@ -81,13 +82,17 @@ public class DemoSpeedHiveManager extends SpeedHiveManager {
     
     @Override
     public void fetchLeaderboard(String eventId, String sessionId, String carNumber, LiveTimingCallback callback) {
-        Log.d(TAG, "Demo poll #" + (++pollCount) + " for car #" + carNumber);
+        pollCount++;
+        if (RaceLog.isLoggable(RaceLog.DEBUG)) {
+            Log.d(TAG, "Demo poll #" + pollCount + " for car #" + carNumber);
+        }
         
         // Simulate realistic lap progression
         simulateRaceProgression();
         
         // Calculate current positions
         updatePositions();
+        publishLeaderboard();
         
         // Find our car
         DemoCar ourCar = findCarByNumber(carNumber);
@@ -144,6 +149,20 @@ public class DemoSpeedHiveManager extends SpeedHiveManager {
         }
     }
     
+    /**
+     * Publish the simulated leaderboard with intervals to the car ahead.
+     */
+    private void publishLeaderboard() {
+        leaderboardSnapshot.clearEntries();
+        for (int i = 0; i < cars.size(); i++) {
+            DemoCar car = cars.get(i);
+            long interval = i == 0 ? LeaderboardSnapshot.GAP_UNKNOWN
+                    : Math.round((car.totalTime - cars.get(i - 1).totalTime) * 1000);
+            leaderboardSnapshot.addEntry(car.carNumber, car.driverName, 0, interval);
+        }
+        RaceStatePublisher.getInstance().publishLeaderboard(leaderboardSnapshot);
+    }
+    
     /**
      * Find a car by its number.
      */
@@ -0,0 +1,128 @@
+package at.semmal.pitstopper;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+/**
+ * LocationSource backed by the fused location provider.
+ *
+ * Fixes are delivered on the given Looper, either in batches (setMaxUpdateDelayMillis) to
+ * save power or one by one as soon as they are measured. The caller is responsible for
+ * holding the location permission.
+ */
+public class FusedLocationSource implements LocationSource {
+
+    // Location update interval for HIGH_ACCURACY
+    private static final long HIGH_ACCURACY_INTERVAL_MS = 1000; // 1 second
+
+    // Location update interval for PIT_LANE_CHECK
+    private static final long PIT_LANE_CHECK_INTERVAL_MS = 5000; // 5 seconds
+
+    // How long fused location may hold back fixes to deliver them as one batch
+    private static final long MAX_UPDATE_DELAY_MS = 2000;
+
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final Looper looper;
+    private final boolean batched;
+    private final GpsFix fix = new GpsFix();
+    private final LocationCallback locationCallback;
+
+    private Mode mode;
+    private Listener listener;
+
+    /**
+     * Creates a new FusedLocationSource that delivers fixes in batches.
+     *
+     * @param context Context for the fused location client
+     * @param looper  Looper fixes are delivered on
+     */
+    public FusedLocationSource(@NonNull Context context, @NonNull Looper looper) {
+        this(context, looper, true);
+    }
+
+    /**
+     * Creates a new FusedLocationSource.
+     *
+     * @param context Context for the fused location client
+     * @param looper  Looper fixes are delivered on
+     * @param batched true to let fixes be held back and delivered together, false to get
+     *                every fix right away
+     */
+    public FusedLocationSource(@NonNull Context context, @NonNull Looper looper, boolean batched) {
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.looper = looper;
+        this.batched = batched;
+        this.locationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(@NonNull LocationResult locationResult) {
+                // A batch holds all fixes since the last delivery, oldest first
+                for (Location location : locationResult.getLocations()) {
+                    Listener current = listener;
+                    if (current == null) {
+                        break; // Stopped by an earlier fix of this batch
+                    }
+                    current.onFix(toFix(location));
+                }
+            }
+        };
+    }
+
+    @SuppressLint("MissingPermission") // Checked by StandstillDetector.startMonitoring()
+    @Override
+    public void start(Mode mode, Listener listener) {
+        this.listener = listener;
+        if (mode == this.mode) {
+            return;
+        }
+
+        // The pit lane check saves power by asking less often, not by settling for network
+        // fixes: those are often off by more than the pit lane is wide
+        long interval = mode == Mode.HIGH_ACCURACY ? HIGH_ACCURACY_INTERVAL_MS : PIT_LANE_CHECK_INTERVAL_MS;
+
+        // Create location request; if batched, fixes may be held back and delivered together
+        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, interval)
+                .setMinUpdateIntervalMillis(interval / 2)
+                .setMaxUpdateDelayMillis(batched ? Math.max(MAX_UPDATE_DELAY_MS, interval * 2) : 0)
+                .build();
+
+        // Start location updates (a request for the same callback replaces the previous one)
+        fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, looper);
+        this.mode = mode;
+    }
+
+    @Override
+    public void stop() {
+        if (mode == null) {
+            return;
+        }
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        mode = null;
+        listener = null;
+    }
+
+    private GpsFix toFix(Location location) {
+        // Location.getSpeed() is only valid if hasSpeed() returns true, a missing speed is not a stop
+        float speed = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+
+        // Speed accuracy lets the filter trust good fixes more (0 = unknown)
+        float speedAccuracy = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasSpeedAccuracy()) {
+            speedAccuracy = location.getSpeedAccuracyMetersPerSecond();
+        }
+
+        return fix.set(location.getElapsedRealtimeNanos(), location.getLatitude(), location.getLongitude(),
+                speed, location.hasAccuracy() ? location.getAccuracy() : 0, speedAccuracy);
+    }
+}
@@ -0,0 +1,212 @@
+package at.semmal.pitstopper;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Large "MM:SS" style clock display backed by a pre-rendered glyph atlas.
+ *
+ * The digits 0-9 and ':' are rendered once into an alpha-only bitmap. Each frame then only
+ * blits the cells for the current characters, so updating the time never re-runs text
+ * measurement or layout and draws without allocating. The view only asks for a new layout
+ * when the number of characters changes (e.g. a countdown growing to three minute digits).
+ *
+ * Supports android:textSize, android:textColor and android:textStyle in XML, like the
+ * monospace TextViews it replaces.
+ */
+public class GlyphClockView extends View {
+
+    private static final String GLYPHS = "0123456789:";
+    private static final int GLYPH_COLON = 10;
+
+    // Width reserved for wrap_content layouts, enough for "00:00"
+    private static final int MIN_CHARS = 5;
+
+    // Longest value we format: two ints of at most 10 digits each plus the colon
+    private static final int MAX_CHARS = 21;
+
+    private final Paint glyphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint blitPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect();
+
+    // Glyph indices of the characters currently displayed, and scratch space for the next value
+    private final int[] glyphs = new int[MAX_CHARS];
+    private final int[] pending = new int[MAX_CHARS];
+    private int glyphCount = 0;
+
+    private Bitmap atlas;
+    private int cellWidth;
+    private int cellHeight;
+    private int baseline;
+
+    public GlyphClockView(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public GlyphClockView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public GlyphClockView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 60,
+                context.getResources().getDisplayMetrics());
+        int textColor = Color.WHITE;
+        int textStyle = Typeface.NORMAL;
+
+        if (attrs != null) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.GlyphClockView, defStyleAttr, 0);
+            textSize = a.getDimension(R.styleable.GlyphClockView_android_textSize, textSize);
+            textColor = a.getColor(R.styleable.GlyphClockView_android_textColor, textColor);
+            textStyle = a.getInt(R.styleable.GlyphClockView_android_textStyle, textStyle);
+            a.recycle();
+        }
+
+        glyphPaint.setTypeface(Typeface.create(Typeface.MONOSPACE, textStyle));
+        glyphPaint.setTextSize(textSize);
+        glyphPaint.setColor(Color.WHITE);
+        blitPaint.setColor(textColor);
+
+        buildAtlas();
+        setTime(0, 0);
+    }
+
+    /**
+     * Pre-renders all glyphs into a single alpha-only bitmap.
+     * Alpha bitmaps are tinted with the paint color when drawn, so color changes are free.
+     */
+    private void buildAtlas() {
+        Paint.FontMetricsInt metrics = glyphPaint.getFontMetricsInt();
+        float widest = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            widest = Math.max(widest, glyphPaint.measureText(GLYPHS, i, i + 1));
+        }
+
+        cellWidth = (int) Math.ceil(widest);
+        cellHeight = metrics.descent - metrics.ascent;
+        baseline = -metrics.ascent;
+
+        if (atlas != null) {
+            atlas.recycle();
+        }
+        atlas = Bitmap.createBitmap(cellWidth * GLYPHS.length(), cellHeight, Bitmap.Config.ALPHA_8);
+
+        Canvas canvas = new Canvas(atlas);
+        glyphPaint.setTextAlign(Paint.Align.CENTER);
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            canvas.drawText(GLYPHS, i, i + 1, cellWidth * i + cellWidth / 2f, baseline, glyphPaint);
+        }
+    }
+
+    /**
+     * Displays two zero-padded numbers separated by a colon, e.g. hours and minutes of the
+     * clock or minutes and seconds of a countdown. Equivalent to String.format("%02d:%02d")
+     * for non-negative values, without allocating.
+     *
+     * @param left  Value left of the colon (negative values are shown as 0)
+     * @param right Value right of the colon (negative values are shown as 0)
+     */
+    public void setTime(int left, int right) {
+        int count = appendPadded(Math.max(0, left), 0);
+        pending[count++] = GLYPH_COLON;
+        count = appendPadded(Math.max(0, right), count);
+
+        if (count != glyphCount) {
+            System.arraycopy(pending, 0, glyphs, 0, count);
+            glyphCount = count;
+            requestLayout();
+            invalidate();
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (glyphs[i] != pending[i]) {
+                System.arraycopy(pending, 0, glyphs, 0, count);
+                invalidate();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the digits of value into the pending buffer, padded to at least two digits.
+     *
+     * @return Index after the last written glyph
+     */
+    private int appendPadded(int value, int index) {
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        if (digits < 2) {
+            pending[index++] = 0;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            pending[index + i] = value % 10;
+            value /= 10;
+        }
+        return index + digits;
+    }
+
+    /**
+     * Sets the color the glyphs are drawn with.
+     */
+    public void setTextColor(int color) {
+        if (blitPaint.getColor() != color) {
+            blitPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int chars = Math.max(MIN_CHARS, glyphCount);
+        int desiredWidth = cellWidth * chars + getPaddingLeft() + getPaddingRight();
+        int desiredHeight = cellHeight + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec),
+                resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        if (atlas == null || glyphCount == 0) {
+            return;
+        }
+
+        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int availableHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        int contentWidth = cellWidth * glyphCount;
+
+        // Shrink uniformly if the parent gave us less room than requested
+        float scale = Math.min(1f, Math.min(availableWidth / (float) contentWidth,
+                availableHeight / (float) cellHeight));
+        int drawCellWidth = (int) (cellWidth * scale);
+        int drawCellHeight = (int) (cellHeight * scale);
+
+        int x = getPaddingLeft() + (availableWidth - drawCellWidth * glyphCount) / 2;
+        int y = getPaddingTop() + (availableHeight - drawCellHeight) / 2;
+
+        for (int i = 0; i < glyphCount; i++) {
+            int glyph = glyphs[i];
+            srcRect.set(glyph * cellWidth, 0, (glyph + 1) * cellWidth, cellHeight);
+            dstRect.set(x, y, x + drawCellWidth, y + drawCellHeight);
+            canvas.drawBitmap(atlas, srcRect, dstRect, blitPaint);
+            x += drawCellWidth;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package at.semmal.pitstopper;
+
+/**
+ * A single GPS fix, independent of android.location.Location.
+ *
+ * Mutable on purpose: readers and replay drivers fill the same instance for every fix,
+ * so streaming a long track log doesn't allocate.
+ */
+public class GpsFix {
+
+    private long elapsedRealtimeNanos;
+    private double latitude;
+    private double longitude;
+    private float speed;
+    private float accuracy;
+    private float speedAccuracy;
+
+    /**
+     * Set all values of this fix.
+     *
+     * @param elapsedRealtimeNanos Measurement time (elapsed realtime)
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param speed Speed in m/s, NaN if unknown
+     * @param accuracy Horizontal accuracy in meters, 0 if unknown
+     * @param speedAccuracy Speed accuracy in m/s, 0 if unknown
+     * @return this, for chaining
+     */
+    public GpsFix set(long elapsedRealtimeNanos, double latitude, double longitude,
+                      float speed, float accuracy, float speedAccuracy) {
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.speed = speed;
+        this.accuracy = accuracy;
+        this.speedAccuracy = speedAccuracy;
+        return this;
+    }
+
+    /**
+     * @return Measurement time (elapsed realtime) in nanoseconds
+     */
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    /**
+     * @return Latitude in degrees
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return Longitude in degrees
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return Speed in m/s, NaN if unknown
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Check if the fix has a speed. Network fixes usually don't.
+     */
+    public boolean hasSpeed() {
+        return !Float.isNaN(speed);
+    }
+
+    /**
+     * @return Horizontal accuracy in meters, 0 if unknown
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * @return Speed accuracy in m/s, 0 if unknown
+     */
+    public float getSpeedAccuracy() {
+        return speedAccuracy;
+    }
+}
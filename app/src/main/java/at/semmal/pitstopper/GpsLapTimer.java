@@ -0,0 +1,214 @@
+package at.semmal.pitstopper;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+
+/**
+ * GPS lap timer, independent of the SpeedHive timing feed.
+ *
+ * Runs its own high-accuracy location source with batching switched off, so every fix
+ * reaches the LapTimer as soon as it is measured and a lap is reported well under a second
+ * after the car crosses the line. The start/finish line is marked by the driver at the
+ * current position (perpendicular to the direction of travel) and stored in preferences.
+ *
+ * Fixes are processed on a background thread; lap events are posted to the listener on
+ * the main thread.
+ *
+ * Usage:
+ * 1. Create instance with context and listener
+ * 2. Call start() / stop() with the activity lifecycle
+ * 3. Call markStartFinishLine() while driving across the start/finish line
+ * 4. Call release() when the timer is no longer needed
+ */
+public class GpsLapTimer {
+
+    private static final String TAG = "GpsLapTimer";
+
+    /**
+     * Listener interface for lap timer events.
+     */
+    public interface LapListener {
+        /**
+         * Called when a lap has been completed.
+         *
+         * @param lapNumber   Number of the completed lap (1 = first full lap)
+         * @param lapMillis   Time of the completed lap
+         * @param bestMillis  Fastest lap so far, including this one
+         */
+        void onLapCompleted(int lapNumber, long lapMillis, long bestMillis);
+
+        /**
+         * Called after markStartFinishLine().
+         *
+         * @param success false if there was no recent movement to take the direction from
+         */
+        void onStartFinishLineMarked(boolean success);
+    }
+
+    // Fixes older than this can't give the direction for a new start/finish line
+    private static final long MARK_MAX_FIX_AGE_NANOS = 3_000_000_000L; // 3 seconds
+
+    private final Context context;
+    private final LapListener listener;
+    private final PitWindowPreferences preferences;
+    private final LocationSource locationSource;
+    private final HandlerThread workerThread;
+    private final Handler workerHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LocationSource.Listener fixListener = this::processFix;
+
+    // Written on the caller's thread, read everywhere
+    private volatile boolean isRunning = false;
+
+    // Only touched on the worker thread
+    private LapTimer lapTimer;
+    private final GpsFix previousFix = new GpsFix();
+    private final GpsFix lastFix = new GpsFix();
+    private int fixCount = 0;
+
+    /**
+     * Creates a new GpsLapTimer.
+     *
+     * @param context  Application context
+     * @param listener Listener for lap events
+     */
+    public GpsLapTimer(@NonNull Context context, @NonNull LapListener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.preferences = new PitWindowPreferences(this.context);
+
+        workerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+        locationSource = new FusedLocationSource(this.context, workerThread.getLooper(), false);
+    }
+
+    /**
+     * Start receiving fixes and timing laps.
+     *
+     * @return true if started, false if location permission not granted
+     */
+    public boolean start() {
+        if (isRunning) {
+            return true;
+        }
+
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false; // Permission not granted
+        }
+
+        isRunning = true;
+        workerHandler.post(this::startOnWorker);
+        return true;
+    }
+
+    private void startOnWorker() {
+        StartFinishLine line = preferences.getStartFinishLine();
+        lapTimer = line != null ? new LapTimer(line) : null;
+        fixCount = 0;
+        locationSource.start(LocationSource.Mode.HIGH_ACCURACY, fixListener);
+        Log.i(TAG, line != null ? "Lap timer started" : "Lap timer started, start/finish line not marked yet");
+    }
+
+    /**
+     * Stop receiving fixes. Lap times of the current session are forgotten.
+     */
+    public void stop() {
+        if (!isRunning) {
+            return;
+        }
+
+        isRunning = false;
+        workerHandler.post(this::stopOnWorker);
+    }
+
+    private void stopOnWorker() {
+        locationSource.stop();
+        lapTimer = null;
+        fixCount = 0;
+    }
+
+    /**
+     * Stop and shut down the background thread.
+     * The timer can't be used afterwards.
+     */
+    public void release() {
+        stop();
+        workerThread.quitSafely();
+    }
+
+    /**
+     * Mark the start/finish line at the current position, across the current direction of
+     * travel. Call while driving over the line; the result goes to onStartFinishLineMarked().
+     */
+    public void markStartFinishLine() {
+        workerHandler.post(this::markOnWorker);
+    }
+
+    private void markOnWorker() {
+        StartFinishLine line = null;
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (fixCount >= 2 && now - previousFix.getElapsedRealtimeNanos() <= MARK_MAX_FIX_AGE_NANOS) {
+            line = StartFinishLine.across(previousFix.getLatitude(), previousFix.getLongitude(),
+                    lastFix.getLatitude(), lastFix.getLongitude(), StartFinishLine.DEFAULT_HALF_WIDTH_METERS);
+        }
+
+        if (line != null) {
+            preferences.saveStartFinishLine(line);
+            lapTimer = new LapTimer(line);
+            Log.i(TAG, "Start/finish line marked: " + line.toPreferenceString());
+        } else {
+            Log.w(TAG, "Can't mark start/finish line - no recent movement");
+        }
+
+        boolean success = line != null;
+        mainHandler.post(() -> listener.onStartFinishLineMarked(success));
+    }
+
+    /**
+     * Process incoming fix and check for a line crossing.
+     */
+    private void processFix(GpsFix fix) {
+        // Keep the last two fixes for marking the line
+        if (fixCount > 0) {
+            previousFix.set(lastFix.getElapsedRealtimeNanos(), lastFix.getLatitude(), lastFix.getLongitude(),
+                    lastFix.getSpeed(), lastFix.getAccuracy(), lastFix.getSpeedAccuracy());
+        }
+        lastFix.set(fix.getElapsedRealtimeNanos(), fix.getLatitude(), fix.getLongitude(),
+                fix.getSpeed(), fix.getAccuracy(), fix.getSpeedAccuracy());
+        fixCount++;
+
+        if (lapTimer == null || !lapTimer.onFix(fix)) {
+            return;
+        }
+
+        int lapNumber = lapTimer.getCompletedLaps();
+        long lapMillis = lapTimer.getLastLapNanos() / 1_000_000L;
+        long bestMillis = lapTimer.getBestLapNanos() / 1_000_000L;
+        RaceLog.log(RaceLog.Event.LAP, lapNumber, lapMillis, bestMillis);
+
+        mainHandler.post(() -> {
+            if (isRunning) {
+                listener.onLapCompleted(lapNumber, lapMillis, bestMillis);
+            }
+        });
+    }
+
+    /**
+     * Check if the lap timer is running.
+     */
+    public boolean isRunning() {
+        return isRunning;
+    }
+}
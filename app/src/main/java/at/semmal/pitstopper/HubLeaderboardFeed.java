@@ -0,0 +1,101 @@
+package at.semmal.pitstopper;
+
+/**
+ * The session leaderboard as received from a hub device, which polls SpeedHive and
+ * publishes the binary car table and leaderboard on pitstopper/session/ (see
+ * RaceStatePublisher). Answers live timing lookups for any car, so devices fed by the hub
+ * cost no SpeedHive requests of their own.
+ *
+ * Anyone on the paddock Wi-Fi can publish to the hub, so every message is validated in
+ * full: a malformed one is rejected and leaves nothing half decoded behind.
+ *
+ * Thread safe: messages arrive on the MQTT client's thread, lookups come from the poll.
+ */
+public class HubLeaderboardFeed {
+
+    private final LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+    private final TelemetryCodec.Reader reader = new TelemetryCodec.Reader();
+    private boolean hasTable = false;
+    private boolean hasEntries = false;
+    private long receivedMillis = -1;
+
+    /**
+     * Take a CAR_TABLE message. Entries are cleared until the matching leaderboard arrives.
+     *
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    public synchronized void onCarTable(byte[] payload, long nowMillis) {
+        // Decoded in full before the table is replaced
+        TelemetryCodec.decodeCarTable(reader.wrap(payload, 0, payload.length), snapshot);
+        hasTable = true;
+        hasEntries = false;
+    }
+
+    /**
+     * Take a LEADERBOARD message.
+     *
+     * @return false if it refers to a car table not received yet; it is ignored then
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    public synchronized boolean onLeaderboard(byte[] payload, long nowMillis) {
+        if (!hasTable) {
+            return false;
+        }
+        try {
+            if (!TelemetryCodec.decodeLeaderboard(reader.wrap(payload, 0, payload.length), snapshot)) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            hasEntries = false; // Entries may be half replaced
+            throw e;
+        }
+        hasEntries = true;
+        receivedMillis = nowMillis;
+        return true;
+    }
+
+    /**
+     * Get the time since the last leaderboard arrived, or -1 if none did yet.
+     */
+    public synchronized long getAgeMillis(long nowMillis) {
+        return receivedMillis < 0 ? -1 : nowMillis - receivedMillis;
+    }
+
+    /**
+     * Get the live timing data of a car, with gaps as SpeedHiveManager reports them.
+     *
+     * @return The data, or null if no leaderboard arrived yet or the car isn't in it
+     */
+    public synchronized LiveTimingData lookup(String carNumber) {
+        if (!hasEntries) {
+            return null;
+        }
+        // Positions and gaps the way SpeedHiveManager derives them from the SpeedHive fields
+        int size = snapshot.getSize();
+        for (int i = 0; i < size; i++) {
+            if (!snapshot.getCarNumber(i).equals(carNumber)) {
+                continue;
+            }
+            int position = snapshot.getPosition(i);
+            String gapAhead = position == 1 ? SpeedHiveManager.LEADER_TEXT : gapText(i);
+            int behind = snapshot.findPosition(position + 1);
+            String gapBehind = behind < 0 ? SpeedHiveManager.LAST_TEXT : gapText(behind);
+            return new LiveTimingData(position, gapAhead, gapBehind, carNumber, snapshot.getName(i), size);
+        }
+        return null;
+    }
+
+    /**
+     * Publish the received leaderboard, e.g. to this device's own broker.
+     */
+    public synchronized void publishTo(RaceStatePublisher publisher) {
+        if (hasEntries) {
+            publisher.publishLeaderboard(snapshot);
+        }
+    }
+
+    private String gapText(int entry) {
+        String gap = LeaderboardSnapshot.formatGap(snapshot.getGapLaps(entry), snapshot.getGapMillis(entry));
+        return gap.isEmpty() ? "Unknown" : gap;
+    }
+}
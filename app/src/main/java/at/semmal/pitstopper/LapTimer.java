@@ -0,0 +1,137 @@
+package at.semmal.pitstopper;
+
+/**
+ * Times laps from GPS fixes crossing a StartFinishLine.
+ *
+ * The crossing time is interpolated between the fix before and the fix after the line, so
+ * lap times are much finer than the 1 s fix interval. The first crossing starts lap 1;
+ * every further crossing completes a lap. Crossings sooner than the minimum lap time after
+ * the last one (GPS jitter around the line) are ignored.
+ *
+ * Time is taken from the fixes only. Not thread safe; feed it from a single thread.
+ */
+public class LapTimer {
+
+    // Crossings closer together than this are GPS jitter, not laps
+    static final long DEFAULT_MIN_LAP_MILLIS = 20_000; // 20 seconds
+
+    private final StartFinishLine line;
+    private final long minLapNanos;
+
+    private boolean hasPrevious = false;
+    private long previousNanos;
+    private double previousLat;
+    private double previousLon;
+
+    private long lastCrossingNanos = -1;
+    private int completedLaps = 0;
+    private long lastLapNanos = 0;
+    private long bestLapNanos = 0;
+
+    /**
+     * Creates a new LapTimer with the default minimum lap time.
+     */
+    public LapTimer(StartFinishLine line) {
+        this(line, DEFAULT_MIN_LAP_MILLIS);
+    }
+
+    /**
+     * Creates a new LapTimer.
+     *
+     * @param line          The start/finish line
+     * @param minLapMillis  Crossings closer together than this are ignored
+     */
+    public LapTimer(StartFinishLine line, long minLapMillis) {
+        this.line = line;
+        this.minLapNanos = minLapMillis * 1_000_000L;
+    }
+
+    /**
+     * Process one fix.
+     *
+     * @return true if the fix completed a lap (see getLastLapNanos())
+     */
+    public boolean onFix(GpsFix fix) {
+        long nanos = fix.getElapsedRealtimeNanos();
+        double lat = fix.getLatitude();
+        double lon = fix.getLongitude();
+
+        boolean lapCompleted = false;
+        if (hasPrevious && nanos > previousNanos) {
+            double t = line.crossing(previousLat, previousLon, lat, lon);
+            if (t >= 0) {
+                lapCompleted = onCrossing(previousNanos + Math.round(t * (nanos - previousNanos)));
+            }
+        }
+
+        hasPrevious = true;
+        previousNanos = nanos;
+        previousLat = lat;
+        previousLon = lon;
+        return lapCompleted;
+    }
+
+    private boolean onCrossing(long crossingNanos) {
+        if (lastCrossingNanos < 0) {
+            lastCrossingNanos = crossingNanos; // Start of the first lap
+            return false;
+        }
+
+        long lapNanos = crossingNanos - lastCrossingNanos;
+        if (lapNanos < minLapNanos) {
+            return false;
+        }
+
+        lastCrossingNanos = crossingNanos;
+        lastLapNanos = lapNanos;
+        completedLaps++;
+        if (bestLapNanos == 0 || lapNanos < bestLapNanos) {
+            bestLapNanos = lapNanos;
+        }
+        return true;
+    }
+
+    /**
+     * Call when fixes stop coming (GPS switched off). The next fix can't be paired with the
+     * last one, but lap counting goes on.
+     */
+    public void onSourceStopped() {
+        hasPrevious = false;
+    }
+
+    /**
+     * Get the number of completed laps.
+     */
+    public int getCompletedLaps() {
+        return completedLaps;
+    }
+
+    /**
+     * Get the time of the last completed lap in nanoseconds, or 0 if none.
+     */
+    public long getLastLapNanos() {
+        return lastLapNanos;
+    }
+
+    /**
+     * Get the fastest completed lap in nanoseconds, or 0 if none.
+     */
+    public long getBestLapNanos() {
+        return bestLapNanos;
+    }
+
+    /**
+     * Get the interpolated time of the last line crossing (elapsed realtime), or -1 if the
+     * line hasn't been crossed yet.
+     */
+    public long getLastCrossingNanos() {
+        return lastCrossingNanos;
+    }
+
+    /**
+     * Get the start/finish line this timer uses.
+     */
+    public StartFinishLine getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,96 @@
+package at.semmal.pitstopper;
+
+/**
+ * Measures the end-to-end latency from a state change in the app to a browser dashboard
+ * showing it.
+ *
+ * Each probed state change gets a sequence number, published next to the state (see
+ * RaceStatePublisher). The dashboard echoes the number back once it has rendered the
+ * update. The round trip therefore covers the app's publish queue, the broker, the
+ * WebSocket to the browser, the browser's rendering and the way back. Phone and browser
+ * clocks aren't synchronized, so the one-way latency is only known to be below it.
+ *
+ * Thread safe.
+ */
+public class LatencyProbe {
+
+    // Probes in flight; an echo arriving later than this many probes is ignored
+    static final int TRACKED = 32;
+
+    private final int[] sentSeq = new int[TRACKED];
+    private final long[] sentNanos = new long[TRACKED];
+    private int nextSeq = 1;
+
+    private long lastMillis = -1;
+    private long minMillis = -1;
+    private long maxMillis = -1;
+    private long totalMillis = 0;
+    private int samples = 0;
+
+    /**
+     * Record a probed state change.
+     *
+     * @return The sequence number to publish with it
+     */
+    public synchronized int onSent(long nowNanos) {
+        int seq = nextSeq++;
+        if (nextSeq <= 0) {
+            nextSeq = 1;
+        }
+        int slot = seq % TRACKED;
+        sentSeq[slot] = seq;
+        sentNanos[slot] = nowNanos;
+        return seq;
+    }
+
+    /**
+     * Record an echo from the dashboard.
+     *
+     * @return The round trip in milliseconds, or -1 if the sequence number is unknown,
+     * already echoed or too old
+     */
+    public synchronized long onEcho(int seq, long nowNanos) {
+        if (seq <= 0) {
+            return -1;
+        }
+        int slot = seq % TRACKED;
+        if (sentSeq[slot] != seq) {
+            return -1;
+        }
+        sentSeq[slot] = 0; // Only the first dashboard to echo counts
+
+        long millis = (nowNanos - sentNanos[slot]) / 1_000_000L;
+        lastMillis = millis;
+        minMillis = minMillis < 0 ? millis : Math.min(minMillis, millis);
+        maxMillis = Math.max(maxMillis, millis);
+        totalMillis += millis;
+        samples++;
+        return millis;
+    }
+
+    /**
+     * Get the last round trip in milliseconds, or -1 if none was measured yet.
+     */
+    public synchronized long getLastMillis() {
+        return lastMillis;
+    }
+
+    public synchronized long getMinMillis() {
+        return minMillis;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Get the mean round trip in milliseconds, or -1 if none was measured yet.
+     */
+    public synchronized long getAverageMillis() {
+        return samples > 0 ? totalMillis / samples : -1;
+    }
+
+    public synchronized int getSamples() {
+        return samples;
+    }
+}
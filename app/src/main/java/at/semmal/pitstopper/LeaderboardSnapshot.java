@@ -0,0 +1,293 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Leaderboard of a session in position order, as sent in the binary telemetry
+ * (TelemetryCodec).
+ *
+ * Car numbers and names are interned into a table that only grows during a session, so
+ * entries refer to cars by a small index. The table epoch changes whenever a car is added
+ * or renamed; receivers need the car table of the same epoch to resolve the entries.
+ *
+ * Each entry holds the gap to the car ahead (the interval, as SpeedHive reports it), split
+ * into whole laps and milliseconds. Intervals are small numbers and encode compactly; the
+ * gap to the leader is their running sum.
+ *
+ * Entries also keep the position SpeedHive reports for them, which is their place in the
+ * list plus one unless set otherwise.
+ *
+ * Reused from poll to poll: call clearEntries() and add the entries again. Not thread safe.
+ */
+public class LeaderboardSnapshot {
+
+    // Gap in milliseconds if no time gap is known (leader, or only laps reported)
+    static final long GAP_UNKNOWN = -1;
+
+    private final Map<String, Integer> carIndexes = new HashMap<>();
+    private final List<String> carNumbers = new ArrayList<>();
+    private final List<String> carNames = new ArrayList<>();
+    private int tableEpoch = 0;
+
+    private int size = 0;
+    private int[] entryCars = new int[32];
+    private int[] gapLaps = new int[32];
+    private long[] gapMillis = new long[32];
+    private int[] positions = new int[32];
+
+    /**
+     * Remove all entries, keeping the car table.
+     */
+    public void clearEntries() {
+        size = 0;
+    }
+
+    /**
+     * Add the next entry in position order.
+     *
+     * @param carNumber Car number
+     * @param name      Driver or team name
+     * @param laps      Laps behind the car ahead
+     * @param millis    Time behind the car ahead, or GAP_UNKNOWN
+     */
+    public void addEntry(String carNumber, String name, int laps, long millis) {
+        addIndexedEntry(intern(carNumber, name != null ? name : ""), laps, millis);
+    }
+
+    /**
+     * Add an entry with a gap as shown by SpeedHive ("1.234", "+2.567", "2 Laps", "LEAD").
+     */
+    public void addEntry(String carNumber, String name, String gap) {
+        addEntry(carNumber, name, parseGapLaps(gap), parseGapMillis(gap));
+    }
+
+    void addIndexedEntry(int carIndex, int laps, long millis) {
+        ensureCapacity(size + 1);
+        entryCars[size] = carIndex;
+        gapLaps[size] = laps;
+        gapMillis[size] = millis;
+        positions[size] = size + 1;
+        size++;
+    }
+
+    /**
+     * Replace the entry at a position, as a leaderboard delta does.
+     */
+    void setIndexedEntry(int entry, int carIndex, int laps, long millis) {
+        entryCars[entry] = carIndex;
+        gapLaps[entry] = laps;
+        gapMillis[entry] = millis;
+    }
+
+    /**
+     * Drop the entries from the given size on, or add empty ones up to it. Added entries
+     * must be set before they are read.
+     */
+    void setSize(int newSize) {
+        ensureCapacity(newSize);
+        for (int i = size; i < newSize; i++) {
+            positions[i] = i + 1;
+        }
+        size = newSize;
+    }
+
+    /**
+     * Set the position SpeedHive reports for an entry.
+     */
+    void setPosition(int entry, int position) {
+        positions[entry] = position;
+    }
+
+    /**
+     * Copy the entries and the table epoch of another snapshot, but not its car table. The
+     * copy can be compared and encoded, but not resolved to car numbers.
+     */
+    void copyEntriesFrom(LeaderboardSnapshot other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.entryCars, 0, entryCars, 0, other.size);
+        System.arraycopy(other.gapLaps, 0, gapLaps, 0, other.size);
+        System.arraycopy(other.gapMillis, 0, gapMillis, 0, other.size);
+        System.arraycopy(other.positions, 0, positions, 0, other.size);
+        size = other.size;
+        tableEpoch = other.tableEpoch;
+    }
+
+    /**
+     * Check if the entry at a position equals that of another snapshot.
+     */
+    boolean entryEquals(int entry, LeaderboardSnapshot other) {
+        return entry < size && entry < other.size
+                && entryCars[entry] == other.entryCars[entry]
+                && gapLaps[entry] == other.gapLaps[entry]
+                && gapMillis[entry] == other.gapMillis[entry];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > entryCars.length) {
+            int grown = Math.max(capacity, entryCars.length * 2);
+            entryCars = Arrays.copyOf(entryCars, grown);
+            gapLaps = Arrays.copyOf(gapLaps, grown);
+            gapMillis = Arrays.copyOf(gapMillis, grown);
+            positions = Arrays.copyOf(positions, grown);
+        }
+    }
+
+    private int intern(String carNumber, String name) {
+        Integer index = carIndexes.get(carNumber);
+        if (index == null) {
+            index = carNumbers.size();
+            carIndexes.put(carNumber, index);
+            carNumbers.add(carNumber);
+            carNames.add(name);
+            tableEpoch++;
+        } else if (!carNames.get(index).equals(name)) {
+            carNames.set(index, name);
+            tableEpoch++;
+        }
+        return index;
+    }
+
+    /**
+     * Replace the car table with a decoded one. Entries are cleared.
+     */
+    void setCarTable(int epoch, List<String> numbers, List<String> names) {
+        carIndexes.clear();
+        carNumbers.clear();
+        carNames.clear();
+        for (int i = 0; i < numbers.size(); i++) {
+            carIndexes.put(numbers.get(i), i);
+            carNumbers.add(numbers.get(i));
+            carNames.add(names.get(i));
+        }
+        tableEpoch = epoch;
+        size = 0;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the position of an entry as SpeedHive reports it.
+     */
+    public int getPosition(int entry) {
+        return positions[entry];
+    }
+
+    /**
+     * Find the entry at a position.
+     *
+     * @return The entry, or -1 if no entry has that position
+     */
+    public int findPosition(int position) {
+        for (int i = 0; i < size; i++) {
+            if (positions[i] == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getCarIndex(int entry) {
+        return entryCars[entry];
+    }
+
+    public String getCarNumber(int entry) {
+        return carNumbers.get(entryCars[entry]);
+    }
+
+    public String getName(int entry) {
+        return carNames.get(entryCars[entry]);
+    }
+
+    /**
+     * Get the laps behind the car ahead (0 for the leader).
+     */
+    public int getGapLaps(int entry) {
+        return gapLaps[entry];
+    }
+
+    /**
+     * Get the time behind the car ahead in milliseconds, or GAP_UNKNOWN.
+     */
+    public long getGapMillis(int entry) {
+        return gapMillis[entry];
+    }
+
+    public int getTableEpoch() {
+        return tableEpoch;
+    }
+
+    public int getCarCount() {
+        return carNumbers.size();
+    }
+
+    public String getTableCarNumber(int carIndex) {
+        return carNumbers.get(carIndex);
+    }
+
+    public String getTableName(int carIndex) {
+        return carNames.get(carIndex);
+    }
+
+    /**
+     * Parse the lap part of a SpeedHive gap ("2 Laps" = 2, "1.234" = 0).
+     */
+    public static int parseGapLaps(String gap) {
+        if (gap == null || !gap.toLowerCase(Locale.US).contains("lap")) {
+            return 0;
+        }
+        String digits = gap.replaceAll("[^0-9]", "");
+        try {
+            return digits.isEmpty() ? 0 : Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse the time part of a SpeedHive gap ("1.234", "+2.567", "1:02.345") in milliseconds.
+     *
+     * @return The gap, or GAP_UNKNOWN for laps, LEAD, LAST and anything else
+     */
+    public static long parseGapMillis(String gap) {
+        if (gap == null) {
+            return GAP_UNKNOWN;
+        }
+        String value = gap.trim();
+        if (value.startsWith("+")) {
+            value = value.substring(1);
+        }
+        if (value.isEmpty() || !Character.isDigit(value.charAt(0))) {
+            return GAP_UNKNOWN;
+        }
+
+        try {
+            int colon = value.indexOf(':');
+            double seconds = colon < 0
+                    ? Double.parseDouble(value)
+                    : Integer.parseInt(value.substring(0, colon)) * 60 + Double.parseDouble(value.substring(colon + 1));
+            return Math.round(seconds * 1000);
+        } catch (NumberFormatException e) {
+            return GAP_UNKNOWN; // "2 Laps" and the like
+        }
+    }
+
+    /**
+     * Format a gap the way SpeedHive shows it ("2 Laps", "1.234"), or "" if unknown.
+     */
+    public static String formatGap(int laps, long millis) {
+        if (laps > 0) {
+            return laps + (laps == 1 ? " Lap" : " Laps");
+        }
+        if (millis == GAP_UNKNOWN) {
+            return "";
+        }
+        return String.format(Locale.US, "%d.%03d", millis / 1000, millis % 1000);
+    }
+}
@@ -0,0 +1,168 @@
+package at.semmal.pitstopper;
+
+/**
+ * Leaderboard as a stream of keyframes and deltas, so subscribers don't receive the whole
+ * field after every poll (see MQTT_TOPICS.md).
+ *
+ * Every message carries a sequence number, one higher than the message before. A keyframe
+ * holds all positions; a delta only the positions that changed since the previous message.
+ * Between polls typically only the few cars that crossed the line change, so for a large
+ * field a delta is a fraction of the full leaderboard. A keyframe goes out every
+ * KEYFRAME_INTERVAL messages and whenever the car table changes.
+ *
+ * A subscriber that misses a delta sees the gap in the sequence numbers and asks for a
+ * keyframe (RaceStatePublisher.publishLeaderboardKeyframe) instead of showing a wrong
+ * leaderboard.
+ *
+ * Not thread safe.
+ */
+public final class LeaderboardStream {
+
+    // Every n-th message is a keyframe
+    static final int KEYFRAME_INTERVAL = 30;
+
+    /**
+     * Outcome of decoding a message.
+     */
+    public enum Result {
+        /** The snapshot holds the leaderboard of the message */
+        APPLIED,
+        /** The message is older than the snapshot; ignore it */
+        STALE,
+        /** A delta is missing or there was no keyframe yet; request a keyframe */
+        NEED_KEYFRAME,
+        /** The message refers to a car table not received yet */
+        NEED_CAR_TABLE
+    }
+
+    private LeaderboardStream() {
+    }
+
+    /**
+     * Encodes leaderboards into keyframes and deltas.
+     */
+    public static final class Encoder {
+        // Entries of the last message, to find the changed positions
+        private final LeaderboardSnapshot sent = new LeaderboardSnapshot();
+        private long seq = 0;
+        private int sinceKeyframe = 0;
+
+        /**
+         * Encode the leaderboard as a keyframe or delta, if it changed.
+         *
+         * @return TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME or TYPE_LEADERBOARD_DELTA for
+         *         the message written, or 0 if the leaderboard is unchanged
+         */
+        public int encode(LeaderboardSnapshot snapshot, TelemetryCodec.Writer out) {
+            if (seq > 0 && !changed(snapshot)) {
+                return 0;
+            }
+            seq++;
+            int type;
+            if (seq == 1 || snapshot.getTableEpoch() != sent.getTableEpoch()
+                    || sinceKeyframe + 1 >= KEYFRAME_INTERVAL) {
+                TelemetryCodec.encodeLeaderboardKeyframe(seq, snapshot, out);
+                sinceKeyframe = 0;
+                type = TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME;
+            } else {
+                TelemetryCodec.encodeLeaderboardDelta(seq, sent, snapshot, out);
+                sinceKeyframe++;
+                type = TelemetryCodec.TYPE_LEADERBOARD_DELTA;
+            }
+            sent.copyEntriesFrom(snapshot);
+            return type;
+        }
+
+        /**
+         * Encode the last leaderboard again as a keyframe, with its sequence number.
+         *
+         * @return false if nothing was encoded yet
+         */
+        public boolean encodeKeyframe(TelemetryCodec.Writer out) {
+            if (seq == 0) {
+                return false;
+            }
+            TelemetryCodec.encodeLeaderboardKeyframe(seq, sent, out);
+            return true;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        private boolean changed(LeaderboardSnapshot snapshot) {
+            if (snapshot.getSize() != sent.getSize() || snapshot.getTableEpoch() != sent.getTableEpoch()) {
+                return true;
+            }
+            for (int i = 0; i < snapshot.getSize(); i++) {
+                if (!snapshot.entryEquals(i, sent)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Applies keyframes and deltas to a snapshot, in sequence.
+     */
+    public static final class Decoder {
+        private final TelemetryCodec.Reader reader = new TelemetryCodec.Reader();
+        private long seq = -1;
+
+        /**
+         * Decode a keyframe or delta into the snapshot, which holds the car table and the
+         * leaderboard of the previous message. Keyframes are always applied, so a
+         * publisher that restarted from sequence number 1 is picked up again.
+         *
+         * @throws IllegalArgumentException if the message is corrupt; the next message
+         *                                  must be a keyframe then
+         */
+        public Result decode(byte[] data, int offset, int length, LeaderboardSnapshot snapshot) {
+            reader.wrap(data, offset, length);
+            int type = TelemetryCodec.readType(reader);
+            long messageSeq = reader.readVarint();
+            if (type == TelemetryCodec.TYPE_LEADERBOARD_DELTA) {
+                if (seq < 0 || messageSeq > seq + 1) {
+                    return Result.NEED_KEYFRAME;
+                }
+                if (messageSeq <= seq) {
+                    return Result.STALE;
+                }
+            } else if (type != TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME) {
+                throw new IllegalArgumentException("Expected leaderboard keyframe or delta but got " + type);
+            }
+
+            reader.wrap(data, offset, length);
+            boolean applied;
+            try {
+                applied = type == TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME
+                        ? TelemetryCodec.decodeLeaderboardKeyframe(reader, snapshot)
+                        : TelemetryCodec.decodeLeaderboardDelta(reader, snapshot);
+            } catch (IllegalArgumentException e) {
+                seq = -1; // The snapshot may be half updated
+                throw e;
+            }
+            if (!applied) {
+                return Result.NEED_CAR_TABLE;
+            }
+            seq = messageSeq;
+            return Result.APPLIED;
+        }
+
+        /**
+         * Get the sequence number of the last message applied, or -1.
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * Forget the stream position, e.g. after the car table changed. The next message
+         * applied must be a keyframe.
+         */
+        public void reset() {
+            seq = -1;
+        }
+    }
+}
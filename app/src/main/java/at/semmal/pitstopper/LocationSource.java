@@ -0,0 +1,45 @@
+package at.semmal.pitstopper;
+
+/**
+ * Source of GPS fixes for standstill detection.
+ *
+ * Decouples the detection logic from FusedLocationProviderClient, so the same code can be
+ * driven by live GPS (FusedLocationSource) or by recorded and synthetic fix sequences
+ * (ReplayLocationSource).
+ */
+public interface LocationSource {
+
+    /**
+     * How often and how precisely fixes are needed.
+     */
+    enum Mode {
+        /** Precise fixes at 1 Hz, to time a stop */
+        HIGH_ACCURACY,
+        /** GPS fixes every few seconds, to notice entering the pit lane */
+        PIT_LANE_CHECK
+    }
+
+    /**
+     * Receives fixes, oldest first.
+     */
+    interface Listener {
+        /**
+         * Called for every fix. The instance may be reused for the next fix, so copy
+         * anything that must be kept.
+         */
+        void onFix(GpsFix fix);
+    }
+
+    /**
+     * Start delivering fixes, or change the mode of a running source.
+     *
+     * @param mode Requested accuracy and rate
+     * @param listener Receives the fixes
+     */
+    void start(Mode mode, Listener listener);
+
+    /**
+     * Stop delivering fixes. Fixes of a batch that was already being delivered are dropped.
+     */
+    void stop();
+}
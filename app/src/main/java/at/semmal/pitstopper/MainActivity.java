@@ -6,12 +6,11 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.SpannableString;
 import android.text.style.RelativeSizeSpan;
 import android.util.Log;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.TextView;
@@ -19,32 +18,33 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
 
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "PitStopper";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
+    private static final String RACE_LOG_FILE = "logs/race.log";
+    private static final String TRACK_LOG_DIR = "tracks";
 
-    private TextView textCurrentTime;
-    private TextView textCountdown;
+    private GlyphClockView textCurrentTime;
+    private GlyphClockView textCountdown;
     private TextView textEventSession; // NEW: Event/Session display
     private ImageButton buttonSettings;
-    private ConstraintLayout rootLayout;
-    private View progressBar;
-    private FrameLayout progressBarContainer;
+    private AlertFlashController alertFlashController;
+    private VerticalProgressView progressBar;
     private Handler handler;
     private Runnable updateTimeRunnable;
-    private SimpleDateFormat timeFormat;
     
     // SpeedHive Live Timing UI
     private LinearLayout liveTimingPanel;
@@ -52,10 +52,22 @@ public class MainActivity extends AppCompatActivity {
     private TextView textGapAhead;
     private TextView textGapBehind;
 
+    // GPS lap timer and pit stop UI
+    private TextView textLapTime;
+    private TextView textPitStop;
+
     private PitWindowPreferences preferences;
     private PitWindowAlertManager alertManager;
+    private final RaceStatePublisher raceStatePublisher = RaceStatePublisher.getInstance();
+    private final ControlCommandQueue controlCommands = ControlCommandQueue.getInstance();
+    private final List<ControlCommandQueue.Command> appliedCommands = new ArrayList<>();
+    private Runnable controlCommandRunnable;
     private StandstillDetector standstillDetector;
+    private GpsLapTimer lapTimer;
     private boolean wasInAlertState = false;
+    private boolean stopMonitoringOnMovement = false; // Pit window ended while the car was stopped
+    private long minPitStopMillis;
+    private long alertUrgentMillis;
     
     // SpeedHive Live Timing
     private SpeedHiveManager speedHiveManager;
@@ -73,6 +85,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        RaceLog.init(this);
 
         // Enable edge-to-edge immersive mode to hide status bar
         WindowCompat.setDecorFitsSystemWindows(getWindow(), false);
@@ -89,22 +102,20 @@ public class MainActivity extends AppCompatActivity {
         textCountdown = findViewById(R.id.textCountdown);
         textEventSession = findViewById(R.id.textEventSession); // NEW: Event/Session display
         buttonSettings = findViewById(R.id.buttonSettings);
-        rootLayout = findViewById(R.id.rootLayout);
+        alertFlashController = new AlertFlashController(findViewById(R.id.alertFlashOverlay));
         progressBar = findViewById(R.id.progressBar);
-        progressBarContainer = findViewById(R.id.progressBarContainer);
         
         // Initialize SpeedHive UI elements
         liveTimingPanel = findViewById(R.id.liveTimingPanel);
         textPosition = findViewById(R.id.textPosition);
         textGapAhead = findViewById(R.id.textGapAhead);
         textGapBehind = findViewById(R.id.textGapBehind);
+        textLapTime = findViewById(R.id.textLapTime);
+        textPitStop = findViewById(R.id.textPitStop);
 
         // Initialize preferences
         preferences = new PitWindowPreferences(this);
 
-        // Initialize time format (24-hour format for racing)
-        timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-
         // Initialize handler for time updates
         handler = new Handler(Looper.getMainLooper());
 
@@ -118,6 +129,9 @@ public class MainActivity extends AppCompatActivity {
             }
         };
         
+        // Pit wall commands are applied as soon as they arrive, not on the next tick
+        controlCommandRunnable = this::applyControlCommands;
+
         // Create runnable for SpeedHive polling
         speedHivePollingRunnable = new Runnable() {
             @Override
@@ -149,6 +163,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onStandstillDetected() {
                 Log.i(TAG, "Standstill detected - car stopped in pits, clearing alert");
+                raceStatePublisher.publishStandstill(true);
                 runOnUiThread(() -> {
                     alertManager.clearAlert();
                     Toast.makeText(MainActivity.this, "Pit stop detected - alert cleared", Toast.LENGTH_SHORT).show();
@@ -158,10 +173,44 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onMovementDetected() {
                 Log.i(TAG, "Movement detected - car is moving again");
+                raceStatePublisher.publishStandstill(false);
                 // Note: Alert won't resume automatically (it's cleared for this window)
+                if (stopMonitoringOnMovement) {
+                    stopMonitoringOnMovement = false;
+                    standstillDetector.stopMonitoring();
+                }
+            }
+
+            @Override
+            public void onPitStopRecorded(PitStopRecord record) {
+                Log.i(TAG, "Pit stop recorded: " + record);
+                raceStatePublisher.publishPitStop(record);
+                updatePitStopDisplay();
             }
         });
 
+        // Initialize GPS lap timer, independent of the SpeedHive feed
+        lapTimer = new GpsLapTimer(this, new GpsLapTimer.LapListener() {
+            @Override
+            public void onLapCompleted(int lapNumber, long lapMillis, long bestMillis) {
+                textLapTime.setText(formatLap(lapNumber, lapMillis, bestMillis));
+            }
+
+            @Override
+            public void onStartFinishLineMarked(boolean success) {
+                if (success) {
+                    textLapTime.setText(R.string.lap_waiting);
+                }
+                Toast.makeText(MainActivity.this,
+                        success ? R.string.lap_line_marked : R.string.lap_line_not_marked,
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+        textLapTime.setOnLongClickListener(v -> {
+            lapTimer.markStartFinishLine();
+            return true;
+        });
+
         // Request location permissions
         checkAndRequestLocationPermission();
 
@@ -212,22 +261,87 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         // Reload settings and recreate alert manager (settings might have changed)
+        boolean alertForced = alertManager != null && alertManager.isAlertForced();
         alertManager = new PitWindowAlertManager(
                 preferences.getRaceStartHour(),
                 preferences.getRaceStartMinute(),
                 preferences.getPitWindowOpens(),
                 preferences.getPitWindowDuration()
         );
+        alertManager.shiftSchedule(preferences.getScheduleShiftMinutes());
+        if (alertForced) {
+            alertManager.forceAlert();
+        }
+        publishSchedule();
 
         // Reset alert state tracking
         wasInAlertState = false;
+        alertUrgentMillis = preferences.getAlertUrgentSeconds() * 1000L;
+        minPitStopMillis = preferences.getMinPitStopSeconds() * 1000L;
+        raceStatePublisher.setCarNumber(preferences.getSpeedHiveCarNumber());
+        raceStatePublisher.setJsonMirrorEnabled(preferences.isMqttJsonMirrorEnabled());
+        controlCommands.setEnabled(preferences.isMqttControlEnabled());
         
         // Initialize SpeedHive based on settings
         initializeSpeedHive();
 
+        // GPS track recording can be switched in settings
+        standstillDetector.setTrackLogFile(preferences.isTrackRecordingEnabled() ? getTrackLogFile() : null);
+
+        // The learned pit lane can be forgotten in settings
+        if (preferences.getPitLaneGeofence() == null && standstillDetector.getPitLaneGeofence() != null) {
+            standstillDetector.clearPitLaneGeofence();
+        }
+
+        initializeLapTimer();
+
         // Start updating the clock when activity becomes visible
         updateTime(); // Update immediately
         handler.postDelayed(updateTimeRunnable, 1000);
+
+        // Apply pit wall commands, including any that arrived while paused
+        controlCommands.setListener(() -> handler.post(controlCommandRunnable));
+        handler.post(controlCommandRunnable);
+    }
+
+    /**
+     * Start the GPS lap timer if enabled in settings.
+     */
+    private void initializeLapTimer() {
+        if (!preferences.isLapTimerEnabled()) {
+            textLapTime.setVisibility(View.GONE);
+            return;
+        }
+
+        textLapTime.setVisibility(View.VISIBLE);
+        textLapTime.setText(preferences.getStartFinishLine() != null ? R.string.lap_waiting : R.string.lap_mark_hint);
+        if (!lapTimer.start()) {
+            Log.w(TAG, "Failed to start lap timer - permission may not be granted");
+        }
+    }
+
+    /**
+     * Format a lap as "L12 1:23.45 +0.32", the difference being to the best lap.
+     */
+    private static String formatLap(int lapNumber, long lapMillis, long bestMillis) {
+        long minutes = lapMillis / 60000;
+        long centis = (lapMillis % 60000) / 10;
+        String lap = String.format(Locale.US, "L%d %d:%02d.%02d", lapNumber, minutes, centis / 100, centis % 100);
+        long delta = lapMillis - bestMillis;
+        if (delta <= 0) {
+            return lap + " BEST";
+        }
+        return lap + String.format(Locale.US, " +%d.%02d", delta / 1000, (delta % 1000) / 10);
+    }
+
+    /**
+     * One track log per day; restarting the app during a race keeps appending to it.
+     */
+    private File getTrackLogFile() {
+        Calendar now = Calendar.getInstance();
+        String name = String.format(Locale.US, "track-%04d%02d%02d.bin",
+                now.get(Calendar.YEAR), now.get(Calendar.MONTH) + 1, now.get(Calendar.DAY_OF_MONTH));
+        return new File(new File(getFilesDir(), TRACK_LOG_DIR), name);
     }
 
     @Override
@@ -235,6 +349,9 @@ public class MainActivity extends AppCompatActivity {
         super.onPause();
         // Stop updating the clock when activity is no longer visible
         handler.removeCallbacks(updateTimeRunnable);
+        alertFlashController.stop();
+        controlCommands.setListener(null);
+        handler.removeCallbacks(controlCommandRunnable);
         
         // Stop SpeedHive polling and session checking
         handler.removeCallbacks(speedHivePollingRunnable);
@@ -244,6 +361,11 @@ public class MainActivity extends AppCompatActivity {
         if (standstillDetector != null) {
             standstillDetector.stopMonitoring();
         }
+        stopMonitoringOnMovement = false;
+        lapTimer.stop();
+
+        // Keep the recent debug history around in case something went wrong this session
+        RaceLog.dumpAsync(new File(getFilesDir(), RACE_LOG_FILE));
         
         // Clean up SpeedHive manager
         if (speedHiveManager != null) {
@@ -255,6 +377,12 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (standstillDetector != null) {
+            standstillDetector.release();
+        }
+        if (lapTimer != null) {
+            lapTimer.release();
+        }
     }
 
     @Override
@@ -272,9 +400,8 @@ public class MainActivity extends AppCompatActivity {
         int currentMinute = now.get(Calendar.MINUTE);
         int currentSecond = now.get(Calendar.SECOND);
 
-        // Update time display
-        String currentTime = timeFormat.format(now.getTime());
-        textCurrentTime.setText(currentTime);
+        // Update time display (24-hour format for racing)
+        textCurrentTime.setTime(currentHour, currentMinute);
 
         // Check alert state
         PitWindowAlertManager.AlertState alertState = alertManager.getAlertState(currentHour, currentMinute);
@@ -282,33 +409,41 @@ public class MainActivity extends AppCompatActivity {
         // Start/stop GPS monitoring based on alert state
         handleGpsMonitoring(alertState);
 
+        updatePitStopDisplay();
+
         // Update progress bar using alert manager
-        int stageProgress = alertManager.getProgressInCurrentStage(currentHour, currentMinute, currentSecond);
-        updateProgressBar(stageProgress);
+        float stageProgress = alertManager.getProgressFractionInCurrentStage(currentHour, currentMinute, currentSecond);
+        progressBar.setProgress(stageProgress);
 
-        // Log progress value for debugging
-        Log.d(TAG, String.format(Locale.getDefault(), "Progress: %d%% | State: %s | Time: %02d:%02d:%02d",
-                stageProgress, alertState.name(), currentHour, currentMinute, currentSecond));
+        // Publish to the MQTT broker (only changed values go out)
+        raceStatePublisher.publishAlertState(alertState == PitWindowAlertManager.AlertState.ON_ALERT);
+        raceStatePublisher.publishWindowIndex(alertManager.getCurrentWindowIndex(currentHour, currentMinute));
 
-        if (alertState == PitWindowAlertManager.AlertState.ON_ALERT) {
-            // Flash effect: if seconds % 4 < 2, show green; otherwise show black
-            if (currentSecond % 4 < 2) {
-                rootLayout.setBackgroundColor(ContextCompat.getColor(this, R.color.alert_green));
-            } else {
-                rootLayout.setBackgroundColor(ContextCompat.getColor(this, R.color.background_primary));
-            }
+        // Record progress for debugging (formatted only if enabled or dumped)
+        RaceLog.log(RaceLog.Event.CLOCK_TICK, (long) (stageProgress * 1000),
+                alertState == PitWindowAlertManager.AlertState.ON_ALERT ? 1 : 0,
+                currentHour * 3600L + currentMinute * 60L + currentSecond);
 
+        if (alertState == PitWindowAlertManager.AlertState.ON_ALERT) {
             // Show time remaining in current pit window
             Calendar windowEnd = alertManager.getCurrentPitWindowEnd(currentHour, currentMinute);
+            // Called in by the pit wall outside a window: box now
+            long remainingMillis = 0;
             if (windowEnd != null) {
-                long remainingMillis = windowEnd.getTimeInMillis() - now.getTimeInMillis();
-                int remainingMinutes = (int) (remainingMillis / 60000);
-                int remainingSeconds = (int) ((remainingMillis % 60000) / 1000);
-                textCountdown.setText(String.format(Locale.getDefault(), "%02d:%02d", remainingMinutes, remainingSeconds));
+                remainingMillis = windowEnd.getTimeInMillis() - now.getTimeInMillis();
             }
+            int remainingMinutes = (int) (remainingMillis / 60000);
+            int remainingSeconds = (int) ((remainingMillis % 60000) / 1000);
+            textCountdown.setTime(remainingMinutes, remainingSeconds);
+            raceStatePublisher.publishCountdown(remainingMillis / 1000);
+
+            // Flash runs on the RenderThread; this only does work when the pattern changes
+            alertFlashController.show(alertUrgentMillis > 0 && remainingMillis <= alertUrgentMillis
+                    ? AlertFlashController.FlashPattern.URGENT
+                    : AlertFlashController.FlashPattern.NORMAL);
         } else {
-            // IDLE state - always black background
-            rootLayout.setBackgroundColor(ContextCompat.getColor(this, R.color.background_primary));
+            // IDLE state - no flash, black background
+            alertFlashController.stop();
 
             // Show time until next pit window
             Calendar nextWindow = alertManager.getNextPitWindowStart(currentHour, currentMinute);
@@ -316,11 +451,99 @@ public class MainActivity extends AppCompatActivity {
                 long untilMillis = nextWindow.getTimeInMillis() - now.getTimeInMillis();
                 int untilMinutes = (int) (untilMillis / 60000);
                 int untilSeconds = (int) ((untilMillis % 60000) / 1000);
-                textCountdown.setText(String.format(Locale.getDefault(), "%02d:%02d", untilMinutes, untilSeconds));
+                textCountdown.setTime(untilMinutes, untilSeconds);
+                raceStatePublisher.publishCountdown(untilMillis / 1000);
             }
         }
     }
 
+    /**
+     * Publish the pit window schedule from the settings, with the current shift.
+     */
+    private void publishSchedule() {
+        raceStatePublisher.publishSchedule(preferences.getRaceStartHour(), preferences.getRaceStartMinute(),
+                preferences.getPitWindowOpens(), preferences.getPitWindowDuration(),
+                alertManager.getScheduleShiftMinutes());
+    }
+
+    /**
+     * Apply the pit wall's queued commands, then update the display at once and
+     * acknowledge them with the time from their arrival at the broker until now.
+     */
+    private void applyControlCommands() {
+        ControlCommandQueue.Command command;
+        while ((command = controlCommands.poll()) != null) {
+            switch (command.getType()) {
+                case CLEAR_ALERT:
+                    Log.i(TAG, "Pit wall cleared the alert");
+                    alertManager.clearAlert();
+                    break;
+                case FORCE_ALERT:
+                    Log.i(TAG, "Pit wall called the car in");
+                    alertManager.forceAlert();
+                    break;
+                case SHIFT_SCHEDULE:
+                    Log.i(TAG, "Pit wall shifted the schedule by " + command.getMinutes() + " min");
+                    alertManager.shiftSchedule(command.getMinutes());
+                    preferences.saveScheduleShiftMinutes(alertManager.getScheduleShiftMinutes());
+                    publishSchedule();
+                    break;
+                case SET_CAR_NUMBER:
+                    Log.i(TAG, "Pit wall set car #" + command.getCarNumber());
+                    preferences.saveSpeedHiveCarNumber(command.getCarNumber());
+                    previousTimingData = null;
+                    break;
+            }
+            appliedCommands.add(command);
+        }
+        if (appliedCommands.isEmpty()) {
+            return;
+        }
+
+        updateTime();
+        // Acks go out under the new car number, where the sender finds them
+        raceStatePublisher.setCarNumber(preferences.getSpeedHiveCarNumber());
+        long nowNanos = System.nanoTime();
+        for (ControlCommandQueue.Command applied : appliedCommands) {
+            controlCommands.ackApplied(applied, nowNanos);
+            RaceLog.log(RaceLog.Event.CONTROL_COMMAND, applied.getType().ordinal(), applied.getSeq(),
+                    (nowNanos - applied.getReceivedNanos()) / 1_000_000L);
+        }
+        appliedCommands.clear();
+    }
+
+    /**
+     * Show the running stop time while the car is stopped, otherwise the last completed stop,
+     * in green once the minimum stop time (if any) is met and in red before.
+     */
+    private void updatePitStopDisplay() {
+        long stopStartNanos = standstillDetector.getStopStartNanos();
+        long millis;
+        String text;
+        if (stopStartNanos >= 0) {
+            millis = (SystemClock.elapsedRealtimeNanos() - stopStartNanos) / 1_000_000L;
+            text = minPitStopMillis > 0
+                    ? String.format(Locale.US, "STOP %d / %d s", millis / 1000, minPitStopMillis / 1000)
+                    : String.format(Locale.US, "STOP %d s", millis / 1000);
+        } else {
+            PitStopRecord last = standstillDetector.getPitStopHistory().getLast();
+            if (last == null) {
+                textPitStop.setVisibility(View.GONE);
+                return;
+            }
+            millis = last.getStationaryMillis();
+            text = String.format(Locale.US, "LAST STOP %.1f s", millis / 1000.0);
+        }
+
+        int color = R.color.text_primary;
+        if (minPitStopMillis > 0) {
+            color = millis >= minPitStopMillis ? R.color.gap_positive : R.color.gap_negative;
+        }
+        textPitStop.setText(text);
+        textPitStop.setTextColor(ContextCompat.getColor(this, color));
+        textPitStop.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Manages GPS monitoring based on alert state.
      * Starts monitoring when entering ON_ALERT state, stops when exiting.
@@ -333,6 +556,7 @@ public class MainActivity extends AppCompatActivity {
         if (isInAlertState && !wasInAlertState) {
             // Just entered ON_ALERT state - start GPS monitoring
             Log.i(TAG, "Entering pit window - starting GPS monitoring for standstill detection");
+            stopMonitoringOnMovement = false;
             if (standstillDetector != null) {
                 boolean started = standstillDetector.startMonitoring();
                 if (!started) {
@@ -341,8 +565,12 @@ public class MainActivity extends AppCompatActivity {
             }
         } else if (!isInAlertState && wasInAlertState) {
             // Just exited ON_ALERT state - stop GPS monitoring
-            Log.i(TAG, "Exiting pit window - stopping GPS monitoring");
-            if (standstillDetector != null) {
+            if (standstillDetector != null && standstillDetector.isStandstill()) {
+                // Car is in the pit box (alert cleared by the stop); keep timing until it leaves
+                Log.i(TAG, "Exiting pit window - stopping GPS monitoring when the car leaves");
+                stopMonitoringOnMovement = true;
+            } else if (standstillDetector != null) {
+                Log.i(TAG, "Exiting pit window - stopping GPS monitoring");
                 standstillDetector.stopMonitoring();
             }
         }
@@ -350,21 +578,6 @@ public class MainActivity extends AppCompatActivity {
         wasInAlertState = isInAlertState;
     }
 
-    /**
-     * Updates the progress bar height based on the progress percentage.
-     *
-     * @param progress Progress value from 0 to 100
-     */
-    private void updateProgressBar(int progress) {
-        int containerHeight = progressBarContainer.getHeight();
-        if (containerHeight > 0) {
-            int progressHeight = (containerHeight * progress) / 100;
-            ViewGroup.LayoutParams params = progressBar.getLayoutParams();
-            params.height = progressHeight;
-            progressBar.setLayoutParams(params);
-        }
-    }
-    
     /**
      * Initialize SpeedHive manager and UI based on current preferences.
      */
@@ -397,6 +610,17 @@ public class MainActivity extends AppCompatActivity {
                 // Create demo SpeedHive manager
                 speedHiveManager = new DemoSpeedHiveManager(this);
                 Log.i(TAG, "Demo SpeedHive manager initialized");
+            } else if (PitWindowPreferences.SPEEDHIVE_MODE_HUB.equals(mode)) {
+                // Read the leaderboard from the hub device instead of polling SpeedHive
+                try {
+                    speedHiveManager = new MqttSpeedHiveManager(preferences.getHubAddress());
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to initialize hub manager", e);
+                    Toast.makeText(this, "Hub config error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    liveTimingPanel.setVisibility(View.GONE);
+                    textEventSession.setVisibility(View.GONE);
+                    return;
+                }
             }
             
             // Start polling if we have a manager
@@ -432,15 +656,16 @@ public class MainActivity extends AppCompatActivity {
         String carNumber = preferences.getSpeedHiveCarNumber();
         String mode = preferences.getSpeedHiveMode();
         
-        // For demo mode, we only need car number
-        if (PitWindowPreferences.SPEEDHIVE_MODE_DEMO.equals(mode)) {
+        // For demo and hub mode, we only need car number
+        if (PitWindowPreferences.SPEEDHIVE_MODE_DEMO.equals(mode)
+                || PitWindowPreferences.SPEEDHIVE_MODE_HUB.equals(mode)) {
             if (carNumber.isEmpty()) {
-                Log.w(TAG, "Demo mode: car number not set - skipping poll");
+                Log.w(TAG, mode + " mode: car number not set - skipping poll");
                 updateLiveTimingUI(null, "Car number not set");
                 return;
             }
             
-            Log.d(TAG, "Demo mode - polling for car #" + carNumber);
+            Log.d(TAG, mode + " mode - polling for car #" + carNumber);
             speedHiveManager.fetchLeaderboard("", "", carNumber, new SpeedHiveManager.LiveTimingCallback() {
                 @Override
                 public void onSuccess(LiveTimingData data) {
@@ -516,7 +741,8 @@ public class MainActivity extends AppCompatActivity {
         speedHiveManager.fetchLeaderboard(eventId, sessionId, carNumber, new SpeedHiveManager.LiveTimingCallback() {
             @Override
             public void onSuccess(LiveTimingData data) {
-                Log.i(TAG, "SpeedHive data received: " + data.toString());
+                RaceLog.log(RaceLog.Event.LIVE_TIMING, data.getPosition(), data.getTotalCompetitors(),
+                        RaceLog.numberArg(data.getCarNumber()));
                 runOnUiThread(() -> updateLiveTimingUI(data, null));
             }
             
@@ -536,6 +762,8 @@ public class MainActivity extends AppCompatActivity {
      */
     private void updateLiveTimingUI(LiveTimingData data, String error) {
         if (data != null) {
+            raceStatePublisher.publishLiveTiming(data);
+
             // Update position with total count (e.g., "P3/8") - make total part smaller
             String positionText = data.getFormattedPositionWithTotal();
             int slashIndex = positionText.indexOf('/');
@@ -696,6 +924,11 @@ public class MainActivity extends AppCompatActivity {
             currentEventName = "Demo Race";
             currentSessionName = "Practice Session";
             updateEventSessionDisplay();
+        } else if (PitWindowPreferences.SPEEDHIVE_MODE_HUB.equals(mode)) {
+            // Hub mode - the hub polls whichever session it is set to
+            currentEventName = "Hub " + preferences.getHubAddress();
+            currentSessionName = "";
+            updateEventSessionDisplay();
         } else if (!eventName.isEmpty()) {
             // Real SpeedHive mode
             currentEventName = eventName;
@@ -0,0 +1,145 @@
+package at.semmal.pitstopper;
+
+/**
+ * Low-power first stage of standstill detection based on accelerometer variance.
+ *
+ * A moving race car shakes the phone constantly; a car parked in the pit box (engine off or
+ * idling) barely does. The gate keeps the variance of the acceleration magnitude over a short
+ * sliding window and reports a "likely stop" once it stays low, so the expensive GPS stage
+ * only has to run to confirm the stop. Separate enter/leave thresholds and hold times give
+ * hysteresis, so the gate does not flap while the car creeps along the pit lane.
+ *
+ * Pure Java and allocation-free per sample, so it can run in the sensor callback.
+ */
+public class MotionGate {
+
+    // Sliding window length in samples (~2 s at the 20 Hz sampling rate used by StandstillDetector)
+    static final int WINDOW_SAMPLES = 40;
+
+    // Variance of |a| in (m/s^2)^2 below which the car is likely stationary
+    static final double STILL_VARIANCE = 0.15;
+
+    // Variance of |a| in (m/s^2)^2 above which the car is clearly moving again
+    static final double MOVING_VARIANCE = 0.6;
+
+    // How long the variance must stay below/above a threshold before the state changes
+    static final long STILL_HOLD_NANOS = 1_000_000_000L;   // 1 second
+    static final long MOVING_HOLD_NANOS = 3_000_000_000L;  // 3 seconds
+
+    private final double[] magnitudes = new double[WINDOW_SAMPLES];
+    private final long[] timestamps = new long[WINDOW_SAMPLES];
+    private int next = 0;
+    private int count = 0;
+    private double sum = 0;
+    private double sumSquares = 0;
+
+    private boolean likelyStopped = false;
+    private long candidateSinceNanos = -1;
+    private long candidateWindowStartNanos = -1;
+    private long stoppedSinceNanos = -1;
+
+    /**
+     * Process one accelerometer sample.
+     *
+     * @param timestampNanos Sample timestamp (SensorEvent.timestamp)
+     * @param x Acceleration along x in m/s^2
+     * @param y Acceleration along y in m/s^2
+     * @param z Acceleration along z in m/s^2
+     * @return true if isLikelyStopped() changed with this sample
+     */
+    public boolean onSample(long timestampNanos, float x, float y, float z) {
+        double magnitude = Math.sqrt(x * x + y * y + z * z);
+
+        if (count == WINDOW_SAMPLES) {
+            double old = magnitudes[next];
+            sum -= old;
+            sumSquares -= old * old;
+        } else {
+            count++;
+        }
+        magnitudes[next] = magnitude;
+        timestamps[next] = timestampNanos;
+        sum += magnitude;
+        sumSquares += magnitude * magnitude;
+        next = (next + 1) % WINDOW_SAMPLES;
+        if (next == 0) {
+            recomputeSums(); // Once per window, so rounding errors can't build up over a long stint
+        }
+
+        if (count < WINDOW_SAMPLES) {
+            return false; // Not enough data yet
+        }
+
+        double variance = getVariance();
+        boolean candidate = likelyStopped ? variance > MOVING_VARIANCE : variance < STILL_VARIANCE;
+        if (!candidate) {
+            candidateSinceNanos = -1;
+            return false;
+        }
+
+        if (candidateSinceNanos < 0) {
+            candidateSinceNanos = timestampNanos;
+            candidateWindowStartNanos = timestamps[next]; // Oldest sample in the full window
+        }
+
+        long hold = likelyStopped ? MOVING_HOLD_NANOS : STILL_HOLD_NANOS;
+        if (timestampNanos - candidateSinceNanos >= hold) {
+            likelyStopped = !likelyStopped;
+            stoppedSinceNanos = likelyStopped ? candidateWindowStartNanos : -1;
+            candidateSinceNanos = -1;
+            return true;
+        }
+        return false;
+    }
+
+    private void recomputeSums() {
+        sum = 0;
+        sumSquares = 0;
+        for (int i = 0; i < count; i++) {
+            sum += magnitudes[i];
+            sumSquares += magnitudes[i] * magnitudes[i];
+        }
+    }
+
+    /**
+     * Variance of the acceleration magnitude over the current window.
+     */
+    public double getVariance() {
+        if (count == 0) {
+            return 0;
+        }
+        double mean = sum / count;
+        // Guard against tiny negative values from floating point cancellation
+        return Math.max(0, sumSquares / count - mean * mean);
+    }
+
+    /**
+     * Check if the accelerometer suggests the car has stopped.
+     */
+    public boolean isLikelyStopped() {
+        return likelyStopped;
+    }
+
+    /**
+     * Get when the car likely stopped (sample timestamp), or -1 if it isn't likely stopped.
+     * The variance only drops below STILL_VARIANCE once the shaking has left the window, so
+     * this is the start of the window it first dropped in; isLikelyStopped() changes the
+     * window length plus the hold time after the stop.
+     */
+    public long getStoppedSinceNanos() {
+        return stoppedSinceNanos;
+    }
+
+    /**
+     * Clear all samples and return to the moving state.
+     */
+    public void reset() {
+        next = 0;
+        count = 0;
+        sum = 0;
+        sumSquares = 0;
+        likelyStopped = false;
+        candidateSinceNanos = -1;
+        stoppedSinceNanos = -1;
+    }
+}
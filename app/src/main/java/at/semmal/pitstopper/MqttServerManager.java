@@ -1,44 +1,137 @@
 package at.semmal.pitstopper;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import io.moquette.broker.Server;
 import io.moquette.broker.config.IConfig;
 import io.moquette.broker.config.MemoryConfig;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptAcknowledgedMessage;
+import io.moquette.interception.messages.InterceptConnectMessage;
+import io.moquette.interception.messages.InterceptConnectionLostMessage;
+import io.moquette.interception.messages.InterceptDisconnectMessage;
+import io.moquette.interception.messages.InterceptPublishMessage;
+import io.moquette.interception.messages.InterceptSubscribeMessage;
+import io.moquette.interception.messages.InterceptUnsubscribeMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 
 import java.io.IOException;
 import java.net.NetworkInterface;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MqttServerManager {
 
     private static final String TAG = "MqttServerManager";
 
+    // Client ID the app's own messages are published under
+    private static final String PUBLISHER_CLIENT_ID = "pitstopper";
+
+    // How often the $SYS metrics are published
+    private static final long METRICS_INTERVAL_MILLIS = 5000;
+
     public interface ServerCallback {
         void onStarted(int port, String ipAddress);
         void onStopped();
         void onError(String error);
+
+        default void onStateChanged(BrokerLifecycle.State state) {
+        }
+
+        /**
+         * Called with fresh broker metrics every few seconds while the broker runs.
+         */
+        default void onMetrics(BrokerMetrics.Snapshot metrics) {
+        }
     }
 
     private final Context context;
-    private Server mqttServer;
-    private boolean isServerRunning = false;
-    private int currentPort = 1883;
+    private final HandlerThread brokerThread;
+    private final Handler brokerHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final BrokerLifecycle lifecycle;
     private ServerCallback callback;
+    private volatile int currentPort = 1883;
+    private volatile BrokerConfigFactory.Persistence currentPersistence;
+    private volatile boolean shuttingDown = false;
+
+    // Only touched on the broker thread
+    private Server mqttServer;
+    private DashboardServer dashboardServer;
+
+    // Set while the browser dashboard is enabled
+    private volatile LatencyProbe latencyProbe;
+
+    // Race state is handed to the broker off the caller's (main) thread. Messages waiting
+    // for the publish thread are conflated per topic, so the queue can't build a backlog.
+    private final ExecutorService publishExecutor = Executors.newSingleThreadExecutor();
+    private final ConflatingPublishQueue<MqttPublishMessage> publishQueue =
+            new ConflatingPublishQueue<>(MqttServerManager::release);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final SubscriberTracker subscriberTracker = new SubscriberTracker();
+    private final BrokerMetrics metrics = new BrokerMetrics();
+    private final Runnable metricsRunnable = this::publishMetrics;
+    private final Map<String, String> publishedMetrics = new HashMap<>(); // Broker thread only
+    private volatile BrokerMetrics.Snapshot lastMetrics;
+    private volatile long lastStartupMillis = -1;
+    private volatile long lastColdStartMillis = -1;
 
+    /**
+     * Creates a new MqttServerManager. The broker is started and stopped on its own
+     * thread, so none of the calls block the caller.
+     */
     public MqttServerManager(Context context) {
         this.context = context.getApplicationContext();
+
+        brokerThread = new HandlerThread("MqttBroker", Process.THREAD_PRIORITY_BACKGROUND);
+        brokerThread.start();
+        brokerHandler = new Handler(brokerThread.getLooper());
+        lifecycle = new BrokerLifecycle(new BrokerLifecycle.Broker() {
+            @Override
+            public void start(int port) throws Exception {
+                startBroker(port);
+            }
+
+            @Override
+            public void stop() {
+                stopBroker();
+            }
+        }, brokerHandler::post, new LifecycleListener());
     }
 
+    /**
+     * Set the callback for server events. Callbacks are delivered on the main thread.
+     */
     public void setCallback(ServerCallback callback) {
         this.callback = callback;
     }
 
     public boolean isRunning() {
-        return isServerRunning;
+        return lifecycle.getState() == BrokerLifecycle.State.RUNNING;
+    }
+
+    public BrokerLifecycle.State getState() {
+        return lifecycle.getState();
     }
 
     public int getCurrentPort() {
@@ -46,99 +139,391 @@ public class MqttServerManager {
     }
 
     /**
-     * Start the MQTT server on the specified port
+     * Start the MQTT server on the specified port, or move it there if it runs on another
+     * port. Returns at once; onStarted() follows once clients can connect.
      */
     public void startServer(int port) {
-        if (isServerRunning) {
-            Log.w(TAG, "MQTT server already running on port " + currentPort);
-            return;
-        }
+        lifecycle.requestStart(port);
+    }
+
+    /**
+     * Stop the MQTT server. Returns at once; onStopped() follows.
+     */
+    public void stopServer() {
+        lifecycle.requestStop();
+    }
+
+    /**
+     * Start the broker, on the broker thread.
+     */
+    private void startBroker(int port) throws IOException {
+        PitWindowPreferences preferences = new PitWindowPreferences(context);
+        BrokerConfigFactory.Persistence persistence = preferences.getMqttPersistence();
+        BrokerTuning tuning = preferences.getBrokerTuning();
+        boolean dashboard = preferences.isMqttDashboardEnabled();
+        applyEventLoopThreads(tuning);
+        Properties configProps = BrokerConfigFactory.create(port, dashboard, persistence, tuning,
+                isEpollAvailable(), context.getFilesDir());
+        IConfig config = new MemoryConfig(configProps);
 
+        Server server = new Server();
+        server.startServer(config);
+        server.addInterceptHandler(new ClientStatsInterceptor());
+        mqttServer = server;
         currentPort = port;
-        
+        currentPersistence = persistence;
+        RaceStatePublisher.getInstance().attach((topic, data, length, reliable) ->
+                publishRetained(server, topic, data, length, reliable));
+        if (dashboard) {
+            startDashboard();
+        }
+        metrics.snapshot(System.nanoTime(), 0, 0, 0, 0); // Start the first rate interval
+        brokerHandler.postDelayed(metricsRunnable, METRICS_INTERVAL_MILLIS);
+        Log.i(TAG, "MQTT broker started on port " + port + " (" + persistence + " persistence, "
+                + tuning + " tuning" + (dashboard ? ", dashboard" : "") + ")");
+    }
+
+    /**
+     * Serve the browser dashboard and start probing its latency. The broker keeps running
+     * if the page can't be served, e.g. because the port is taken.
+     */
+    private void startDashboard() {
+        LatencyProbe probe = new LatencyProbe();
+        latencyProbe = probe;
+        RaceStatePublisher.getInstance().setLatencyProbe(probe);
+
+        dashboardServer = new DashboardServer(context.getAssets(), BrokerConfigFactory.WEBSOCKET_PORT);
         try {
-            // Create configuration with proper Android app directory paths
-            Properties configProps = new Properties();
-            
-            // Basic server settings
-            configProps.setProperty("port", String.valueOf(port));
-            configProps.setProperty("host", "0.0.0.0");  // Bind to all interfaces
-            configProps.setProperty("allow_anonymous", "true");
-            
-            // Set persistence store to app's internal files directory
-            String persistenceDir = context.getFilesDir().getAbsolutePath() + "/mqtt";
-            configProps.setProperty("persistent_store", persistenceDir);
-            
-            // Disable SSL and WebSocket ports
-            configProps.setProperty("ssl_port", "0");
-            configProps.setProperty("websocket_port", "0");
-            
-            IConfig config = new MemoryConfig(configProps);
-            
-            // Create and start server
-            mqttServer = new Server();
-            mqttServer.startServer(config);
-            
-            isServerRunning = true;
-            String ipAddress = getLocalIpAddress();
-            Log.i(TAG, "MQTT server started on " + ipAddress + ":" + port);
-            
-            if (callback != null) {
-                callback.onStarted(port, ipAddress);
-            }
-            
+            dashboardServer.start();
         } catch (IOException e) {
-            Log.e(TAG, "Failed to start MQTT server", e);
-            isServerRunning = false;
-            if (callback != null) {
-                callback.onError("Failed to start server: " + e.getMessage());
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error starting MQTT server", e);
-            isServerRunning = false;
-            if (callback != null) {
-                callback.onError("Unexpected error: " + e.getMessage());
-            }
+            Log.e(TAG, "Failed to serve dashboard on port " + DashboardServer.PORT, e);
+            dashboardServer = null;
         }
     }
 
     /**
-     * Stop the MQTT server
+     * Netty sizes its event loop groups from a system property, read once when the first
+     * group is created. A changed thread count therefore applies after an app restart.
      */
-    public void stopServer() {
-        if (!isServerRunning || mqttServer == null) {
-            Log.w(TAG, "MQTT server not running");
-            isServerRunning = false;
-            if (callback != null) {
-                callback.onStopped();
-            }
-            return;
+    private static void applyEventLoopThreads(BrokerTuning tuning) {
+        System.setProperty("io.netty.eventLoopThreads", String.valueOf(tuning.getEventLoopThreads()));
+    }
+
+    /**
+     * Check if Netty's native epoll transport can be loaded on this device. Looked up by
+     * name, as the transport is an optional Netty module.
+     */
+    private static boolean isEpollAvailable() {
+        try {
+            Object available = Class.forName("io.netty.channel.epoll.Epoll").getMethod("isAvailable").invoke(null);
+            return Boolean.TRUE.equals(available);
+        } catch (Throwable t) {
+            return false; // Module or native library not packaged for this ABI
         }
+    }
 
+    /**
+     * Stop the broker, on the broker thread.
+     */
+    private void stopBroker() {
+        brokerHandler.removeCallbacks(metricsRunnable);
+        if (dashboardServer != null) {
+            dashboardServer.stop();
+            dashboardServer = null;
+        }
+        latencyProbe = null;
+        RaceStatePublisher.getInstance().setLatencyProbe(null);
+        RaceStatePublisher.getInstance().detach();
         try {
             mqttServer.stopServer();
-            mqttServer = null;
-            isServerRunning = false;
             Log.i(TAG, "MQTT server stopped");
-            
-            if (callback != null) {
-                callback.onStopped();
-            }
-            
         } catch (Exception e) {
             Log.e(TAG, "Error stopping MQTT server", e);
-            mqttServer = null;
-            isServerRunning = false;
+        }
+        mqttServer = null;
+        publishQueue.clear();
+        subscriberTracker.clear();
+        ControlCommandQueue.getInstance().clear();
+        metrics.clear();
+        publishedMetrics.clear();
+        lastMetrics = null;
+    }
+
+    /**
+     * Publish the metrics topics that changed and pass the figures on, on the broker thread.
+     */
+    private void publishMetrics() {
+        Server server = mqttServer;
+        if (server == null) {
+            return;
+        }
+        List<SubscriberTracker.ClientStats> clients = subscriberTracker.snapshot(SystemClock.elapsedRealtime());
+        int clientQueueDepth = 0;
+        for (SubscriberTracker.ClientStats client : clients) {
+            clientQueueDepth += client.getQueueDepth();
+        }
+        BrokerMetrics.Snapshot snapshot = metrics.snapshot(System.nanoTime(), clients.size(), publishQueue.size(),
+                clientQueueDepth, publishQueue.getConflatedCount());
+        lastMetrics = snapshot;
+
+        for (Map.Entry<String, String> topic : snapshot.toTopics().entrySet()) {
+            if (topic.getValue().equals(publishedMetrics.put(topic.getKey(), topic.getValue()))) {
+                continue; // Unchanged, the retained message is still current
+            }
+            byte[] data = topic.getValue().getBytes(StandardCharsets.UTF_8);
+            publishRetained(server, topic.getKey(), data, data.length, false);
+        }
+
+        mainHandler.post(() -> {
             if (callback != null) {
-                callback.onStopped();  // Still notify stopped even if there was an error
+                callback.onMetrics(snapshot);
+            }
+        });
+        brokerHandler.postDelayed(metricsRunnable, METRICS_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Forwards lifecycle events to the callback on the main thread.
+     */
+    private class LifecycleListener implements BrokerLifecycle.Listener {
+        @Override
+        public void onStateChanged(BrokerLifecycle.State state) {
+            mainHandler.post(() -> {
+                if (callback != null) {
+                    callback.onStateChanged(state);
+                }
+            });
+        }
+
+        @Override
+        public void onRunning(int port, long startupMillis, long coldStartMillis) {
+            lastStartupMillis = startupMillis;
+            lastColdStartMillis = coldStartMillis;
+            boolean filePersistence = currentPersistence == BrokerConfigFactory.Persistence.FILE;
+            RaceLog.log(RaceLog.Event.BROKER_START, startupMillis, filePersistence ? 1 : 0, coldStartMillis);
+
+            String ipAddress = getLocalIpAddress();
+            Log.i(TAG, "MQTT server ready on " + ipAddress + ":" + port + " after " + coldStartMillis
+                    + " ms (broker start " + startupMillis + " ms)");
+            mainHandler.post(() -> {
+                if (callback != null) {
+                    callback.onStarted(port, ipAddress);
+                }
+            });
+        }
+
+        @Override
+        public void onStopped() {
+            mainHandler.post(() -> {
+                if (callback != null) {
+                    callback.onStopped();
+                }
+                if (shuttingDown) {
+                    callback = null;
+                }
+            });
+            if (shuttingDown) {
+                publishExecutor.shutdown();
+                brokerThread.quitSafely();
+            }
+        }
+
+        @Override
+        public void onError(int port, Exception error) {
+            Log.e(TAG, "Failed to start MQTT server on port " + port, error);
+            String message = error instanceof IOException
+                    ? "Failed to start server: " + error.getMessage()
+                    : "Unexpected error: " + error.getMessage();
+            mainHandler.post(() -> {
+                if (callback != null) {
+                    callback.onError(message);
+                }
+            });
+            if (shuttingDown) {
+                onStopped();
             }
         }
     }
 
+    /**
+     * Queue a retained message from the app itself for the publish thread. Reliable
+     * messages go out with QoS 1 and are never dropped; others are QoS 0 and conflated
+     * with a newer message of the same topic while they wait.
+     * The data is copied into a pooled buffer right away, as the caller reuses its array;
+     * the broker releases the buffer once the message is delivered.
+     */
+    private void publishRetained(Server server, String topic, byte[] data, int length, boolean reliable) {
+        ByteBuf payload = PooledByteBufAllocator.DEFAULT.buffer(length);
+        payload.writeBytes(data, 0, length);
+        MqttPublishMessage message = MqttMessageBuilders.publish()
+                .topicName(topic)
+                .retained(true)
+                .qos(reliable ? MqttQoS.AT_LEAST_ONCE : MqttQoS.AT_MOST_ONCE)
+                .payload(payload)
+                .build();
+        publishQueue.offer(topic, message, reliable);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                publishExecutor.execute(() -> drain(server));
+            } catch (RejectedExecutionException e) {
+                publishQueue.clear(); // Shut down
+            }
+        }
+    }
+
+    /**
+     * Hand everything queued to the broker, on the publish thread.
+     */
+    private void drain(Server server) {
+        drainScheduled.set(false);
+        ConflatingPublishQueue.Pending<MqttPublishMessage> pending;
+        while ((pending = publishQueue.poll()) != null) {
+            try {
+                server.internalPublish(pending.getMessage(), PUBLISHER_CLIENT_ID);
+                int routed = subscriberTracker.onPublished(pending.getTopic(), pending.isReliable(),
+                        SystemClock.elapsedRealtime());
+                metrics.onPublished(System.nanoTime() - pending.getQueuedNanos(), routed);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to publish " + pending.getTopic(), e); // Server stopped meanwhile
+                release(pending.getMessage());
+            }
+        }
+    }
+
+    private static void release(MqttPublishMessage message) {
+        if (message.refCnt() > 0) {
+            message.release();
+        }
+    }
+
+    /**
+     * Get the number of messages replaced by a newer value of their topic before the
+     * broker took them.
+     */
+    public long getConflatedMessages() {
+        return publishQueue.getConflatedCount();
+    }
+
+    /**
+     * Get the latest broker metrics, or null until the broker ran for a few seconds.
+     */
+    public BrokerMetrics.Snapshot getMetrics() {
+        return lastMetrics;
+    }
+
+    /**
+     * Get the latency probe of the browser dashboard, or null if the dashboard is off.
+     */
+    public LatencyProbe getLatencyProbe() {
+        return latencyProbe;
+    }
+
+    /**
+     * Get queue depth and drop statistics of the connected clients.
+     */
+    public List<SubscriberTracker.ClientStats> getClientStats() {
+        return subscriberTracker.snapshot(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Get how long the last broker start took in milliseconds, or -1 if not started yet.
+     */
+    public long getLastStartupMillis() {
+        return lastStartupMillis;
+    }
+
+    /**
+     * Get the time from the last start request until clients could connect, in
+     * milliseconds, or -1 if not started yet.
+     */
+    public long getLastColdStartMillis() {
+        return lastColdStartMillis;
+    }
+
+    /**
+     * Feeds the broker's client events to the subscriber tracker and the metrics, pit wall
+     * commands to the control queue and dashboard echoes to the latency probe. Called on
+     * the broker's session threads.
+     */
+    private class ClientStatsInterceptor extends AbstractInterceptHandler {
+        @Override
+        public String getID() {
+            return "PitStopperClientStats";
+        }
+
+        @Override
+        public void onConnect(InterceptConnectMessage msg) {
+            subscriberTracker.onConnect(msg.getClientID(), msg.getUsername());
+            ControlCommandQueue.getInstance().onClientConnected(msg.getClientID(), msg.isCleanSession());
+        }
+
+        @Override
+        public void onDisconnect(InterceptDisconnectMessage msg) {
+            subscriberTracker.onDisconnect(msg.getClientID());
+        }
+
+        @Override
+        public void onConnectionLost(InterceptConnectionLostMessage msg) {
+            subscriberTracker.onDisconnect(msg.getClientID());
+        }
+
+        @Override
+        public void onSubscribe(InterceptSubscribeMessage msg) {
+            subscriberTracker.onSubscribe(msg.getClientID(), msg.getTopicFilter(), msg.getRequestedQos().value());
+        }
+
+        @Override
+        public void onUnsubscribe(InterceptUnsubscribeMessage msg) {
+            subscriberTracker.onUnsubscribe(msg.getClientID(), msg.getTopicFilter());
+        }
+
+        @Override
+        public void onPublish(InterceptPublishMessage msg) {
+            long nowNanos = System.nanoTime();
+            metrics.onReceived();
+            if (ControlCommandQueue.getInstance().offer(msg.getClientID(), msg.getTopicName(),
+                    msg.getPayload().toString(StandardCharsets.UTF_8), nowNanos)) {
+                return;
+            }
+            RaceStatePublisher publisher = RaceStatePublisher.getInstance();
+            if (msg.getTopicName().equals(publisher.getTopic(RaceStatePublisher.TOPIC_LEADERBOARD_REQUEST))) {
+                publisher.publishLeaderboardKeyframe(nowNanos);
+                return;
+            }
+            LatencyProbe probe = latencyProbe;
+            if (probe == null || !msg.getTopicName().equals(publisher.getTopic(
+                    RaceStatePublisher.TOPIC_DASHBOARD_PONG))) {
+                return;
+            }
+            try {
+                int seq = Integer.parseInt(msg.getPayload().toString(StandardCharsets.US_ASCII).trim());
+                long roundTripMillis = probe.onEcho(seq, nowNanos);
+                if (roundTripMillis >= 0) {
+                    RaceLog.log(RaceLog.Event.DASHBOARD_LATENCY, roundTripMillis, seq);
+                }
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid dashboard echo on " + msg.getTopicName());
+            }
+        }
+
+        @Override
+        public void onMessageAcknowledged(InterceptAcknowledgedMessage msg) {
+            long ackMillis = subscriberTracker.onAcknowledged(msg.getUsername(), SystemClock.elapsedRealtime());
+            if (ackMillis >= 0) {
+                metrics.onAcknowledged(ackMillis);
+            }
+        }
+
+        @Override
+        public void onSessionLoopError(Throwable error) {
+            Log.w(TAG, "Broker session loop error", error);
+        }
+    }
+
     /**
      * Get the local IP address for clients to connect to
      */
-    private String getLocalIpAddress() {
+    public static String getLocalIpAddress() {
         try {
             for (NetworkInterface intf : Collections.list(NetworkInterface.getNetworkInterfaces())) {
                 if (!intf.isUp() || intf.isLoopback()) continue;
@@ -162,17 +547,29 @@ public class MqttServerManager {
     }
 
     /**
-     * Get current server status information
+     * Get current server status information, with a summary of the latest metrics
      */
     public String getServerInfo() {
-        if (isServerRunning) {
+        if (isRunning()) {
             String ipAddress = getLocalIpAddress();
-            return ipAddress + ":" + currentPort;
+            BrokerMetrics.Snapshot snapshot = lastMetrics;
+            return ipAddress + ":" + currentPort + (snapshot != null ? " | " + formatMetrics(snapshot) : "");
         } else {
             return "Server not running";
         }
     }
 
+    /**
+     * Format the key figures in one line, e.g. "3 clients | 4.2 msg/s | p95 3 ms".
+     */
+    public static String formatMetrics(BrokerMetrics.Snapshot snapshot) {
+        long handoffMillis = snapshot.getHandoffMillis(95);
+        return snapshot.getConnectedClients() + (snapshot.getConnectedClients() == 1 ? " client" : " clients")
+                + " | " + String.format(Locale.US, "%.1f msg/s", snapshot.getRoutedPerSecond())
+                + (handoffMillis >= 0 ? " | p95 " + handoffMillis + " ms" : "")
+                + (snapshot.getClientQueueDepth() > 0 ? " | " + snapshot.getClientQueueDepth() + " unacked" : "");
+    }
+
     /**
      * Validate if a port number is acceptable for MQTT server
      */
@@ -182,10 +579,11 @@ public class MqttServerManager {
     }
 
     /**
-     * Clean up resources
+     * Stop the server and release the threads once it is stopped.
+     * The manager can't be used afterwards.
      */
     public void shutdown() {
+        shuttingDown = true;
         stopServer();
-        callback = null;
     }
 }
\ No newline at end of file
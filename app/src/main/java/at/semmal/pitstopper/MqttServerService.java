@@ -13,6 +13,9 @@ import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
+import java.util.Collections;
+import java.util.List;
+
 public class MqttServerService extends Service {
 
     private static final String TAG = "MqttServerService";
@@ -26,6 +29,17 @@ public class MqttServerService extends Service {
     private MqttServerManager mqttServerManager;
     private PitWindowPreferences preferences;
 
+    // Latest start command; stopping with it keeps the service if a newer command arrived
+    private int lastStartId;
+
+    // Shown in the notification while running, followed by the latest metrics
+    private String serverAddress;
+    private String notificationText;
+
+    // Broker state for the settings screen, which runs in the same process
+    private static volatile BrokerLifecycle.State brokerState = BrokerLifecycle.State.STOPPED;
+    private static volatile MqttServerManager activeManager;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -33,20 +47,24 @@ public class MqttServerService extends Service {
         
         preferences = new PitWindowPreferences(this);
         mqttServerManager = new MqttServerManager(this);
+        activeManager = mqttServerManager;
         mqttServerManager.setCallback(new MqttServerManager.ServerCallback() {
             @Override
             public void onStarted(int port, String ipAddress) {
                 Log.i(TAG, "MQTT server started in service");
-                updateNotification("MQTT Server Running", "Port: " + port + " | IP: " + ipAddress);
+                serverAddress = ipAddress + ":" + port;
+                notificationText = "Port: " + port + " | IP: " + ipAddress;
+                updateNotification("MQTT Server Running", notificationText);
                 preferences.setMqttServerEnabled(true);
             }
 
             @Override
             public void onStopped() {
                 Log.i(TAG, "MQTT server stopped in service");
+                serverAddress = null;
                 preferences.setMqttServerEnabled(false);
                 stopForeground(true);
-                stopSelf();
+                stopSelf(lastStartId);
             }
 
             @Override
@@ -55,12 +73,32 @@ public class MqttServerService extends Service {
                 preferences.setMqttServerEnabled(false);
                 updateNotification("MQTT Server Error", error);
                 // Don't stop service immediately, give user chance to see error
+                int startId = lastStartId;
                 android.os.Handler handler = new android.os.Handler(getMainLooper());
                 handler.postDelayed(() -> {
-                    stopForeground(true);
-                    stopSelf();
+                    if (startId == lastStartId) { // Not restarted meanwhile
+                        stopForeground(true);
+                        stopSelf(startId);
+                    }
                 }, 3000);
             }
+
+            @Override
+            public void onStateChanged(BrokerLifecycle.State state) {
+                brokerState = state;
+            }
+
+            @Override
+            public void onMetrics(BrokerMetrics.Snapshot metrics) {
+                if (serverAddress == null) {
+                    return;
+                }
+                String text = serverAddress + " | " + MqttServerManager.formatMetrics(metrics);
+                if (!text.equals(notificationText)) { // Notification updates are rate limited
+                    notificationText = text;
+                    updateNotification("MQTT Server Running", text);
+                }
+            }
         });
 
         createNotificationChannel();
@@ -69,6 +107,7 @@ public class MqttServerService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Service onStartCommand");
+        lastStartId = startId;
         
         if (intent != null) {
             String action = intent.getAction();
@@ -97,14 +136,42 @@ public class MqttServerService extends Service {
         super.onDestroy();
         Log.d(TAG, "Service destroyed");
         if (mqttServerManager != null) {
+            if (activeManager == mqttServerManager) {
+                activeManager = null;
+            }
             mqttServerManager.shutdown();
         }
     }
 
+    /**
+     * Get the state of the broker, STOPPED if the service isn't running.
+     */
+    public static BrokerLifecycle.State getBrokerState() {
+        return brokerState;
+    }
+
+    /**
+     * Get the statistics of the clients connected to the broker, empty if the service
+     * isn't running.
+     */
+    public static List<SubscriberTracker.ClientStats> getClientStats() {
+        MqttServerManager manager = activeManager;
+        return manager != null ? manager.getClientStats() : Collections.emptyList();
+    }
+
+    /**
+     * Get the latency probe of the browser dashboard, or null if the dashboard is off or
+     * the service isn't running.
+     */
+    public static LatencyProbe getDashboardLatencyProbe() {
+        MqttServerManager manager = activeManager;
+        return manager != null ? manager.getLatencyProbe() : null;
+    }
+
     private void startMqttServer(int port) {
         Log.i(TAG, "Starting MQTT server on port " + port);
         
-        // Start as foreground service immediately
+        // Start as foreground service immediately; the broker starts on its own thread
         startForeground(NOTIFICATION_ID, 
             createNotification("MQTT Server Starting...", "Port: " + port));
         
@@ -0,0 +1,233 @@
+package at.semmal.pitstopper;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.util.UUID;
+
+/**
+ * Live timing from a PitStopper hub instead of the SpeedHive API.
+ *
+ * One device in the team polls SpeedHive and runs the MQTT server; it publishes the whole
+ * session leaderboard on pitstopper/session/ (see RaceStatePublisher). This manager
+ * subscribes to that feed on the hub's broker and answers fetchLeaderboard() from the
+ * latest leaderboard received, for any car. However many devices use the hub, SpeedHive
+ * sees only the hub's requests.
+ *
+ * The received leaderboard is republished to this device's own broker, as the other
+ * managers do with theirs.
+ */
+public class MqttSpeedHiveManager extends SpeedHiveManager {
+
+    private static final String TAG = "MqttSpeedHiveManager";
+
+    public static final int DEFAULT_HUB_PORT = 1883;
+
+    // A leaderboard this old means the hub stopped polling; the hub polls every 10 s
+    static final long STALE_MILLIS = 60_000;
+
+    private static final String TOPIC_CARS = RaceStatePublisher.TOPIC_ROOT + "/"
+            + RaceStatePublisher.TOPIC_SESSION_CARS;
+    private static final String TOPIC_LEADERBOARD = RaceStatePublisher.TOPIC_ROOT + "/"
+            + RaceStatePublisher.TOPIC_SESSION_LEADERBOARD;
+
+    private final HubLeaderboardFeed feed = new HubLeaderboardFeed();
+    private final MqttAsyncClient client;
+    private final MqttConnectOptions options = new MqttConnectOptions();
+    private final String hubAddress;
+    private volatile boolean connecting = false;
+
+    /**
+     * Create a manager reading from the hub at the given address.
+     *
+     * @param hubAddress Host or IP of the hub, optionally with ":port"
+     * @throws IllegalArgumentException if the address is empty or malformed
+     */
+    public MqttSpeedHiveManager(String hubAddress) throws MqttException {
+        super();
+        this.hubAddress = hubAddress;
+        client = new MqttAsyncClient(toServerUri(hubAddress),
+                "pitstopper-" + UUID.randomUUID().toString().substring(0, 8), new MemoryPersistence());
+        client.setCallback(new FeedCallback());
+
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        options.setKeepAliveInterval(30);
+        options.setConnectionTimeout(10);
+        connect();
+        Log.i(TAG, "Hub manager initialized for " + hubAddress);
+    }
+
+    /**
+     * Build the broker URI for a hub address ("192.168.1.20" or "192.168.1.20:1884").
+     *
+     * @throws IllegalArgumentException if the address is empty or the port isn't valid
+     */
+    static String toServerUri(String hubAddress) {
+        String address = hubAddress != null ? hubAddress.trim() : "";
+        if (address.isEmpty()) {
+            throw new IllegalArgumentException("Hub address is required");
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return "tcp://" + address + ":" + DEFAULT_HUB_PORT;
+        }
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            if (port < 1 || port > 65535 || colon == 0) {
+                throw new IllegalArgumentException("Invalid hub address " + address);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid hub port in " + address);
+        }
+        return "tcp://" + address;
+    }
+
+    @Override
+    public void fetchLeaderboard(String eventId, String sessionId, String carNumber, LiveTimingCallback callback) {
+        if (carNumber == null || carNumber.trim().isEmpty()) {
+            callback.onError("Car number is required");
+            return;
+        }
+        if (!client.isConnected()) {
+            connect(); // Automatic reconnect only covers connections that were up once
+        }
+
+        long ageMillis = feed.getAgeMillis(SystemClock.elapsedRealtime());
+        if (ageMillis < 0) {
+            callback.onError(client.isConnected() ? "Waiting for hub leaderboard" : "Hub " + hubAddress + " not reachable");
+            return;
+        }
+        if (ageMillis > STALE_MILLIS) {
+            callback.onError("Hub leaderboard is " + ageMillis / 1000 + " s old");
+            return;
+        }
+
+        LiveTimingData data;
+        try {
+            data = feed.lookup(carNumber.trim());
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Hub leaderboard unreadable", e);
+            callback.onError("Hub leaderboard unreadable");
+            return;
+        }
+        if (data == null) {
+            callback.onError("Car #" + carNumber + " not found in hub leaderboard");
+            return;
+        }
+        callback.onSuccess(data);
+    }
+
+    private void connect() {
+        if (connecting || client.isConnected()) {
+            return;
+        }
+        connecting = true;
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    connecting = false;
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable error) {
+                    connecting = false;
+                    Log.w(TAG, "Could not connect to hub " + hubAddress + ": " + error.getMessage());
+                }
+            });
+        } catch (MqttException e) {
+            connecting = false;
+            Log.w(TAG, "Could not connect to hub " + hubAddress, e);
+        }
+    }
+
+    /**
+     * Subscribes on every (re)connect and feeds arriving messages to the leaderboard.
+     * Called on the client's thread.
+     */
+    private class FeedCallback implements MqttCallbackExtended {
+        @Override
+        public void connectComplete(boolean reconnect, String serverUri) {
+            Log.i(TAG, (reconnect ? "Reconnected to hub " : "Connected to hub ") + serverUri);
+            try {
+                // The car table must not be missed, the leaderboard is superseded every poll
+                client.subscribe(new String[] {TOPIC_CARS, TOPIC_LEADERBOARD}, new int[] {1, 0});
+            } catch (MqttException e) {
+                Log.e(TAG, "Failed to subscribe to hub leaderboard", e);
+            }
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            Log.w(TAG, "Connection to hub lost: " + (cause != null ? cause.getMessage() : "unknown"));
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            byte[] payload = message.getPayload();
+            if (payload.length == 0) {
+                return; // Retained message cleared
+            }
+            long now = SystemClock.elapsedRealtime();
+            try {
+                if (TOPIC_CARS.equals(topic)) {
+                    feed.onCarTable(payload, now);
+                } else if (TOPIC_LEADERBOARD.equals(topic) && feed.onLeaderboard(payload, now)) {
+                    feed.publishTo(RaceStatePublisher.getInstance());
+                }
+            } catch (RuntimeException e) {
+                // Anyone on the Wi-Fi can publish here; a bad message must not stop the feed
+                Log.w(TAG, "Invalid hub message on " + topic + ": " + e);
+            }
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            // Nothing is published to the hub
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            if (client.isConnected()) {
+                // The client can only be closed once the disconnect completed
+                client.disconnect(0, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        close();
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable error) {
+                        close();
+                    }
+                });
+            } else {
+                close();
+            }
+        } catch (MqttException e) {
+            Log.w(TAG, "Error disconnecting from hub", e);
+        }
+        super.shutdown();
+    }
+
+    private void close() {
+        try {
+            client.close();
+        } catch (MqttException e) {
+            Log.w(TAG, "Error closing hub connection", e);
+        }
+    }
+}
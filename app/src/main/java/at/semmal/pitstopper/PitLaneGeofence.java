@@ -0,0 +1,269 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Small polygon around the pit box / pit lane, learned from the fixes of a confirmed pit stop.
+ *
+ * The polygon is the convex hull of the learned positions, grown by a safety buffer to cover
+ * GPS error and the rest of the pit box. Containment is a bounding box check followed by a
+ * ray casting point-in-polygon test, cheap enough to run on every fix.
+ *
+ * Usage:
+ * 1. Feed fixes of a confirmed stop into a Learner, then call build()
+ * 2. Persist with toPreferenceString() / fromPreferenceString()
+ * 3. Call contains() to check if a fix is inside the pit lane
+ */
+public class PitLaneGeofence {
+
+    // Grow the hull by this much, covers GPS error and the parts of the pit box we didn't visit
+    static final double BUFFER_METERS = 25.0;
+
+    // The buffer is approximated by a polygon with this many corners around every point
+    private static final int BUFFER_SEGMENTS = 8;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+    // Vertices in counter-clockwise order, in degrees
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    PitLaneGeofence(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("A geofence needs at least 3 vertices");
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+    }
+
+    /**
+     * Check if a position lies inside the pit lane polygon.
+     * Works directly on degrees: the polygon is tiny, and ray casting is unaffected by the
+     * different scale of latitude and longitude.
+     *
+     * @param latitude  Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @return true if the position is inside the polygon
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < minLat || latitude > maxLat || longitude < minLon || longitude > maxLon) {
+            return false;
+        }
+
+        boolean inside = false;
+        int n = latitudes.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double latI = latitudes[i];
+            double latJ = latitudes[j];
+            if ((latI > latitude) != (latJ > latitude)) {
+                double crossLon = longitudes[i]
+                        + (latitude - latI) / (latJ - latI) * (longitudes[j] - longitudes[i]);
+                if (longitude < crossLon) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Rough check if a position is within the given distance of the polygon's bounding box.
+     * Used to notice that the stored geofence belongs to a different track.
+     *
+     * @param latitude  Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param meters    Distance in meters
+     */
+    public boolean isNear(double latitude, double longitude, double meters) {
+        double marginLat = Math.toDegrees(meters / EARTH_RADIUS_METERS);
+        double marginLon = marginLat / Math.cos(Math.toRadians(latitude));
+        return latitude >= minLat - marginLat && latitude <= maxLat + marginLat
+                && longitude >= minLon - marginLon && longitude <= maxLon + marginLon;
+    }
+
+    /**
+     * Get the number of polygon vertices.
+     */
+    public int getVertexCount() {
+        return latitudes.length;
+    }
+
+    /**
+     * Serialize for storage in preferences, as "lat,lon;lat,lon;...".
+     */
+    public String toPreferenceString() {
+        StringBuilder sb = new StringBuilder(latitudes.length * 24);
+        for (int i = 0; i < latitudes.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(String.format(Locale.US, "%.7f,%.7f", latitudes[i], longitudes[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse a geofence stored with toPreferenceString().
+     *
+     * @return The geofence, or null if the value is empty or malformed
+     */
+    public static PitLaneGeofence fromPreferenceString(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        String[] vertices = value.split(";");
+        if (vertices.length < 3) {
+            return null;
+        }
+
+        double[] latitudes = new double[vertices.length];
+        double[] longitudes = new double[vertices.length];
+        try {
+            for (int i = 0; i < vertices.length; i++) {
+                String[] parts = vertices[i].split(",");
+                if (parts.length != 2) {
+                    return null;
+                }
+                latitudes[i] = Double.parseDouble(parts[0]);
+                longitudes[i] = Double.parseDouble(parts[1]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new PitLaneGeofence(latitudes, longitudes);
+    }
+
+    /**
+     * Collects positions of a confirmed pit stop and turns them into a geofence.
+     */
+    public static class Learner {
+
+        // Plenty for a stop plus the way out of the pit box at 1 Hz
+        static final int MAX_POINTS = 120;
+
+        private final double[] latitudes = new double[MAX_POINTS];
+        private final double[] longitudes = new double[MAX_POINTS];
+        private int count = 0;
+
+        /**
+         * Add a position. Positions beyond MAX_POINTS are ignored.
+         */
+        public void addFix(double latitude, double longitude) {
+            if (count < MAX_POINTS) {
+                latitudes[count] = latitude;
+                longitudes[count] = longitude;
+                count++;
+            }
+        }
+
+        /**
+         * Get the number of positions collected so far.
+         */
+        public int getPointCount() {
+            return count;
+        }
+
+        public void reset() {
+            count = 0;
+        }
+
+        /**
+         * Build the buffered convex hull of all collected positions.
+         *
+         * @return The geofence, or null if no positions were collected
+         */
+        public PitLaneGeofence build() {
+            if (count == 0) {
+                return null;
+            }
+
+            // Project to a local flat plane in meters around the first point
+            double refLat = latitudes[0];
+            double refLon = longitudes[0];
+            double metersPerDegLat = Math.toRadians(1) * EARTH_RADIUS_METERS;
+            double metersPerDegLon = metersPerDegLat * Math.cos(Math.toRadians(refLat));
+
+            // Surround every point with a small polygon; the hull of all of them is the
+            // hull of the points grown by the buffer (Minkowski sum with a disc, approximately).
+            // Using the circumradius keeps the buffer at least BUFFER_METERS everywhere.
+            double radius = BUFFER_METERS / Math.cos(Math.PI / BUFFER_SEGMENTS);
+            List<double[]> points = new ArrayList<>(count * BUFFER_SEGMENTS);
+            for (int i = 0; i < count; i++) {
+                double x = (longitudes[i] - refLon) * metersPerDegLon;
+                double y = (latitudes[i] - refLat) * metersPerDegLat;
+                for (int k = 0; k < BUFFER_SEGMENTS; k++) {
+                    double angle = 2 * Math.PI * k / BUFFER_SEGMENTS;
+                    points.add(new double[]{x + radius * Math.cos(angle), y + radius * Math.sin(angle)});
+                }
+            }
+
+            List<double[]> hull = convexHull(points);
+            double[] hullLat = new double[hull.size()];
+            double[] hullLon = new double[hull.size()];
+            for (int i = 0; i < hull.size(); i++) {
+                double[] p = hull.get(i);
+                hullLon[i] = refLon + p[0] / metersPerDegLon;
+                hullLat[i] = refLat + p[1] / metersPerDegLat;
+            }
+            return new PitLaneGeofence(hullLat, hullLon);
+        }
+    }
+
+    /**
+     * Andrew's monotone chain convex hull, counter-clockwise without repeating the first point.
+     */
+    static List<double[]> convexHull(List<double[]> input) {
+        double[][] points = input.toArray(new double[0][]);
+        Arrays.sort(points, (a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+
+        double[][] hull = new double[points.length * 2][];
+        int k = 0;
+
+        // Lower hull
+        for (double[] p : points) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], p) <= 0) {
+                k--;
+            }
+            hull[k++] = p;
+        }
+
+        // Upper hull
+        for (int i = points.length - 2, lower = k + 1; i >= 0; i--) {
+            double[] p = points[i];
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], p) <= 0) {
+                k--;
+            }
+            hull[k++] = p;
+        }
+
+        return new ArrayList<>(Arrays.asList(hull).subList(0, Math.max(0, k - 1)));
+    }
+
+    private static double cross(double[] o, double[] a, double[] b) {
+        return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+    }
+}
@@ -0,0 +1,61 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent pit stops, oldest first. When full, the oldest record is dropped.
+ *
+ * Written by the detector's worker thread and read by the UI, so all methods are
+ * synchronized.
+ */
+public class PitStopHistory {
+
+    // A long endurance race has a few dozen stops at most
+    static final int DEFAULT_CAPACITY = 50;
+
+    private final int capacity;
+    private final ArrayDeque<PitStopRecord> records;
+
+    public PitStopHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PitStopHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.records = new ArrayDeque<>(capacity);
+    }
+
+    public synchronized void add(PitStopRecord record) {
+        if (records.size() == capacity) {
+            records.removeFirst();
+        }
+        records.addLast(record);
+    }
+
+    /**
+     * Get the latest record, or null if there is none.
+     */
+    public synchronized PitStopRecord getLast() {
+        return records.peekLast();
+    }
+
+    /**
+     * Get a copy of all records, oldest first.
+     */
+    public synchronized List<PitStopRecord> getAll() {
+        return new ArrayList<>(records);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized void clear() {
+        records.clear();
+    }
+}
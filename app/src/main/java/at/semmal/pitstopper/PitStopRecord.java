@@ -0,0 +1,69 @@
+package at.semmal.pitstopper;
+
+import java.util.Locale;
+
+/**
+ * One completed pit stop, as measured by GPS.
+ *
+ * All times are elapsed realtime in nanoseconds, like the fixes they come from. The stop
+ * and departure moments are interpolated between fixes (see StandstillTracker), so the
+ * stationary duration is finer than the 1 s fix interval.
+ */
+public class PitStopRecord {
+
+    private final long pitLaneEntryNanos;
+    private final long stoppedNanos;
+    private final long movedNanos;
+
+    /**
+     * Creates a new PitStopRecord.
+     *
+     * @param pitLaneEntryNanos First fix inside the pit lane, or -1 if unknown
+     * @param stoppedNanos      Moment the speed dropped below the standstill threshold
+     * @param movedNanos        Moment the speed rose above it again
+     */
+    public PitStopRecord(long pitLaneEntryNanos, long stoppedNanos, long movedNanos) {
+        this.pitLaneEntryNanos = pitLaneEntryNanos;
+        this.stoppedNanos = stoppedNanos;
+        this.movedNanos = movedNanos;
+    }
+
+    /**
+     * Get the time of the first fix inside the pit lane, or -1 if the pit lane wasn't known.
+     */
+    public long getPitLaneEntryNanos() {
+        return pitLaneEntryNanos;
+    }
+
+    public long getStoppedNanos() {
+        return stoppedNanos;
+    }
+
+    public long getMovedNanos() {
+        return movedNanos;
+    }
+
+    /**
+     * Get how long the car was stationary, in milliseconds.
+     */
+    public long getStationaryMillis() {
+        return (movedNanos - stoppedNanos) / 1_000_000L;
+    }
+
+    /**
+     * Get the time from pit lane entry to leaving the pit box, in milliseconds, or -1 if
+     * the entry is unknown.
+     */
+    public long getPitLaneMillis() {
+        if (pitLaneEntryNanos < 0) {
+            return -1;
+        }
+        return (movedNanos - pitLaneEntryNanos) / 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "PitStopRecord{stationary=%.1f s, inPitLane=%.1f s}",
+                getStationaryMillis() / 1000.0, getPitLaneMillis() / 1000.0);
+    }
+}
@@ -16,6 +16,10 @@ import java.util.Calendar;
  * - State transitions IDLE → ON_ALERT when entering a pit window
  * - State transitions ON_ALERT → IDLE when exiting a pit window or clearAlert() is called
  * - Once clearAlert() is called, alert will not resume until the next pit window
+ * - forceAlert() holds ON_ALERT regardless of the windows until clearAlert() is called
+ *
+ * The schedule can be shifted by whole minutes, e.g. after a safety car phase; the shift
+ * moves the race start and with it every window.
  */
 public class PitWindowAlertManager {
 
@@ -30,9 +34,14 @@ public class PitWindowAlertManager {
     private final int pitWindowDurationMinutes;
     private final int windowRepeatCycleMinutes;
 
+    // Resolution of getProgressFractionInCurrentStage() (finer than one second of a 60 min stage)
+    private static final long PROGRESS_FRACTION_SCALE = 10000;
+
     // State management
     private AlertState currentState;
     private Integer suppressedWindowIndex; // Track which window we've suppressed alerts for
+    private boolean forcedAlert; // Set by the pit wall, holds until cleared
+    private int scheduleShiftMinutes;
 
     /**
      * Creates a new PitWindowAlertManager.
@@ -62,12 +71,18 @@ public class PitWindowAlertManager {
      * - IDLE → ON_ALERT: When entering a pit window (unless suppressed)
      * - ON_ALERT → IDLE: When exiting a pit window
      * - Once clearAlert() is called during a window, that window is suppressed
+     * - While an alert is forced, the state is ON_ALERT in and outside of windows
      *
      * @param currentHour Current hour (0-23)
      * @param currentMinute Current minute (0-59)
-     * @return AlertState.ON_ALERT if within a pit window (and not suppressed), AlertState.IDLE otherwise
+     * @return AlertState.ON_ALERT if within a pit window (and not suppressed) or forced, AlertState.IDLE otherwise
      */
     public AlertState getAlertState(int currentHour, int currentMinute) {
+        if (forcedAlert) {
+            currentState = AlertState.ON_ALERT;
+            return currentState;
+        }
+
         boolean inWindow = isInPitWindow(currentHour, currentMinute);
         int currentWindowIndex = getCurrentWindowIndex(currentHour, currentMinute);
 
@@ -98,6 +113,7 @@ public class PitWindowAlertManager {
      * This prevents the alert from resuming while still in the same pit window.
      * The alert will be eligible to trigger again in the next pit window.
      * Call this when the car has stopped in the pits (e.g., detected by GPS).
+     * Also ends a forced alert.
      */
     public void clearAlert() {
         Calendar now = Calendar.getInstance();
@@ -121,9 +137,43 @@ public class PitWindowAlertManager {
             suppressedWindowIndex = getCurrentWindowIndex(currentHour, currentMinute);
         }
 
+        forcedAlert = false;
         currentState = AlertState.IDLE;
     }
 
+    /**
+     * Raises the alert now, e.g. when the pit wall calls the car in outside a window.
+     * The alert holds until clearAlert() is called.
+     */
+    public void forceAlert() {
+        forcedAlert = true;
+        currentState = AlertState.ON_ALERT;
+    }
+
+    /**
+     * Checks if the alert was forced and not cleared since.
+     */
+    public boolean isAlertForced() {
+        return forcedAlert;
+    }
+
+    /**
+     * Shifts the schedule by the given number of minutes, on top of earlier shifts.
+     * Positive values move every window later, e.g. after a safety car phase.
+     *
+     * @param minutes Minutes to shift by (negative to move windows earlier)
+     */
+    public void shiftSchedule(int minutes) {
+        scheduleShiftMinutes += minutes;
+    }
+
+    /**
+     * Gets the total shift of the schedule in minutes.
+     */
+    public int getScheduleShiftMinutes() {
+        return scheduleShiftMinutes;
+    }
+
     /**
      * Gets the index of the current pit window (0 for first window, 1 for second, etc.).
      * Returns -1 if before the race or before the first pit window.
@@ -132,8 +182,8 @@ public class PitWindowAlertManager {
      * @param currentMinute Current minute (0-59)
      * @return Window index, or -1 if before first window
      */
-    private int getCurrentWindowIndex(int currentHour, int currentMinute) {
-        int raceStartMinutes = raceStartHour * 60 + raceStartMinute;
+    public int getCurrentWindowIndex(int currentHour, int currentMinute) {
+        int raceStartMinutes = getRaceStartMinutes();
         int currentMinutes = currentHour * 60 + currentMinute;
         int minutesSinceRaceStart = currentMinutes - raceStartMinutes;
 
@@ -153,7 +203,7 @@ public class PitWindowAlertManager {
      * @return true if within a pit window, false otherwise
      */
     public boolean isInPitWindow(int currentHour, int currentMinute) {
-        int raceStartMinutes = raceStartHour * 60 + raceStartMinute;
+        int raceStartMinutes = getRaceStartMinutes();
         int currentMinutes = currentHour * 60 + currentMinute;
 
         // Calculate minutes since race start
@@ -187,13 +237,9 @@ public class PitWindowAlertManager {
      * @return Calendar instance representing the next pit window start
      */
     public Calendar getNextPitWindowStart(int currentHour, int currentMinute) {
-        Calendar result = Calendar.getInstance();
-        result.set(Calendar.HOUR_OF_DAY, raceStartHour);
-        result.set(Calendar.MINUTE, raceStartMinute);
-        result.set(Calendar.SECOND, 0);
-        result.set(Calendar.MILLISECOND, 0);
+        Calendar result = getRaceStartTime();
 
-        int raceStartMinutes = raceStartHour * 60 + raceStartMinute;
+        int raceStartMinutes = getRaceStartMinutes();
         int currentMinutes = currentHour * 60 + currentMinute;
         int minutesSinceRaceStart = currentMinutes - raceStartMinutes;
 
@@ -226,13 +272,9 @@ public class PitWindowAlertManager {
             return null;
         }
 
-        Calendar result = Calendar.getInstance();
-        result.set(Calendar.HOUR_OF_DAY, raceStartHour);
-        result.set(Calendar.MINUTE, raceStartMinute);
-        result.set(Calendar.SECOND, 0);
-        result.set(Calendar.MILLISECOND, 0);
+        Calendar result = getRaceStartTime();
 
-        int raceStartMinutes = raceStartHour * 60 + raceStartMinute;
+        int raceStartMinutes = getRaceStartMinutes();
         int currentMinutes = currentHour * 60 + currentMinute;
         int minutesSinceRaceStart = currentMinutes - raceStartMinutes;
 
@@ -248,7 +290,7 @@ public class PitWindowAlertManager {
     }
 
     /**
-     * Gets the race start time.
+     * Gets the race start time, including the schedule shift.
      *
      * @return Calendar instance representing race start time
      */
@@ -258,9 +300,17 @@ public class PitWindowAlertManager {
         result.set(Calendar.MINUTE, raceStartMinute);
         result.set(Calendar.SECOND, 0);
         result.set(Calendar.MILLISECOND, 0);
+        result.add(Calendar.MINUTE, scheduleShiftMinutes);
         return result;
     }
 
+    /**
+     * Gets the race start as minutes of the day, including the schedule shift.
+     */
+    private int getRaceStartMinutes() {
+        return raceStartHour * 60 + raceStartMinute + scheduleShiftMinutes;
+    }
+
     /**
      * Gets the progress through the current stage (0-100).
      * If IDLE: Returns progress from end of previous pit window toward start of next pit window (0-100).
@@ -272,6 +322,29 @@ public class PitWindowAlertManager {
      * @return Progress percentage (0-100)
      */
     public int getProgressInCurrentStage(int currentHour, int currentMinute, int currentSecond) {
+        return (int) getStageProgress(currentHour, currentMinute, currentSecond, 100);
+    }
+
+    /**
+     * Gets the progress through the current stage as a fraction (0.0-1.0).
+     * Same stage semantics as {@link #getProgressInCurrentStage(int, int, int)}, but with
+     * per-second resolution so a progress bar can move continuously instead of in 1% steps.
+     *
+     * @param currentHour Current hour (0-23)
+     * @param currentMinute Current minute (0-59)
+     * @param currentSecond Current second (0-59)
+     * @return Progress fraction (0.0-1.0)
+     */
+    public float getProgressFractionInCurrentStage(int currentHour, int currentMinute, int currentSecond) {
+        return getStageProgress(currentHour, currentMinute, currentSecond, PROGRESS_FRACTION_SCALE)
+                / (float) PROGRESS_FRACTION_SCALE;
+    }
+
+    /**
+     * Calculates stage progress scaled to the range 0..scale using integer math,
+     * so the percentage variant keeps its exact rounding behaviour.
+     */
+    private long getStageProgress(int currentHour, int currentMinute, int currentSecond, long scale) {
         Calendar now = Calendar.getInstance();
         now.set(Calendar.HOUR_OF_DAY, currentHour);
         now.set(Calendar.MINUTE, currentMinute);
@@ -295,8 +368,8 @@ public class PitWindowAlertManager {
                 return 0;
             }
 
-            int progress = (int) ((elapsedMillis * 100) / totalWindowMillis);
-            return Math.min(100, Math.max(0, progress));
+            long progress = (elapsedMillis * scale) / totalWindowMillis;
+            return Math.min(scale, Math.max(0, progress));
 
         } else {
             // IDLE: show progress from last window end toward next window start
@@ -334,15 +407,15 @@ public class PitWindowAlertManager {
                 if (millisSinceStart < pitWindowOpensAfterMinutes * 60000L) {
                     // In first idle period before first window
                     long firstIdleMillis = pitWindowOpensAfterMinutes * 60000L;
-                    int progress = (int) ((millisSinceStart * 100) / firstIdleMillis);
-                    return Math.min(100, Math.max(0, progress));
+                    long progress = (millisSinceStart * scale) / firstIdleMillis;
+                    return Math.min(scale, Math.max(0, progress));
                 }
 
                 return 0;
             }
 
-            int progress = (int) ((elapsedIdleMillis * 100) / idlePeriodMillis);
-            return Math.min(100, Math.max(0, progress));
+            long progress = (elapsedIdleMillis * scale) / idlePeriodMillis;
+            return Math.min(scale, Math.max(0, progress));
         }
     }
 }
@@ -11,6 +11,9 @@ public class PitWindowPreferences {
     private static final String KEY_RACE_START_MINUTE = "race_start_minute";
     private static final String KEY_PIT_WINDOW_OPENS = "pit_window_opens";
     private static final String KEY_PIT_WINDOW_DURATION = "pit_window_duration";
+    private static final String KEY_ALERT_URGENT_SECONDS = "alert_urgent_seconds";
+    private static final String KEY_MIN_PIT_STOP_SECONDS = "min_pit_stop_seconds";
+    private static final String KEY_SCHEDULE_SHIFT_MINUTES = "schedule_shift_minutes";
     
     // SpeedHive Live Timing settings
     private static final String KEY_SPEEDHIVE_MODE = "speedhive_mode";
@@ -20,16 +23,30 @@ public class PitWindowPreferences {
     private static final String KEY_SPEEDHIVE_SESSION_NAME = "speedhive_session_name";
     private static final String KEY_SPEEDHIVE_CAR_NUMBER = "speedhive_car_number";
     private static final String KEY_SPEEDHIVE_CAR_NAME = "speedhive_car_name";
+    private static final String KEY_HUB_ADDRESS = "hub_address";
     
     // MQTT Server settings
     private static final String KEY_MQTT_SERVER_PORT = "mqtt_server_port";
     private static final String KEY_MQTT_SERVER_ENABLED = "mqtt_server_enabled";
+    private static final String KEY_MQTT_JSON_MIRROR = "mqtt_json_mirror";
+    private static final String KEY_MQTT_PERSISTENCE = "mqtt_persistence";
+    private static final String KEY_MQTT_TUNING = "mqtt_tuning";
+    private static final String KEY_MQTT_DASHBOARD = "mqtt_dashboard";
+    private static final String KEY_MQTT_CONTROL_ENABLED = "mqtt_control_enabled";
+
+    // Standstill detection
+    private static final String KEY_PIT_LANE_GEOFENCE = "pit_lane_geofence";
+    private static final String KEY_TRACK_RECORDING_ENABLED = "track_recording_enabled";
+    private static final String KEY_LAP_TIMER_ENABLED = "lap_timer_enabled";
+    private static final String KEY_START_FINISH_LINE = "start_finish_line";
 
     // Default values
     private static final int DEFAULT_RACE_START_HOUR = 9;
     private static final int DEFAULT_RACE_START_MINUTE = 0;
     private static final int DEFAULT_PIT_WINDOW_OPENS = 17;
     private static final int DEFAULT_PIT_WINDOW_DURATION = 6;
+    private static final int DEFAULT_ALERT_URGENT_SECONDS = 60;
+    private static final int DEFAULT_MIN_PIT_STOP_SECONDS = 0; // No minimum
     
     // SpeedHive defaults
     private static final String DEFAULT_SPEEDHIVE_MODE = "off";
@@ -48,6 +65,7 @@ public class PitWindowPreferences {
     public static final String SPEEDHIVE_MODE_OFF = "off";
     public static final String SPEEDHIVE_MODE_SPEEDHIVE = "speedhive";
     public static final String SPEEDHIVE_MODE_DEMO = "demo";
+    public static final String SPEEDHIVE_MODE_HUB = "hub";
     
     // Special session ID for AUTO mode
     public static final String SPEEDHIVE_SESSION_AUTO = "AUTO";
@@ -141,6 +159,45 @@ public class PitWindowPreferences {
         return prefs.getInt(KEY_PIT_WINDOW_DURATION, DEFAULT_PIT_WINDOW_DURATION);
     }
 
+    /**
+     * Seconds before the end of a pit window at which the alert switches to the fast
+     * flash pattern. 0 disables the urgent pattern.
+     */
+    public int getAlertUrgentSeconds() {
+        return prefs.getInt(KEY_ALERT_URGENT_SECONDS, DEFAULT_ALERT_URGENT_SECONDS);
+    }
+
+    public void saveAlertUrgentSeconds(int seconds) {
+        prefs.edit()
+            .putInt(KEY_ALERT_URGENT_SECONDS, seconds)
+            .apply();
+    }
+
+    // Minimum stationary time required by the race rules (0 = no rule)
+    public int getMinPitStopSeconds() {
+        return prefs.getInt(KEY_MIN_PIT_STOP_SECONDS, DEFAULT_MIN_PIT_STOP_SECONDS);
+    }
+
+    public void saveMinPitStopSeconds(int seconds) {
+        prefs.edit()
+            .putInt(KEY_MIN_PIT_STOP_SECONDS, seconds)
+            .apply();
+    }
+
+    /**
+     * Minutes the pit wall shifted the schedule by (see ControlCommandQueue), kept until
+     * the race settings change.
+     */
+    public int getScheduleShiftMinutes() {
+        return prefs.getInt(KEY_SCHEDULE_SHIFT_MINUTES, 0);
+    }
+
+    public void saveScheduleShiftMinutes(int minutes) {
+        prefs.edit()
+            .putInt(KEY_SCHEDULE_SHIFT_MINUTES, minutes)
+            .apply();
+    }
+
     // SpeedHive load methods
     public String getSpeedHiveMode() {
         return prefs.getString(KEY_SPEEDHIVE_MODE, DEFAULT_SPEEDHIVE_MODE);
@@ -192,16 +249,87 @@ public class PitWindowPreferences {
             .apply();
     }
 
+    // Mirror the binary telemetry topics as JSON, for debugging
+    public boolean isMqttJsonMirrorEnabled() {
+        return prefs.getBoolean(KEY_MQTT_JSON_MIRROR, false);
+    }
+
+    public void saveMqttJsonMirrorEnabled(boolean enabled) {
+        prefs.edit()
+            .putBoolean(KEY_MQTT_JSON_MIRROR, enabled)
+            .apply();
+    }
+
+    // Accept pit wall commands (ControlCommandQueue); off by default, anyone on the Wi-Fi can publish
+    public boolean isMqttControlEnabled() {
+        return prefs.getBoolean(KEY_MQTT_CONTROL_ENABLED, false);
+    }
+
+    public void saveMqttControlEnabled(boolean enabled) {
+        prefs.edit()
+            .putBoolean(KEY_MQTT_CONTROL_ENABLED, enabled)
+            .apply();
+    }
+
+    // Broker persistence, in memory unless sessions must survive a restart
+    public BrokerConfigFactory.Persistence getMqttPersistence() {
+        return BrokerConfigFactory.parsePersistence(prefs.getString(KEY_MQTT_PERSISTENCE, null));
+    }
+
+    public void saveMqttPersistence(BrokerConfigFactory.Persistence persistence) {
+        prefs.edit()
+            .putString(KEY_MQTT_PERSISTENCE, persistence.name())
+            .apply();
+    }
+
+    // Broker transport tuning preset
+    public BrokerTuning getBrokerTuning() {
+        return BrokerTuning.fromName(prefs.getString(KEY_MQTT_TUNING, null));
+    }
+
+    public void saveBrokerTuning(BrokerTuning tuning) {
+        prefs.edit()
+            .putString(KEY_MQTT_TUNING, tuning.name())
+            .apply();
+    }
+
+    // Address ("host" or "host:port") of the PitStopper hub for hub mode
+    public String getHubAddress() {
+        return prefs.getString(KEY_HUB_ADDRESS, "");
+    }
+
+    public void saveHubAddress(String address) {
+        prefs.edit()
+            .putString(KEY_HUB_ADDRESS, address)
+            .apply();
+    }
+
+    // Browser dashboard: MQTT over WebSocket plus the dashboard page
+    public boolean isMqttDashboardEnabled() {
+        return prefs.getBoolean(KEY_MQTT_DASHBOARD, false);
+    }
+
+    public void saveMqttDashboardEnabled(boolean enabled) {
+        prefs.edit()
+            .putBoolean(KEY_MQTT_DASHBOARD, enabled)
+            .apply();
+    }
+
     // SpeedHive convenience methods
     public boolean isSpeedHiveEnabled() {
         String mode = getSpeedHiveMode();
-        return SPEEDHIVE_MODE_SPEEDHIVE.equals(mode) || SPEEDHIVE_MODE_DEMO.equals(mode);
+        return SPEEDHIVE_MODE_SPEEDHIVE.equals(mode) || SPEEDHIVE_MODE_DEMO.equals(mode)
+                || SPEEDHIVE_MODE_HUB.equals(mode);
     }
 
     public boolean isSpeedHiveMode() {
         return SPEEDHIVE_MODE_SPEEDHIVE.equals(getSpeedHiveMode());
     }
 
+    public boolean isHubMode() {
+        return SPEEDHIVE_MODE_HUB.equals(getSpeedHiveMode());
+    }
+
     public boolean isDemoMode() {
         return SPEEDHIVE_MODE_DEMO.equals(getSpeedHiveMode());
     }
@@ -211,6 +339,50 @@ public class PitWindowPreferences {
         return String.format(Locale.getDefault(), "%02d:%02d", getRaceStartHour(), getRaceStartMinute());
     }
 
+    // Pit lane geofence, learned from stops and confirmed by a later one (null if not known yet)
+    public PitLaneGeofence getPitLaneGeofence() {
+        return PitLaneGeofence.fromPreferenceString(prefs.getString(KEY_PIT_LANE_GEOFENCE, null));
+    }
+
+    public void savePitLaneGeofence(PitLaneGeofence geofence) {
+        prefs.edit()
+            .putString(KEY_PIT_LANE_GEOFENCE, geofence != null ? geofence.toPreferenceString() : null)
+            .apply();
+    }
+
+    // GPS track recording for post-race analysis (off by default)
+    public boolean isTrackRecordingEnabled() {
+        return prefs.getBoolean(KEY_TRACK_RECORDING_ENABLED, false);
+    }
+
+    public void saveTrackRecordingEnabled(boolean enabled) {
+        prefs.edit()
+            .putBoolean(KEY_TRACK_RECORDING_ENABLED, enabled)
+            .apply();
+    }
+
+    // GPS lap timer (off by default, keeps GPS on while the app is open)
+    public boolean isLapTimerEnabled() {
+        return prefs.getBoolean(KEY_LAP_TIMER_ENABLED, false);
+    }
+
+    public void saveLapTimerEnabled(boolean enabled) {
+        prefs.edit()
+            .putBoolean(KEY_LAP_TIMER_ENABLED, enabled)
+            .apply();
+    }
+
+    // Start/finish line marked on track for the lap timer (null if not marked yet)
+    public StartFinishLine getStartFinishLine() {
+        return StartFinishLine.fromPreferenceString(prefs.getString(KEY_START_FINISH_LINE, null));
+    }
+
+    public void saveStartFinishLine(StartFinishLine line) {
+        prefs.edit()
+            .putString(KEY_START_FINISH_LINE, line != null ? line.toPreferenceString() : null)
+            .apply();
+    }
+
     // Check if settings have been configured (not using defaults)
     public boolean hasSettings() {
         return prefs.contains(KEY_RACE_START_HOUR);
@@ -0,0 +1,281 @@
+package at.semmal.pitstopper;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Level-gated logging for hot paths (clock tick, GPS fixes, SpeedHive polls).
+ *
+ * Events are recorded as fixed-size binary records (timestamp, event id and up to four
+ * numeric arguments) into an in-memory ring buffer. Nothing is formatted on the hot path:
+ * text is only built when an event is at or above the Logcat level, or when the ring buffer
+ * is dumped after a session. Debug detail from the last few thousand events is therefore
+ * still available after an incident, without paying for String.format() on every tick.
+ *
+ * Usage:
+ * 1. Call init() once with a context to pick the Logcat level for the build type
+ * 2. Call log(Event, ...) from hot paths; pass floats through bits()
+ * 3. Call dumpAsync() (e.g. when the activity pauses) to write the buffer to a file
+ */
+public final class RaceLog {
+
+    private static final String TAG = "RaceLog";
+
+    // Same values as android.util.Log priorities
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    /**
+     * Formats the numeric arguments of a recorded event into text.
+     */
+    private interface ArgsFormatter {
+        void format(StringBuilder out, long a, long b, long c, long d);
+    }
+
+    /**
+     * All events that can be recorded. Each event defines its level, Logcat tag and how
+     * its arguments are turned into text.
+     */
+    public enum Event {
+        /** a = progress permille, b = 1 if ON_ALERT, c = seconds of day */
+        CLOCK_TICK(DEBUG, "PitStopper", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Progress: %.1f%% | State: %s | Time: %02d:%02d:%02d",
+                a / 10.0, b != 0 ? "ON_ALERT" : "IDLE", c / 3600, (c / 60) % 60, c % 60))),
+
+        /** a = raw speed bits (float), b = filtered speed bits (float), c = 1 if still, d = 1 if reported */
+        GPS_FIX(DEBUG, "StandstillDetector", (out, a, b, c, d) -> {
+            float speed = Float.intBitsToFloat((int) a);
+            float filtered = Float.intBitsToFloat((int) b);
+            out.append(String.format(Locale.US,
+                    "Speed: %.2f m/s (%.1f km/h) | filtered: %.2f m/s | isStill: %b | reported: %b",
+                    speed, speed * 3.6f, filtered, c != 0, d != 0));
+        }),
+
+        /** a = position, b = total competitors, c = car number (-1 if not numeric) */
+        LIVE_TIMING(DEBUG, "MainActivity", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Live timing: car #%d P%d/%d", c, a, b))),
+
+        /** a = HTTP status code, b = response time ms */
+        SPEEDHIVE_POLL(DEBUG, "SpeedHiveManager", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Leaderboard poll: HTTP %d in %d ms", a, b))),
+
+        /** a = monitoring ms, b = GPS-on ms, c = number of GPS activations */
+        GPS_USAGE(INFO, "StandstillDetector", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "GPS on %.1f s of %.1f s monitored (%d activations, saved %.1f s)",
+                b / 1000.0, a / 1000.0, c, (a - b) / 1000.0))),
+
+        /** a = stationary ms, b = pit lane ms (-1 if unknown) */
+        PIT_STOP(INFO, "StandstillDetector", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Pit stop: stationary %.1f s, in pit lane %s", a / 1000.0,
+                b >= 0 ? String.format(Locale.US, "%.1f s", b / 1000.0) : "unknown"))),
+
+        /** a = lap number, b = lap time ms, c = best lap time ms */
+        LAP(INFO, "GpsLapTimer", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Lap %d: %d.%03d s (best %d.%03d s)", a, b / 1000, b % 1000, c / 1000, c % 1000))),
+
+        /** a = broker startup ms, b = 1 if file persistence, c = ms from start request to ready */
+        BROKER_START(INFO, "MqttServerManager", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "MQTT broker started in %d ms, ready %d ms after request (%s persistence)",
+                a, c, b != 0 ? "file" : "memory"))),
+
+        /** a = round trip ms from a countdown change to a browser dashboard showing it, b = probe number */
+        DASHBOARD_LATENCY(DEBUG, "MqttServerManager", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Dashboard round trip %d ms (probe %d)", a, b))),
+
+        /** a = command type ordinal, b = sequence number, c = ms from arrival at the broker to on screen */
+        CONTROL_COMMAND(INFO, "MainActivity", (out, a, b, c, d) -> out.append(String.format(Locale.US,
+                "Pit wall command %s #%d applied after %d ms",
+                ControlCommandQueue.Type.values()[(int) a], b, c)));
+
+        private final int level;
+        private final String tag;
+        private final ArgsFormatter formatter;
+
+        Event(int level, String tag, ArgsFormatter formatter) {
+            this.level = level;
+            this.tag = tag;
+            this.formatter = formatter;
+        }
+    }
+
+    // Record layout: [elapsed nanos, event ordinal, a, b, c, d]
+    private static final int RECORD_LONGS = 6;
+
+    // 4096 records * 48 bytes = 192 KB, several minutes of GPS fixes plus clock ticks
+    private static final int CAPACITY = 4096;
+
+    private static final long[] ring = new long[CAPACITY * RECORD_LONGS];
+    private static final Event[] EVENTS = Event.values();
+    private static final Object lock = new Object();
+    private static int head = 0;   // Next record slot to write
+    private static long written = 0;
+
+    private static volatile int logcatLevel = INFO;
+    private static volatile int recordLevel = DEBUG;
+
+    private static ExecutorService dumpExecutor;
+
+    private RaceLog() {
+    }
+
+    /**
+     * Pick log levels for the current build: debuggable builds also send DEBUG events to
+     * Logcat, release builds only record them into the ring buffer.
+     */
+    public static void init(Context context) {
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        logcatLevel = debuggable ? DEBUG : INFO;
+    }
+
+    public static void setLogcatLevel(int level) {
+        logcatLevel = level;
+    }
+
+    public static void setRecordLevel(int level) {
+        recordLevel = level;
+    }
+
+    /**
+     * Check if an event of the given level would be sent to Logcat.
+     * Use this to guard string concatenation for messages that are not ring buffer events.
+     */
+    public static boolean isLoggable(int level) {
+        return level >= logcatLevel;
+    }
+
+    /**
+     * Convert a numeric string (e.g. a car number) to an argument, -1 if not numeric.
+     */
+    public static long numberArg(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Convert a float argument for storage in a record.
+     */
+    public static long bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    public static void log(Event event, long a) {
+        log(event, a, 0, 0, 0);
+    }
+
+    public static void log(Event event, long a, long b) {
+        log(event, a, b, 0, 0);
+    }
+
+    public static void log(Event event, long a, long b, long c) {
+        log(event, a, b, c, 0);
+    }
+
+    /**
+     * Record an event. Allocation-free unless the event's level is enabled for Logcat.
+     */
+    public static void log(Event event, long a, long b, long c, long d) {
+        if (event.level >= recordLevel) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            synchronized (lock) {
+                int base = head * RECORD_LONGS;
+                ring[base] = now;
+                ring[base + 1] = event.ordinal();
+                ring[base + 2] = a;
+                ring[base + 3] = b;
+                ring[base + 4] = c;
+                ring[base + 5] = d;
+                head = (head + 1) % CAPACITY;
+                written++;
+            }
+        }
+
+        if (event.level >= logcatLevel) {
+            StringBuilder sb = new StringBuilder(96);
+            event.formatter.format(sb, a, b, c, d);
+            Log.println(event.level, event.tag, sb.toString());
+        }
+    }
+
+    /**
+     * Write all buffered events, oldest first, as text.
+     */
+    public static void dump(Writer out) throws IOException {
+        long[] copy;
+        int start;
+        int count;
+        synchronized (lock) {
+            copy = ring.clone();
+            count = (int) Math.min(written, CAPACITY);
+            start = written > CAPACITY ? head : 0;
+        }
+
+        // Map elapsed-realtime stamps to wall clock for readability
+        long wallOffsetMillis = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        StringBuilder line = new StringBuilder(128);
+
+        for (int i = 0; i < count; i++) {
+            int base = ((start + i) % CAPACITY) * RECORD_LONGS;
+            int ordinal = (int) copy[base + 1];
+            if (ordinal < 0 || ordinal >= EVENTS.length) {
+                continue;
+            }
+            Event event = EVENTS[ordinal];
+
+            date.setTime(wallOffsetMillis + copy[base] / 1_000_000L);
+            line.setLength(0);
+            line.append(timeFormat.format(date)).append(' ')
+                    .append(event.tag).append(' ')
+                    .append(event.name()).append(": ");
+            event.formatter.format(line, copy[base + 2], copy[base + 3], copy[base + 4], copy[base + 5]);
+            line.append('\n');
+            out.write(line.toString());
+        }
+    }
+
+    /**
+     * Write the ring buffer to a file on a background thread.
+     *
+     * @param file Target file, overwritten
+     */
+    public static void dumpAsync(File file) {
+        synchronized (lock) {
+            if (dumpExecutor == null) {
+                dumpExecutor = Executors.newSingleThreadExecutor();
+            }
+        }
+        dumpExecutor.execute(() -> {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log.w(TAG, "Could not create log directory " + parent);
+                return;
+            }
+            try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                dump(writer);
+                Log.i(TAG, "Race log written to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write race log", e);
+            }
+        });
+    }
+}
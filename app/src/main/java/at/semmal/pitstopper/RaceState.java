@@ -0,0 +1,118 @@
+package at.semmal.pitstopper;
+
+/**
+ * Snapshot of the live race state as sent in the binary telemetry (TelemetryCodec).
+ *
+ * Mutable so one instance can be reused for every encode and decode. Gaps are split into
+ * whole laps and milliseconds like in LeaderboardSnapshot.
+ */
+public class RaceState {
+
+    private boolean onAlert;
+    private long countdownSeconds;
+    private int windowIndex = -1;
+    private boolean standstill;
+    private long lastPitStopMillis = LeaderboardSnapshot.GAP_UNKNOWN;
+
+    // Live timing, only valid if hasTiming
+    private boolean hasTiming;
+    private int position;
+    private int totalCompetitors;
+    private int gapAheadLaps;
+    private long gapAheadMillis = LeaderboardSnapshot.GAP_UNKNOWN;
+    private int gapBehindLaps;
+    private long gapBehindMillis = LeaderboardSnapshot.GAP_UNKNOWN;
+
+    /**
+     * Set the pit window part.
+     *
+     * @param onAlert          true while a pit window is open and not cleared
+     * @param countdownSeconds Time left in the window while on alert, until the next otherwise
+     * @param windowIndex      Current pit window, -1 before the first
+     */
+    public void setWindow(boolean onAlert, long countdownSeconds, int windowIndex) {
+        this.onAlert = onAlert;
+        this.countdownSeconds = countdownSeconds;
+        this.windowIndex = windowIndex;
+    }
+
+    /**
+     * Set the live timing part. Gaps are laps plus milliseconds (GAP_UNKNOWN if none).
+     */
+    public void setTiming(int position, int totalCompetitors, int gapAheadLaps, long gapAheadMillis,
+                          int gapBehindLaps, long gapBehindMillis) {
+        this.hasTiming = true;
+        this.position = position;
+        this.totalCompetitors = totalCompetitors;
+        this.gapAheadLaps = gapAheadLaps;
+        this.gapAheadMillis = gapAheadMillis;
+        this.gapBehindLaps = gapBehindLaps;
+        this.gapBehindMillis = gapBehindMillis;
+    }
+
+    /**
+     * Mark live timing as not available.
+     */
+    public void clearTiming() {
+        hasTiming = false;
+    }
+
+    public void setStandstill(boolean standstill) {
+        this.standstill = standstill;
+    }
+
+    /**
+     * Set the stationary time of the last pit stop (GAP_UNKNOWN if none yet).
+     */
+    public void setLastPitStopMillis(long millis) {
+        this.lastPitStopMillis = millis;
+    }
+
+    public boolean isOnAlert() {
+        return onAlert;
+    }
+
+    public long getCountdownSeconds() {
+        return countdownSeconds;
+    }
+
+    public int getWindowIndex() {
+        return windowIndex;
+    }
+
+    public boolean isStandstill() {
+        return standstill;
+    }
+
+    public long getLastPitStopMillis() {
+        return lastPitStopMillis;
+    }
+
+    public boolean hasTiming() {
+        return hasTiming;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getTotalCompetitors() {
+        return totalCompetitors;
+    }
+
+    public int getGapAheadLaps() {
+        return gapAheadLaps;
+    }
+
+    public long getGapAheadMillis() {
+        return gapAheadMillis;
+    }
+
+    public int getGapBehindLaps() {
+        return gapBehindLaps;
+    }
+
+    public long getGapBehindMillis() {
+        return gapBehindMillis;
+    }
+}
@@ -0,0 +1,515 @@
+package at.semmal.pitstopper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes the live race state to the embedded MQTT broker.
+ *
+ * Every value goes to its own retained topic below pitstopper/&lt;car&gt;/state/ (see
+ * MQTT_TOPICS.md) and is only published when it changes. The last value of every topic is
+ * kept, so a broker that starts later (or a car number change) gets the full state at once.
+ *
+ * The same state, plus the leaderboard, is also published in the compact binary format of
+ * TelemetryCodec below telemetry/. On request, the binary messages are mirrored as JSON
+ * below json/ for debugging.
+ *
+ * The leaderboard is the same for every car, so it is also published without the car prefix
+ * below pitstopper/session/. Other PitStopper devices in hub mode (MqttSpeedHiveManager)
+ * read it from there instead of polling SpeedHive themselves.
+ *
+ * For large fields, the leaderboard also goes out as a LeaderboardStream of keyframes and
+ * deltas. Subscribers that lost a delta ask for a keyframe on telemetry/leaderboard_request.
+ *
+ * While a LatencyProbe is set, every countdown change is followed by a sequence number on
+ * dashboard/ping, which browser dashboards echo on dashboard/pong once they show it.
+ *
+ * Commands from the pit wall (ControlCommandQueue) are acknowledged on control/ack.
+ *
+ * For clients joining mid-race, the whole picture (schedule, state, leaderboard and the
+ * last pit stops) is also kept as one JSON document on sync/snapshot, refreshed at most
+ * every SNAPSHOT_INTERVAL_NANOS. Every change in between goes out on
+ * sync/delta/&lt;field&gt; with a sequence number; the snapshot carries the sequence
+ * number of the last change it contains, so a client applies only newer deltas.
+ *
+ * The app publishes from MainActivity while MqttServerService owns the broker, so there is
+ * one shared instance; the broker side attaches a Sink when it starts and detaches it when
+ * it stops. Without a sink, values are only cached.
+ *
+ * Thread safe.
+ */
+public class RaceStatePublisher {
+
+    /**
+     * Delivers a retained message. Called with the publisher's lock held, so it must not
+     * block. The data array is reused after the call returns; copy what is needed.
+     */
+    public interface Sink {
+        /**
+         * @param reliable true for transitions every client must see (alert state, pit
+         *                 stops); false for state that may be conflated to its latest value
+         */
+        void publish(String topic, byte[] data, int length, boolean reliable);
+    }
+
+    static final String TOPIC_ROOT = "pitstopper";
+
+    // Used while no car number is configured
+    static final String DEFAULT_CAR = "car";
+
+    // Topics below pitstopper/<car>/
+    static final String TOPIC_ALERT = "state/alert";
+    static final String TOPIC_COUNTDOWN = "state/countdown";
+    static final String TOPIC_WINDOW = "state/window";
+    static final String TOPIC_POSITION = "state/position";
+    static final String TOPIC_GAP_AHEAD = "state/gap_ahead";
+    static final String TOPIC_GAP_BEHIND = "state/gap_behind";
+    static final String TOPIC_STANDSTILL = "state/standstill";
+    static final String TOPIC_PIT_STOP = "state/pit_stop";
+    static final String TOPIC_SCHEDULE = "state/schedule";
+    static final String TOPIC_TELEMETRY_STATE = "telemetry/state";
+    static final String TOPIC_TELEMETRY_CARS = "telemetry/cars";
+    static final String TOPIC_TELEMETRY_LEADERBOARD = "telemetry/leaderboard";
+    static final String TOPIC_LEADERBOARD_KEYFRAME = "telemetry/leaderboard_keyframe";
+    static final String TOPIC_LEADERBOARD_DELTA = "telemetry/leaderboard_delta";
+    static final String TOPIC_LEADERBOARD_REQUEST = "telemetry/leaderboard_request";
+    static final String TOPIC_JSON_STATE = "json/state";
+    static final String TOPIC_JSON_LEADERBOARD = "json/leaderboard";
+    // Topics below session/ are shared by all cars and live directly below pitstopper/
+    static final String SESSION_PREFIX = "session/";
+    static final String TOPIC_SESSION_CARS = SESSION_PREFIX + "cars";
+    static final String TOPIC_SESSION_LEADERBOARD = SESSION_PREFIX + "leaderboard";
+    static final String TOPIC_DASHBOARD_PING = "dashboard/ping";
+    static final String TOPIC_DASHBOARD_PONG = "dashboard/pong";
+    static final String TOPIC_CONTROL_ACK = ControlCommandQueue.TOPIC_ACK;
+    static final String STATE_PREFIX = "state/";
+    static final String TOPIC_SYNC_SNAPSHOT = "sync/snapshot";
+    static final String SYNC_DELTA_PREFIX = "sync/delta/";
+    static final String SYNC_LEADERBOARD = "leaderboard";
+
+    // The snapshot is refreshed at most this often; deltas cover the time in between
+    static final long SNAPSHOT_INTERVAL_NANOS = 30_000_000_000L;
+
+    // Pit stops kept in the snapshot
+    static final int SNAPSHOT_PIT_STOPS = 5;
+
+    // Keyframe requests are answered at most this often
+    static final long KEYFRAME_REQUEST_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // Transitions that must not be conflated away; everything else is state. Conflation only
+    // happens before the broker: once handed over, a QoS 1 message is queued for every
+    // subscriber until acknowledged, so a lagging client still gets each one. Keep this to
+    // rare messages; sync deltas and leaderboard deltas stay QoS 0 and recover from the
+    // snapshot or a keyframe instead.
+    private static final Set<String> RELIABLE_TOPICS = new HashSet<>(Arrays.asList(
+            TOPIC_ALERT, TOPIC_WINDOW, TOPIC_STANDSTILL, TOPIC_PIT_STOP, TOPIC_TELEMETRY_CARS, TOPIC_SESSION_CARS,
+            TOPIC_CONTROL_ACK, TOPIC_SCHEDULE, TOPIC_LEADERBOARD_KEYFRAME));
+
+    // State topics whose payload is JSON, embedded as is in the snapshot
+    private static final Set<String> JSON_STATE_TOPICS = new HashSet<>(Arrays.asList(TOPIC_PIT_STOP, TOPIC_SCHEDULE));
+
+    private static final RaceStatePublisher INSTANCE = new RaceStatePublisher();
+
+    // Last value per topic (below pitstopper/<car>/), in first-published order
+    private final Map<String, Payload> values = new LinkedHashMap<>();
+    private Sink sink;
+    private String car = DEFAULT_CAR;
+
+    // Binary telemetry, encoded into reused buffers
+    private final RaceState state = new RaceState();
+    private final TelemetryCodec.Writer writer = new TelemetryCodec.Writer(256);
+    private int publishedTableEpoch = -1;
+    private boolean jsonMirrorEnabled = false;
+    private final StringBuilder json = new StringBuilder();
+    private LatencyProbe latencyProbe;
+    private final LeaderboardStream.Encoder leaderboardStream = new LeaderboardStream.Encoder();
+    private long keyframeRequestNanos = System.nanoTime() - KEYFRAME_REQUEST_INTERVAL_NANOS;
+
+    // Snapshot and delta stream for late joiners
+    private long syncSeq = 0;
+    private long snapshotSeq = -1;
+    private long snapshotNanos;
+    private String leaderboardJson;
+    private final ArrayDeque<String> pitStops = new ArrayDeque<>();
+    private final StringBuilder snapshotJson = new StringBuilder();
+
+    RaceStatePublisher() {
+    }
+
+    public static RaceStatePublisher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start delivering to the given sink, beginning with the current value of every topic.
+     */
+    public synchronized void attach(Sink sink) {
+        publishSnapshot(); // Cached first, so it goes out once with everything else
+        this.sink = sink;
+        republishAll();
+    }
+
+    /**
+     * Stop delivering. Values keep being cached.
+     */
+    public synchronized void detach() {
+        sink = null;
+    }
+
+    /**
+     * Set the car number used in the topic prefix. Republishes everything if it changed.
+     */
+    public synchronized void setCarNumber(String carNumber) {
+        String newCar = carNumber == null || carNumber.trim().isEmpty() ? DEFAULT_CAR : carNumber.trim();
+        if (newCar.equals(car)) {
+            return;
+        }
+        car = newCar;
+        republishAll();
+    }
+
+    /**
+     * Publish the pit window alert state ("ON_ALERT" or "IDLE").
+     */
+    public synchronized void publishAlertState(boolean onAlert) {
+        set(TOPIC_ALERT, onAlert ? "ON_ALERT" : "IDLE");
+        state.setWindow(onAlert, state.getCountdownSeconds(), state.getWindowIndex());
+        publishState();
+    }
+
+    /**
+     * Publish the countdown in seconds: time left in the window while on alert, time until
+     * the next window otherwise.
+     */
+    public synchronized void publishCountdown(long seconds) {
+        long changedNanos = System.nanoTime();
+        boolean changed = set(TOPIC_COUNTDOWN, Long.toString(seconds));
+        state.setWindow(state.isOnAlert(), seconds, state.getWindowIndex());
+        publishState();
+        if (changed && latencyProbe != null) {
+            set(TOPIC_DASHBOARD_PING, Integer.toString(latencyProbe.onSent(changedNanos)));
+        }
+    }
+
+    /**
+     * Publish the index of the current pit window (-1 before the first one).
+     */
+    public synchronized void publishWindowIndex(int index) {
+        set(TOPIC_WINDOW, Integer.toString(index));
+        state.setWindow(state.isOnAlert(), state.getCountdownSeconds(), index);
+        publishState();
+    }
+
+    /**
+     * Publish position and gaps from live timing.
+     */
+    public synchronized void publishLiveTiming(LiveTimingData data) {
+        set(TOPIC_POSITION, data.getPosition() + "/" + data.getTotalCompetitors());
+        set(TOPIC_GAP_AHEAD, data.getGapAhead());
+        set(TOPIC_GAP_BEHIND, data.getGapBehind());
+        state.setTiming(data.getPosition(), data.getTotalCompetitors(),
+                LeaderboardSnapshot.parseGapLaps(data.getGapAhead()),
+                LeaderboardSnapshot.parseGapMillis(data.getGapAhead()),
+                LeaderboardSnapshot.parseGapLaps(data.getGapBehind()),
+                LeaderboardSnapshot.parseGapMillis(data.getGapBehind()));
+        publishState();
+    }
+
+    /**
+     * Publish whether the car is stopped in the pits ("STOPPED" or "MOVING").
+     */
+    public synchronized void publishStandstill(boolean standstill) {
+        set(TOPIC_STANDSTILL, standstill ? "STOPPED" : "MOVING");
+        state.setStandstill(standstill);
+        publishState();
+    }
+
+    /**
+     * Publish the last completed pit stop as JSON.
+     */
+    public synchronized void publishPitStop(PitStopRecord record) {
+        String json = String.format(Locale.US, "{\"stationary_ms\":%d,\"pit_lane_ms\":%d}",
+                record.getStationaryMillis(), record.getPitLaneMillis());
+        if (pitStops.size() == SNAPSHOT_PIT_STOPS) {
+            pitStops.poll();
+        }
+        pitStops.add(json);
+        set(TOPIC_PIT_STOP, json);
+        state.setLastPitStopMillis(record.getStationaryMillis());
+        publishState();
+    }
+
+    /**
+     * Publish the pit window schedule as JSON, including the shift set by the pit wall.
+     */
+    public synchronized void publishSchedule(int raceStartHour, int raceStartMinute, int opensAfterMinutes,
+                                             int durationMinutes, int shiftMinutes) {
+        set(TOPIC_SCHEDULE, String.format(Locale.US,
+                "{\"race_start\":\"%02d:%02d\",\"opens_after_min\":%d,\"duration_min\":%d,\"shift_min\":%d}",
+                raceStartHour, raceStartMinute, opensAfterMinutes, durationMinutes, shiftMinutes));
+    }
+
+    /**
+     * Publish the session leaderboard in binary, preceded by the car table whenever it
+     * changed, for this car and for hub subscribers. Called after every live timing poll.
+     */
+    public synchronized void publishLeaderboard(LeaderboardSnapshot snapshot) {
+        if (snapshot.getTableEpoch() != publishedTableEpoch) {
+            TelemetryCodec.encodeCarTable(snapshot, writer);
+            set(TOPIC_TELEMETRY_CARS, writer.getBuffer(), writer.getLength());
+            set(TOPIC_SESSION_CARS, writer.getBuffer(), writer.getLength());
+            publishedTableEpoch = snapshot.getTableEpoch();
+        }
+        TelemetryCodec.encodeLeaderboard(snapshot, writer);
+        set(TOPIC_TELEMETRY_LEADERBOARD, writer.getBuffer(), writer.getLength());
+        set(TOPIC_SESSION_LEADERBOARD, writer.getBuffer(), writer.getLength());
+
+        int type = leaderboardStream.encode(snapshot, writer);
+        if (type == TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME) {
+            set(TOPIC_LEADERBOARD_KEYFRAME, writer.getBuffer(), writer.getLength());
+        } else if (type == TelemetryCodec.TYPE_LEADERBOARD_DELTA) {
+            set(TOPIC_LEADERBOARD_DELTA, writer.getBuffer(), writer.getLength());
+        }
+
+        TelemetryCodec.toJson(snapshot, json);
+        String leaderboard = json.toString();
+        if (jsonMirrorEnabled) {
+            set(TOPIC_JSON_LEADERBOARD, leaderboard);
+        }
+        if (!leaderboard.equals(leaderboardJson)) {
+            leaderboardJson = leaderboard;
+            publishDelta(SYNC_LEADERBOARD, leaderboard);
+        }
+    }
+
+    /**
+     * Publish the last leaderboard again as a keyframe, for a subscriber that missed a
+     * delta. Published even if it equals the retained keyframe, as the requester is already
+     * subscribed. Requests within KEYFRAME_REQUEST_INTERVAL_NANOS of the last answered one
+     * are ignored; that keyframe answers them as well.
+     *
+     * @param nowNanos System.nanoTime()
+     * @return true if a keyframe was published
+     */
+    public synchronized boolean publishLeaderboardKeyframe(long nowNanos) {
+        if (nowNanos - keyframeRequestNanos < KEYFRAME_REQUEST_INTERVAL_NANOS
+                || !leaderboardStream.encodeKeyframe(writer)) {
+            return false;
+        }
+        keyframeRequestNanos = nowNanos;
+        if (!set(TOPIC_LEADERBOARD_KEYFRAME, writer.getBuffer(), writer.getLength()) && sink != null) {
+            sink.publish(getTopic(TOPIC_LEADERBOARD_KEYFRAME), writer.getBuffer(), writer.getLength(), true);
+        }
+        return true;
+    }
+
+    /**
+     * Publish the acknowledgement of a pit wall command. Published even if it equals the
+     * last one, as a sender repeating a command waits for an answer.
+     */
+    public synchronized void publishControlAck(String ack) {
+        if (!set(TOPIC_CONTROL_ACK, ack) && sink != null) {
+            sink.publish(getTopic(TOPIC_CONTROL_ACK), values.get(TOPIC_CONTROL_ACK).data,
+                    values.get(TOPIC_CONTROL_ACK).length, true);
+        }
+    }
+
+    /**
+     * Enable or disable the JSON mirror of the binary telemetry. Disabling clears the
+     * retained JSON messages.
+     */
+    public synchronized void setJsonMirrorEnabled(boolean enabled) {
+        if (enabled == jsonMirrorEnabled) {
+            return;
+        }
+        jsonMirrorEnabled = enabled;
+        if (enabled) {
+            publishState();
+            return; // The leaderboard follows with the next poll
+        }
+
+        Iterator<String> topics = values.keySet().iterator();
+        while (topics.hasNext()) {
+            String subtopic = topics.next();
+            if (subtopic.startsWith("json/")) {
+                topics.remove();
+                if (sink != null) {
+                    sink.publish(getTopic(subtopic), EMPTY, 0, false); // Empty retained message deletes it
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the probe that measures the latency to browser dashboards, or null to stop
+     * probing. Stopping clears the retained ping.
+     */
+    public synchronized void setLatencyProbe(LatencyProbe probe) {
+        latencyProbe = probe;
+        if (probe == null && values.remove(TOPIC_DASHBOARD_PING) != null && sink != null) {
+            sink.publish(getTopic(TOPIC_DASHBOARD_PING), EMPTY, 0, false);
+        }
+    }
+
+    /**
+     * Get the full topic for a topic below pitstopper/&lt;car&gt;/, or below pitstopper/
+     * for the shared session/ topics.
+     */
+    public synchronized String getTopic(String subtopic) {
+        if (subtopic.startsWith(SESSION_PREFIX)) {
+            return TOPIC_ROOT + "/" + subtopic;
+        }
+        return TOPIC_ROOT + "/" + car + "/" + subtopic;
+    }
+
+    private void publishState() {
+        TelemetryCodec.encodeRaceState(state, writer);
+        set(TOPIC_TELEMETRY_STATE, writer.getBuffer(), writer.getLength());
+
+        if (jsonMirrorEnabled) {
+            TelemetryCodec.toJson(state, json);
+            set(TOPIC_JSON_STATE, json.toString());
+        }
+    }
+
+    private boolean set(String subtopic, String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        boolean changed = set(subtopic, data, data.length);
+        if (changed && subtopic.startsWith(STATE_PREFIX)) {
+            publishDelta(subtopic.substring(STATE_PREFIX.length()), value);
+        }
+        return changed;
+    }
+
+    /**
+     * Publish a change on the delta stream, and refresh the snapshot if it is due.
+     */
+    private void publishDelta(String field, String value) {
+        syncSeq++;
+        set(SYNC_DELTA_PREFIX + field, syncSeq + " " + value);
+        if (snapshotSeq < 0 || System.nanoTime() - snapshotNanos >= SNAPSHOT_INTERVAL_NANOS) {
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Publish the snapshot of everything up to the last delta, unless it is current.
+     */
+    synchronized void publishSnapshot() {
+        if (snapshotSeq == syncSeq) {
+            return;
+        }
+        snapshotSeq = syncSeq;
+        snapshotNanos = System.nanoTime();
+
+        StringBuilder out = snapshotJson;
+        out.setLength(0);
+        out.append("{\"seq\":").append(syncSeq).append(",\"state\":{");
+        boolean first = true;
+        for (Map.Entry<String, Payload> entry : values.entrySet()) {
+            String subtopic = entry.getKey();
+            if (!subtopic.startsWith(STATE_PREFIX)) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('"').append(subtopic.substring(STATE_PREFIX.length())).append("\":");
+            String value = new String(entry.getValue().data, 0, entry.getValue().length, StandardCharsets.UTF_8);
+            if (JSON_STATE_TOPICS.contains(subtopic)) {
+                out.append(value);
+            } else {
+                TelemetryCodec.appendJsonString(value, out);
+            }
+        }
+        out.append("},\"leaderboard\":").append(leaderboardJson != null ? leaderboardJson : "[]");
+        out.append(",\"pit_stops\":[");
+        first = true;
+        for (String pitStop : pitStops) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append(pitStop);
+        }
+        out.append("]}");
+        set(TOPIC_SYNC_SNAPSHOT, out.toString());
+    }
+
+    /**
+     * Store and publish a value if it changed.
+     *
+     * @return true if it changed
+     */
+    private boolean set(String subtopic, byte[] data, int length) {
+        Payload payload = values.get(subtopic);
+        if (payload == null) {
+            payload = new Payload();
+            values.put(subtopic, payload);
+        } else if (payload.matches(data, length)) {
+            return false; // Unchanged, the retained message is still current
+        }
+        payload.copyFrom(data, length);
+        if (sink != null) {
+            sink.publish(getTopic(subtopic), payload.data, payload.length, isReliable(subtopic));
+        }
+        return true;
+    }
+
+    private void republishAll() {
+        if (sink == null) {
+            return;
+        }
+        for (Map.Entry<String, Payload> entry : values.entrySet()) {
+            sink.publish(getTopic(entry.getKey()), entry.getValue().data, entry.getValue().length,
+                    isReliable(entry.getKey()));
+        }
+    }
+
+    /**
+     * Check if a topic below pitstopper/&lt;car&gt;/ carries transitions that must not be
+     * conflated.
+     */
+    static boolean isReliable(String subtopic) {
+        return RELIABLE_TOPICS.contains(subtopic);
+    }
+
+    /**
+     * Last payload of a topic, in a buffer reused for every change.
+     */
+    private static final class Payload {
+        byte[] data = EMPTY;
+        int length;
+
+        boolean matches(byte[] other, int otherLength) {
+            if (otherLength != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (data[i] != other[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void copyFrom(byte[] source, int sourceLength) {
+            if (data.length < sourceLength) {
+                data = Arrays.copyOf(source, Math.max(sourceLength, 16));
+            } else {
+                System.arraycopy(source, 0, data, 0, sourceLength);
+            }
+            length = sourceLength;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package at.semmal.pitstopper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LocationSource that replays a recorded or synthetic fix sequence under a fake clock.
+ *
+ * Nothing happens in the background: the caller moves the clock with advanceTo() or
+ * runToEnd(), and every fix up to that time is delivered synchronously, as fast as the
+ * listener can take it. In PIT_LANE_CHECK mode only one fix per check interval is
+ * delivered, like the slower request a live source would make, so time spent in each
+ * mode can be compared between runs.
+ */
+public class ReplayLocationSource implements LocationSource {
+
+    // Mirrors the interval FusedLocationSource requests for PIT_LANE_CHECK
+    static final long PIT_LANE_CHECK_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final List<GpsFix> fixes;
+    private final GpsFix delivered = new GpsFix();
+    private int position = 0;
+    private long nowNanos;
+    private long lastDeliveredNanos;
+
+    private Mode mode;
+    private Listener listener;
+    private int deliveredCount = 0;
+    private long activeNanos = 0;
+    private long highAccuracyNanos = 0;
+
+    /**
+     * Creates a replay of the given fixes, which must be in time order.
+     * The clock starts at the first fix.
+     */
+    public ReplayLocationSource(List<GpsFix> fixes) {
+        this.fixes = fixes;
+        this.nowNanos = fixes.isEmpty() ? 0 : fixes.get(0).getElapsedRealtimeNanos();
+    }
+
+    /**
+     * Creates a replay of a track log written by TrackRecorder.
+     */
+    public static ReplayLocationSource fromTrackLog(File file) throws IOException {
+        List<GpsFix> fixes = new ArrayList<>();
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            GpsFix fix = new GpsFix();
+            while (reader.next(fix)) {
+                fixes.add(new GpsFix().set(fix.getElapsedRealtimeNanos(), fix.getLatitude(),
+                        fix.getLongitude(), fix.getSpeed(), fix.getAccuracy(), fix.getSpeedAccuracy()));
+            }
+        }
+        return new ReplayLocationSource(fixes);
+    }
+
+    @Override
+    public void start(Mode mode, Listener listener) {
+        this.mode = mode;
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        mode = null;
+        listener = null;
+    }
+
+    /**
+     * Move the fake clock forward, delivering all fixes measured up to that time.
+     * Fixes passed while the source is stopped are skipped, like a switched off GPS.
+     *
+     * @param timeNanos New clock value (elapsed realtime)
+     */
+    public void advanceTo(long timeNanos) {
+        while (position < fixes.size() && fixes.get(position).getElapsedRealtimeNanos() <= timeNanos) {
+            GpsFix fix = fixes.get(position++);
+            tick(fix.getElapsedRealtimeNanos());
+
+            if (listener == null) {
+                continue;
+            }
+            if (mode == Mode.PIT_LANE_CHECK && deliveredCount > 0
+                    && fix.getElapsedRealtimeNanos() - lastDeliveredNanos < PIT_LANE_CHECK_INTERVAL_NANOS) {
+                continue;
+            }
+
+            lastDeliveredNanos = fix.getElapsedRealtimeNanos();
+            deliveredCount++;
+            // Hand out a copy, so listeners can't modify the recording
+            listener.onFix(delivered.set(fix.getElapsedRealtimeNanos(), fix.getLatitude(), fix.getLongitude(),
+                    fix.getSpeed(), fix.getAccuracy(), fix.getSpeedAccuracy()));
+        }
+        tick(Math.max(nowNanos, timeNanos));
+    }
+
+    /**
+     * Deliver all remaining fixes.
+     */
+    public void runToEnd() {
+        if (!fixes.isEmpty()) {
+            advanceTo(fixes.get(fixes.size() - 1).getElapsedRealtimeNanos());
+        }
+    }
+
+    private void tick(long timeNanos) {
+        long elapsed = timeNanos - nowNanos;
+        if (elapsed > 0 && mode != null) {
+            activeNanos += elapsed;
+            if (mode == Mode.HIGH_ACCURACY) {
+                highAccuracyNanos += elapsed;
+            }
+        }
+        nowNanos = timeNanos;
+    }
+
+    /**
+     * Get the current fake clock value (elapsed realtime nanos).
+     */
+    public long getNowNanos() {
+        return nowNanos;
+    }
+
+    /**
+     * Check if all fixes have been replayed.
+     */
+    public boolean isFinished() {
+        return position >= fixes.size();
+    }
+
+    /**
+     * Get the number of fixes delivered to the listener.
+     */
+    public int getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Get how long the source was started, in fake clock nanoseconds.
+     */
+    public long getActiveNanos() {
+        return activeNanos;
+    }
+
+    /**
+     * Get how long the source ran in HIGH_ACCURACY mode, in fake clock nanoseconds.
+     */
+    public long getHighAccuracyNanos() {
+        return highAccuracyNanos;
+    }
+}
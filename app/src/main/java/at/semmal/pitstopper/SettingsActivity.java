@@ -9,6 +9,7 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
@@ -30,6 +31,8 @@ public class SettingsActivity extends AppCompatActivity {
     private Button buttonSelectTime;
     private EditText editPitWindowOpens;
     private EditText editPitWindowDuration;
+    private EditText editMinPitStop;
+    private EditText editAlertUrgent;
     private Button buttonSave;
     private Button buttonCancel;
     
@@ -39,13 +42,32 @@ public class SettingsActivity extends AppCompatActivity {
     private Spinner spinnerEventId, spinnerSessionId;
     private FrameLayout frameEventSpinner, frameSessionSpinner;
     private ProgressBar progressEvents, progressSessions;
-    private EditText editCarNumber; // For SpeedHive live mode
+    private EditText editCarNumber; // For SpeedHive live and hub modes
+    private TextView labelHubAddress;
+    private EditText editHubAddress; // For hub mode
     private Spinner spinnerDemoCar; // For demo mode car selection
     
     // MQTT Server UI elements
     private EditText editMqttServerPort;
     private TextView textMqttServerStatus;
     private Button buttonMqttServerToggle;
+    private CheckBox checkMqttJsonMirror;
+    private CheckBox checkMqttFilePersistence;
+    private CheckBox checkMqttDashboard;
+    private CheckBox checkMqttControl;
+    private Spinner spinnerMqttTuning;
+
+    // Status refresh while the broker is starting or stopping
+    private static final long MQTT_STATUS_POLL_MILLIS = 250;
+    // Client statistics refresh while the broker runs
+    private static final long MQTT_CLIENT_STATS_POLL_MILLIS = 1000;
+    private final android.os.Handler mqttStatusHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private final Runnable mqttStatusUpdater = this::pollMqttServerStatus;
+
+    // GPS track UI elements
+    private CheckBox checkTrackRecording;
+    private CheckBox checkLapTimer;
+    private Button buttonForgetPitLane;
 
     // SpeedHive data
     private SpeedHiveManager speedHiveManager;
@@ -76,6 +98,8 @@ public class SettingsActivity extends AppCompatActivity {
         buttonSelectTime = findViewById(R.id.buttonSelectTime);
         editPitWindowOpens = findViewById(R.id.editPitWindowOpens);
         editPitWindowDuration = findViewById(R.id.editPitWindowDuration);
+        editMinPitStop = findViewById(R.id.editMinPitStop);
+        editAlertUrgent = findViewById(R.id.editAlertUrgent);
         buttonSave = findViewById(R.id.buttonSave);
         buttonCancel = findViewById(R.id.buttonCancel);
         
@@ -91,12 +115,22 @@ public class SettingsActivity extends AppCompatActivity {
         progressSessions = findViewById(R.id.progressSessions);
         labelCarNumber = findViewById(R.id.labelCarNumber);
         editCarNumber = findViewById(R.id.editCarNumber);
+        labelHubAddress = findViewById(R.id.labelHubAddress);
+        editHubAddress = findViewById(R.id.editHubAddress);
         spinnerDemoCar = findViewById(R.id.spinnerDemoCar);
         
         // Initialize MQTT Server views
         editMqttServerPort = findViewById(R.id.editMqttServerPort);
         textMqttServerStatus = findViewById(R.id.textMqttServerStatus);
         buttonMqttServerToggle = findViewById(R.id.buttonMqttServerToggle);
+        checkMqttJsonMirror = findViewById(R.id.checkMqttJsonMirror);
+        checkMqttFilePersistence = findViewById(R.id.checkMqttFilePersistence);
+        checkMqttDashboard = findViewById(R.id.checkMqttDashboard);
+        checkMqttControl = findViewById(R.id.checkMqttControl);
+        spinnerMqttTuning = findViewById(R.id.spinnerMqttTuning);
+        checkTrackRecording = findViewById(R.id.checkTrackRecording);
+        checkLapTimer = findViewById(R.id.checkLapTimer);
+        buttonForgetPitLane = findViewById(R.id.buttonForgetPitLane);
 
         // Store saved IDs for pre-selection after data loads
         savedEventId = preferences.getSpeedHiveEventId();
@@ -126,6 +160,17 @@ public class SettingsActivity extends AppCompatActivity {
         // Set up button listeners
         buttonSave.setOnClickListener(v -> saveSettings());
         buttonCancel.setOnClickListener(v -> finish());
+        buttonForgetPitLane.setOnClickListener(v -> forgetPitLane());
+    }
+
+    /**
+     * Forget the learned pit lane right away, e.g. when it was learned from a stop on track.
+     * The standstill detector relearns it at the next stops.
+     */
+    private void forgetPitLane() {
+        preferences.savePitLaneGeofence(null);
+        buttonForgetPitLane.setEnabled(false);
+        Toast.makeText(this, R.string.pit_lane_forgotten, Toast.LENGTH_SHORT).show();
     }
 
     @Override
@@ -172,9 +217,21 @@ public class SettingsActivity extends AppCompatActivity {
 
         editPitWindowOpens.setText(String.valueOf(preferences.getPitWindowOpens()));
         editPitWindowDuration.setText(String.valueOf(preferences.getPitWindowDuration()));
+        editMinPitStop.setText(String.valueOf(preferences.getMinPitStopSeconds()));
+        editAlertUrgent.setText(String.valueOf(preferences.getAlertUrgentSeconds()));
         
         // Load car number for SpeedHive live mode - demo mode uses spinner
         editCarNumber.setText(preferences.getSpeedHiveCarNumber());
+        editHubAddress.setText(preferences.getHubAddress());
+
+        checkTrackRecording.setChecked(preferences.isTrackRecordingEnabled());
+        checkLapTimer.setChecked(preferences.isLapTimerEnabled());
+        buttonForgetPitLane.setEnabled(preferences.getPitLaneGeofence() != null);
+        checkMqttJsonMirror.setChecked(preferences.isMqttJsonMirrorEnabled());
+        checkMqttFilePersistence.setChecked(
+                preferences.getMqttPersistence() == BrokerConfigFactory.Persistence.FILE);
+        checkMqttDashboard.setChecked(preferences.isMqttDashboardEnabled());
+        checkMqttControl.setChecked(preferences.isMqttControlEnabled());
     }
     
     private void setupSpeedHiveModeSpinner() {
@@ -182,7 +239,8 @@ public class SettingsActivity extends AppCompatActivity {
         String[] modeOptions = {
             getString(R.string.speedhive_mode_off),
             getString(R.string.speedhive_mode_speedhive), 
-            getString(R.string.speedhive_mode_demo)
+            getString(R.string.speedhive_mode_demo),
+            getString(R.string.speedhive_mode_hub)
         };
         
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, 
@@ -235,6 +293,8 @@ public class SettingsActivity extends AppCompatActivity {
             selection = 1;
         } else if (PitWindowPreferences.SPEEDHIVE_MODE_DEMO.equals(currentMode)) {
             selection = 2;
+        } else if (PitWindowPreferences.SPEEDHIVE_MODE_HUB.equals(currentMode)) {
+            selection = 3;
         }
         spinnerSpeedHiveMode.setSelection(selection);
         
@@ -248,8 +308,11 @@ public class SettingsActivity extends AppCompatActivity {
     }
     
     private void updateSpeedHiveFieldVisibility(int modeSelection) {
-        // 0 = Off, 1 = SpeedHive, 2 = Demo
-        
+        // 0 = Off, 1 = SpeedHive, 2 = Demo, 3 = Hub
+        int hubVisibility = modeSelection == 3 ? View.VISIBLE : View.GONE;
+        labelHubAddress.setVisibility(hubVisibility);
+        editHubAddress.setVisibility(hubVisibility);
+
         if (modeSelection == 0) {
             // Off - hide all SpeedHive fields
             labelEventId.setVisibility(View.GONE);
@@ -277,6 +340,15 @@ public class SettingsActivity extends AppCompatActivity {
             labelCarNumber.setVisibility(View.VISIBLE);
             editCarNumber.setVisibility(View.GONE);
             spinnerDemoCar.setVisibility(View.VISIBLE);
+        } else if (modeSelection == 3) {
+            // Hub mode - the hub picks event and session, only our car and the hub are needed
+            labelEventId.setVisibility(View.GONE);
+            frameEventSpinner.setVisibility(View.GONE);
+            labelSessionId.setVisibility(View.GONE);
+            frameSessionSpinner.setVisibility(View.GONE);
+            labelCarNumber.setVisibility(View.VISIBLE);
+            editCarNumber.setVisibility(View.VISIBLE);
+            spinnerDemoCar.setVisibility(View.GONE);
         }
     }
 
@@ -446,6 +518,8 @@ public class SettingsActivity extends AppCompatActivity {
         try {
             int pitWindowOpens = Integer.parseInt(editPitWindowOpens.getText().toString());
             int pitWindowDuration = Integer.parseInt(editPitWindowDuration.getText().toString());
+            int minPitStop = Integer.parseInt(editMinPitStop.getText().toString());
+            int alertUrgent = Integer.parseInt(editAlertUrgent.getText().toString());
 
             // Validate inputs
             if (pitWindowOpens < 0 || pitWindowOpens > 300) {
@@ -458,12 +532,40 @@ public class SettingsActivity extends AppCompatActivity {
                 return;
             }
 
+            if (minPitStop < 0 || minPitStop > 600) {
+                Toast.makeText(this, "Minimum pit stop time must be between 0 and 600 seconds", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            if (alertUrgent < 0 || alertUrgent > 600) {
+                Toast.makeText(this, "Urgent alert time must be between 0 and 600 seconds", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // A new schedule replaces the shift set by the pit wall
+            if (raceStartHour != preferences.getRaceStartHour() || raceStartMinute != preferences.getRaceStartMinute()
+                    || pitWindowOpens != preferences.getPitWindowOpens()
+                    || pitWindowDuration != preferences.getPitWindowDuration()) {
+                preferences.saveScheduleShiftMinutes(0);
+            }
+
             // Save to SharedPreferences
             preferences.saveAll(raceStartHour, raceStartMinute, pitWindowOpens, pitWindowDuration);
+            preferences.saveMinPitStopSeconds(minPitStop);
+            preferences.saveAlertUrgentSeconds(alertUrgent);
             
             // Save SpeedHive settings
             saveSpeedHiveSettings();
 
+            preferences.saveTrackRecordingEnabled(checkTrackRecording.isChecked());
+            preferences.saveLapTimerEnabled(checkLapTimer.isChecked());
+            preferences.saveMqttJsonMirrorEnabled(checkMqttJsonMirror.isChecked());
+            preferences.saveMqttPersistence(checkMqttFilePersistence.isChecked()
+                    ? BrokerConfigFactory.Persistence.FILE : BrokerConfigFactory.Persistence.MEMORY);
+            preferences.saveMqttDashboardEnabled(checkMqttDashboard.isChecked());
+            preferences.saveMqttControlEnabled(checkMqttControl.isChecked());
+            preferences.saveBrokerTuning(BrokerTuning.values()[spinnerMqttTuning.getSelectedItemPosition()]);
+
             Toast.makeText(this, "Settings saved", Toast.LENGTH_SHORT).show();
             finish();
 
@@ -483,6 +585,9 @@ public class SettingsActivity extends AppCompatActivity {
             case 2:
                 mode = PitWindowPreferences.SPEEDHIVE_MODE_DEMO;
                 break;
+            case 3:
+                mode = PitWindowPreferences.SPEEDHIVE_MODE_HUB;
+                break;
             default:
                 mode = PitWindowPreferences.SPEEDHIVE_MODE_OFF;
                 break;
@@ -495,8 +600,8 @@ public class SettingsActivity extends AppCompatActivity {
         String carNumber = "";
         String carName = "";
 
-        if (modeSelection == 1) {
-            // SpeedHive mode - validate car number from EditText
+        if (modeSelection == 1 || modeSelection == 3) {
+            // SpeedHive and hub mode - validate car number from EditText
             carNumber = editCarNumber.getText().toString().trim();
             if (carNumber.isEmpty()) {
                 Toast.makeText(this, "Please enter a car number", Toast.LENGTH_SHORT).show();
@@ -548,12 +653,35 @@ public class SettingsActivity extends AppCompatActivity {
         }
         // For demo mode, no additional processing needed - carNumber is already set
 
+        if (modeSelection == 3) {
+            String hubAddress = editHubAddress.getText().toString().trim();
+            try {
+                MqttSpeedHiveManager.toServerUri(hubAddress);
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                return;
+            }
+            preferences.saveHubAddress(hubAddress);
+        }
+
         preferences.saveAllSpeedHive(mode, eventId, eventName, sessionId, sessionName, carNumber, carName);
     }
     
     // --- MQTT Server ---
     
     private void setupMqttServer() {
+        // Tuning presets, in BrokerTuning order
+        String[] tuningOptions = {
+            getString(R.string.mqtt_tuning_low_power),
+            getString(R.string.mqtt_tuning_balanced),
+            getString(R.string.mqtt_tuning_pit_wall_hub)
+        };
+        ArrayAdapter<String> tuningAdapter = new ArrayAdapter<>(this,
+            android.R.layout.simple_spinner_item, tuningOptions);
+        tuningAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerMqttTuning.setAdapter(tuningAdapter);
+        spinnerMqttTuning.setSelection(preferences.getBrokerTuning().ordinal());
+
         // Load saved port
         editMqttServerPort.setText(String.valueOf(preferences.getMqttServerPort()));
         
@@ -592,11 +720,13 @@ public class SettingsActivity extends AppCompatActivity {
         }
         
         // Enable button only if port is valid or server is already running
-        buttonMqttServerToggle.setEnabled(isValid || preferences.isMqttServerEnabled());
+        buttonMqttServerToggle.setEnabled(isValid
+                || MqttServerService.getBrokerState() != BrokerLifecycle.State.STOPPED);
     }
     
     private void toggleMqttServer() {
-        if (preferences.isMqttServerEnabled()) {
+        // Stop while starting too: the broker thread coalesces rapid toggles
+        if (MqttServerService.getBrokerState() != BrokerLifecycle.State.STOPPED) {
             // Stop server
             MqttServerService.stopMqttServer(this);
             Toast.makeText(this, R.string.mqtt_server_stopped, Toast.LENGTH_SHORT).show();
@@ -622,32 +752,40 @@ public class SettingsActivity extends AppCompatActivity {
             }
         }
         
-        // Update UI after a short delay to allow service to process
-        android.os.Handler handler = new android.os.Handler();
-        handler.postDelayed(this::updateMqttServerStatus, 1000);
+        // Follow the broker through starting / stopping
+        mqttStatusHandler.removeCallbacks(mqttStatusUpdater);
+        mqttStatusHandler.postDelayed(mqttStatusUpdater, MQTT_STATUS_POLL_MILLIS);
     }
     
     private void updateMqttServerStatus() {
-        boolean isRunning = preferences.isMqttServerEnabled();
+        BrokerLifecycle.State state = MqttServerService.getBrokerState();
         
-        if (isRunning) {
+        if (state == BrokerLifecycle.State.RUNNING) {
             buttonMqttServerToggle.setText(R.string.mqtt_server_stop);
             int port = preferences.getMqttServerPort();
-            String statusText = getString(R.string.mqtt_server_status_running, port);
-            
-            // Try to get IP address for connection info
-            try {
-                MqttServerManager tempManager = new MqttServerManager(this);
-                String serverInfo = tempManager.getServerInfo();
-                if (!serverInfo.equals("Server not running")) {
-                    statusText = getString(R.string.mqtt_server_ip_info, 
-                        serverInfo.split(":")[0], port);
+            String ipAddress = MqttServerManager.getLocalIpAddress();
+            StringBuilder status = new StringBuilder(getString(R.string.mqtt_server_ip_info, ipAddress, port));
+            LatencyProbe dashboardLatency = MqttServerService.getDashboardLatencyProbe();
+            if (dashboardLatency != null) {
+                status.append('\n').append(getString(R.string.mqtt_dashboard_url, ipAddress, DashboardServer.PORT));
+                if (dashboardLatency.getSamples() > 0) {
+                    status.append('\n').append(getString(R.string.mqtt_dashboard_latency,
+                        dashboardLatency.getLastMillis(), dashboardLatency.getAverageMillis(),
+                        dashboardLatency.getMaxMillis()));
                 }
-            } catch (Exception e) {
-                // Use fallback status text
             }
-            
-            textMqttServerStatus.setText(statusText);
+            for (SubscriberTracker.ClientStats client : MqttServerService.getClientStats()) {
+                status.append('\n').append(getString(client.isLagging()
+                        ? R.string.mqtt_client_stats_lagging : R.string.mqtt_client_stats,
+                    client.getClientId(), client.getQueueDepth(), client.getDropped()));
+            }
+            textMqttServerStatus.setText(status);
+        } else if (state == BrokerLifecycle.State.STARTING) {
+            buttonMqttServerToggle.setText(R.string.mqtt_server_stop);
+            textMqttServerStatus.setText(R.string.mqtt_server_status_starting);
+        } else if (state == BrokerLifecycle.State.STOPPING) {
+            buttonMqttServerToggle.setText(R.string.mqtt_server_start);
+            textMqttServerStatus.setText(R.string.mqtt_server_status_stopping);
         } else {
             buttonMqttServerToggle.setText(R.string.mqtt_server_start);
             textMqttServerStatus.setText(R.string.mqtt_server_status_stopped);
@@ -656,11 +794,27 @@ public class SettingsActivity extends AppCompatActivity {
         validateMqttServerPort();
     }
     
+    private void pollMqttServerStatus() {
+        updateMqttServerStatus();
+        BrokerLifecycle.State state = MqttServerService.getBrokerState();
+        if (state == BrokerLifecycle.State.STARTING || state == BrokerLifecycle.State.STOPPING) {
+            mqttStatusHandler.postDelayed(mqttStatusUpdater, MQTT_STATUS_POLL_MILLIS);
+        } else if (state == BrokerLifecycle.State.RUNNING) {
+            mqttStatusHandler.postDelayed(mqttStatusUpdater, MQTT_CLIENT_STATS_POLL_MILLIS);
+        }
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mqttStatusHandler.removeCallbacks(mqttStatusUpdater);
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
         // Update MQTT server status when returning to settings
-        updateMqttServerStatus();
+        pollMqttServerStatus();
     }
 
     private void hideSystemUI() {
@@ -0,0 +1,105 @@
+package at.semmal.pitstopper;
+
+/**
+ * Smooths noisy GPS speed readings near zero.
+ *
+ * Two stages: a running median over the last few fixes removes single spikes (multipath,
+ * a bad fix after a tunnel), then a one-dimensional Kalman filter weighs each reading by its
+ * reported speed accuracy, so a poor fix moves the estimate less than a good one.
+ *
+ * Pure Java and allocation-free per fix.
+ */
+public class SpeedFilter {
+
+    // Number of fixes in the running median; odd, so the median is an actual reading
+    static final int MEDIAN_WINDOW = 5;
+
+    // Speed accuracy (1 sigma, m/s) assumed when the fix doesn't report one
+    static final float DEFAULT_SPEED_ACCURACY_MS = 1.0f;
+
+    // How fast the true speed can change, as variance growth in (m/s)^2 per second.
+    // Roughly a braking race car at 2 m/s^2 standard deviation.
+    static final double PROCESS_NOISE = 4.0;
+
+    // Ignore longer gaps when growing the variance, the estimate is reset by then anyway
+    private static final double MAX_GAP_SECONDS = 10.0;
+
+    private final float[] speeds = new float[MEDIAN_WINDOW];
+    private final float[] sorted = new float[MEDIAN_WINDOW];
+    private int next = 0;
+    private int count = 0;
+
+    private boolean initialized = false;
+    private double estimate = 0;
+    private double variance = 0;
+    private long lastTimestampNanos = 0;
+
+    /**
+     * Process one fix.
+     *
+     * @param timestampNanos Measurement time of the fix (elapsed realtime)
+     * @param speed          Reported speed in m/s
+     * @param speedAccuracy  Reported speed accuracy (1 sigma) in m/s, 0 or NaN if unknown
+     * @return Filtered speed in m/s
+     */
+    public float update(long timestampNanos, float speed, float speedAccuracy) {
+        speeds[next] = speed;
+        next = (next + 1) % MEDIAN_WINDOW;
+        if (count < MEDIAN_WINDOW) {
+            count++;
+        }
+
+        double measurement = median();
+        double accuracy = speedAccuracy > 0 ? speedAccuracy : DEFAULT_SPEED_ACCURACY_MS;
+        double measurementVariance = accuracy * accuracy;
+
+        if (!initialized) {
+            estimate = measurement;
+            variance = measurementVariance;
+            initialized = true;
+        } else {
+            double dt = Math.min(MAX_GAP_SECONDS,
+                    Math.max(0, (timestampNanos - lastTimestampNanos) / 1e9));
+            variance += PROCESS_NOISE * dt;
+            double gain = variance / (variance + measurementVariance);
+            estimate += gain * (measurement - estimate);
+            variance *= (1 - gain);
+        }
+        lastTimestampNanos = timestampNanos;
+
+        // Speed can't be negative; clamp after filtering so the estimate itself stays unbiased
+        return (float) Math.max(0, estimate);
+    }
+
+    private double median() {
+        // Insertion sort of at most MEDIAN_WINDOW values
+        for (int i = 0; i < count; i++) {
+            float value = speeds[i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > value) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = value;
+        }
+        return count % 2 == 1
+                ? sorted[count / 2]
+                : (sorted[count / 2 - 1] + sorted[count / 2]) / 2.0;
+    }
+
+    /**
+     * Get the latest filtered speed in m/s.
+     */
+    public float getSpeed() {
+        return (float) Math.max(0, estimate);
+    }
+
+    public void reset() {
+        next = 0;
+        count = 0;
+        initialized = false;
+        estimate = 0;
+        variance = 0;
+        lastTimestampNanos = 0;
+    }
+}
@@ -1,6 +1,7 @@
 package at.semmal.pitstopper;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -33,6 +34,9 @@ public class SpeedHiveManager {
     
     private final SpeedHiveConfig config;
     private final ExecutorService executor;
+
+    // Reused for every poll, only touched on the executor thread
+    private final LeaderboardSnapshot leaderboardSnapshot = new LeaderboardSnapshot();
     
     /**
      * Callback interface for live timing data requests.
@@ -60,6 +64,16 @@ public class SpeedHiveManager {
         this.executor = Executors.newSingleThreadExecutor();
         Log.i(TAG, "SpeedHive manager initialized");
     }
+
+    /**
+     * Create a manager that serves live timing from another source and doesn't call the
+     * SpeedHive API, so it needs no API configuration. Subclasses must override
+     * fetchLeaderboard().
+     */
+    protected SpeedHiveManager() {
+        this.config = null;
+        this.executor = Executors.newSingleThreadExecutor();
+    }
     
     /**
      * Fetch current leaderboard data and extract information for a specific car.
@@ -93,10 +107,14 @@ public class SpeedHiveManager {
                                                eventId.trim(), sessionId.trim());
                 String urlString = config.buildUrl(endpoint);
                 
-                Log.d(TAG, "Fetching leaderboard from: " + urlString);
+                if (RaceLog.isLoggable(RaceLog.DEBUG)) {
+                    Log.d(TAG, "Fetching leaderboard from: " + urlString);
+                }
                 
+                long requestStart = SystemClock.elapsedRealtime();
                 HttpURLConnection connection = createConnection(urlString);
                 int responseCode = connection.getResponseCode();
+                RaceLog.log(RaceLog.Event.SPEEDHIVE_POLL, responseCode, SystemClock.elapsedRealtime() - requestStart);
                 
                 if (responseCode == HttpURLConnection.HTTP_OK) {
                     String responseBody = readResponse(connection);
@@ -129,32 +147,40 @@ public class SpeedHiveManager {
      * @throws JSONException if JSON parsing fails
      */
     private LiveTimingData parseLeaderboardResponse(String jsonResponse, String carNumber) throws JSONException {
-        Log.d(TAG, "Parsing leaderboard response for car #" + carNumber);
-        
         JSONObject root = new JSONObject(jsonResponse);
         JSONArray leaderboard = root.getJSONArray("l"); // 'l' is the leaderboard array
         
         int totalCompetitors = leaderboard.length();
-        
-        // Find our car in the leaderboard
+
+        // Publish the whole leaderboard, then find our car in it
+        leaderboardSnapshot.clearEntries();
+        JSONObject ourCompetitor = null;
         for (int i = 0; i < leaderboard.length(); i++) {
             JSONObject competitor = leaderboard.getJSONObject(i);
             String competitorNumber = competitor.optString("no", ""); // 'no' is car number
-            
+            leaderboardSnapshot.addEntry(competitorNumber, competitor.optString("nam", ""),
+                    competitor.optInt("pos", 0) == 1 ? LEADER_TEXT : competitor.optString("gp", ""));
+            if (competitor.optInt("pos", 0) > 0) {
+                leaderboardSnapshot.setPosition(i, competitor.optInt("pos", 0));
+            }
+
             if (carNumber.equals(competitorNumber)) {
-                // Found our car - extract data
-                int position = competitor.optInt("pos", 0);
-                String driverName = competitor.optString("nam", "Unknown");
-                String gapAhead = extractGapAhead(competitor, position);
-                String gapBehind = extractGapBehind(leaderboard, position);
-                
-                LiveTimingData data = new LiveTimingData(position, gapAhead, gapBehind, 
-                                                        carNumber, driverName, totalCompetitors);
-                
-                Log.i(TAG, "Found car data: " + data.toString());
-                return data;
+                ourCompetitor = competitor;
             }
         }
+        RaceStatePublisher.getInstance().publishLeaderboard(leaderboardSnapshot);
+
+        if (ourCompetitor != null) {
+            // Found our car - extract data
+            int position = ourCompetitor.optInt("pos", 0);
+            String driverName = ourCompetitor.optString("nam", "Unknown");
+            String gapAhead = extractGapAhead(ourCompetitor, position);
+            String gapBehind = extractGapBehind(leaderboard, position);
+
+            LiveTimingData data = new LiveTimingData(position, gapAhead, gapBehind,
+                                                    carNumber, driverName, totalCompetitors);
+            return data;
+        }
         
         // Car not found in leaderboard
         throw new RuntimeException("Car #" + carNumber + " not found in current leaderboard");
@@ -3,31 +3,56 @@ package at.semmal.pitstopper;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.location.Location;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
-
-import java.util.Locale;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Detects when the device has been standing still (not moving) for a specified duration.
  * Uses GPS location and the built-in speed measurement from Location.getSpeed().
+ * The decision logic lives in StandstillEngine; this class wires it to the platform
+ * (location source, accelerometer, threads, preferences).
+ *
+ * To save battery, GPS is not kept on for the whole pit window while the pit lane is
+ * unknown. A low-power accelerometer stage (MotionGate) watches for a likely stop first;
+ * high-accuracy GPS only runs while the car appears stopped, to confirm the standstill
+ * against the speed threshold. The stop is timed from when the accelerometer settled, since
+ * the first fix only comes seconds later. In case the gate never trips (an idling engine
+ * shaking the phone), GPS also takes a short look every GPS_FALLBACK_CHECK_MS. Devices
+ * without an accelerometer fall back to keeping GPS on while monitoring.
+ *
+ * The pit lane is learned from the fixes of the first confirmed stop (PitLaneGeofence) and
+ * stored in preferences once a later stop confirms it (see StandstillEngine); it can be
+ * forgotten in settings. Once known, stops outside the pit lane (a spin, a stop on track)
+ * are ignored, and outside the pit lane GPS drops to one fix every few seconds until a fix
+ * lands inside again. GPS then stays on for the whole pit window, so the pit lane entry
+ * is seen rather than guessed from the first fix after the stop.
+ *
+ * Location fixes and accelerometer samples are delivered in batches to a background thread,
+ * so they don't compete with the clock and alert animations. Fixes are judged by their
+ * measurement time, and only the resulting standstill/movement events are posted to the
+ * listener on the main thread.
  *
  * Usage:
  * 1. Create instance with context and listener
  * 2. Call startMonitoring() when pit window opens
  * 3. Call stopMonitoring() when pit window closes or alert is cleared
  * 4. Listener's onStandstillDetected() called when car stops for required duration
+ * 5. Listener's onPitStopRecorded() called with the stop timing when the car leaves
+ * 6. Call release() when the detector is no longer needed
  */
 public class StandstillDetector {
 
@@ -46,26 +71,66 @@ public class StandstillDetector {
          * Called when movement is detected after being still.
          */
         void onMovementDetected();
+
+        /**
+         * Called when a pit stop has been completed, just before onMovementDetected().
+         * The record is also kept in getPitStopHistory().
+         */
+        default void onPitStopRecorded(PitStopRecord record) {
+        }
     }
 
     // Speed threshold in m/s (5 km/h = 1.39 m/s, using 1.5 for safety margin)
-    private static final float STANDSTILL_SPEED_THRESHOLD_MS = 1.5f;
+    private static final float STANDSTILL_SPEED_THRESHOLD_MS = StandstillTracker.ENTER_SPEED_MS;
 
     // How long device must be still before triggering (in milliseconds)
-    private static final long STANDSTILL_DURATION_MS = 5000; // 5 seconds
+    private static final long STANDSTILL_DURATION_MS = StandstillEngine.STANDSTILL_DURATION_MS;
+
+    // Accelerometer sampling period (20 Hz) and how long the sensor hub may batch samples
+    private static final int ACCEL_SAMPLING_PERIOD_US = 50_000;
+    private static final int ACCEL_MAX_REPORT_LATENCY_US = 1_000_000;
 
-    // Location update interval
-    private static final long LOCATION_UPDATE_INTERVAL_MS = 1000; // 1 second
+    // An idling engine can shake the phone as much as driving, so the motion gate may never
+    // trip. GPS still takes a look this often while it is off; the first moving fix turns it
+    // off again.
+    private static final long GPS_FALLBACK_CHECK_MS = 20_000;
 
     private final Context context;
     private final StandstillListener listener;
-    private final FusedLocationProviderClient fusedLocationClient;
-    private LocationCallback locationCallback;
-
-    private boolean isMonitoring = false;
-    private long standstillStartTime = 0;
-    private boolean isCurrentlyStandstill = false;
-    private boolean standstillReported = false;
+    private final LocationSource locationSource;
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    private final MotionGate motionGate = new MotionGate();
+    private final HandlerThread workerThread;
+    private final Handler workerHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PitWindowPreferences preferences;
+    private final StandstillEngine engine;
+    private final PitStopHistory pitStopHistory = new PitStopHistory();
+    private final LocationSource.Listener fixListener = this::processFix;
+    private final Runnable gpsFallbackCheck = this::runGpsFallbackCheck;
+    private SensorEventListener accelerometerListener;
+
+    // Written on the caller's thread, read everywhere
+    private volatile boolean isMonitoring = false;
+
+    // Everything below is only modified on the worker thread
+    private volatile boolean gpsActive = false;
+    private volatile boolean isStandstill = false;  // engine.isStandstill(), readable from any thread
+    private volatile PitLaneGeofence pitLaneGeofence;  // engine.getPitLaneGeofence(), readable from any thread
+    private volatile long stopStartNanos = -1;  // engine.getStopStartNanos(), readable from any thread
+    private LocationSource.Mode gpsMode;
+
+    // GPS usage statistics for the current (or last) monitoring session, elapsed realtime
+    private volatile long monitoringStartTime = 0;
+    private volatile long monitoringStopTime = 0;
+    private volatile long gpsStartTime = 0;
+    private volatile long gpsOnMillis = 0;
+    private int gpsActivations = 0;
+
+    // Optional log of every processed fix, only touched on the worker thread
+    private TrackRecorder trackRecorder;
+    private File trackLogFile;
 
     /**
      * Creates a new StandstillDetector.
@@ -76,62 +141,192 @@ public class StandstillDetector {
     public StandstillDetector(@NonNull Context context, @NonNull StandstillListener listener) {
         this.context = context.getApplicationContext();
         this.listener = listener;
-        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
-        setupLocationCallback();
+        this.sensorManager = (SensorManager) this.context.getSystemService(Context.SENSOR_SERVICE);
+        this.accelerometer = sensorManager != null
+                ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER)
+                : null;
+        this.preferences = new PitWindowPreferences(this.context);
+        this.pitLaneGeofence = preferences.getPitLaneGeofence();
+        this.engine = new StandstillEngine(pitLaneGeofence, new EngineListener());
+
+        workerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+        locationSource = new FusedLocationSource(this.context, workerThread.getLooper());
+
+        setupAccelerometerListener();
     }
 
-    private void setupLocationCallback() {
-        locationCallback = new LocationCallback() {
+    /**
+     * Forwards engine results to the listener and preferences. Runs on the worker thread.
+     */
+    private class EngineListener implements StandstillEngine.Listener {
+        @Override
+        public void onStandstill(GpsFix fix) {
+            postToListener(true);
+        }
+
+        @Override
+        public void onPitStop(PitStopRecord record) {
+            pitStopHistory.add(record);
+            RaceLog.log(RaceLog.Event.PIT_STOP, record.getStationaryMillis(), record.getPitLaneMillis());
+            mainHandler.post(() -> {
+                if (isMonitoring) {
+                    listener.onPitStopRecorded(record);
+                }
+            });
+        }
+
+        @Override
+        public void onMovement(GpsFix fix) {
+            postToListener(false);
+        }
+
+        @Override
+        public void onPitLaneChanged(PitLaneGeofence geofence) {
+            pitLaneGeofence = geofence;
+            preferences.savePitLaneGeofence(geofence);
+            if (geofence != null) {
+                Log.i(TAG, "Confirmed pit lane (" + geofence.getVertexCount() + " vertices)");
+            } else {
+                Log.i(TAG, "Forgot pit lane, relearning at the next stop");
+            }
+        }
+    }
+
+    private void setupAccelerometerListener() {
+        accelerometerListener = new SensorEventListener() {
             @Override
-            public void onLocationResult(@NonNull LocationResult locationResult) {
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    processLocation(location);
+            public void onSensorChanged(SensorEvent event) {
+                if (motionGate.onSample(event.timestamp, event.values[0], event.values[1], event.values[2])) {
+                    onMotionGateChanged();
                 }
             }
+
+            @Override
+            public void onAccuracyChanged(Sensor sensor, int accuracy) {
+                // Not needed
+            }
         };
     }
 
     /**
-     * Process incoming location update and check for standstill.
-     * Uses Location.getSpeed() which is provided directly by GPS.
+     * Switch GPS on when the accelerometer suggests a stop, and off again once the car is
+     * clearly moving. While a standstill is being timed or reported, or the pit lane is
+     * known, GPS stays on so the GPS stage decides.
      */
-    private void processLocation(Location location) {
-        float speed = 0;
+    private void onMotionGateChanged() {
+        if (motionGate.isLikelyStopped()) {
+            if (!gpsActive) {
+                engine.onMotionStopped(motionGate.getStoppedSinceNanos());
+            }
+            startGps();
+        } else if (canHandBackToGate()) {
+            stopGps();
+        }
+    }
+
+    /**
+     * Check if GPS can be switched off until the accelerometer suggests a stop again.
+     */
+    private boolean canHandBackToGate() {
+        return accelerometer != null && !motionGate.isLikelyStopped() && !engine.isStill()
+                && engine.getPitLaneGeofence() == null;
+    }
 
-        // Location.getSpeed() returns speed in m/s
-        // It's only valid if hasSpeed() returns true
-        if (location.hasSpeed()) {
-            speed = location.getSpeed();
+    /**
+     * Process incoming fix and check for standstill.
+     */
+    private void processFix(GpsFix fix) {
+        recordFix(fix);
+
+        engine.onFix(fix);
+        isStandstill = engine.isStandstill();
+        stopStartNanos = engine.getStopStartNanos();
+
+        // Record current speed for debugging (formatted only if enabled or dumped)
+        RaceLog.log(RaceLog.Event.GPS_FIX, RaceLog.bits(fix.getSpeed()), RaceLog.bits(engine.getFilteredSpeed()),
+                engine.isStill() ? 1 : 0, engine.isStandstill() ? 1 : 0);
+
+        if (canHandBackToGate()) {
+            // GPS confirmed movement and the accelerometer agrees; hand back to it
+            stopGps();
+        } else {
+            // Fixes every second inside the pit lane, every few seconds outside
+            updateGpsMode(engine.getDesiredMode());
         }
+    }
 
-        // Log current speed for debugging
-        Log.d(TAG, String.format(Locale.US, "Speed: %.2f m/s (%.1f km/h) | hasSpeed: %b | isStill: %b | reported: %b",
-                speed, speed * 3.6f, location.hasSpeed(), isCurrentlyStandstill, standstillReported));
+    private void recordFix(GpsFix fix) {
+        if (trackRecorder == null) {
+            return;
+        }
+        try {
+            trackRecorder.write(fix);
+        } catch (IOException e) {
+            Log.e(TAG, "Track recording failed, disabling it", e);
+            closeTrackRecorder();
+        }
+    }
 
-        // Check if below standstill threshold
-        if (speed < STANDSTILL_SPEED_THRESHOLD_MS) {
-            if (!isCurrentlyStandstill) {
-                // Just started being still
-                standstillStartTime = System.currentTimeMillis();
-                isCurrentlyStandstill = true;
-            } else if (!standstillReported) {
-                // Check if we've been still long enough
-                long stillDuration = System.currentTimeMillis() - standstillStartTime;
-                if (stillDuration >= STANDSTILL_DURATION_MS) {
-                    standstillReported = true;
-                    listener.onStandstillDetected();
-                }
+    /**
+     * Record every processed fix to a track log, or stop recording.
+     * The file is opened on the worker thread; an existing log is appended to.
+     *
+     * @param file Track log file, or null to stop recording
+     */
+    public void setTrackLogFile(File file) {
+        workerHandler.post(() -> {
+            if (file != null && file.equals(trackLogFile) && trackRecorder != null) {
+                return; // Already recording to this file
             }
-        } else {
-            // Moving - reset standstill tracking
-            if (isCurrentlyStandstill && standstillReported) {
-                listener.onMovementDetected();
+            closeTrackRecorder();
+            if (file == null) {
+                return;
+            }
+
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log.w(TAG, "Could not create track log directory " + parent);
+                return;
             }
-            isCurrentlyStandstill = false;
-            standstillStartTime = 0;
-            standstillReported = false;
+            try {
+                trackRecorder = TrackRecorder.open(file);
+                trackLogFile = file;
+                Log.i(TAG, "Recording GPS track to " + file + " (" + trackRecorder.getRecordCount() + " fixes so far)");
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open track log " + file, e);
+            }
+        });
+    }
+
+    private void closeTrackRecorder() {
+        if (trackRecorder == null) {
+            return;
+        }
+        try {
+            trackRecorder.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close track log", e);
         }
+        trackRecorder = null;
+        trackLogFile = null;
+    }
+
+    /**
+     * Deliver a standstill or movement event on the main thread.
+     */
+    private void postToListener(boolean standstill) {
+        mainHandler.post(() -> {
+            if (!isMonitoring) {
+                return; // Stopped while the event was in flight
+            }
+            if (standstill) {
+                listener.onStandstillDetected();
+            } else {
+                listener.onMovementDetected();
+            }
+        });
     }
 
     /**
@@ -151,30 +346,88 @@ public class StandstillDetector {
             return false; // Permission not granted
         }
 
-        // Reset state
-        isCurrentlyStandstill = false;
-        standstillStartTime = 0;
-        standstillReported = false;
-
-        // Create location request
-        LocationRequest locationRequest = new LocationRequest.Builder(
-                Priority.PRIORITY_HIGH_ACCURACY,
-                LOCATION_UPDATE_INTERVAL_MS
-        )
-                .setMinUpdateIntervalMillis(LOCATION_UPDATE_INTERVAL_MS / 2)
-                .build();
-
-        // Start location updates
-        fusedLocationClient.requestLocationUpdates(
-                locationRequest,
-                locationCallback,
-                Looper.getMainLooper()
-        );
-
+        monitoringStartTime = SystemClock.elapsedRealtime();
+        monitoringStopTime = 0;
         isMonitoring = true;
+        workerHandler.post(this::startOnWorker);
         return true;
     }
 
+    private void startOnWorker() {
+        // Reset state
+        engine.onSourceStopped();
+        isStandstill = false;
+        stopStartNanos = -1;
+        motionGate.reset();
+        gpsOnMillis = 0;
+        gpsActivations = 0;
+
+        boolean gated = accelerometer != null && sensorManager.registerListener(accelerometerListener,
+                accelerometer, ACCEL_SAMPLING_PERIOD_US, ACCEL_MAX_REPORT_LATENCY_US, workerHandler);
+        if (!gated || engine.getPitLaneGeofence() != null) {
+            // No accelerometer, or the pit lane entry has to be seen
+            startGps();
+        }
+        if (gated) {
+            workerHandler.postDelayed(gpsFallbackCheck, GPS_FALLBACK_CHECK_MS);
+        }
+    }
+
+    /**
+     * Switch GPS on for a check even though the motion gate didn't trip, in case it can't
+     * tell the stopped car from a moving one.
+     */
+    private void runGpsFallbackCheck() {
+        if (!isMonitoring) {
+            return;
+        }
+        if (!gpsActive) {
+            Log.d(TAG, "Motion gate didn't trip, checking with GPS");
+            startGps();
+        }
+        workerHandler.postDelayed(gpsFallbackCheck, GPS_FALLBACK_CHECK_MS);
+    }
+
+    private void startGps() {
+        if (gpsActive) {
+            return;
+        }
+
+        // Start with high accuracy; the first fix outside the pit lane lowers it
+        gpsActive = true;
+        updateGpsMode(LocationSource.Mode.HIGH_ACCURACY);
+        gpsStartTime = SystemClock.elapsedRealtime();
+        gpsActivations++;
+    }
+
+    /**
+     * Switch the location source to the given mode. Does nothing if GPS is off or already
+     * running in that mode.
+     */
+    private void updateGpsMode(LocationSource.Mode mode) {
+        if (!gpsActive || mode == gpsMode) {
+            return;
+        }
+        locationSource.start(mode, fixListener);
+        gpsMode = mode;
+    }
+
+    private void stopGps() {
+        if (!gpsActive) {
+            return;
+        }
+
+        locationSource.stop();
+        gpsActive = false;
+        gpsMode = null;
+        gpsOnMillis += SystemClock.elapsedRealtime() - gpsStartTime;
+
+        // GPS is off, so it can no longer time a standstill
+        engine.onSourceStopped();
+        isStandstill = false;
+        stopStartNanos = -1;
+    }
+
     /**
      * Stop monitoring for standstill.
      * Call this when pit window closes or alert is cleared.
@@ -184,11 +437,32 @@ public class StandstillDetector {
             return;
         }
 
-        fusedLocationClient.removeLocationUpdates(locationCallback);
+        monitoringStopTime = SystemClock.elapsedRealtime();
         isMonitoring = false;
-        isCurrentlyStandstill = false;
-        standstillStartTime = 0;
-        standstillReported = false;
+        workerHandler.post(this::stopOnWorker);
+    }
+
+    private void stopOnWorker() {
+        workerHandler.removeCallbacks(gpsFallbackCheck);
+        if (accelerometer != null) {
+            sensorManager.unregisterListener(accelerometerListener);
+        }
+        stopGps();
+        engine.onSourceStopped();
+        isStandstill = false;
+        stopStartNanos = -1;
+
+        RaceLog.log(RaceLog.Event.GPS_USAGE, getMonitoringMillis(), getGpsOnMillis(), gpsActivations);
+    }
+
+    /**
+     * Stop monitoring and shut down the background thread.
+     * The detector can't be used afterwards.
+     */
+    public void release() {
+        stopMonitoring();
+        workerHandler.post(this::closeTrackRecorder);
+        workerThread.quitSafely();
     }
 
     /**
@@ -198,11 +472,78 @@ public class StandstillDetector {
         return isMonitoring;
     }
 
+    /**
+     * Check if high-accuracy GPS updates are currently requested.
+     */
+    public boolean isGpsActive() {
+        return gpsActive;
+    }
+
+    /**
+     * Get how long the current (or last) monitoring session has been running, in milliseconds.
+     */
+    public long getMonitoringMillis() {
+        if (monitoringStartTime == 0) {
+            return 0;
+        }
+        long end = isMonitoring ? SystemClock.elapsedRealtime() : monitoringStopTime;
+        return end - monitoringStartTime;
+    }
+
+    /**
+     * Get how long GPS was on during the current (or last) monitoring session, in milliseconds.
+     */
+    public long getGpsOnMillis() {
+        long total = gpsOnMillis;
+        if (gpsActive) {
+            total += SystemClock.elapsedRealtime() - gpsStartTime;
+        }
+        return total;
+    }
+
+    /**
+     * Get how many GPS-on milliseconds the accelerometer stage saved compared to keeping
+     * GPS on for the whole monitoring session.
+     */
+    public long getGpsSavedMillis() {
+        return getMonitoringMillis() - getGpsOnMillis();
+    }
+
+    /**
+     * Get the confirmed pit lane, or null if none is confirmed yet.
+     */
+    public PitLaneGeofence getPitLaneGeofence() {
+        return pitLaneGeofence;
+    }
+
+    /**
+     * Forget the learned pit lane, so the next confirmed stop learns it again.
+     */
+    public void clearPitLaneGeofence() {
+        workerHandler.post(engine::clearPitLaneGeofence);
+    }
+
+    /**
+     * Get the moment the current stop began (elapsed realtime nanos, interpolated between
+     * fixes), or -1 if the car isn't stopped. Set as soon as the car stops, well before
+     * onStandstillDetected().
+     */
+    public long getStopStartNanos() {
+        return stopStartNanos;
+    }
+
+    /**
+     * Get the completed pit stops, kept across monitoring sessions.
+     */
+    public PitStopHistory getPitStopHistory() {
+        return pitStopHistory;
+    }
+
     /**
      * Check if device is currently in standstill state.
      */
     public boolean isStandstill() {
-        return isCurrentlyStandstill && standstillReported;
+        return isStandstill;
     }
 
     /**
@@ -0,0 +1,305 @@
+package at.semmal.pitstopper;
+
+/**
+ * Platform-independent core of StandstillDetector: turns GPS fixes into standstill and
+ * movement events.
+ *
+ * Combines the StandstillTracker with the learned pit lane (PitLaneGeofence): stops
+ * outside the pit lane don't count, the pit lane is learned from the first confirmed stop,
+ * and the engine tells its caller which LocationSource.Mode it needs next. Time is taken
+ * from the fixes only, so the engine runs the same on live GPS and on replayed data.
+ *
+ * The first confirmed stop may have been a spin or a queue on track, so a freshly learned
+ * pit lane is provisional: a stop outside it that lasts longer than the stop it was learned
+ * from replaces it, and the next stop inside confirms it. Only confirmed pit lanes are
+ * passed on to be stored.
+ *
+ * Not thread safe; feed it from a single thread.
+ */
+public class StandstillEngine {
+
+    /**
+     * Receives the results of the engine. Called synchronously from onFix().
+     */
+    public interface Listener {
+        /**
+         * Called when the car has been standing still in the pit lane for the required duration.
+         *
+         * @param fix The fix that confirmed the stop
+         */
+        void onStandstill(GpsFix fix);
+
+        /**
+         * Called when the car moves again after a reported standstill, just before
+         * onMovement().
+         *
+         * @param record Timing of the completed stop
+         */
+        void onPitStop(PitStopRecord record);
+
+        /**
+         * Called when the car moves again after a reported standstill.
+         *
+         * @param fix The fix that showed movement
+         */
+        void onMovement(GpsFix fix);
+
+        /**
+         * Called when the pit lane was confirmed or forgotten.
+         *
+         * @param geofence The confirmed pit lane, or null if forgotten
+         */
+        void onPitLaneChanged(PitLaneGeofence geofence);
+    }
+
+    // How long the car must be still before a standstill is reported (in milliseconds)
+    static final long STANDSTILL_DURATION_MS = 5000; // 5 seconds
+
+    // Fixes faster than this after a stop are back on track and end pit lane learning (80 km/h)
+    static final float PIT_LANE_MAX_SPEED_MS = 22f;
+
+    // A stored pit lane further away than this belongs to another track and is relearned
+    static final double OTHER_TRACK_DISTANCE_METERS = 5000;
+
+    // Fixes less accurate than this can't place the car inside or outside the pit lane
+    static final float PIT_LANE_MAX_ACCURACY_METERS = 30f;
+
+    private final Listener listener;
+    private final StandstillTracker tracker;
+    private final long durationNanos;
+    private final PitLaneGeofence.Learner pitLaneLearner = new PitLaneGeofence.Learner();
+    private PitLaneGeofence pitLaneGeofence;
+    private boolean pitLaneConfirmed;
+    private boolean learningPitLane = false;
+    // How long the stop lasted that a provisional pit lane was learned from
+    private long pitLaneStopNanos = 0;
+    // A stop outside a provisional pit lane that was confirmed but not reported (yet)
+    private boolean outsideStop = false;
+    private boolean inPitLane = false;
+    private boolean hadFix = false; // Since the source started
+    private long pitLaneEntryNanos = -1;
+    private LocationSource.Mode desiredMode = LocationSource.Mode.HIGH_ACCURACY;
+
+    /**
+     * Creates a new StandstillEngine with the default standstill duration.
+     *
+     * @param pitLaneGeofence Previously learned pit lane, or null
+     * @param listener        Receives events
+     */
+    public StandstillEngine(PitLaneGeofence pitLaneGeofence, Listener listener) {
+        this(pitLaneGeofence, listener, STANDSTILL_DURATION_MS);
+    }
+
+    /**
+     * Creates a new StandstillEngine.
+     *
+     * @param pitLaneGeofence Previously learned pit lane, or null
+     * @param listener        Receives events
+     * @param durationMillis  How long the car must be still before a standstill is reported
+     */
+    public StandstillEngine(PitLaneGeofence pitLaneGeofence, Listener listener, long durationMillis) {
+        this.pitLaneGeofence = pitLaneGeofence;
+        this.pitLaneConfirmed = pitLaneGeofence != null;
+        this.listener = listener;
+        this.durationNanos = durationMillis * 1_000_000L;
+        this.tracker = new StandstillTracker(durationMillis);
+    }
+
+    /**
+     * Process one fix.
+     */
+    public void onFix(GpsFix fix) {
+        long now = fix.getElapsedRealtimeNanos();
+        boolean inPitLane = checkPitLane(fix);
+        if (!fix.hasSpeed()) {
+            // Can't tell a stop from driving past, so only good for the containment check
+            hadFix = true;
+            return;
+        }
+
+        // Stops outside a confirmed pit lane don't count, outside a provisional one they are timed
+        StandstillTracker.Event event = tracker.onFix(now, fix.getSpeed(), fix.getSpeedAccuracy(),
+                inPitLane || !pitLaneConfirmed);
+
+        if (event == StandstillTracker.Event.STANDSTILL) {
+            if (inPitLane) {
+                reportStandstill(fix);
+            } else {
+                outsideStop = true;
+            }
+        } else if (event == StandstillTracker.Event.MOVEMENT) {
+            if (outsideStop) {
+                outsideStop = false; // Shorter than the stop the pit lane was learned from
+            } else {
+                listener.onPitStop(new PitStopRecord(pitLaneEntryNanos, tracker.getStoppedAtNanos(),
+                        tracker.getMovedAtNanos()));
+                listener.onMovement(fix);
+            }
+        } else if (outsideStop && now - tracker.getStoppedAtNanos() > pitLaneStopNanos + durationNanos) {
+            // Outlasted the stop the pit lane was learned from, which probably wasn't a pit stop
+            outsideStop = false;
+            pitLaneGeofence = null;
+            reportStandstill(fix);
+        }
+
+        hadFix = true;
+
+        if (learningPitLane) {
+            if (tracker.isStill()) {
+                pitLaneStopNanos = now - tracker.getStoppedAtNanos();
+            }
+            if (fix.getSpeed() <= PIT_LANE_MAX_SPEED_MS) {
+                pitLaneLearner.addFix(fix.getLatitude(), fix.getLongitude());
+            } else {
+                finishPitLaneLearning();
+            }
+        }
+    }
+
+    private void reportStandstill(GpsFix fix) {
+        if (pitLaneGeofence == null) {
+            // Learn the pit lane from here on
+            pitLaneLearner.reset();
+            learningPitLane = true;
+            pitLaneStopNanos = 0;
+        } else if (!pitLaneConfirmed) {
+            // Second stop in the same place
+            pitLaneConfirmed = true;
+            listener.onPitLaneChanged(pitLaneGeofence);
+        }
+        listener.onStandstill(fix);
+    }
+
+    /**
+     * Check the fix against the learned pit lane and remember when the car entered it. If
+     * the first fix since the source started is already inside, the entry wasn't seen.
+     *
+     * @return true if the fix is inside the pit lane or no pit lane is known
+     */
+    private boolean checkPitLane(GpsFix fix) {
+        if (pitLaneGeofence != null && fix.getAccuracy() > PIT_LANE_MAX_ACCURACY_METERS) {
+            return inPitLane; // Keep the last answer
+        }
+        boolean inside = isInPitLane(fix);
+        if (!inside) {
+            pitLaneEntryNanos = -1;
+        } else if (!inPitLane && hadFix && pitLaneGeofence != null) {
+            pitLaneEntryNanos = fix.getElapsedRealtimeNanos();
+        }
+        inPitLane = inside;
+        return inside;
+    }
+
+    /**
+     * Containment check that also picks the mode for the next fixes: high accuracy inside
+     * (or while the pit lane is unknown), a slower check outside.
+     */
+    private boolean isInPitLane(GpsFix fix) {
+        if (pitLaneGeofence == null) {
+            desiredMode = LocationSource.Mode.HIGH_ACCURACY;
+            return true;
+        }
+
+        double latitude = fix.getLatitude();
+        double longitude = fix.getLongitude();
+        if (!pitLaneGeofence.isNear(latitude, longitude, OTHER_TRACK_DISTANCE_METERS)) {
+            // Stored pit lane belongs to another track, relearn it
+            clearPitLaneGeofence();
+            desiredMode = LocationSource.Mode.HIGH_ACCURACY;
+            return true;
+        }
+
+        boolean inside = pitLaneGeofence.contains(latitude, longitude);
+        desiredMode = inside ? LocationSource.Mode.HIGH_ACCURACY : LocationSource.Mode.PIT_LANE_CHECK;
+        return inside;
+    }
+
+    private void finishPitLaneLearning() {
+        learningPitLane = false;
+        PitLaneGeofence geofence = pitLaneLearner.build();
+        if (geofence != null) {
+            pitLaneGeofence = geofence;
+            pitLaneConfirmed = false;
+        }
+    }
+
+    /**
+     * Call when the accelerometer suggests the car stopped, before switching GPS on for it.
+     * If the first fixes are already slow, the stop is timed from here rather than from the
+     * first fix, which comes seconds later.
+     *
+     * @param stoppedSinceNanos When the car stopped (elapsed realtime), see MotionGate
+     */
+    public void onMotionStopped(long stoppedSinceNanos) {
+        tracker.setStopHint(stoppedSinceNanos);
+    }
+
+    /**
+     * Call when fixes stop coming (GPS switched off). Finishes pit lane learning and
+     * forgets the current stop, since it can no longer be timed.
+     */
+    public void onSourceStopped() {
+        if (learningPitLane) {
+            finishPitLaneLearning();
+        }
+        tracker.reset();
+        outsideStop = false;
+        inPitLane = false;
+        hadFix = false;
+        pitLaneEntryNanos = -1;
+        desiredMode = LocationSource.Mode.HIGH_ACCURACY;
+    }
+
+    /**
+     * Get the LocationSource mode the engine needs for the next fixes.
+     */
+    public LocationSource.Mode getDesiredMode() {
+        return desiredMode;
+    }
+
+    /**
+     * Check if a standstill is being timed or has been reported.
+     */
+    public boolean isStill() {
+        return tracker.isStill();
+    }
+
+    /**
+     * Get the interpolated moment the current stop began, or -1 if no stop is being timed.
+     */
+    public long getStopStartNanos() {
+        return tracker.isStill() ? tracker.getStoppedAtNanos() : -1;
+    }
+
+    /**
+     * Check if a standstill has been reported and the car has not moved since.
+     */
+    public boolean isStandstill() {
+        return tracker.isReported();
+    }
+
+    /**
+     * Get the latest filtered speed in m/s.
+     */
+    public float getFilteredSpeed() {
+        return tracker.getFilteredSpeed();
+    }
+
+    /**
+     * Get the learned pit lane, or null if not learned yet. May still be provisional.
+     */
+    public PitLaneGeofence getPitLaneGeofence() {
+        return pitLaneGeofence;
+    }
+
+    /**
+     * Forget the learned pit lane, so the next confirmed stop learns it again.
+     */
+    public void clearPitLaneGeofence() {
+        pitLaneGeofence = null;
+        pitLaneConfirmed = false;
+        learningPitLane = false;
+        outsideStop = false;
+        listener.onPitLaneChanged(null);
+    }
+}
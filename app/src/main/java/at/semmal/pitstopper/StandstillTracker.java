@@ -0,0 +1,219 @@
+package at.semmal.pitstopper;
+
+/**
+ * Decides standstill and movement from a sequence of GPS fixes.
+ *
+ * The filtered speed (SpeedFilter) decides whether the car is stopped, with separate
+ * thresholds for entering and leaving, so single spikes and readings jittering around the
+ * entry threshold don't restart the timer. Timing itself uses the raw fixes: the stop is
+ * timed from the start of the run of raw readings below the entry threshold that the
+ * filter settled in, which makes up for the lag of the filter without counting a crawl.
+ * The stop is only reported on a fix that is itself slow, so the filter lag can't stretch
+ * a brief slow-down on track into a stop either.
+ *
+ * For pit stop records, the moments the raw speed crossed the entry threshold on the way
+ * down and back up are interpolated between the fixes around them (getStoppedAtNanos(),
+ * getMovedAtNanos()), so stop durations are finer than the fix interval. When GPS is only
+ * switched on after the car stopped, the first fixes are already slow; the stop then starts
+ * at the hint given with setStopHint() instead.
+ *
+ * Time is taken from the fixes themselves, so batched or replayed fixes give the same
+ * result as live ones.
+ *
+ * Pure Java, so it can be tested against recorded fix sequences.
+ */
+public class StandstillTracker {
+
+    /**
+     * Result of processing one fix.
+     */
+    public enum Event {
+        /** Nothing changed */
+        NONE,
+        /** Still for the required duration, reported once per stop */
+        STANDSTILL,
+        /** Moving again after a reported standstill */
+        MOVEMENT
+    }
+
+    // Filtered speed below which a standstill starts (5 km/h = 1.39 m/s, using 1.5 for safety margin)
+    static final float ENTER_SPEED_MS = 1.5f;
+
+    // Filtered speed above which a standstill ends (9 km/h)
+    static final float LEAVE_SPEED_MS = 2.5f;
+
+    // A stop hint older than this before the first fix is ignored (time to first fix can be long)
+    static final long MAX_STOP_HINT_AGE_NANOS = 60_000_000_000L;
+
+    private final SpeedFilter filter = new SpeedFilter();
+    private final long durationNanos;
+
+    private boolean still = false;
+    private boolean reported = false;
+    private long stillSinceNanos = 0;
+
+    // Start of the current run of raw readings below the entry threshold, -1 if none; any
+    // reading at or above it ends the run, so a crawl in the pit lane isn't timed as a stop
+    private long slowSinceNanos = -1;
+    private long slowFromNanos = -1; // Interpolated moment that run started
+    private long stopHintNanos = -1;
+
+    // Interpolated threshold crossings of the raw speed, -1 if none
+    private long stoppedAtNanos = -1;
+    private long movedAtNanos = -1;
+    private long lastRiseNanos = -1;
+
+    // Previous raw reading, for interpolating the crossings
+    private long previousNanos = -1;
+    private float previousSpeed;
+
+    /**
+     * Creates a new StandstillTracker.
+     *
+     * @param durationMillis How long the car must be still before STANDSTILL is reported
+     */
+    public StandstillTracker(long durationMillis) {
+        this.durationNanos = durationMillis * 1_000_000L;
+    }
+
+    /**
+     * Process one fix.
+     *
+     * @param timestampNanos Measurement time of the fix (elapsed realtime)
+     * @param speed          Reported speed in m/s
+     * @param speedAccuracy  Reported speed accuracy (1 sigma) in m/s, 0 or NaN if unknown
+     * @param eligible       false if a stop here must not count (e.g. outside the pit lane)
+     * @return The resulting event
+     */
+    public Event onFix(long timestampNanos, float speed, float speedAccuracy, boolean eligible) {
+        float filtered = filter.update(timestampNanos, speed, speedAccuracy);
+
+        boolean hasPrevious = previousNanos >= 0 && timestampNanos > previousNanos;
+        if (speed >= ENTER_SPEED_MS) {
+            slowSinceNanos = -1;
+        } else if (slowSinceNanos < 0) {
+            slowSinceNanos = timestampNanos;
+            if (hasPrevious) {
+                slowFromNanos = previousSpeed >= ENTER_SPEED_MS
+                        ? interpolate(previousNanos, previousSpeed, timestampNanos, speed)
+                        : timestampNanos;
+            } else {
+                // Already slow on the first fix: stopped before GPS was on
+                slowFromNanos = stopHintNanos >= 0 && stopHintNanos <= timestampNanos
+                        && timestampNanos - stopHintNanos <= MAX_STOP_HINT_AGE_NANOS
+                        ? stopHintNanos : timestampNanos;
+            }
+        }
+        if (hasPrevious && previousSpeed < ENTER_SPEED_MS && speed >= ENTER_SPEED_MS) {
+            lastRiseNanos = interpolate(previousNanos, previousSpeed, timestampNanos, speed);
+        }
+        previousNanos = timestampNanos;
+        previousSpeed = speed;
+
+        if (!eligible || (still && filtered > LEAVE_SPEED_MS)) {
+            boolean wasReported = reported;
+            if (wasReported) {
+                // The filter lags behind; the car left when the raw readings last rose
+                movedAtNanos = lastRiseNanos > stoppedAtNanos ? lastRiseNanos : timestampNanos;
+            }
+            still = false;
+            reported = false;
+            stillSinceNanos = 0;
+            if (!eligible) {
+                slowSinceNanos = -1;
+            }
+            return wasReported ? Event.MOVEMENT : Event.NONE;
+        }
+
+        if (!still) {
+            if (filtered >= ENTER_SPEED_MS) {
+                return Event.NONE;
+            }
+            // The filter lags behind; time the stop from when the raw readings got slow
+            still = true;
+            stillSinceNanos = slowSinceNanos >= 0 ? slowSinceNanos : timestampNanos;
+            stoppedAtNanos = slowSinceNanos >= 0 ? slowFromNanos : timestampNanos;
+            movedAtNanos = -1;
+        }
+
+        if (!reported && speed <= LEAVE_SPEED_MS && timestampNanos - stillSinceNanos >= durationNanos) {
+            reported = true;
+            return Event.STANDSTILL;
+        }
+        return Event.NONE;
+    }
+
+    /**
+     * Tell the tracker when the car was last seen stopping by other means (the accelerometer).
+     * If the first fix after a reset is already slow, the stop is timed from there instead of
+     * from that fix. Cleared by reset().
+     *
+     * @param timestampNanos Elapsed realtime the car stopped, or -1 to clear
+     */
+    public void setStopHint(long timestampNanos) {
+        stopHintNanos = timestampNanos;
+    }
+
+    /**
+     * Time at which the speed passed ENTER_SPEED_MS, assuming it changed linearly between
+     * two readings on either side of it.
+     */
+    private static long interpolate(long fromNanos, float fromSpeed, long toNanos, float toSpeed) {
+        double fraction = (fromSpeed - ENTER_SPEED_MS) / (double) (fromSpeed - toSpeed);
+        return fromNanos + Math.round(fraction * (toNanos - fromNanos));
+    }
+
+    /**
+     * Get the interpolated moment the speed dropped below the threshold for the current or
+     * last stop, or -1 if there was none.
+     */
+    public long getStoppedAtNanos() {
+        return stoppedAtNanos;
+    }
+
+    /**
+     * Get the interpolated moment the car started moving after the last reported standstill,
+     * or -1 if it hasn't moved since (or nothing was reported).
+     */
+    public long getMovedAtNanos() {
+        return movedAtNanos;
+    }
+
+    /**
+     * Check if a standstill is being timed or has been reported.
+     */
+    public boolean isStill() {
+        return still;
+    }
+
+    /**
+     * Check if a standstill has been reported and the car has not moved since.
+     */
+    public boolean isReported() {
+        return reported;
+    }
+
+    /**
+     * Get the latest filtered speed in m/s.
+     */
+    public float getFilteredSpeed() {
+        return filter.getSpeed();
+    }
+
+    /**
+     * Forget all fixes, e.g. when GPS is switched off.
+     */
+    public void reset() {
+        filter.reset();
+        still = false;
+        reported = false;
+        stillSinceNanos = 0;
+        slowSinceNanos = -1;
+        stoppedAtNanos = -1;
+        movedAtNanos = -1;
+        lastRiseNanos = -1;
+        slowFromNanos = -1;
+        stopHintNanos = -1;
+        previousNanos = -1;
+    }
+}
@@ -0,0 +1,154 @@
+package at.semmal.pitstopper;
+
+import java.util.Locale;
+
+/**
+ * Start/finish line as a short segment across the track, crossed in one direction per lap.
+ *
+ * Positions are projected to a local flat plane (meters around the line's midpoint), which
+ * is exact enough for the few hundred meters between two fixes. The segment is stored from
+ * the left to the right end as seen in the driving direction, so a forward crossing goes
+ * from the negative to the positive side of it.
+ *
+ * Usage:
+ * 1. Create with across() from two fixes on the line, or from the two end points
+ * 2. Persist with toPreferenceString() / fromPreferenceString()
+ * 3. Call crossing() for every pair of consecutive fixes
+ */
+public class StartFinishLine {
+
+    // Default length of the line to either side of the marked position
+    static final double DEFAULT_HALF_WIDTH_METERS = 20.0;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+    // End points in degrees, left to right in driving direction
+    private final double leftLat;
+    private final double leftLon;
+    private final double rightLat;
+    private final double rightLon;
+
+    // Local plane around the midpoint
+    private final double originLat;
+    private final double originLon;
+    private final double metersPerDegLat;
+    private final double metersPerDegLon;
+    private final double leftX;
+    private final double leftY;
+    private final double lineX;
+    private final double lineY;
+
+    StartFinishLine(double leftLat, double leftLon, double rightLat, double rightLon) {
+        this.leftLat = leftLat;
+        this.leftLon = leftLon;
+        this.rightLat = rightLat;
+        this.rightLon = rightLon;
+
+        originLat = (leftLat + rightLat) / 2;
+        originLon = (leftLon + rightLon) / 2;
+        metersPerDegLat = Math.toRadians(EARTH_RADIUS_METERS);
+        metersPerDegLon = metersPerDegLat * Math.cos(Math.toRadians(originLat));
+        leftX = x(leftLon);
+        leftY = y(leftLat);
+        lineX = x(rightLon) - leftX;
+        lineY = y(rightLat) - leftY;
+    }
+
+    /**
+     * Create a line through the later of two fixes, perpendicular to the direction of travel
+     * between them.
+     *
+     * @param halfWidthMeters Length of the line to either side of the position
+     * @return The line, or null if the fixes are too close together to give a direction
+     */
+    public static StartFinishLine across(double fromLat, double fromLon, double lat, double lon,
+                                         double halfWidthMeters) {
+        double metersPerDegLat = Math.toRadians(EARTH_RADIUS_METERS);
+        double metersPerDegLon = metersPerDegLat * Math.cos(Math.toRadians(lat));
+        double dx = (lon - fromLon) * metersPerDegLon;
+        double dy = (lat - fromLat) * metersPerDegLat;
+        double length = Math.hypot(dx, dy);
+        if (length < 1.0) {
+            return null;
+        }
+
+        // Left normal of the direction of travel, scaled to the half width
+        double nx = -dy / length * halfWidthMeters;
+        double ny = dx / length * halfWidthMeters;
+        return new StartFinishLine(lat + ny / metersPerDegLat, lon + nx / metersPerDegLon,
+                lat - ny / metersPerDegLat, lon - nx / metersPerDegLon);
+    }
+
+    /**
+     * Check if the way from one fix to the next crosses the line in driving direction.
+     *
+     * @return Fraction of the way (0..1) at which the line is crossed, or -1 if it isn't
+     */
+    public double crossing(double fromLat, double fromLon, double toLat, double toLon) {
+        double px = x(fromLon) - leftX;
+        double py = y(fromLat) - leftY;
+        double qx = x(toLon) - leftX;
+        double qy = y(toLat) - leftY;
+
+        // Side of the line, positive after a forward crossing
+        double fromSide = lineX * py - lineY * px;
+        double toSide = lineX * qy - lineY * qx;
+        if (fromSide >= 0 || toSide < 0) {
+            return -1;
+        }
+
+        double t = fromSide / (fromSide - toSide);
+
+        // Crossing point must lie on the segment, not on its extension
+        double cx = px + t * (qx - px);
+        double cy = py + t * (qy - py);
+        double u = (cx * lineX + cy * lineY) / (lineX * lineX + lineY * lineY);
+        if (u < 0 || u > 1) {
+            return -1;
+        }
+        return t;
+    }
+
+    private double x(double lon) {
+        return (lon - originLon) * metersPerDegLon;
+    }
+
+    private double y(double lat) {
+        return (lat - originLat) * metersPerDegLat;
+    }
+
+    /**
+     * Serialize as "leftLat,leftLon;rightLat,rightLon".
+     */
+    public String toPreferenceString() {
+        return String.format(Locale.US, "%.7f,%.7f;%.7f,%.7f", leftLat, leftLon, rightLat, rightLon);
+    }
+
+    /**
+     * Parse a line stored with toPreferenceString().
+     *
+     * @return The line, or null if the value is empty or malformed
+     */
+    public static StartFinishLine fromPreferenceString(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        String[] ends = value.split(";");
+        if (ends.length != 2) {
+            return null;
+        }
+        String[] left = ends[0].split(",");
+        String[] right = ends[1].split(",");
+        if (left.length != 2 || right.length != 2) {
+            return null;
+        }
+
+        try {
+            return new StartFinishLine(Double.parseDouble(left[0]), Double.parseDouble(left[1]),
+                    Double.parseDouble(right[0]), Double.parseDouble(right[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package at.semmal.pitstopper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-client delivery statistics for the embedded broker, fed from Moquette's interceptor
+ * events and from the app's own publishes.
+ *
+ * Moquette doesn't expose how many messages each client session holds, so they are
+ * tracked from the outside: every published message is matched against each client's
+ * subscriptions. Reliable (QoS 1) messages stay pending for a client until it acknowledges
+ * them, which gives its queue depth. A client with a reliable message pending for longer
+ * than LAG_MILLIS is lagging; Moquette drops QoS 0 messages for a client whose socket
+ * can't take more data (session_queue_size plays no part in that, it sizes the broker's
+ * shared command queues), so conflatable messages routed to a lagging client are counted
+ * as dropped. They are superseded by a later value, which is all a lagging client gets.
+ *
+ * Moquette reports acknowledgements with the username only, so acks are attributed to the
+ * connected client with that username. Clients without a username, or subscribed with
+ * QoS 0 (they get no reliable delivery), show no queue depth.
+ *
+ * Thread safe.
+ */
+public class SubscriberTracker {
+
+    // A reliable message pending this long makes the client lagging
+    static final long LAG_MILLIS = 2000;
+
+    // Pending messages tracked per client, in case acks are misattributed
+    private static final int MAX_TRACKED_PENDING = 1000;
+
+    /**
+     * Statistics of one client at the time of the snapshot.
+     */
+    public static final class ClientStats {
+        private final String clientId;
+        private final int subscriptions;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long routed;
+        private final long dropped;
+        private final boolean lagging;
+
+        ClientStats(String clientId, int subscriptions, int queueDepth, int maxQueueDepth, long routed,
+                    long dropped, boolean lagging) {
+            this.clientId = clientId;
+            this.subscriptions = subscriptions;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.routed = routed;
+            this.dropped = dropped;
+            this.lagging = lagging;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public int getSubscriptions() {
+            return subscriptions;
+        }
+
+        /**
+         * Get the number of reliable messages sent but not acknowledged yet.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        /**
+         * Get the number of messages matching the client's subscriptions.
+         */
+        public long getRouted() {
+            return routed;
+        }
+
+        /**
+         * Get the number of conflatable messages routed while the client was lagging.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        public boolean isLagging() {
+            return lagging;
+        }
+    }
+
+    private static final class Client {
+        final String username;
+        final Map<String, Integer> filters = new LinkedHashMap<>(); // Filter to QoS
+        final ArrayDeque<Long> pendingSince = new ArrayDeque<>();
+        int maxQueueDepth;
+        long routed;
+        long dropped;
+
+        Client(String username) {
+            this.username = username;
+        }
+
+        /**
+         * Get the highest QoS the client subscribed the topic with, or -1 if it didn't.
+         */
+        int subscribedQos(String topic) {
+            int qos = -1;
+            for (Map.Entry<String, Integer> filter : filters.entrySet()) {
+                if (matches(filter.getKey(), topic)) {
+                    qos = Math.max(qos, filter.getValue());
+                }
+            }
+            return qos;
+        }
+
+        boolean isLagging(long nowMillis) {
+            Long oldest = pendingSince.peek();
+            return oldest != null && nowMillis - oldest > LAG_MILLIS;
+        }
+    }
+
+    private final Map<String, Client> clients = new LinkedHashMap<>();
+
+    public synchronized void onConnect(String clientId, String username) {
+        clients.put(clientId, new Client(username));
+    }
+
+    public synchronized void onDisconnect(String clientId) {
+        clients.remove(clientId);
+    }
+
+    public synchronized void onSubscribe(String clientId, String topicFilter, int qos) {
+        Client client = clients.get(clientId);
+        if (client != null) {
+            client.filters.put(topicFilter, qos);
+        }
+    }
+
+    public synchronized void onUnsubscribe(String clientId, String topicFilter) {
+        Client client = clients.get(clientId);
+        if (client != null) {
+            client.filters.remove(topicFilter);
+        }
+    }
+
+    /**
+     * Record a message published by the app.
+     *
+     * @return The number of clients it was routed to
+     */
+    public synchronized int onPublished(String topic, boolean reliable, long nowMillis) {
+        int routed = 0;
+        for (Client client : clients.values()) {
+            int qos = client.subscribedQos(topic);
+            if (qos < 0) {
+                continue;
+            }
+            routed++;
+            client.routed++;
+            if (reliable) {
+                if (qos == 0 || client.username == null || client.pendingSince.size() >= MAX_TRACKED_PENDING) {
+                    continue; // No ack will come, or none we can attribute
+                }
+                client.pendingSince.add(nowMillis);
+                client.maxQueueDepth = Math.max(client.maxQueueDepth, client.pendingSince.size());
+            } else if (client.isLagging(nowMillis)) {
+                client.dropped++;
+            }
+        }
+        return routed;
+    }
+
+    /**
+     * Record an acknowledgement of a reliable message.
+     *
+     * @return Milliseconds since the acknowledged message was published, or -1 if the ack
+     * can't be attributed to a pending message
+     */
+    public synchronized long onAcknowledged(String username, long nowMillis) {
+        if (username == null) {
+            return -1;
+        }
+        Client match = null;
+        for (Client client : clients.values()) {
+            if (username.equals(client.username)) {
+                if (match != null) {
+                    return -1; // Ambiguous
+                }
+                match = client;
+            }
+        }
+        Long since = match != null ? match.pendingSince.poll() : null;
+        return since != null ? nowMillis - since : -1;
+    }
+
+    /**
+     * Forget all clients, e.g. when the broker stops.
+     */
+    public synchronized void clear() {
+        clients.clear();
+    }
+
+    /**
+     * Get the statistics of all connected clients, in connection order.
+     */
+    public synchronized List<ClientStats> snapshot(long nowMillis) {
+        List<ClientStats> stats = new ArrayList<>(clients.size());
+        for (Map.Entry<String, Client> entry : clients.entrySet()) {
+            Client client = entry.getValue();
+            stats.add(new ClientStats(entry.getKey(), client.filters.size(), client.pendingSince.size(),
+                    client.maxQueueDepth, client.routed, client.dropped, client.isLagging(nowMillis)));
+        }
+        return stats;
+    }
+
+    /**
+     * Check if an MQTT topic filter (with + and # wildcards) matches a topic. Wildcards at
+     * the first level don't match $-topics.
+     */
+    static boolean matches(String filter, String topic) {
+        if (topic.startsWith("$") && (filter.startsWith("+") || filter.startsWith("#"))) {
+            return false;
+        }
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+}
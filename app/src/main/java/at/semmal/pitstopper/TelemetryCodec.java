@@ -0,0 +1,540 @@
+package at.semmal.pitstopper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compact binary encoding of the race state and leaderboard for MQTT.
+ *
+ * Every message starts with a version byte and a type byte, followed by the fields of that
+ * type in a fixed order. Numbers are varints (7 bits per byte, little end first), signed
+ * numbers zigzag encoded first, so small values take a single byte. Unknown gaps are
+ * written as 0 and known ones shifted up by one.
+ *
+ * Compatibility: fields are only ever appended to a type, and decoders ignore trailing
+ * bytes they don't know. Incompatible changes bump VERSION; decoders reject newer
+ * versions.
+ *
+ * Layouts (v1):
+ * - RACE_STATE:  flags (1 = on alert, 2 = standstill, 4 = timing), countdown s,
+ *                zigzag window index, last pit stop ms + 1,
+ *                [timing: position, total, ahead laps, ahead ms + 1, behind laps, behind ms + 1]
+ * - CAR_TABLE:   table epoch, car count, per car: number, name (varint length + UTF-8)
+ * - LEADERBOARD: table epoch, entry count, per entry in position order:
+ *                car index, laps behind car ahead, ms behind car ahead + 1,
+ *                then per entry its SpeedHive position (added later; list index + 1
+ *                if missing)
+ * - LEADERBOARD_KEYFRAME: sequence number, then as LEADERBOARD without positions
+ * - LEADERBOARD_DELTA:    sequence number, table epoch, entry count, changed count, per
+ *                changed entry in position order: positions skipped since the previous
+ *                changed entry * 2 + 1 if only the time changed, [unless only the time
+ *                changed: car index, laps behind car ahead], ms behind car ahead + 1
+ *
+ * Keyframes and deltas form a stream (see LeaderboardStream): a delta only lists the
+ * positions that differ from the message with the previous sequence number.
+ *
+ * Encoding writes into a reusable Writer and decoding fills reusable RaceState /
+ * LeaderboardSnapshot instances, so the frequent messages don't allocate. Only the car
+ * table, sent when a car joins, creates strings.
+ */
+public final class TelemetryCodec {
+
+    static final int VERSION = 1;
+
+    static final int TYPE_RACE_STATE = 1;
+    static final int TYPE_CAR_TABLE = 2;
+    static final int TYPE_LEADERBOARD = 3;
+    static final int TYPE_LEADERBOARD_KEYFRAME = 4;
+    static final int TYPE_LEADERBOARD_DELTA = 5;
+
+    private static final int FLAG_ON_ALERT = 1;
+    private static final int FLAG_STANDSTILL = 2;
+    private static final int FLAG_TIMING = 4;
+
+    private TelemetryCodec() {
+    }
+
+    // --- Encoding ---
+
+    public static void encodeRaceState(RaceState state, Writer out) {
+        out.reset();
+        out.writeByte(VERSION);
+        out.writeByte(TYPE_RACE_STATE);
+
+        int flags = 0;
+        if (state.isOnAlert()) {
+            flags |= FLAG_ON_ALERT;
+        }
+        if (state.isStandstill()) {
+            flags |= FLAG_STANDSTILL;
+        }
+        if (state.hasTiming()) {
+            flags |= FLAG_TIMING;
+        }
+        out.writeVarint(flags);
+        out.writeVarint(Math.max(0, state.getCountdownSeconds()));
+        out.writeSignedVarint(state.getWindowIndex());
+        out.writeVarint(state.getLastPitStopMillis() + 1);
+
+        if (state.hasTiming()) {
+            out.writeVarint(state.getPosition());
+            out.writeVarint(state.getTotalCompetitors());
+            out.writeVarint(state.getGapAheadLaps());
+            out.writeVarint(state.getGapAheadMillis() + 1);
+            out.writeVarint(state.getGapBehindLaps());
+            out.writeVarint(state.getGapBehindMillis() + 1);
+        }
+    }
+
+    public static void encodeCarTable(LeaderboardSnapshot snapshot, Writer out) {
+        out.reset();
+        out.writeByte(VERSION);
+        out.writeByte(TYPE_CAR_TABLE);
+        out.writeVarint(snapshot.getTableEpoch());
+        out.writeVarint(snapshot.getCarCount());
+        for (int i = 0; i < snapshot.getCarCount(); i++) {
+            out.writeString(snapshot.getTableCarNumber(i));
+            out.writeString(snapshot.getTableName(i));
+        }
+    }
+
+    public static void encodeLeaderboard(LeaderboardSnapshot snapshot, Writer out) {
+        out.reset();
+        out.writeByte(VERSION);
+        out.writeByte(TYPE_LEADERBOARD);
+        writeEntries(snapshot, out);
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            out.writeVarint(snapshot.getPosition(i));
+        }
+    }
+
+    public static void encodeLeaderboardKeyframe(long seq, LeaderboardSnapshot snapshot, Writer out) {
+        out.reset();
+        out.writeByte(VERSION);
+        out.writeByte(TYPE_LEADERBOARD_KEYFRAME);
+        out.writeVarint(seq);
+        writeEntries(snapshot, out);
+    }
+
+    /**
+     * Encode the positions of current that differ from previous.
+     *
+     * @return The number of changed positions
+     */
+    public static int encodeLeaderboardDelta(long seq, LeaderboardSnapshot previous, LeaderboardSnapshot current,
+                                             Writer out) {
+        int changed = 0;
+        for (int i = 0; i < current.getSize(); i++) {
+            if (!current.entryEquals(i, previous)) {
+                changed++;
+            }
+        }
+
+        out.reset();
+        out.writeByte(VERSION);
+        out.writeByte(TYPE_LEADERBOARD_DELTA);
+        out.writeVarint(seq);
+        out.writeVarint(current.getTableEpoch());
+        out.writeVarint(current.getSize());
+        out.writeVarint(changed);
+        int last = -1;
+        for (int i = 0; i < current.getSize(); i++) {
+            if (!current.entryEquals(i, previous)) {
+                // Usually only the interval of a car that crossed the line changed
+                boolean timeOnly = i < previous.getSize() && current.getCarIndex(i) == previous.getCarIndex(i)
+                        && current.getGapLaps(i) == previous.getGapLaps(i);
+                out.writeVarint((i - last - 1) * 2L + (timeOnly ? 1 : 0));
+                if (!timeOnly) {
+                    out.writeVarint(current.getCarIndex(i));
+                    out.writeVarint(current.getGapLaps(i));
+                }
+                out.writeVarint(current.getGapMillis(i) + 1);
+                last = i;
+            }
+        }
+        return changed;
+    }
+
+    private static void writeEntries(LeaderboardSnapshot snapshot, Writer out) {
+        out.writeVarint(snapshot.getTableEpoch());
+        out.writeVarint(snapshot.getSize());
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            out.writeVarint(snapshot.getCarIndex(i));
+            out.writeVarint(snapshot.getGapLaps(i));
+            out.writeVarint(snapshot.getGapMillis(i) + 1);
+        }
+    }
+
+    // --- Decoding ---
+
+    /**
+     * Read the header and return the message type.
+     *
+     * @throws IllegalArgumentException if the message is from a newer, incompatible version
+     */
+    public static int readType(Reader in) {
+        int version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported telemetry version " + version);
+        }
+        return in.readByte();
+    }
+
+    public static void decodeRaceState(Reader in, RaceState state) {
+        expectType(in, TYPE_RACE_STATE);
+
+        int flags = (int) in.readVarint();
+        long countdown = in.readVarint();
+        int window = (int) in.readSignedVarint();
+        state.setWindow((flags & FLAG_ON_ALERT) != 0, countdown, window);
+        state.setStandstill((flags & FLAG_STANDSTILL) != 0);
+        state.setLastPitStopMillis(in.readVarint() - 1);
+
+        if ((flags & FLAG_TIMING) != 0) {
+            int position = (int) in.readVarint();
+            int total = (int) in.readVarint();
+            int aheadLaps = (int) in.readVarint();
+            long aheadMillis = in.readVarint() - 1;
+            int behindLaps = (int) in.readVarint();
+            long behindMillis = in.readVarint() - 1;
+            state.setTiming(position, total, aheadLaps, aheadMillis, behindLaps, behindMillis);
+        } else {
+            state.clearTiming();
+        }
+    }
+
+    public static void decodeCarTable(Reader in, LeaderboardSnapshot snapshot) {
+        expectType(in, TYPE_CAR_TABLE);
+
+        int epoch = (int) in.readVarint();
+        int count = checkCount(in.readVarint(), in);
+        List<String> numbers = new ArrayList<>(count);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(in.readString());
+            names.add(in.readString());
+        }
+        snapshot.setCarTable(epoch, numbers, names);
+    }
+
+    /**
+     * Decode leaderboard entries against the car table already in the snapshot.
+     *
+     * @return false if the message refers to a different car table epoch (decode the
+     *         current car table first); the snapshot is left unchanged then
+     */
+    public static boolean decodeLeaderboard(Reader in, LeaderboardSnapshot snapshot) {
+        expectType(in, TYPE_LEADERBOARD);
+
+        if (!readEntries(in, snapshot)) {
+            return false;
+        }
+        if (in.remaining() > 0) { // Positions, missing from older hubs
+            for (int i = 0; i < snapshot.getSize(); i++) {
+                long position = in.readVarint();
+                if (position < 1 || position > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Bad position " + position);
+                }
+                snapshot.setPosition(i, (int) position);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a leaderboard keyframe against the car table already in the snapshot.
+     *
+     * @return false if the message refers to a different car table epoch; the snapshot is
+     *         left unchanged then
+     */
+    public static boolean decodeLeaderboardKeyframe(Reader in, LeaderboardSnapshot snapshot) {
+        expectType(in, TYPE_LEADERBOARD_KEYFRAME);
+        in.readVarint(); // Sequence number, checked by LeaderboardStream
+        return readEntries(in, snapshot);
+    }
+
+    /**
+     * Apply a leaderboard delta to the snapshot holding the message before it.
+     *
+     * @return false if the message refers to a different car table epoch; the snapshot is
+     *         left unchanged then
+     */
+    public static boolean decodeLeaderboardDelta(Reader in, LeaderboardSnapshot snapshot) {
+        expectType(in, TYPE_LEADERBOARD_DELTA);
+        in.readVarint(); // Sequence number, checked by LeaderboardStream
+
+        int epoch = (int) in.readVarint();
+        if (epoch != snapshot.getTableEpoch()) {
+            return false;
+        }
+        long count = in.readVarint();
+        int changed = checkCount(in.readVarint(), in);
+        // Positions the previous message didn't have must all be in the delta
+        int previousSize = snapshot.getSize();
+        if (changed > count || count > previousSize + changed) {
+            throw new IllegalArgumentException("Bad entry count " + count);
+        }
+        int added = (int) Math.max(0, count - previousSize);
+        snapshot.setSize((int) count);
+        int position = -1;
+        for (int i = 0; i < changed; i++) {
+            long skip = in.readVarint();
+            position += (int) Math.min(skip >>> 1, count) + 1;
+            if (position >= count) {
+                throw new IllegalArgumentException("Bad position " + position);
+            }
+            boolean timeOnly = (skip & 1) != 0;
+            if (timeOnly && position >= previousSize) {
+                throw new IllegalArgumentException("No previous entry at " + position);
+            }
+            int car = timeOnly ? snapshot.getCarIndex(position) : readCarIndex(in, snapshot);
+            int laps = timeOnly ? snapshot.getGapLaps(position) : readLaps(in);
+            long millis = readGapMillis(in);
+            snapshot.setIndexedEntry(position, car, laps, millis);
+            if (position >= previousSize) {
+                added--;
+            }
+        }
+        if (added != 0) {
+            throw new IllegalArgumentException("Delta misses new positions");
+        }
+        return true;
+    }
+
+    private static boolean readEntries(Reader in, LeaderboardSnapshot snapshot) {
+        int epoch = (int) in.readVarint();
+        if (epoch != snapshot.getTableEpoch()) {
+            return false;
+        }
+        int count = checkCount(in.readVarint(), in);
+        snapshot.clearEntries();
+        for (int i = 0; i < count; i++) {
+            int car = readCarIndex(in, snapshot);
+            int laps = readLaps(in);
+            long millis = readGapMillis(in);
+            snapshot.addIndexedEntry(car, laps, millis);
+        }
+        return true;
+    }
+
+    private static int readCarIndex(Reader in, LeaderboardSnapshot snapshot) {
+        long car = in.readVarint();
+        if (car < 0 || car >= snapshot.getCarCount()) {
+            throw new IllegalArgumentException("Unknown car index " + car);
+        }
+        return (int) car;
+    }
+
+    private static int readLaps(Reader in) {
+        long laps = in.readVarint();
+        if (laps < 0 || laps > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad lap gap " + laps);
+        }
+        return (int) laps;
+    }
+
+    // Overlong varints wrap around to negative numbers
+    private static long readGapMillis(Reader in) {
+        long millis = in.readVarint() - 1;
+        if (millis < LeaderboardSnapshot.GAP_UNKNOWN) {
+            throw new IllegalArgumentException("Bad time gap " + millis);
+        }
+        return millis;
+    }
+
+    private static void expectType(Reader in, int type) {
+        int actual = readType(in);
+        if (actual != type) {
+            throw new IllegalArgumentException("Expected message type " + type + " but got " + actual);
+        }
+    }
+
+    // Every element takes at least one byte, so a larger count is corrupt
+    private static int checkCount(long count, Reader in) {
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Bad element count " + count);
+        }
+        return (int) count;
+    }
+
+    // --- JSON mirror, for debugging ---
+
+    public static void toJson(RaceState state, StringBuilder out) {
+        out.setLength(0);
+        out.append("{\"alert\":\"").append(state.isOnAlert() ? "ON_ALERT" : "IDLE")
+                .append("\",\"countdown\":").append(state.getCountdownSeconds())
+                .append(",\"window\":").append(state.getWindowIndex())
+                .append(",\"standstill\":").append(state.isStandstill())
+                .append(",\"last_pit_stop_ms\":").append(state.getLastPitStopMillis());
+        if (state.hasTiming()) {
+            out.append(",\"position\":").append(state.getPosition())
+                    .append(",\"total\":").append(state.getTotalCompetitors())
+                    .append(",\"gap_ahead\":\"")
+                    .append(LeaderboardSnapshot.formatGap(state.getGapAheadLaps(), state.getGapAheadMillis()))
+                    .append("\",\"gap_behind\":\"")
+                    .append(LeaderboardSnapshot.formatGap(state.getGapBehindLaps(), state.getGapBehindMillis()))
+                    .append('"');
+        }
+        out.append('}');
+    }
+
+    public static void toJson(LeaderboardSnapshot snapshot, StringBuilder out) {
+        out.setLength(0);
+        out.append('[');
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"pos\":").append(i + 1).append(",\"no\":");
+            appendJsonString(snapshot.getCarNumber(i), out);
+            out.append(",\"name\":");
+            appendJsonString(snapshot.getName(i), out);
+            out.append(",\"gap\":\"")
+                    .append(LeaderboardSnapshot.formatGap(snapshot.getGapLaps(i), snapshot.getGapMillis(i)))
+                    .append("\"}");
+        }
+        out.append(']');
+    }
+
+    static void appendJsonString(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Growable output buffer. Reuse one per thread.
+     */
+    public static final class Writer {
+        private byte[] buffer;
+        private int length;
+
+        public Writer(int capacity) {
+            buffer = new byte[Math.max(16, capacity)];
+        }
+
+        public void reset() {
+            length = 0;
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) value;
+        }
+
+        /**
+         * Write an unsigned varint. Negative values take 10 bytes; use writeSignedVarint.
+         */
+        public void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        public void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        public void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        /**
+         * Get the internal buffer; only the first getLength() bytes are valid.
+         */
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Copy the written bytes, e.g. to keep them after the writer is reused.
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads a message from a byte range. Throws IllegalArgumentException on truncated or
+     * malformed input.
+     */
+    public static final class Reader {
+        private byte[] data;
+        private int position;
+        private int end;
+
+        public Reader wrap(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+            return this;
+        }
+
+        public int remaining() {
+            return end - position;
+        }
+
+        public int readByte() {
+            if (position >= end) {
+                throw new IllegalArgumentException("Truncated message");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        public long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long");
+        }
+
+        public long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public String readString() {
+            long length = readVarint();
+            if (length < 0 || length > remaining()) {
+                throw new IllegalArgumentException("Bad string length " + length);
+            }
+            String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
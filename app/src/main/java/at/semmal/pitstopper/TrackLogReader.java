@@ -0,0 +1,99 @@
+package at.semmal.pitstopper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams the fixes of a track log written by TrackRecorder, oldest first.
+ *
+ * The log ends at the first incomplete record, so a log from a crashed session reads back
+ * everything up to the crash. Reading fills a caller-provided GpsFix and doesn't allocate.
+ *
+ * Usage:
+ * <pre>
+ * try (TrackLogReader reader = TrackLogReader.open(file)) {
+ *     GpsFix fix = new GpsFix();
+ *     while (reader.next(fix)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class TrackLogReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private int position = 0;
+
+    private TrackLogReader(RandomAccessFile file, MappedByteBuffer buffer, int recordCount) {
+        this.file = file;
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Open a track log for reading.
+     *
+     * @throws IOException if the file can't be read or is not a track log
+     */
+    public static TrackLogReader open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            TrackRecorder.checkHeader(buffer);
+            int capacity = (int) ((file.length() - TrackRecorder.HEADER_SIZE) / TrackRecorder.RECORD_SIZE);
+            return new TrackLogReader(file, buffer, TrackRecorder.countRecords(buffer, capacity));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next fix.
+     *
+     * @param out Fix to fill
+     * @return false if there are no more fixes
+     */
+    public boolean next(GpsFix out) {
+        if (position >= recordCount) {
+            return false;
+        }
+        TrackRecorder.readRecord(buffer, TrackRecorder.HEADER_SIZE + position * TrackRecorder.RECORD_SIZE, out);
+        position++;
+        return true;
+    }
+
+    /**
+     * Go back to the first fix.
+     */
+    public void rewind() {
+        position = 0;
+    }
+
+    /**
+     * Get the number of complete records in the log.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Get the wall clock time the log was created, in milliseconds since the epoch.
+     */
+    public long getCreatedMillis() {
+        return TrackRecorder.getCreatedMillis(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
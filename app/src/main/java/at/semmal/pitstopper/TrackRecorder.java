@@ -0,0 +1,246 @@
+package at.semmal.pitstopper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends GPS fixes to a compact binary track log for post-race analysis.
+ *
+ * The file is preallocated and memory-mapped, and every fix is written as a fixed-size
+ * 24 byte record, so recording never allocates or makes a system call per fix:
+ *
+ * <pre>
+ * header (64 bytes): magic "PSTRACK1", version, record size, creation time (wall clock ms)
+ * record (24 bytes): elapsed realtime nanos (8), latitude * 1e7 (4), longitude * 1e7 (4),
+ *                    speed in cm/s or 0xFFFF if unknown (2), accuracy in m (1), speed accuracy in 0.1 m/s (1),
+ *                    checksum of the fields above (4)
+ * </pre>
+ *
+ * There is no record count in the header. The checksum is written last, so after a crash
+ * the log simply ends at the first record whose checksum doesn't match; reopening the file
+ * continues after the last complete record. A 24 hour race at 1 Hz takes about 2 MB.
+ *
+ * Not thread safe; use from a single thread (StandstillDetector's worker thread).
+ */
+public class TrackRecorder implements Closeable {
+
+    static final long MAGIC = 0x505354524143_4B31L; // "PSTRACK1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 24;
+
+    // Packed speed of a fix without speed (cm/s field)
+    static final int UNKNOWN_SPEED = 0xFFFF;
+
+    // 26 hours at 1 Hz (about 2.1 MB); the file grows by the same amount if that's not enough
+    static final int DEFAULT_CAPACITY_RECORDS = 26 * 3600;
+
+    private static final int HEADER_VERSION_OFFSET = 8;
+    private static final int HEADER_RECORD_SIZE_OFFSET = 12;
+    private static final int HEADER_CREATED_OFFSET = 16;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int growRecords;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private TrackRecorder(RandomAccessFile file, int growRecords) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.growRecords = growRecords;
+    }
+
+    /**
+     * Open a track log for appending, creating it if it doesn't exist.
+     *
+     * @param path Log file
+     * @return The recorder, positioned after the last complete record
+     * @throws IOException if the file can't be mapped or is not a track log
+     */
+    public static TrackRecorder open(File path) throws IOException {
+        return open(path, DEFAULT_CAPACITY_RECORDS);
+    }
+
+    static TrackRecorder open(File path, int capacityRecords) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        TrackRecorder recorder = new TrackRecorder(file, capacityRecords);
+        try {
+            recorder.init(capacityRecords);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return recorder;
+    }
+
+    private void init(int capacityRecords) throws IOException {
+        boolean isNew = file.length() < HEADER_SIZE;
+        if (isNew) {
+            file.setLength(HEADER_SIZE + (long) capacityRecords * RECORD_SIZE);
+        }
+
+        map((int) ((file.length() - HEADER_SIZE) / RECORD_SIZE));
+
+        if (isNew) {
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(HEADER_VERSION_OFFSET, VERSION);
+            buffer.putInt(HEADER_RECORD_SIZE_OFFSET, RECORD_SIZE);
+            buffer.putLong(HEADER_CREATED_OFFSET, System.currentTimeMillis());
+            count = 0;
+        } else {
+            checkHeader(buffer);
+            count = countRecords(buffer, capacity);
+        }
+    }
+
+    private void map(int capacityRecords) throws IOException {
+        capacity = capacityRecords;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Append one fix.
+     *
+     * @param fix The fix to record
+     * @throws IOException if the file had to grow and couldn't
+     */
+    public void write(GpsFix fix) throws IOException {
+        write(fix.getElapsedRealtimeNanos(), fix.getLatitude(), fix.getLongitude(),
+                fix.getSpeed(), fix.getAccuracy(), fix.getSpeedAccuracy());
+    }
+
+    /**
+     * Append one fix.
+     *
+     * @param elapsedRealtimeNanos Measurement time (elapsed realtime)
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param speed Speed in m/s, NaN if unknown
+     * @param accuracy Horizontal accuracy in meters, 0 if unknown
+     * @param speedAccuracy Speed accuracy in m/s, 0 if unknown
+     * @throws IOException if the file had to grow and couldn't
+     */
+    public void write(long elapsedRealtimeNanos, double latitude, double longitude,
+                      float speed, float accuracy, float speedAccuracy) throws IOException {
+        if (count == capacity) {
+            file.setLength(HEADER_SIZE + (long) (capacity + growRecords) * RECORD_SIZE);
+            map(capacity + growRecords);
+        }
+
+        int latE7 = (int) Math.round(latitude * 1e7);
+        int lonE7 = (int) Math.round(longitude * 1e7);
+        int packed = packQuality(speed, accuracy, speedAccuracy);
+
+        int offset = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putLong(offset, elapsedRealtimeNanos);
+        buffer.putInt(offset + 8, latE7);
+        buffer.putInt(offset + 12, lonE7);
+        buffer.putInt(offset + 16, packed);
+        // Checksum last: a record torn by a crash fails validation and ends the log
+        buffer.putInt(offset + 20, checksum(elapsedRealtimeNanos, latE7, lonE7, packed));
+        count++;
+    }
+
+    /**
+     * Get the number of records in the log, including ones from before reopening.
+     */
+    public int getRecordCount() {
+        return count;
+    }
+
+    /**
+     * Write mapped changes through to storage. Not needed to survive an app crash (the
+     * kernel keeps the pages), only to survive a power loss.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    // --- Record format, shared with TrackLogReader ---
+
+    static void checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a track log");
+        }
+        int version = buffer.getInt(HEADER_VERSION_OFFSET);
+        if (version != VERSION || buffer.getInt(HEADER_RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IOException("Unsupported track log version " + version);
+        }
+    }
+
+    static long getCreatedMillis(ByteBuffer buffer) {
+        return buffer.getLong(HEADER_CREATED_OFFSET);
+    }
+
+    /**
+     * Count the complete records from the start of the log.
+     */
+    static int countRecords(ByteBuffer buffer, int capacity) {
+        int n = 0;
+        while (n < capacity && isValidRecord(buffer, HEADER_SIZE + n * RECORD_SIZE)) {
+            n++;
+        }
+        return n;
+    }
+
+    static boolean isValidRecord(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + 20) == checksum(buffer.getLong(offset),
+                buffer.getInt(offset + 8), buffer.getInt(offset + 12), buffer.getInt(offset + 16));
+    }
+
+    static void readRecord(ByteBuffer buffer, int offset, GpsFix out) {
+        int packed = buffer.getInt(offset + 16);
+        int speedCm = packed >>> 16;
+        out.set(buffer.getLong(offset),
+                buffer.getInt(offset + 8) / 1e7,
+                buffer.getInt(offset + 12) / 1e7,
+                speedCm == UNKNOWN_SPEED ? Float.NaN : speedCm / 100f,
+                (packed >>> 8) & 0xFF,
+                (packed & 0xFF) / 10f);
+    }
+
+    /**
+     * Pack speed (cm/s, 16 bits), accuracy (m, 8 bits) and speed accuracy (0.1 m/s, 8 bits).
+     * Values are clamped to the range of their field; the top speed value marks an unknown speed.
+     */
+    static int packQuality(float speed, float accuracy, float speedAccuracy) {
+        int speedCm = Float.isNaN(speed) ? UNKNOWN_SPEED : clamp(Math.round(speed * 100), UNKNOWN_SPEED - 1);
+        int accuracyM = clamp(Math.round(accuracy), 0xFF);
+        int speedAccuracyDm = clamp(Math.round(speedAccuracy * 10), 0xFF);
+        return (speedCm << 16) | (accuracyM << 8) | speedAccuracyDm;
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /**
+     * FNV-1a style hash of the record fields. Never matches an all-zero record, so the
+     * zeroed, preallocated part of the file is never mistaken for data.
+     */
+    static int checksum(long nanos, int latE7, int lonE7, int packed) {
+        int h = 0x811C9DC5;
+        h = (h ^ (int) nanos) * 0x01000193;
+        h = (h ^ (int) (nanos >>> 32)) * 0x01000193;
+        h = (h ^ latE7) * 0x01000193;
+        h = (h ^ lonE7) * 0x01000193;
+        h = (h ^ packed) * 0x01000193;
+        return h;
+    }
+}
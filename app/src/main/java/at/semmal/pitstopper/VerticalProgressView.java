@@ -0,0 +1,134 @@
+package at.semmal.pitstopper;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+/**
+ * Vertical progress bar that fills from the bottom up.
+ *
+ * The fill is drawn directly in onDraw(), so progress updates only invalidate this view
+ * and never trigger a measure/layout pass of the surrounding hierarchy. Between updates
+ * the fill is animated linearly, which keeps the bar moving smoothly at display refresh
+ * rate even though the clock only ticks once per second.
+ *
+ * Usage:
+ * 1. Place in a layout with a fixed size and a background color for the empty track
+ * 2. Call setProgress() on every clock tick with a fraction from 0.0 to 1.0
+ */
+public class VerticalProgressView extends View {
+
+    // Matches the clock tick, so the fill reaches each new value just as the next one arrives
+    private static final long DEFAULT_ANIMATION_DURATION_MS = 1000;
+
+    private final Paint fillPaint = new Paint();
+    private final ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+
+    private float displayedProgress = 0f;
+    private float animationStartProgress = 0f;
+    private float targetProgress = 0f;
+    private boolean hasProgress = false;
+
+    public VerticalProgressView(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public VerticalProgressView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public VerticalProgressView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        int fillColor = ContextCompat.getColor(context, R.color.alert_green);
+        if (attrs != null) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.VerticalProgressView, defStyleAttr, 0);
+            fillColor = a.getColor(R.styleable.VerticalProgressView_progressFillColor, fillColor);
+            a.recycle();
+        }
+
+        fillPaint.setStyle(Paint.Style.FILL);
+        fillPaint.setColor(fillColor);
+
+        animator.setDuration(DEFAULT_ANIMATION_DURATION_MS);
+        animator.setInterpolator(new LinearInterpolator());
+        animator.addUpdateListener(animation -> {
+            float fraction = animation.getAnimatedFraction();
+            displayedProgress = animationStartProgress + (targetProgress - animationStartProgress) * fraction;
+            invalidate();
+        });
+    }
+
+    /**
+     * Sets the progress to display.
+     * Increasing values are animated from the currently displayed value; a decrease means a
+     * new stage started, so the fill jumps straight to the new value instead of draining.
+     *
+     * @param progress Progress fraction from 0.0 (empty) to 1.0 (full)
+     */
+    public void setProgress(float progress) {
+        float clamped = Math.min(1f, Math.max(0f, progress));
+        if (hasProgress && clamped == targetProgress) {
+            return;
+        }
+
+        animator.cancel();
+        targetProgress = clamped;
+
+        if (!hasProgress || clamped < displayedProgress || !isAttachedToWindow()) {
+            // First value, stage change or not visible - snap without animation
+            displayedProgress = clamped;
+            hasProgress = true;
+            invalidate();
+            return;
+        }
+
+        animationStartProgress = displayedProgress;
+        animator.start();
+    }
+
+    /**
+     * Gets the progress value most recently passed to setProgress().
+     */
+    public float getProgress() {
+        return targetProgress;
+    }
+
+    /**
+     * Sets the color of the filled part of the bar.
+     */
+    public void setFillColor(int color) {
+        fillPaint.setColor(color);
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+
+        int width = getWidth();
+        int height = getHeight();
+        if (displayedProgress <= 0f || width == 0 || height == 0) {
+            return;
+        }
+
+        float top = height - height * displayedProgress;
+        canvas.drawRect(0, top, width, height, fillPaint);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        animator.cancel();
+        displayedProgress = targetProgress;
+        super.onDetachedFromWindow();
+    }
+}
@@ -0,0 +1,149 @@
+package at.semmal.pitstopper;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for BrokerLifecycle. The worker is a queue run by hand, so tests control
+ * when transitions complete.
+ */
+public class BrokerLifecycleTest {
+
+    private final ArrayDeque<Runnable> worker = new ArrayDeque<>();
+    private final List<String> events = new ArrayList<>();
+    private final List<String> brokerCalls = new ArrayList<>();
+    private boolean failStart = false;
+    private BrokerLifecycle lifecycle;
+
+    @Before
+    public void setUp() {
+        lifecycle = new BrokerLifecycle(new BrokerLifecycle.Broker() {
+            @Override
+            public void start(int port) throws Exception {
+                brokerCalls.add("start " + port);
+                if (failStart) {
+                    throw new IOException("Address in use");
+                }
+            }
+
+            @Override
+            public void stop() {
+                brokerCalls.add("stop");
+            }
+        }, worker::add, new BrokerLifecycle.Listener() {
+            @Override
+            public void onStateChanged(BrokerLifecycle.State state) {
+            }
+
+            @Override
+            public void onRunning(int port, long startupMillis, long coldStartMillis) {
+                assertTrue(coldStartMillis >= startupMillis);
+                events.add("running " + port);
+            }
+
+            @Override
+            public void onStopped() {
+                events.add("stopped");
+            }
+
+            @Override
+            public void onError(int port, Exception error) {
+                events.add("error " + port);
+            }
+        });
+    }
+
+    private void runWorker() {
+        while (!worker.isEmpty()) {
+            worker.poll().run();
+        }
+    }
+
+    // Test the normal start and stop cycle
+    @Test
+    public void testStartStop() {
+        lifecycle.requestStart(1883);
+        assertEquals(BrokerLifecycle.State.STARTING, lifecycle.getState());
+        assertTrue(brokerCalls.isEmpty()); // Nothing done on the caller's thread
+
+        runWorker();
+        assertEquals(BrokerLifecycle.State.RUNNING, lifecycle.getState());
+
+        lifecycle.requestStop();
+        assertEquals(BrokerLifecycle.State.STOPPING, lifecycle.getState());
+        runWorker();
+
+        assertEquals(BrokerLifecycle.State.STOPPED, lifecycle.getState());
+        assertEquals("[start 1883, stop]", brokerCalls.toString());
+        assertEquals("[running 1883, stopped]", events.toString());
+    }
+
+    // Test rapid toggling while starting ends in the last requested state, one step at a time
+    @Test
+    public void testRapidToggle() {
+        lifecycle.requestStart(1883);
+        lifecycle.requestStop();
+        lifecycle.requestStart(1883);
+        lifecycle.requestStop();
+        lifecycle.requestStart(1883);
+        assertEquals(1, worker.size());
+
+        runWorker();
+        assertEquals("[start 1883]", brokerCalls.toString());
+        assertEquals(BrokerLifecycle.State.RUNNING, lifecycle.getState());
+
+        // Stop, then start again before the stop ran
+        lifecycle.requestStop();
+        lifecycle.requestStart(1883);
+        runWorker();
+        assertEquals("[start 1883, stop, start 1883]", brokerCalls.toString());
+        assertEquals("[running 1883, running 1883]", events.toString());
+
+        // Start then stop before the start ran
+        lifecycle.requestStop();
+        runWorker();
+        events.clear();
+        lifecycle.requestStart(1883);
+        lifecycle.requestStop();
+        runWorker();
+        assertEquals(BrokerLifecycle.State.STOPPED, lifecycle.getState());
+        assertEquals("[running 1883, stopped]", events.toString());
+    }
+
+    // Test a port change restarts the broker on the new port
+    @Test
+    public void testPortChange() {
+        lifecycle.requestStart(1883);
+        runWorker();
+        lifecycle.requestStart(1884);
+        runWorker();
+        assertEquals("[start 1883, stop, start 1884]", brokerCalls.toString());
+        assertEquals("[running 1883, running 1884]", events.toString());
+    }
+
+    // Test a failed start reports the error, and stopping while stopped still confirms
+    @Test
+    public void testStartFailure() {
+        failStart = true;
+        lifecycle.requestStart(1883);
+        runWorker();
+        assertEquals(BrokerLifecycle.State.STOPPED, lifecycle.getState());
+        assertEquals("[error 1883]", events.toString());
+
+        lifecycle.requestStop();
+        runWorker();
+        assertEquals("[start 1883]", brokerCalls.toString());
+        assertEquals("[error 1883, stopped]", events.toString());
+
+        failStart = false;
+        lifecycle.requestStart(1883);
+        runWorker();
+        assertEquals(BrokerLifecycle.State.RUNNING, lifecycle.getState());
+    }
+}
@@ -0,0 +1,255 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+/**
+ * Load test of the embedded broker: how many pit-wall clients can it serve before
+ * delivery latency grows?
+ *
+ * Starts Moquette with the properties MqttServerManager uses (BrokerConfigFactory) and
+ * connects N subscribers over loopback, like dashboards subscribed to pitstopper/&lt;car&gt;/#.
+ * The app's side publishes through internalPublish, as MqttServerManager does: retained
+ * telemetry of realistic sizes, every tenth message a QoS 1 transition. Each payload starts
+ * with its send time, so the subscribers measure the delivery latency on the same clock.
+ * Every run prints delivered throughput, p50/p99 latency, lost messages and the heap the
+ * broker and clients took, for every tuning preset, client count and persistence mode.
+ * Every message must arrive: the subscribers keep up over loopback, so a loss means the
+ * broker held messages back, like a preset that never flushes on its own.
+ *
+ * Runs for a while and opens many connections, so it only runs with
+ * -Dpitstopper.benchmark=true, e.g.:
+ * ./gradlew testDebugUnitTest --tests '*BrokerLoadTest' -Dpitstopper.benchmark=true
+ *
+ * Optional: -Dpitstopper.load.clients=1,5,10,25,50 -Dpitstopper.load.rate=50 (messages per
+ * second published) -Dpitstopper.load.seconds=10 -Dpitstopper.load.tuning=BALANCED (only that preset)
+ */
+public class BrokerLoadTest {
+
+    private static final String TOPIC_PREFIX = "pitstopper/load/";
+
+    // Payload sizes of the real topics: state text, binary race state, binary leaderboard
+    private static final String[] TOPICS = {"state/countdown", "telemetry/state", "telemetry/leaderboard"};
+    private static final int[] PAYLOAD_BYTES = {8, 24, 120};
+
+    // Every n-th message is a QoS 1 transition, like alert and window changes
+    private static final int RELIABLE_EVERY = 10;
+
+    // How long to wait for the last messages after publishing stopped
+    private static final long DRAIN_MILLIS = 3000;
+
+    // Test delivered throughput, latency and heap usage by client count and persistence
+    @Test
+    public void testLoad() throws Exception {
+        if (!Boolean.getBoolean("pitstopper.benchmark")) {
+            return;
+        }
+        int[] clientCounts = parseCounts(System.getProperty("pitstopper.load.clients", "1,5,10,25,50"));
+        int rate = Integer.getInteger("pitstopper.load.rate", 50);
+        int seconds = Integer.getInteger("pitstopper.load.seconds", 10);
+        String tuningName = System.getProperty("pitstopper.load.tuning");
+        BrokerTuning[] tunings = tuningName != null
+                ? new BrokerTuning[] {BrokerTuning.fromName(tuningName)} : BrokerTuning.values();
+
+        // Warm up class loading and the JIT so the first run isn't penalized
+        run(BrokerConfigFactory.Persistence.MEMORY, BrokerTuning.BALANCED, 1, rate, 2);
+
+        for (BrokerTuning tuning : tunings) {
+            System.out.println(String.format(Locale.US, "%s tuning, %d msg/s for %d s", tuning, rate, seconds));
+            System.out.println("mode    clients  delivered/s   p50 ms   p99 ms   max ms   lost  heap MB");
+            for (BrokerConfigFactory.Persistence persistence : BrokerConfigFactory.Persistence.values()) {
+                for (int clients : clientCounts) {
+                    Result result = run(persistence, tuning, clients, rate, seconds);
+                    System.out.println(String.format(Locale.US, "%-6s %8d %12.0f %8.1f %8.1f %8.1f %6d %8.1f",
+                            persistence, clients, result.deliveredPerSecond, result.p50Millis, result.p99Millis,
+                            result.maxMillis, result.lost, result.heapBytes / (1024.0 * 1024.0)));
+                    assertEquals(result.lost + " messages lost with " + tuning + ", " + persistence + ", "
+                            + clients + " clients", 0, result.lost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Figures of one run.
+     */
+    private static final class Result {
+        double deliveredPerSecond;
+        double p50Millis;
+        double p99Millis;
+        double maxMillis;
+        long lost;
+        long heapBytes;
+    }
+
+    /**
+     * Start a broker, connect the subscribers, publish for the given time and stop it all.
+     */
+    private static Result run(BrokerConfigFactory.Persistence persistence, BrokerTuning tuning, int clients,
+                              int rate, int seconds) throws Exception {
+        File filesDir = Files.createTempDirectory("broker").toFile();
+        int port = BrokerPersistenceBenchmarkTest.freePort();
+        Properties props = BrokerConfigFactory.create(port, false, persistence, tuning, false, filesDir);
+        long heapBefore = usedHeap();
+
+        Server server = new Server();
+        server.startServer(new MemoryConfig(props));
+        int messages = rate * seconds;
+        AtomicLongArray latencies = new AtomicLongArray(messages * clients);
+        AtomicInteger delivered = new AtomicInteger();
+        List<MqttAsyncClient> subscribers = new ArrayList<>();
+        try {
+            for (int i = 0; i < clients; i++) {
+                subscribers.add(subscribe(port, "load-" + i, latencies, delivered));
+            }
+
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                long due = start + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                publish(server, i);
+            }
+
+            long expected = (long) messages * clients;
+            long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+            while (delivered.get() < expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            Result result = new Result();
+            int count = Math.min(delivered.get(), latencies.length());
+            long[] sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            result.deliveredPerSecond = count * 1e9 / elapsedNanos;
+            result.p50Millis = percentile(sorted, 50) / 1e6;
+            result.p99Millis = percentile(sorted, 99) / 1e6;
+            result.maxMillis = count > 0 ? sorted[count - 1] / 1e6 : 0;
+            result.lost = expected - count;
+            result.heapBytes = usedHeap() - heapBefore;
+            return result;
+        } finally {
+            for (MqttAsyncClient subscriber : subscribers) {
+                try {
+                    subscriber.disconnect().waitForCompletion(1000);
+                    subscriber.close();
+                } catch (Exception e) {
+                    // Shutting down anyway
+                }
+            }
+            server.stopServer();
+            BrokerPersistenceBenchmarkTest.deleteRecursively(filesDir);
+        }
+    }
+
+    /**
+     * Connect a subscriber that records the latency of every message it receives.
+     */
+    private static MqttAsyncClient subscribe(int port, String clientId, AtomicLongArray latencies,
+                                             AtomicInteger delivered) throws Exception {
+        MqttAsyncClient client = new MqttAsyncClient("tcp://127.0.0.1:" + port, clientId, new MemoryPersistence());
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                byte[] payload = message.getPayload();
+                // Every run starts with an empty broker, so there are no stale retained values
+                long latency = System.nanoTime() - ByteBuffer.wrap(payload).getLong();
+                int slot = delivered.getAndIncrement();
+                if (slot < latencies.length()) {
+                    latencies.set(slot, latency);
+                }
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setUserName(clientId); // Like dashboards should, so acks can be attributed
+        client.connect(options).waitForCompletion(5000);
+        client.subscribe(TOPIC_PREFIX + "#", 1).waitForCompletion(5000);
+        return client;
+    }
+
+    /**
+     * Publish the i-th message the way MqttServerManager does.
+     */
+    private static void publish(Server server, int i) {
+        int topic = i % TOPICS.length;
+        ByteBuffer payload = ByteBuffer.allocate(Math.max(Long.BYTES, PAYLOAD_BYTES[topic]));
+        payload.putLong(System.nanoTime());
+        boolean reliable = i % RELIABLE_EVERY == 0;
+        server.internalPublish(MqttMessageBuilders.publish()
+                .topicName(TOPIC_PREFIX + TOPICS[topic])
+                .retained(true)
+                .qos(reliable ? MqttQoS.AT_LEAST_ONCE : MqttQoS.AT_MOST_ONCE)
+                .messageId(1 + i % 65_535)
+                .payload(Unpooled.wrappedBuffer(payload.array()))
+                .build(), "pitstopper");
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int[] parseCounts(String counts) {
+        String[] parts = counts.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
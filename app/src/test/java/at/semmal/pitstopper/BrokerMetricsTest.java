@@ -0,0 +1,46 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+/**
+ * Unit tests for BrokerMetrics.
+ */
+public class BrokerMetricsTest {
+
+    // Test rates cover one interval and latencies are reported as nearest-rank percentiles
+    @Test
+    public void testSnapshot() {
+        BrokerMetrics metrics = new BrokerMetrics();
+        metrics.snapshot(0, 0, 0, 0, 0);
+        for (int i = 1; i <= 100; i++) {
+            metrics.onPublished(i * 1_000_000L, 2);
+        }
+        metrics.onReceived();
+        metrics.onAcknowledged(40);
+
+        BrokerMetrics.Snapshot snapshot = metrics.snapshot(2_000_000_000L, 3, 1, 4, 7);
+        assertEquals(50f, snapshot.getPublishedPerSecond(), 0.01f);
+        assertEquals(100f, snapshot.getRoutedPerSecond(), 0.01f);
+        assertEquals(0.5f, snapshot.getReceivedPerSecond(), 0.01f);
+        assertEquals(50, snapshot.getHandoffMillis(50));
+        assertEquals(95, snapshot.getHandoffMillis(95));
+        assertEquals(40, snapshot.getAckMillis(99));
+
+        Map<String, String> topics = snapshot.toTopics();
+        assertEquals("3", topics.get("$SYS/broker/clients/connected"));
+        assertEquals("50.0", topics.get("$SYS/broker/load/published"));
+        assertEquals("4", topics.get("$SYS/broker/queue/clients"));
+        assertEquals("{\"p50\":50,\"p95\":95,\"p99\":99,\"samples\":100}", topics.get("$SYS/broker/latency/handoff"));
+
+        // The next interval starts empty, latencies are kept
+        snapshot = metrics.snapshot(3_000_000_000L, 3, 0, 0, 7);
+        assertEquals(0f, snapshot.getPublishedPerSecond(), 0.01f);
+        assertEquals(99, snapshot.getHandoffMillis(99));
+
+        metrics.clear();
+        assertEquals(-1, metrics.snapshot(4_000_000_000L, 0, 0, 0, 0).getAckMillis(50));
+    }
+}
@@ -0,0 +1,152 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Properties;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * Broker configuration tests, and a startup / throughput comparison of file-backed and
+ * in-memory persistence on the real Moquette broker.
+ *
+ * The comparison starts two brokers and writes to disk, so it only runs with
+ * -Dpitstopper.benchmark=true, e.g.:
+ * ./gradlew testDebugUnitTest --tests '*BrokerPersistenceBenchmarkTest' -Dpitstopper.benchmark=true
+ */
+public class BrokerPersistenceBenchmarkTest {
+
+    private static final int MESSAGES = 5_000;
+    private static final int TOPICS = 200;
+
+    // Test memory mode has no store path, file mode stores below the files directory and
+    // the WebSocket port is only opened on request
+    @Test
+    public void testConfig() {
+        File filesDir = new File("/data/files");
+
+        Properties memory = BrokerConfigFactory.create(1883, false, BrokerConfigFactory.Persistence.MEMORY,
+                BrokerTuning.BALANCED, false, filesDir);
+        assertEquals("1883", memory.getProperty("port"));
+        assertEquals("false", memory.getProperty("persistence_enabled"));
+        assertNull(memory.getProperty("persistent_store"));
+        assertEquals("0", memory.getProperty("websocket_port"));
+
+        Properties file = BrokerConfigFactory.create(1883, false, BrokerConfigFactory.Persistence.FILE,
+                BrokerTuning.BALANCED, false, filesDir);
+        assertEquals("true", file.getProperty("persistence_enabled"));
+        assertEquals(new File(filesDir, "mqtt").getAbsolutePath(), file.getProperty("persistent_store"));
+
+        Properties websocket = BrokerConfigFactory.create(1883, true, BrokerConfigFactory.Persistence.MEMORY,
+                BrokerTuning.BALANCED, false, filesDir);
+        assertEquals(String.valueOf(BrokerConfigFactory.WEBSOCKET_PORT), websocket.getProperty("websocket_port"));
+
+        assertEquals(BrokerConfigFactory.Persistence.MEMORY, BrokerConfigFactory.parsePersistence(null));
+        assertEquals(BrokerConfigFactory.Persistence.FILE, BrokerConfigFactory.parsePersistence("FILE"));
+    }
+
+    // Test the tuning presets end up in the broker properties
+    @Test
+    public void testTuning() {
+        Properties hub = BrokerConfigFactory.create(1883, false, BrokerConfigFactory.Persistence.MEMORY,
+                BrokerTuning.PIT_WALL_HUB, true, new File("/data/files"));
+        assertEquals("true", hub.getProperty("netty.epoll"));
+        assertEquals("2048", hub.getProperty("session_queue_size"));
+        assertEquals(String.valueOf(256 * 1024), hub.getProperty("netty.mqtt.message_size"));
+
+        Properties phone = BrokerConfigFactory.create(1883, false, BrokerConfigFactory.Persistence.MEMORY,
+                BrokerTuning.LOW_POWER_PHONE, false, new File("/data/files"));
+        assertEquals("false", phone.getProperty("netty.epoll"));
+        assertEquals("50", phone.getProperty("buffer_flush_millis"));
+        assertNull(phone.getProperty("immediate_buffer_flush"));
+        assertEquals("0", hub.getProperty("buffer_flush_millis"));
+
+        // A negative flush interval never flushes on its own, a long one adds latency
+        for (BrokerTuning tuning : BrokerTuning.values()) {
+            assertTrue(tuning.name(), tuning.getBufferFlushMillis() >= 0 && tuning.getBufferFlushMillis() <= 100);
+            // Shared by all clients of a session loop, a full queue fails connects and subscribes
+            assertTrue(tuning.name(), tuning.getSessionQueueSize() >= BrokerTuning.MIN_SESSION_QUEUE_SIZE);
+        }
+
+        assertEquals(BrokerTuning.BALANCED, BrokerTuning.fromName(null));
+        assertEquals(BrokerTuning.PIT_WALL_HUB, BrokerTuning.fromName("PIT_WALL_HUB"));
+    }
+
+    // Test startup time and retained QoS 1 publish throughput of both modes
+    @Test
+    public void testPersistenceComparison() throws Exception {
+        if (!Boolean.getBoolean("pitstopper.benchmark")) {
+            return;
+        }
+
+        // Warm up class loading and the JIT so the first mode isn't penalized
+        run(BrokerConfigFactory.Persistence.MEMORY);
+
+        for (BrokerConfigFactory.Persistence persistence : BrokerConfigFactory.Persistence.values()) {
+            long[] result = run(persistence);
+            System.out.println(String.format(Locale.US, "%-6s startup %4d ms, %7.0f msg/s",
+                    persistence, result[0] / 1_000_000L, MESSAGES * 1e9 / result[1]));
+        }
+    }
+
+    /**
+     * Start a broker, publish the messages and stop it.
+     *
+     * @return {startup nanos, publish nanos}
+     */
+    private static long[] run(BrokerConfigFactory.Persistence persistence) throws IOException {
+        File filesDir = Files.createTempDirectory("broker").toFile();
+        Properties props = BrokerConfigFactory.create(freePort(), false, persistence, BrokerTuning.BALANCED, false,
+                filesDir);
+
+        long start = System.nanoTime();
+        Server server = new Server();
+        server.startServer(new MemoryConfig(props));
+        long startup = System.nanoTime() - start;
+
+        try {
+            byte[] payload = "{\"alert\":\"ON_ALERT\",\"countdown\":247}".getBytes(StandardCharsets.UTF_8);
+            start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                server.internalPublish(MqttMessageBuilders.publish()
+                        .topicName("pitstopper/bench/" + (i % TOPICS))
+                        .retained(true)
+                        .qos(MqttQoS.AT_LEAST_ONCE)
+                        .messageId(1 + i % 65_535)
+                        .payload(Unpooled.wrappedBuffer(payload))
+                        .build(), "bench");
+            }
+            return new long[] {startup, System.nanoTime() - start};
+        } finally {
+            server.stopServer();
+            deleteRecursively(filesDir);
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
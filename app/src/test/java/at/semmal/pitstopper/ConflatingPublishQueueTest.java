@@ -0,0 +1,57 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ConflatingPublishQueueTest {
+
+    private final List<String> released = new ArrayList<>();
+    private final ConflatingPublishQueue<String> queue = new ConflatingPublishQueue<>(released::add);
+
+    // Test only the latest value per topic is kept, in the order the topics were queued
+    @Test
+    public void testConflation() {
+        queue.offer("countdown", "3", false);
+        queue.offer("position", "5/18", false);
+        queue.offer("countdown", "2", false);
+        queue.offer("countdown", "1", false);
+
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.getConflatedCount());
+        assertEquals(Arrays.asList("3", "2"), released);
+
+        assertEquals("1", queue.poll().getMessage());
+        assertEquals("5/18", queue.poll().getMessage());
+        assertNull(queue.poll());
+    }
+
+    // Test reliable messages are never conflated and go out first
+    @Test
+    public void testReliable() {
+        queue.offer("countdown", "10", false);
+        queue.offer("alert", "ON_ALERT", true);
+        queue.offer("alert", "IDLE", true);
+
+        ConflatingPublishQueue.Pending<String> first = queue.poll();
+        assertEquals("ON_ALERT", first.getMessage());
+        assertTrue(first.isReliable());
+        assertEquals("IDLE", queue.poll().getMessage());
+        assertEquals("countdown", queue.poll().getTopic());
+        assertEquals(0, queue.getConflatedCount());
+    }
+
+    // Test clearing releases everything queued
+    @Test
+    public void testClear() {
+        queue.offer("countdown", "10", false);
+        queue.offer("alert", "ON_ALERT", true);
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertEquals(2, released.size());
+    }
+}
@@ -0,0 +1,114 @@
+package at.semmal.pitstopper;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for ControlCommandQueue.
+ */
+public class ControlCommandQueueTest {
+
+    private RaceStatePublisher publisher;
+    private ControlCommandQueue queue;
+    private List<String> acks;
+    private int queued;
+
+    @Before
+    public void setUp() {
+        publisher = new RaceStatePublisher();
+        publisher.setCarNumber("42");
+        acks = new ArrayList<>();
+        publisher.attach((topic, data, length, reliable) -> {
+            if (topic.equals("pitstopper/42/control/ack")) {
+                acks.add(new String(data, 0, length, StandardCharsets.UTF_8));
+            }
+        });
+        queue = new ControlCommandQueue(publisher);
+        queue.setListener(() -> queued++);
+        queue.setEnabled(true);
+    }
+
+    // Test commands are queued in order with their arguments and acknowledged once applied
+    @Test
+    public void testCommands() {
+        assertTrue(queue.offer("pitwall", "pitstopper/42/control/force_alert", "1", 0));
+        assertTrue(queue.offer("pitwall", "pitstopper/42/control/shift_schedule", "2 -5", 0));
+        assertTrue(queue.offer("pitwall", "pitstopper/42/control/car_number", " 3 7 ", 0));
+        assertFalse(queue.offer("pitwall", "pitstopper/7/control/force_alert", "4", 0));
+        assertFalse(queue.offer("pitwall", "pitstopper/42/dashboard/pong", "5", 0));
+        assertEquals(3, queued);
+
+        ControlCommandQueue.Command command = queue.poll();
+        assertEquals(ControlCommandQueue.Type.FORCE_ALERT, command.getType());
+        assertEquals(1, command.getSeq());
+        assertEquals(-5, queue.poll().getMinutes());
+        command = queue.poll();
+        assertEquals("7", command.getCarNumber());
+        assertNull(queue.poll());
+
+        queue.ackApplied(command, 12_000_000L);
+        assertEquals("3 OK 12", acks.get(acks.size() - 1));
+    }
+
+    // Test invalid and repeated commands are acknowledged without being queued
+    @Test
+    public void testRejected() {
+        queue.offer("pitwall", "pitstopper/42/control/shift_schedule", "1 soon", 0);
+        queue.offer("pitwall", "pitstopper/42/control/shift_schedule", "2 500", 0);
+        queue.offer("pitwall", "pitstopper/42/control/car_number", "3 4/2", 0);
+        queue.offer("pitwall", "pitstopper/42/control/clear_alert", "no sequence", 0);
+        queue.offer("pitwall", "pitstopper/42/control/clear_alert", "4", 0);
+        queue.offer("pitwall", "pitstopper/42/control/clear_alert", "4", 0);
+        queue.offer("pitwall", "pitstopper/42/control/clear_alert", "4", 0);
+
+        assertEquals(1, queued);
+        assertEquals("1 ERROR minutes required", acks.get(0));
+        assertEquals("2 ERROR shift out of range", acks.get(1));
+        assertEquals("3 ERROR invalid car number", acks.get(2));
+        // Repeated acks go out again even though they are equal
+        assertEquals("4 DUPLICATE", acks.get(3));
+        assertEquals("4 DUPLICATE", acks.get(4));
+        assertEquals(5, acks.size());
+    }
+
+    // Test sequence numbers are tracked per client and start over with a clean session
+    @Test
+    public void testDuplicatesPerClient() {
+        queue.offer("pitwall", "pitstopper/42/control/force_alert", "1", 0);
+        queue.offer("strategy", "pitstopper/42/control/force_alert", "1", 0);
+        assertEquals(2, queued);
+
+        // A reconnect that keeps the session may redeliver, a clean one starts over
+        queue.onClientConnected("pitwall", false);
+        queue.offer("pitwall", "pitstopper/42/control/force_alert", "1", 0);
+        assertEquals("1 DUPLICATE", acks.get(acks.size() - 1));
+        queue.onClientConnected("pitwall", true);
+        queue.offer("pitwall", "pitstopper/42/control/force_alert", "1", 0);
+        assertEquals(3, queued);
+
+        // The broker stopping forgets everything
+        queue.clear();
+        queue.offer("strategy", "pitstopper/42/control/force_alert", "1", 0);
+        assertEquals(4, queued);
+    }
+
+    // Test commands are refused until enabled in the settings
+    @Test
+    public void testDisabled() {
+        queue.setEnabled(false);
+        assertTrue(queue.offer("pitwall", "pitstopper/42/control/shift_schedule", "1 5", 0));
+        assertEquals(0, queued);
+        assertNull(queue.poll());
+        assertEquals("1 ERROR disabled", acks.get(0));
+
+        // Not remembered as seen, so it can be sent again once enabled
+        queue.setEnabled(true);
+        queue.offer("pitwall", "pitstopper/42/control/shift_schedule", "1 5", 0);
+        assertEquals(1, queued);
+    }
+}
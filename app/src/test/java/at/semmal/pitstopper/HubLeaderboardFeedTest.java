@@ -0,0 +1,113 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+public class HubLeaderboardFeedTest {
+
+    private final TelemetryCodec.Writer writer = new TelemetryCodec.Writer(64);
+    private final HubLeaderboardFeed feed = new HubLeaderboardFeed();
+
+    private LeaderboardSnapshot hubSnapshot() {
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        snapshot.addEntry("7", "ACE", "");
+        snapshot.addEntry("42", "MARTINEZ", "1.234");
+        snapshot.addEntry("88", "JOHNSON", "2 Laps");
+        return snapshot;
+    }
+
+    private byte[] carTable(LeaderboardSnapshot snapshot) {
+        TelemetryCodec.encodeCarTable(snapshot, writer);
+        return writer.toByteArray();
+    }
+
+    private byte[] leaderboard(LeaderboardSnapshot snapshot) {
+        TelemetryCodec.encodeLeaderboard(snapshot, writer);
+        return writer.toByteArray();
+    }
+
+    // Test lookups give position and gaps the way the SpeedHive poll reports them
+    @Test
+    public void testLookup() {
+        LeaderboardSnapshot snapshot = hubSnapshot();
+        feed.onCarTable(carTable(snapshot), 0);
+        assertTrue(feed.onLeaderboard(leaderboard(snapshot), 1000));
+
+        LiveTimingData middle = feed.lookup("42");
+        assertEquals(2, middle.getPosition());
+        assertEquals(3, middle.getTotalCompetitors());
+        assertEquals("1.234", middle.getGapAhead());
+        assertEquals("2 Laps", middle.getGapBehind());
+        assertEquals("MARTINEZ", middle.getDriverName());
+
+        assertEquals(SpeedHiveManager.LEADER_TEXT, feed.lookup("7").getGapAhead());
+        assertEquals(SpeedHiveManager.LAST_TEXT, feed.lookup("88").getGapBehind());
+        assertNull(feed.lookup("99"));
+        assertEquals(500, feed.getAgeMillis(1500));
+    }
+
+    // Test nothing is served before a leaderboard matching the car table arrived
+    @Test
+    public void testWaitsForTable() {
+        LeaderboardSnapshot snapshot = hubSnapshot();
+        assertFalse(feed.onLeaderboard(leaderboard(snapshot), 0));
+        assertNull(feed.lookup("42"));
+        assertEquals(-1, feed.getAgeMillis(0));
+
+        feed.onCarTable(carTable(snapshot), 0);
+        assertNull(feed.lookup("42"));
+
+        snapshot.addEntry("15", "SPEEDSTER", "0.5"); // New car, new epoch
+        assertFalse(feed.onLeaderboard(leaderboard(snapshot), 0));
+        feed.onCarTable(carTable(snapshot), 0);
+        assertTrue(feed.onLeaderboard(leaderboard(snapshot), 0));
+        assertEquals(4, feed.lookup("15").getPosition());
+    }
+
+    // Test positions come from SpeedHive, not from the order of the list
+    @Test
+    public void testSpeedHivePositions() {
+        LeaderboardSnapshot snapshot = hubSnapshot();
+        snapshot.setPosition(0, 2);
+        snapshot.setPosition(1, 1);
+        feed.onCarTable(carTable(snapshot), 0);
+        assertTrue(feed.onLeaderboard(leaderboard(snapshot), 0));
+
+        LiveTimingData leader = feed.lookup("42");
+        assertEquals(1, leader.getPosition());
+        assertEquals(SpeedHiveManager.LEADER_TEXT, leader.getGapAhead());
+        assertEquals("Unknown", leader.getGapBehind()); // Car 7 has no time gap
+        assertEquals(2, feed.lookup("7").getPosition());
+        assertEquals(SpeedHiveManager.LAST_TEXT, feed.lookup("88").getGapBehind());
+    }
+
+    // Test malformed messages are rejected without leaving half decoded entries behind
+    @Test
+    public void testMalformed() {
+        LeaderboardSnapshot snapshot = hubSnapshot();
+        feed.onCarTable(carTable(snapshot), 0);
+        byte[] valid = leaderboard(snapshot);
+        assertTrue(feed.onLeaderboard(valid, 0));
+
+        // Second entry refers to car 127, which isn't in the table
+        byte[] corrupt = valid.clone();
+        corrupt[7] = 0x7F;
+        try {
+            feed.onLeaderboard(corrupt, 0);
+            fail("Unknown car index accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(feed.lookup("7"));
+
+        byte[] table = carTable(snapshot);
+        try {
+            feed.onCarTable(Arrays.copyOf(table, table.length - 2), 0);
+            fail("Truncated car table accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertTrue(feed.onLeaderboard(valid, 0));
+        assertEquals("MARTINEZ", feed.lookup("42").getDriverName());
+    }
+}
@@ -0,0 +1,125 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LapTimer and StartFinishLine.
+ * Fixes are generated on a straight northbound start/finish straight.
+ */
+public class LapTimerTest {
+
+    private static final double BASE_LAT = 47.8230;
+    private static final double BASE_LON = 13.1690;
+    private static final double METERS_PER_DEG_LAT = 111_195.0;
+    private static final long SECOND = 1_000_000_000L;
+
+    // Line across the straight at y = 0, marked while driving north
+    private static StartFinishLine line() {
+        return StartFinishLine.across(lat(-10), BASE_LON, lat(0), BASE_LON,
+                StartFinishLine.DEFAULT_HALF_WIDTH_METERS);
+    }
+
+    private static double lat(double northMeters) {
+        return BASE_LAT + northMeters / METERS_PER_DEG_LAT;
+    }
+
+    private static GpsFix fix(double timeSeconds, double northMeters) {
+        return new GpsFix().set(Math.round(timeSeconds * SECOND), lat(northMeters), BASE_LON, 40f, 3f, 0.5f);
+    }
+
+    /**
+     * Drive north across the line at the given speed, crossing it at crossingSeconds,
+     * with fixes on whole seconds.
+     */
+    private static boolean passLine(LapTimer timer, double crossingSeconds, double speed) {
+        boolean lap = false;
+        long first = (long) Math.floor(crossingSeconds) - 1;
+        for (long t = first; t <= first + 3; t++) {
+            lap |= timer.onFix(fix(t, (t - crossingSeconds) * speed));
+        }
+        return lap;
+    }
+
+    // Test the crossing time is interpolated between fixes
+    @Test
+    public void testInterpolatedLapTime() {
+        LapTimer timer = new LapTimer(line());
+        assertFalse(passLine(timer, 100.25, 40));
+        assertTrue(passLine(timer, 183.70, 40));
+
+        assertEquals(1, timer.getCompletedLaps());
+        assertEquals(83.45, timer.getLastLapNanos() / (double) SECOND, 0.01);
+        assertEquals(183.70, timer.getLastCrossingNanos() / (double) SECOND, 0.01);
+    }
+
+    // Test the best lap is tracked
+    @Test
+    public void testBestLap() {
+        LapTimer timer = new LapTimer(line());
+        passLine(timer, 100.0, 40);
+        passLine(timer, 185.5, 40);
+        passLine(timer, 268.0, 40);
+        passLine(timer, 352.0, 40);
+
+        assertEquals(3, timer.getCompletedLaps());
+        assertEquals(84.0, timer.getLastLapNanos() / (double) SECOND, 0.01);
+        assertEquals(82.5, timer.getBestLapNanos() / (double) SECOND, 0.01);
+    }
+
+    // Test driving across the line backwards doesn't count
+    @Test
+    public void testWrongDirection() {
+        LapTimer timer = new LapTimer(line());
+        for (int t = 0; t < 4; t++) {
+            timer.onFix(fix(t, 30 - t * 20));
+        }
+        assertEquals(-1, timer.getLastCrossingNanos());
+    }
+
+    // Test passing beside the line (pit lane next to the straight) doesn't count
+    @Test
+    public void testOutsideSegment() {
+        StartFinishLine line = line();
+        double lon = BASE_LON + 40 / (METERS_PER_DEG_LAT * Math.cos(Math.toRadians(BASE_LAT)));
+        assertEquals(-1, line.crossing(lat(-20), lon, lat(20), lon), 0);
+        assertEquals(0.5, line.crossing(lat(-20), BASE_LON, lat(20), BASE_LON), 0.001);
+    }
+
+    // Test GPS jitter around the line doesn't produce short laps
+    @Test
+    public void testJitterIgnored() {
+        LapTimer timer = new LapTimer(line());
+        timer.onFix(fix(0, -3));
+        timer.onFix(fix(1, 2));   // Crossing, starts lap 1
+        timer.onFix(fix(2, -1));  // Jitter back
+        timer.onFix(fix(3, 1));   // Crossing again, 2 s later
+        assertEquals(0, timer.getCompletedLaps());
+        assertEquals(0.6, timer.getLastCrossingNanos() / (double) SECOND, 0.01);
+    }
+
+    // Test a GPS gap doesn't pair fixes from before and after it
+    @Test
+    public void testSourceStopped() {
+        LapTimer timer = new LapTimer(line());
+        passLine(timer, 100.0, 40);
+        timer.onFix(fix(150, -20));
+        timer.onSourceStopped();
+        timer.onFix(fix(190, 20));
+        assertEquals(0, timer.getCompletedLaps());
+    }
+
+    // Test a line can't be marked without movement, and survives the preference roundtrip
+    @Test
+    public void testLinePreferences() {
+        assertNull(StartFinishLine.across(BASE_LAT, BASE_LON, BASE_LAT, BASE_LON, 20));
+
+        StartFinishLine restored = StartFinishLine.fromPreferenceString(line().toPreferenceString());
+        assertNotNull(restored);
+        assertEquals(0.5, restored.crossing(lat(-20), BASE_LON, lat(20), BASE_LON), 0.001);
+
+        assertNull(StartFinishLine.fromPreferenceString(null));
+        assertNull(StartFinishLine.fromPreferenceString("47.8,13.1"));
+        assertNull(StartFinishLine.fromPreferenceString("47.8,13.1;abc,13.2"));
+    }
+}
@@ -0,0 +1,44 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyProbeTest {
+
+    private static final long MS = 1_000_000L;
+
+    // Test round trips are measured from the probed state change and summarized
+    @Test
+    public void testRoundTrip() {
+        LatencyProbe probe = new LatencyProbe();
+        assertEquals(-1, probe.getAverageMillis());
+
+        int first = probe.onSent(0);
+        int second = probe.onSent(1000 * MS);
+        assertEquals(40, probe.onEcho(first, 40 * MS));
+        assertEquals(60, probe.onEcho(second, 1060 * MS));
+
+        assertEquals(2, probe.getSamples());
+        assertEquals(60, probe.getLastMillis());
+        assertEquals(40, probe.getMinMillis());
+        assertEquals(60, probe.getMaxMillis());
+        assertEquals(50, probe.getAverageMillis());
+    }
+
+    // Test duplicate, unknown and expired echoes are ignored
+    @Test
+    public void testIgnoredEchoes() {
+        LatencyProbe probe = new LatencyProbe();
+        int seq = probe.onSent(0);
+        assertEquals(10, probe.onEcho(seq, 10 * MS));
+        assertEquals(-1, probe.onEcho(seq, 20 * MS)); // Second dashboard
+        assertEquals(-1, probe.onEcho(999, 20 * MS));
+
+        int old = probe.onSent(0);
+        for (int i = 0; i < LatencyProbe.TRACKED; i++) {
+            probe.onSent(0);
+        }
+        assertEquals(-1, probe.onEcho(old, 20 * MS));
+        assertEquals(1, probe.getSamples());
+    }
+}
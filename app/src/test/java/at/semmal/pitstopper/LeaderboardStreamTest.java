@@ -0,0 +1,169 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Unit tests for LeaderboardStream.
+ */
+public class LeaderboardStreamTest {
+
+    private final TelemetryCodec.Writer writer = new TelemetryCodec.Writer(64);
+
+    // A field of cars with intervals of one to five seconds
+    private static LeaderboardSnapshot field(int cars) {
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        for (int i = 0; i < cars; i++) {
+            snapshot.addEntry(Integer.toString(i + 1), "Team " + (i + 1), 0,
+                    i == 0 ? LeaderboardSnapshot.GAP_UNKNOWN : 1000 + i * 73);
+        }
+        return snapshot;
+    }
+
+    // A receiving snapshot with the car table of the given one
+    private static LeaderboardSnapshot receiver(LeaderboardSnapshot source) {
+        TelemetryCodec.Writer out = new TelemetryCodec.Writer(64);
+        TelemetryCodec.encodeCarTable(source, out);
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        TelemetryCodec.decodeCarTable(new TelemetryCodec.Reader().wrap(out.getBuffer(), 0, out.getLength()), snapshot);
+        return snapshot;
+    }
+
+    private LeaderboardStream.Result decode(LeaderboardStream.Decoder decoder, LeaderboardSnapshot snapshot) {
+        byte[] data = Arrays.copyOf(writer.getBuffer(), writer.getLength());
+        return decoder.decode(data, 0, data.length, snapshot);
+    }
+
+    private static void assertSameEntries(LeaderboardSnapshot expected, LeaderboardSnapshot actual) {
+        assertEquals(expected.getSize(), actual.getSize());
+        for (int i = 0; i < expected.getSize(); i++) {
+            assertEquals(expected.getCarNumber(i), actual.getCarNumber(i));
+            assertEquals(expected.getGapLaps(i), actual.getGapLaps(i));
+            assertEquals(expected.getGapMillis(i), actual.getGapMillis(i));
+        }
+    }
+
+    // Test deltas only carry changed positions and rebuild the full leaderboard
+    @Test
+    public void testDeltas() {
+        LeaderboardSnapshot source = field(20);
+        LeaderboardSnapshot received = receiver(source);
+        LeaderboardStream.Encoder encoder = new LeaderboardStream.Encoder();
+        LeaderboardStream.Decoder decoder = new LeaderboardStream.Decoder();
+
+        assertEquals(TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME, encoder.encode(source, writer));
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertSameEntries(source, received);
+        assertEquals(0, encoder.encode(source, writer));
+
+        // Car 5 passes car 4, car 10 loses time
+        source.clearEntries();
+        for (int i = 0; i < 20; i++) {
+            int car = i == 3 ? 4 : i == 4 ? 3 : i;
+            source.addEntry(Integer.toString(car + 1), "Team " + (car + 1), 0,
+                    i == 0 ? LeaderboardSnapshot.GAP_UNKNOWN : i == 9 ? 4321 : 1000 + i * 73);
+        }
+        assertEquals(TelemetryCodec.TYPE_LEADERBOARD_DELTA, encoder.encode(source, writer));
+        assertTrue(writer.getLength() < 25);
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertSameEntries(source, received);
+        assertEquals("5", received.getCarNumber(3));
+        assertEquals(2, decoder.getSeq());
+
+        // Cars retiring shrink the field, a delta without changed positions says so
+        source.setSize(18);
+        assertEquals(TelemetryCodec.TYPE_LEADERBOARD_DELTA, encoder.encode(source, writer));
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertSameEntries(source, received);
+
+        // A new car changes the car table, which forces a keyframe
+        source.addEntry("99", "Late Entry", 3, LeaderboardSnapshot.GAP_UNKNOWN);
+        assertEquals(TelemetryCodec.TYPE_LEADERBOARD_KEYFRAME, encoder.encode(source, writer));
+        assertEquals(LeaderboardStream.Result.NEED_CAR_TABLE, decode(decoder, received));
+        received = receiver(source);
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertSameEntries(source, received);
+    }
+
+    // Test a lost delta is detected, and the keyframe sent on request recovers
+    @Test
+    public void testGap() {
+        LeaderboardSnapshot source = field(10);
+        LeaderboardSnapshot received = receiver(source);
+        LeaderboardStream.Encoder encoder = new LeaderboardStream.Encoder();
+        LeaderboardStream.Decoder decoder = new LeaderboardStream.Decoder();
+
+        encoder.encode(source, writer);
+        byte[] keyframe = Arrays.copyOf(writer.getBuffer(), writer.getLength());
+        source.setIndexedEntry(5, 5, 0, 2000);
+        encoder.encode(source, writer); // Lost
+        source.setIndexedEntry(6, 6, 1, LeaderboardSnapshot.GAP_UNKNOWN);
+        encoder.encode(source, writer);
+
+        // A delta without a keyframe first can't be applied
+        assertEquals(LeaderboardStream.Result.NEED_KEYFRAME, decode(decoder, received));
+        assertEquals(LeaderboardStream.Result.APPLIED, decoder.decode(keyframe, 0, keyframe.length, received));
+        assertEquals(LeaderboardStream.Result.NEED_KEYFRAME, decode(decoder, received));
+        assertEquals(1, decoder.getSeq());
+
+        assertTrue(encoder.encodeKeyframe(writer));
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertEquals(3, decoder.getSeq());
+        assertSameEntries(source, received);
+
+        // Redelivered old deltas are ignored
+        source.setIndexedEntry(7, 7, 0, 3000);
+        encoder.encode(source, writer);
+        assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        assertEquals(LeaderboardStream.Result.STALE, decode(decoder, received));
+    }
+
+    // Test the bytes sent for a 60-car field, a few cars crossing the line per poll
+    @Test
+    public void testBandwidth() {
+        int cars = 60;
+        int polls = 300;
+        LeaderboardSnapshot source = field(cars);
+        LeaderboardSnapshot received = receiver(source);
+        LeaderboardStream.Encoder encoder = new LeaderboardStream.Encoder();
+        LeaderboardStream.Decoder decoder = new LeaderboardStream.Decoder();
+        Random random = new Random(42);
+
+        long fullBytes = 0;
+        long streamBytes = 0;
+        long deltaBytes = 0;
+        int deltas = 0;
+        for (int poll = 0; poll < polls; poll++) {
+            // 10 s polls and 90 s laps: one car in nine crossed the line and got a new interval
+            for (int i = 1; i < cars; i++) {
+                if (random.nextInt(9) == 0) {
+                    source.setIndexedEntry(i, source.getCarIndex(i), 0, 200 + random.nextInt(8000));
+                }
+            }
+            TelemetryCodec.encodeLeaderboard(source, writer);
+            fullBytes += writer.getLength();
+
+            int type = encoder.encode(source, writer);
+            if (type == 0) {
+                continue; // Nobody crossed the line, nothing sent
+            }
+            streamBytes += writer.getLength();
+            if (type == TelemetryCodec.TYPE_LEADERBOARD_DELTA) {
+                deltaBytes += writer.getLength();
+                deltas++;
+            }
+            assertEquals(LeaderboardStream.Result.APPLIED, decode(decoder, received));
+        }
+        assertSameEntries(source, received);
+
+        System.out.println(String.format(Locale.US,
+                "%d cars: full %d B/poll, stream %d B/poll, delta %d B", cars, fullBytes / polls,
+                streamBytes / polls, deltaBytes / deltas));
+        assertTrue(deltaBytes / deltas * 8 < fullBytes / polls);
+        assertTrue(streamBytes * 6 < fullBytes);
+    }
+}
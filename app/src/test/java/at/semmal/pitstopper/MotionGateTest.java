@@ -0,0 +1,92 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MotionGate.
+ * Samples arrive at the 20 Hz used by StandstillDetector. The acceleration magnitude
+ * alternates around gravity, so its variance is the square of the amplitude.
+ */
+public class MotionGateTest {
+
+    private static final long SAMPLE_NANOS = 50_000_000L;
+
+    // Variances below STILL_VARIANCE, between the thresholds and above MOVING_VARIANCE
+    private static final float STILL = 0.1f;     // 0.01
+    private static final float BETWEEN = 0.5f;   // 0.25
+    private static final float MOVING = 1.5f;    // 2.25
+
+    private final MotionGate gate = new MotionGate();
+    private int sample = 0;
+
+    // Feed samples of the given amplitude, return how many were fed until the state changed or -1
+    private int feed(int count, float amplitude) {
+        for (int i = 0; i < count; i++) {
+            float z = 9.81f + (sample % 2 == 0 ? amplitude : -amplitude);
+            boolean changed = gate.onSample(sample * SAMPLE_NANOS, 0f, 0f, z);
+            sample++;
+            if (changed) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Test the stop is reported once the window is full and the variance stayed low for the hold time
+    @Test
+    public void testStop() {
+        int window = MotionGate.WINDOW_SAMPLES;
+        int hold = (int) (MotionGate.STILL_HOLD_NANOS / SAMPLE_NANOS);
+        assertEquals(window + hold, feed(200, STILL));
+        assertTrue(gate.isLikelyStopped());
+        assertEquals(STILL * STILL, gate.getVariance(), 1e-4);
+
+        gate.reset();
+        assertFalse(gate.isLikelyStopped());
+        assertEquals(-1, gate.getStoppedSinceNanos());
+        assertEquals(0, gate.getVariance(), 0);
+    }
+
+    // Test the stop is dated back to when the shaking ended, not when it was reported
+    @Test
+    public void testStoppedSince() {
+        assertEquals(-1, feed(100, MOVING));
+        int reportedAfter = feed(200, STILL);
+        assertTrue(reportedAfter > MotionGate.WINDOW_SAMPLES);
+        assertEquals(100 * SAMPLE_NANOS, gate.getStoppedSinceNanos(), 3 * SAMPLE_NANOS);
+
+        assertTrue(feed(200, MOVING) > 0);
+        assertEquals(-1, gate.getStoppedSinceNanos());
+    }
+
+    // Test a variance between the thresholds neither reports a stop nor ends one
+    @Test
+    public void testHysteresis() {
+        assertEquals(-1, feed(400, BETWEEN));
+        assertFalse(gate.isLikelyStopped());
+        assertEquals(-1, feed(400, MOVING));
+
+        assertTrue(feed(200, STILL) > 0);
+        assertTrue(gate.isLikelyStopped());
+        assertEquals(-1, feed(400, BETWEEN));
+        assertTrue(gate.isLikelyStopped());
+    }
+
+    // Test a short jolt (the car being jacked up) doesn't end the stop, driving off does
+    @Test
+    public void testMovingHold() {
+        assertTrue(feed(200, STILL) > 0);
+
+        assertEquals(-1, feed(20, MOVING));
+        assertEquals(-1, feed(100, STILL));
+        assertTrue(gate.isLikelyStopped());
+
+        // The variance passes the threshold after a few samples, then has to stay there for 3 s
+        int hold = (int) (MotionGate.MOVING_HOLD_NANOS / SAMPLE_NANOS);
+        int changedAfter = feed(200, MOVING);
+        assertTrue(changedAfter > hold);
+        assertTrue(changedAfter < hold + MotionGate.WINDOW_SAMPLES / 2);
+        assertFalse(gate.isLikelyStopped());
+    }
+}
@@ -0,0 +1,90 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for PitLaneGeofence.
+ * Positions are around the Salzburgring pit lane; at 47.8 degrees latitude one meter is
+ * roughly 0.000009 degrees latitude and 0.0000134 degrees longitude.
+ */
+public class PitLaneGeofenceTest {
+
+    private static final double LAT = 47.8230;
+    private static final double LON = 13.1690;
+    private static final double DEG_PER_METER_LAT = 1.0 / 111_195.0;
+    private static final double DEG_PER_METER_LON = DEG_PER_METER_LAT / Math.cos(Math.toRadians(LAT));
+
+    // Test a single stop position grows into a buffer around it
+    @Test
+    public void testSinglePointBuffer() {
+        PitLaneGeofence.Learner learner = new PitLaneGeofence.Learner();
+        learner.addFix(LAT, LON);
+        PitLaneGeofence fence = learner.build();
+
+        assertNotNull(fence);
+        assertTrue(fence.contains(LAT, LON));
+        assertTrue(fence.contains(LAT + 20 * DEG_PER_METER_LAT, LON));
+        assertTrue(fence.contains(LAT, LON - 20 * DEG_PER_METER_LON));
+        assertFalse(fence.contains(LAT + 40 * DEG_PER_METER_LAT, LON));
+        assertFalse(fence.contains(LAT, LON + 100 * DEG_PER_METER_LON));
+    }
+
+    // Test a stop plus the way out of the pit box covers the lane, but not the track next to it
+    @Test
+    public void testPitLaneCorridor() {
+        PitLaneGeofence.Learner learner = new PitLaneGeofence.Learner();
+        for (int i = 0; i <= 10; i++) {
+            learner.addFix(LAT, LON + i * 15 * DEG_PER_METER_LON); // 150 m along the lane
+        }
+        PitLaneGeofence fence = learner.build();
+
+        assertTrue(fence.contains(LAT + 10 * DEG_PER_METER_LAT, LON + 75 * DEG_PER_METER_LON));
+        assertTrue(fence.contains(LAT, LON + 160 * DEG_PER_METER_LON));
+        assertFalse(fence.contains(LAT + 50 * DEG_PER_METER_LAT, LON + 75 * DEG_PER_METER_LON));
+        assertFalse(fence.contains(LAT, LON + 200 * DEG_PER_METER_LON));
+    }
+
+    // Test a geofence from another track is recognized as far away
+    @Test
+    public void testIsNear() {
+        PitLaneGeofence.Learner learner = new PitLaneGeofence.Learner();
+        learner.addFix(LAT, LON);
+        PitLaneGeofence fence = learner.build();
+
+        assertTrue(fence.isNear(LAT + 1000 * DEG_PER_METER_LAT, LON, 5000));
+        assertFalse(fence.isNear(48.2082, 16.3738, 5000)); // Vienna
+    }
+
+    // Test no positions means no geofence
+    @Test
+    public void testEmptyLearner() {
+        assertNull(new PitLaneGeofence.Learner().build());
+    }
+
+    // Test serialization keeps containment intact
+    @Test
+    public void testPreferenceRoundTrip() {
+        PitLaneGeofence.Learner learner = new PitLaneGeofence.Learner();
+        learner.addFix(LAT, LON);
+        learner.addFix(LAT + 5 * DEG_PER_METER_LAT, LON + 30 * DEG_PER_METER_LON);
+        PitLaneGeofence fence = learner.build();
+
+        PitLaneGeofence restored = PitLaneGeofence.fromPreferenceString(fence.toPreferenceString());
+
+        assertNotNull(restored);
+        assertEquals(fence.getVertexCount(), restored.getVertexCount());
+        assertTrue(restored.contains(LAT, LON + 15 * DEG_PER_METER_LON));
+        assertFalse(restored.contains(LAT - 50 * DEG_PER_METER_LAT, LON));
+    }
+
+    // Test malformed stored values are rejected
+    @Test
+    public void testMalformedPreferenceString() {
+        assertNull(PitLaneGeofence.fromPreferenceString(null));
+        assertNull(PitLaneGeofence.fromPreferenceString(""));
+        assertNull(PitLaneGeofence.fromPreferenceString("47.8,13.1;47.9,13.2"));
+        assertNull(PitLaneGeofence.fromPreferenceString("47.8,13.1;47.9;47.8,13.3"));
+        assertNull(PitLaneGeofence.fromPreferenceString("a,b;c,d;e,f"));
+    }
+}
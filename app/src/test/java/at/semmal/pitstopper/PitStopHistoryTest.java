@@ -0,0 +1,82 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/**
+ * Unit tests for PitStopHistory.
+ */
+public class PitStopHistoryTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    // A 30 s stop starting i minutes into the race, so records can be told apart
+    private static PitStopRecord stop(int i) {
+        long stopped = i * 60 * SECOND;
+        return new PitStopRecord(stopped - 10 * SECOND, stopped, stopped + 30 * SECOND);
+    }
+
+    // Test an empty history has no last record
+    @Test
+    public void testEmpty() {
+        PitStopHistory history = new PitStopHistory();
+        assertNull(history.getLast());
+        assertEquals(0, history.size());
+        assertTrue(history.getAll().isEmpty());
+    }
+
+    // Test records are kept oldest first and getLast() returns the newest
+    @Test
+    public void testOrder() {
+        PitStopHistory history = new PitStopHistory();
+        PitStopRecord first = stop(1);
+        PitStopRecord second = stop(2);
+        history.add(first);
+        history.add(second);
+
+        assertSame(second, history.getLast());
+        List<PitStopRecord> all = history.getAll();
+        assertEquals(2, all.size());
+        assertSame(first, all.get(0));
+        assertSame(second, all.get(1));
+    }
+
+    // Test a full history drops the oldest record first
+    @Test
+    public void testEviction() {
+        PitStopHistory history = new PitStopHistory();
+        PitStopRecord[] records = new PitStopRecord[PitStopHistory.DEFAULT_CAPACITY + 2];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = stop(i);
+            history.add(records[i]);
+        }
+
+        assertEquals(PitStopHistory.DEFAULT_CAPACITY, history.size());
+        List<PitStopRecord> all = history.getAll();
+        assertSame(records[2], all.get(0));
+        assertSame(records[records.length - 1], all.get(all.size() - 1));
+        assertSame(records[records.length - 1], history.getLast());
+    }
+
+    // Test the copy returned by getAll() doesn't change with the history
+    @Test
+    public void testGetAllIsCopy() {
+        PitStopHistory history = new PitStopHistory(1);
+        history.add(stop(1));
+        List<PitStopRecord> all = history.getAll();
+        history.add(stop(2));
+        history.clear();
+
+        assertEquals(1, all.size());
+        assertNull(history.getLast());
+        assertEquals(0, history.size());
+    }
+
+    // Test a history must hold at least one record
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new PitStopHistory(0);
+    }
+}
@@ -418,6 +418,25 @@ public class PitWindowAlertManagerTest {
         assertTrue("Progress should be around 83%", progress >= 83 && progress <= 84);
     }
 
+    // Test fractional progress matches the percentage variant and resolves single seconds
+    @Test
+    public void testProgressFractionInCurrentStage() {
+        // At 09:20 (3 min into 6 min window): 0.5
+        assertEquals(0.5f, alertManager.getProgressFractionInCurrentStage(9, 20, 0), 0.0001f);
+
+        // At 09:30 (7 min into 14 min idle): 0.5
+        assertEquals(0.5f, alertManager.getProgressFractionInCurrentStage(9, 30, 0), 0.0001f);
+
+        // One second in a 6 min window is ~0.28% - must be visible in the fraction
+        float atStart = alertManager.getProgressFractionInCurrentStage(9, 18, 0);
+        float oneSecondLater = alertManager.getProgressFractionInCurrentStage(9, 18, 1);
+        assertTrue("Fraction should advance every second", oneSecondLater > atStart);
+        assertEquals(alertManager.getProgressInCurrentStage(9, 18, 1), (int) (oneSecondLater * 100));
+
+        // Before race start: 0
+        assertEquals(0f, alertManager.getProgressFractionInCurrentStage(8, 30, 0), 0.0001f);
+    }
+
     // Test progress with seconds precision
     @Test
     public void testProgressWithSecondsPrecision() {
@@ -750,6 +769,43 @@ public class PitWindowAlertManagerTest {
         assertEquals(PitWindowAlertManager.AlertState.ON_ALERT,
                 alertManager.getAlertState(10, 17));
     }
-}
 
+    // Test a forced alert holds outside windows until cleared
+    @Test
+    public void testForceAlert() {
+        alertManager.forceAlert();
+        assertEquals(PitWindowAlertManager.AlertState.ON_ALERT,
+                alertManager.getAlertState(9, 5));
+        assertEquals(PitWindowAlertManager.AlertState.ON_ALERT,
+                alertManager.getAlertState(9, 30));
 
+        alertManager.clearAlert(9, 30);
+        assertFalse(alertManager.isAlertForced());
+        assertEquals(PitWindowAlertManager.AlertState.IDLE,
+                alertManager.getAlertState(9, 31));
+        assertEquals(PitWindowAlertManager.AlertState.ON_ALERT,
+                alertManager.getAlertState(9, 37));
+    }
+
+    // Test a schedule shift moves every window and the race start
+    @Test
+    public void testShiftSchedule() {
+        alertManager.shiftSchedule(5);
+        alertManager.shiftSchedule(-2);
+        assertEquals(3, alertManager.getScheduleShiftMinutes());
+
+        // Windows now 09:20-09:26, 09:40-09:46
+        assertEquals(PitWindowAlertManager.AlertState.IDLE,
+                alertManager.getAlertState(9, 17));
+        assertEquals(PitWindowAlertManager.AlertState.ON_ALERT,
+                alertManager.getAlertState(9, 20));
+        assertEquals(PitWindowAlertManager.AlertState.IDLE,
+                alertManager.getAlertState(9, 26));
+        assertEquals(1, alertManager.getCurrentWindowIndex(9, 45));
+
+        Calendar next = alertManager.getNextPitWindowStart(9, 30);
+        assertEquals(9, next.get(Calendar.HOUR_OF_DAY));
+        assertEquals(40, next.get(Calendar.MINUTE));
+        assertEquals(3, alertManager.getRaceStartTime().get(Calendar.MINUTE));
+    }
+}
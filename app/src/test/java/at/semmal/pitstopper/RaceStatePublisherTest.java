@@ -0,0 +1,234 @@
+package at.semmal.pitstopper;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for RaceStatePublisher.
+ */
+public class RaceStatePublisherTest {
+
+    private RaceStatePublisher publisher;
+    private List<String> published;
+    private Map<String, byte[]> telemetry;
+
+    @Before
+    public void setUp() {
+        publisher = new RaceStatePublisher();
+        published = new ArrayList<>();
+        telemetry = new HashMap<>();
+    }
+
+    // Text topics go to published, binary and JSON ones to telemetry (last payload per topic)
+    private void attach() {
+        publisher.attach((topic, data, length, reliable) -> {
+            if (topic.contains("/state/")) {
+                published.add(topic + "=" + new String(data, 0, length, StandardCharsets.UTF_8));
+            } else {
+                telemetry.put(topic, Arrays.copyOf(data, length));
+            }
+        });
+    }
+
+    // Test only changed values are published
+    @Test
+    public void testChangeOnly() {
+        attach();
+        publisher.publishAlertState(true);
+        publisher.publishAlertState(true);
+        publisher.publishCountdown(120);
+        publisher.publishCountdown(120);
+        publisher.publishCountdown(119);
+        publisher.publishAlertState(false);
+
+        assertEquals(4, published.size());
+        assertEquals("pitstopper/car/state/alert=ON_ALERT", published.get(0));
+        assertEquals("pitstopper/car/state/countdown=119", published.get(2));
+        assertEquals("pitstopper/car/state/alert=IDLE", published.get(3));
+    }
+
+    // Test values cached before the broker started are published on attach
+    @Test
+    public void testAttachRepublishes() {
+        publisher.publishWindowIndex(2);
+        publisher.publishStandstill(true);
+        assertTrue(published.isEmpty());
+
+        attach();
+        assertEquals(2, published.size());
+        assertEquals("pitstopper/car/state/window=2", published.get(0));
+        assertEquals("pitstopper/car/state/standstill=STOPPED", published.get(1));
+
+        publisher.detach();
+        publisher.publishStandstill(false);
+        assertEquals(2, published.size());
+    }
+
+    // Test a car number change republishes everything under the new prefix
+    @Test
+    public void testCarNumber() {
+        attach();
+        publisher.publishLiveTiming(new LiveTimingData(3, "+1.2", "2 Laps", "42", "Driver", 18));
+        published.clear();
+
+        publisher.setCarNumber(" 42 ");
+        assertEquals(3, published.size());
+        assertEquals("pitstopper/42/state/position=3/18", published.get(0));
+        assertEquals("pitstopper/42/state/gap_behind=2 Laps", published.get(2));
+
+        publisher.setCarNumber("42");
+        publisher.setCarNumber("");
+        assertEquals("pitstopper/car/state/position=3/18", published.get(3));
+    }
+
+    // Test pit stops are published as JSON
+    @Test
+    public void testPitStop() {
+        attach();
+        publisher.publishPitStop(new PitStopRecord(-1, 1_000_000_000L, 48_215_000_000L));
+        assertEquals("pitstopper/car/state/pit_stop={\"stationary_ms\":47215,\"pit_lane_ms\":-1}", published.get(0));
+    }
+
+    // Test the binary state and leaderboard decode to what was published
+    @Test
+    public void testTelemetry() {
+        attach();
+        publisher.publishAlertState(true);
+        publisher.publishCountdown(300);
+        publisher.publishLiveTiming(new LiveTimingData(3, "+1.2", "2 Laps", "42", "Driver", 18));
+
+        RaceState state = new RaceState();
+        byte[] data = telemetry.get("pitstopper/car/telemetry/state");
+        TelemetryCodec.decodeRaceState(new TelemetryCodec.Reader().wrap(data, 0, data.length), state);
+        assertTrue(state.isOnAlert());
+        assertEquals(300, state.getCountdownSeconds());
+        assertEquals(3, state.getPosition());
+        assertEquals(1200, state.getGapAheadMillis());
+        assertEquals(2, state.getGapBehindLaps());
+
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        snapshot.addEntry("7", "Leader", "LEAD");
+        snapshot.addEntry("42", "Driver", "+1.2");
+        publisher.publishLeaderboard(snapshot);
+
+        LeaderboardSnapshot received = new LeaderboardSnapshot();
+        data = telemetry.get("pitstopper/car/telemetry/cars");
+        TelemetryCodec.decodeCarTable(new TelemetryCodec.Reader().wrap(data, 0, data.length), received);
+        data = telemetry.get("pitstopper/car/telemetry/leaderboard");
+        assertTrue(TelemetryCodec.decodeLeaderboard(new TelemetryCodec.Reader().wrap(data, 0, data.length), received));
+        assertEquals("42", received.getCarNumber(1));
+        assertEquals(1200, received.getGapMillis(1));
+
+        // Hub subscribers get the same messages without the car prefix
+        assertArrayEquals(data, telemetry.get("pitstopper/session/leaderboard"));
+        assertTrue(telemetry.containsKey("pitstopper/session/cars"));
+    }
+
+    // Test the leaderboard stream sends deltas after the keyframe, and keyframes on request
+    @Test
+    public void testLeaderboardStream() {
+        attach();
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        snapshot.addEntry("7", "Leader", "LEAD");
+        snapshot.addEntry("42", "Driver", "+1.2");
+        publisher.publishLeaderboard(snapshot);
+        snapshot.clearEntries();
+        snapshot.addEntry("7", "Leader", "LEAD");
+        snapshot.addEntry("42", "Driver", "+0.9");
+        publisher.publishLeaderboard(snapshot);
+
+        LeaderboardSnapshot received = new LeaderboardSnapshot();
+        byte[] data = telemetry.get("pitstopper/car/telemetry/cars");
+        TelemetryCodec.decodeCarTable(new TelemetryCodec.Reader().wrap(data, 0, data.length), received);
+        LeaderboardStream.Decoder decoder = new LeaderboardStream.Decoder();
+        data = telemetry.get("pitstopper/car/telemetry/leaderboard_keyframe");
+        assertEquals(LeaderboardStream.Result.APPLIED, decoder.decode(data, 0, data.length, received));
+        data = telemetry.get("pitstopper/car/telemetry/leaderboard_delta");
+        assertEquals(LeaderboardStream.Result.APPLIED, decoder.decode(data, 0, data.length, received));
+        assertEquals(900, received.getGapMillis(1));
+        // Deltas may be conflated, a gap makes the subscriber request a keyframe
+        assertFalse(RaceStatePublisher.isReliable("telemetry/leaderboard_delta"));
+        assertTrue(RaceStatePublisher.isReliable("telemetry/leaderboard_keyframe"));
+
+        // The keyframe is republished on request, but not again within the interval
+        telemetry.clear();
+        long now = System.nanoTime() + RaceStatePublisher.KEYFRAME_REQUEST_INTERVAL_NANOS;
+        assertTrue(publisher.publishLeaderboardKeyframe(now));
+        assertFalse(publisher.publishLeaderboardKeyframe(now + 1));
+        data = telemetry.get("pitstopper/car/telemetry/leaderboard_keyframe");
+        decoder.reset();
+        assertEquals(LeaderboardStream.Result.APPLIED, decoder.decode(data, 0, data.length, received));
+        assertEquals(2, decoder.getSeq());
+    }
+
+    // Test the JSON mirror is only published on request, and cleared when switched off
+    @Test
+    public void testJsonMirror() {
+        attach();
+        publisher.publishWindowIndex(1);
+        assertFalse(telemetry.containsKey("pitstopper/car/json/state"));
+
+        publisher.setJsonMirrorEnabled(true);
+        String json = new String(telemetry.get("pitstopper/car/json/state"), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"alert\":\"IDLE\",\"countdown\":0,\"window\":1,"));
+
+        publisher.setJsonMirrorEnabled(false);
+        assertEquals(0, telemetry.get("pitstopper/car/json/state").length);
+    }
+
+    // Test countdown changes are followed by a latency probe while one is set
+    @Test
+    public void testLatencyProbe() {
+        attach();
+        publisher.publishCountdown(60);
+        assertFalse(telemetry.containsKey("pitstopper/car/dashboard/ping"));
+
+        LatencyProbe probe = new LatencyProbe();
+        publisher.setLatencyProbe(probe);
+        publisher.publishCountdown(59);
+        publisher.publishCountdown(59);
+        assertEquals("1", new String(telemetry.get("pitstopper/car/dashboard/ping"), StandardCharsets.UTF_8));
+        assertTrue(probe.onEcho(1, System.nanoTime()) >= 0);
+
+        publisher.setLatencyProbe(null);
+        assertEquals(0, telemetry.get("pitstopper/car/dashboard/ping").length);
+    }
+
+    // Test the snapshot holds everything up to its sequence number and deltas continue from it
+    @Test
+    public void testSnapshot() {
+        publisher.publishSchedule(9, 0, 17, 6, 5);
+        publisher.publishAlertState(true);
+        publisher.publishPitStop(new PitStopRecord(-1, 1_000_000_000L, 48_215_000_000L));
+        LeaderboardSnapshot leaderboard = new LeaderboardSnapshot();
+        leaderboard.addEntry("7", "Leader", "LEAD");
+        publisher.publishLeaderboard(leaderboard);
+        attach();
+
+        String snapshot = new String(telemetry.get("pitstopper/car/sync/snapshot"), StandardCharsets.UTF_8);
+        assertEquals("{\"seq\":4,\"state\":{"
+                + "\"schedule\":{\"race_start\":\"09:00\",\"opens_after_min\":17,\"duration_min\":6,\"shift_min\":5},"
+                + "\"alert\":\"ON_ALERT\","
+                + "\"pit_stop\":{\"stationary_ms\":47215,\"pit_lane_ms\":-1}},"
+                + "\"leaderboard\":[{\"pos\":1,\"no\":\"7\",\"name\":\"Leader\",\"gap\":\"\"}],"
+                + "\"pit_stops\":[{\"stationary_ms\":47215,\"pit_lane_ms\":-1}]}", snapshot);
+        assertEquals("2 ON_ALERT", new String(telemetry.get("pitstopper/car/sync/delta/alert"), StandardCharsets.UTF_8));
+
+        // Changes after the snapshot only go out as deltas until the next refresh
+        publisher.publishAlertState(false);
+        assertEquals("5 IDLE", new String(telemetry.get("pitstopper/car/sync/delta/alert"), StandardCharsets.UTF_8));
+        assertEquals(snapshot, new String(telemetry.get("pitstopper/car/sync/snapshot"), StandardCharsets.UTF_8));
+        // Deltas are state, a client that missed one recovers from the next delta or snapshot
+        assertTrue(RaceStatePublisher.isReliable("state/alert"));
+        assertFalse(RaceStatePublisher.isReliable("sync/delta/alert"));
+        assertFalse(RaceStatePublisher.isReliable("sync/delta/countdown"));
+    }
+}
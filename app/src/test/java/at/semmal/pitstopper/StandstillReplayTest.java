@@ -0,0 +1,521 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays synthetic races through StandstillEngine under a fake clock and checks detection
+ * latency, false positives and processing cost per fix.
+ *
+ * The synthetic race drives laps of a 400 m radius circle with GPS noise and speed spikes.
+ * The pit box is at the start/finish; stops on the far side of the track are spins that
+ * must not be reported (once the pit lane has been learned from the first stop).
+ * Recorded track logs (TrackRecorder) can be replayed the same way via
+ * ReplayLocationSource.fromTrackLog().
+ */
+public class StandstillReplayTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    // Accelerometer sample interval and time to first fix for the motion gate replay
+    private static final long ACCEL_SAMPLE_NANOS = 50_000_000L;
+    private static final long TIME_TO_FIRST_FIX_NANOS = 3 * SECOND;
+
+    // Test a full race: every pit stop found quickly, no spin reported, cheap per fix
+    @Test
+    public void testSyntheticRace() {
+        RaceScenario race = RaceScenario.standard(42);
+        replay(race, StandstillEngine.STANDSTILL_DURATION_MS); // JIT warm-up for the cost figure
+        ReplayReport report = replay(race, StandstillEngine.STANDSTILL_DURATION_MS);
+        System.out.println("Synthetic race: " + report);
+
+        assertEquals(0, report.missedStops);
+        assertEquals(0, report.falsePositives);
+        assertTrue("max latency " + report.maxLatencyNanos, report.maxLatencyNanos <= 7 * SECOND);
+        assertTrue("stop duration error " + report.maxDurationErrorNanos,
+                report.maxDurationErrorNanos <= 2 * SECOND);
+        assertTrue("cost " + report.nanosPerFix + " ns/fix", report.nanosPerFix < 50_000);
+
+        // After learning the pit lane, most of the race runs on the cheap pit lane check
+        assertTrue("high accuracy share " + report.highAccuracyShare(), report.highAccuracyShare() < 0.5);
+    }
+
+    // Test results don't depend on the noise seed
+    @Test
+    public void testSeeds() {
+        for (int seed = 1; seed <= 20; seed++) {
+            ReplayReport report = replay(RaceScenario.standard(seed), StandstillEngine.STANDSTILL_DURATION_MS);
+            assertEquals("seed " + seed + ": " + report, 0, report.missedStops);
+            assertEquals("seed " + seed + ": " + report, 0, report.falsePositives);
+        }
+    }
+
+    // Test fixes without speed in the pit lane are neither taken for a stop nor end one
+    @Test
+    public void testSpeedlessFixes() {
+        for (int seed = 1; seed <= 10; seed++) {
+            ReplayReport report = replay(RaceScenario.withSpeedlessFixes(seed), StandstillEngine.STANDSTILL_DURATION_MS);
+            assertEquals("seed " + seed + ": " + report, 0, report.missedStops);
+            assertEquals("seed " + seed + ": " + report, 0, report.falsePositives);
+            assertEquals("seed " + seed + ": " + report, 3, report.records.size());
+        }
+    }
+
+    // Test a spin before the first pit stop is only reported once: the pit lane learned from
+    // it is replaced by the longer pit stop, and the second spin in the same place is ignored
+    @Test
+    public void testDurationSweep() {
+        RaceScenario race = RaceScenario.withEarlySpin(7);
+        for (long durationMs : new long[]{3000, 5000, 8000}) {
+            System.out.println("Duration " + durationMs + " ms: " + replay(race, durationMs));
+        }
+
+        // The 6 s early spin is longer than 5 s, so it is reported and learned as the pit lane...
+        ReplayReport normal = replay(race, 5000);
+        assertEquals(1, normal.falsePositives);
+        assertEquals(0, normal.missedStops);
+        // ...while 8 s rides it out, at the price of slower confirmation
+        ReplayReport slow = replay(race, 8000);
+        assertEquals(0, slow.falsePositives);
+        assertEquals(0, slow.missedStops);
+    }
+
+    // Test a race through the motion gate: GPS only comes on seconds after the car stopped,
+    // but the stop is still timed from when it stopped
+    @Test
+    public void testMotionGate() {
+        RaceScenario race = RaceScenario.standard(42);
+        ReplayReport gated = replayGated(race, true);
+        System.out.println("Through the motion gate: " + gated);
+
+        assertEquals(0, gated.missedStops);
+        assertEquals(0, gated.falsePositives);
+        assertTrue("stop duration error " + gated.maxDurationErrorNanos,
+                gated.maxDurationErrorNanos <= 2 * SECOND);
+
+        // The pit lane entry of the first stop wasn't seen; GPS stays on once the pit lane is known
+        assertEquals(3, gated.records.size());
+        assertEquals(-1, gated.records.get(0).getPitLaneMillis());
+        for (int i = 1; i < gated.records.size(); i++) {
+            PitStopRecord record = gated.records.get(i);
+            assertTrue(record.toString(), record.getPitLaneMillis() > record.getStationaryMillis());
+        }
+
+        // Timed from the first fix, the first stop comes out shorter by the gate delay and the time to first fix
+        ReplayReport unhinted = replayGated(race, false);
+        assertTrue("stop duration error " + unhinted.maxDurationErrorNanos,
+                unhinted.maxDurationErrorNanos > TIME_TO_FIRST_FIX_NANOS);
+    }
+
+    // Test a recorded track log replays like the fixes it was written from
+    @Test
+    public void testTrackLogReplay() throws IOException {
+        RaceScenario race = RaceScenario.standard(3);
+        File file = File.createTempFile("replay", ".bin");
+        assertTrue(file.delete());
+        try {
+            try (TrackRecorder recorder = TrackRecorder.open(file)) {
+                for (GpsFix fix : race.fixes) {
+                    recorder.write(fix);
+                }
+            }
+
+            ReplayReport direct = replay(race, StandstillEngine.STANDSTILL_DURATION_MS);
+            ReplayReport recorded = replay(new RaceScenario(loadFixes(file), race.stops),
+                    StandstillEngine.STANDSTILL_DURATION_MS);
+            assertEquals(direct.detections, recorded.detections);
+            assertEquals(direct.falsePositives, recorded.falsePositives);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Test the replay source only delivers sparse fixes in pit lane check mode
+    @Test
+    public void testReplaySourceModes() {
+        List<GpsFix> fixes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fixes.add(new GpsFix().set(i * SECOND, 47.8, 13.1, 30f, 3f, 0f));
+        }
+        ReplayLocationSource source = new ReplayLocationSource(fixes);
+        int[] count = new int[1];
+        source.start(LocationSource.Mode.PIT_LANE_CHECK, fix -> count[0]++);
+        source.advanceTo(9 * SECOND);
+        assertEquals(2, count[0]); // t = 0 s and 5 s
+
+        source.start(LocationSource.Mode.HIGH_ACCURACY, fix -> count[0]++);
+        source.advanceTo(14 * SECOND);
+        assertEquals(7, count[0]);
+
+        source.stop();
+        source.runToEnd();
+        assertEquals(7, count[0]);
+        assertTrue(source.isFinished());
+        assertEquals(14 * SECOND, source.getActiveNanos());
+        assertEquals(5 * SECOND, source.getHighAccuracyNanos());
+    }
+
+    // --- Replay driver ---
+
+    /**
+     * Feed a scenario through a fresh engine, switching the source mode as the engine asks.
+     */
+    private static ReplayReport replay(RaceScenario race, long durationMs) {
+        ReplayReport report = new ReplayReport();
+        ReplayLocationSource source = new ReplayLocationSource(race.fixes);
+        StandstillEngine engine = new StandstillEngine(null, reportTo(race, report), durationMs);
+
+        LocationSource.Listener[] listener = new LocationSource.Listener[1];
+        listener[0] = fix -> {
+            long start = System.nanoTime();
+            engine.onFix(fix);
+            report.processingNanos += System.nanoTime() - start;
+            report.fixes++;
+            source.start(engine.getDesiredMode(), listener[0]);
+        };
+        source.start(LocationSource.Mode.HIGH_ACCURACY, listener[0]);
+        source.runToEnd();
+
+        report.finish(race, source);
+        return report;
+    }
+
+    /**
+     * Feed a scenario through a MotionGate like StandstillDetector does: GPS is switched on
+     * when the gate trips, its first fix comes TIME_TO_FIRST_FIX_NANOS later, and it is
+     * switched off again once both agree the car moves, until the pit lane is known.
+     *
+     * @param hint Whether the engine is told when the gate saw the car stop
+     */
+    private static ReplayReport replayGated(RaceScenario race, boolean hint) {
+        ReplayReport report = new ReplayReport();
+        ReplayLocationSource source = new ReplayLocationSource(race.fixes);
+        StandstillEngine engine = new StandstillEngine(null, reportTo(race, report),
+                StandstillEngine.STANDSTILL_DURATION_MS);
+        MotionGate gate = new MotionGate();
+        Random random = new Random(1);
+
+        boolean[] gpsOn = new boolean[1];
+        LocationSource.Listener[] listener = new LocationSource.Listener[1];
+        listener[0] = fix -> {
+            engine.onFix(fix);
+            report.fixes++;
+            if (!gate.isLikelyStopped() && !engine.isStill() && engine.getPitLaneGeofence() == null) {
+                source.stop();
+                engine.onSourceStopped();
+                gpsOn[0] = false;
+            } else {
+                source.start(engine.getDesiredMode(), listener[0]);
+            }
+        };
+
+        long firstFixAt = -1;
+        long end = race.fixes.get(race.fixes.size() - 1).getElapsedRealtimeNanos();
+        for (long t = race.fixes.get(0).getElapsedRealtimeNanos(); t <= end; t += ACCEL_SAMPLE_NANOS) {
+            source.advanceTo(t);
+
+            // A moving car shakes the phone, a stopped one barely
+            double shake = race.isStopped(t) ? 0.1 : 1.5;
+            if (gate.onSample(t, 0f, 0f, (float) (9.81 + random.nextGaussian() * shake))) {
+                if (gate.isLikelyStopped() && !gpsOn[0]) {
+                    if (hint) {
+                        engine.onMotionStopped(gate.getStoppedSinceNanos());
+                    }
+                    gpsOn[0] = true;
+                    firstFixAt = t + TIME_TO_FIRST_FIX_NANOS;
+                } else if (!gate.isLikelyStopped() && gpsOn[0] && !engine.isStill()
+                        && engine.getPitLaneGeofence() == null) {
+                    source.stop();
+                    engine.onSourceStopped();
+                    gpsOn[0] = false;
+                    firstFixAt = -1;
+                }
+            }
+            if (firstFixAt >= 0 && t >= firstFixAt) {
+                source.start(LocationSource.Mode.HIGH_ACCURACY, listener[0]);
+                firstFixAt = -1;
+            }
+        }
+
+        report.finish(race, source);
+        return report;
+    }
+
+    /**
+     * Listener recording the engine results into the report.
+     */
+    private static StandstillEngine.Listener reportTo(RaceScenario race, ReplayReport report) {
+        return new StandstillEngine.Listener() {
+            @Override
+            public void onStandstill(GpsFix fix) {
+                report.onDetection(race, fix.getElapsedRealtimeNanos());
+            }
+
+            @Override
+            public void onPitStop(PitStopRecord record) {
+                report.onPitStop(race, record);
+            }
+
+            @Override
+            public void onMovement(GpsFix fix) {
+            }
+
+            @Override
+            public void onPitLaneChanged(PitLaneGeofence geofence) {
+            }
+        };
+    }
+
+    private static List<GpsFix> loadFixes(File file) throws IOException {
+        List<GpsFix> fixes = new ArrayList<>();
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            GpsFix fix = new GpsFix();
+            while (reader.next(fix)) {
+                fixes.add(new GpsFix().set(fix.getElapsedRealtimeNanos(), fix.getLatitude(),
+                        fix.getLongitude(), fix.getSpeed(), fix.getAccuracy(), fix.getSpeedAccuracy()));
+            }
+        }
+        return fixes;
+    }
+
+    /**
+     * A stop in a scenario: when the car stood still and whether it must be reported.
+     */
+    private static class Stop {
+        final long startNanos;
+        final long endNanos;
+        final boolean pitStop;
+        boolean detected;
+
+        Stop(long startNanos, long endNanos, boolean pitStop) {
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.pitStop = pitStop;
+        }
+    }
+
+    private static class ReplayReport {
+        final List<PitStopRecord> records = new ArrayList<>();
+        int fixes;
+        long processingNanos;
+        int detections;
+        int falsePositives;
+        int missedStops;
+        long maxLatencyNanos;
+        long totalLatencyNanos;
+        long maxDurationErrorNanos;
+        long nanosPerFix;
+        long activeNanos;
+        long highAccuracyNanos;
+
+        void onDetection(RaceScenario race, long timeNanos) {
+            detections++;
+            for (Stop stop : race.stops) {
+                if (stop.pitStop && timeNanos >= stop.startNanos && timeNanos <= stop.endNanos) {
+                    long latency = timeNanos - stop.startNanos;
+                    maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                    totalLatencyNanos += latency;
+                    stop.detected = true;
+                    return;
+                }
+            }
+            falsePositives++;
+        }
+
+        void onPitStop(RaceScenario race, PitStopRecord record) {
+            records.add(record);
+            for (Stop stop : race.stops) {
+                if (stop.pitStop && record.getStoppedNanos() <= stop.endNanos
+                        && record.getMovedNanos() >= stop.startNanos) {
+                    long error = Math.abs((record.getMovedNanos() - record.getStoppedNanos())
+                            - (stop.endNanos - stop.startNanos));
+                    maxDurationErrorNanos = Math.max(maxDurationErrorNanos, error);
+                    return;
+                }
+            }
+        }
+
+        void finish(RaceScenario race, ReplayLocationSource source) {
+            for (Stop stop : race.stops) {
+                if (stop.pitStop && !stop.detected) {
+                    missedStops++;
+                }
+                stop.detected = false; // Scenarios are replayed more than once
+            }
+            nanosPerFix = fixes > 0 ? processingNanos / fixes : 0;
+            activeNanos = source.getActiveNanos();
+            highAccuracyNanos = source.getHighAccuracyNanos();
+        }
+
+        double highAccuracyShare() {
+            return activeNanos > 0 ? (double) highAccuracyNanos / activeNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            int found = detections - falsePositives;
+            return String.format(Locale.US,
+                    "%d fixes, %d ns/fix, %d detections, %d false positives, %d missed, "
+                            + "latency avg %.1f s max %.1f s, stop duration error %.1f s, high accuracy %.0f%%",
+                    fixes, nanosPerFix, detections, falsePositives, missedStops,
+                    found > 0 ? totalLatencyNanos / (double) found / SECOND : 0,
+                    maxLatencyNanos / (double) SECOND, maxDurationErrorNanos / (double) SECOND,
+                    highAccuracyShare() * 100);
+        }
+    }
+
+    // --- Synthetic race generator ---
+
+    private static class RaceScenario {
+        final List<GpsFix> fixes;
+        final List<Stop> stops;
+
+        RaceScenario(List<GpsFix> fixes, List<Stop> stops) {
+            this.fixes = fixes;
+            this.stops = stops;
+        }
+
+        boolean isStopped(long timeNanos) {
+            for (Stop stop : stops) {
+                if (timeNanos >= stop.startNanos - SECOND && timeNanos <= stop.endNanos) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Three pit stops with spins on the far side of the track in between.
+         */
+        static RaceScenario standard(long seed) {
+            return standard(new RaceGenerator(seed, 0.3));
+        }
+
+        /**
+         * The standard race, with half the fixes driving through the pit lane coming without
+         * speed, like network fixes.
+         */
+        static RaceScenario withSpeedlessFixes(long seed) {
+            RaceGenerator g = new RaceGenerator(seed, 0.3);
+            g.speedlessShare = 0.5;
+            return standard(g);
+        }
+
+        private static RaceScenario standard(RaceGenerator g) {
+            g.driveTo(1.0);
+            g.stand(30, true);
+            g.driveTo(1.5);
+            g.stand(8, false);
+            g.driveTo(3.0);
+            g.stand(25, true);
+            g.driveTo(3.5);
+            g.stand(6, false);
+            g.driveTo(5.0);
+            g.stand(40, true);
+            g.driveTo(5.6);
+            return g.build();
+        }
+
+        /**
+         * A 6 s spin before the first pit stop, while the pit lane is still unknown.
+         */
+        static RaceScenario withEarlySpin(long seed) {
+            RaceGenerator g = new RaceGenerator(seed, 0.6);
+            g.driveTo(1.5);
+            g.stand(6, false);
+            g.driveTo(2.0);
+            g.stand(30, true);
+            g.driveTo(2.5);
+            g.stand(6, false);
+            g.driveTo(4.0);
+            g.stand(30, true);
+            g.driveTo(4.3);
+            return g.build();
+        }
+    }
+
+    /**
+     * Drives laps of a circular track at 1 Hz. Positions are in laps (1.0 = pit box of the
+     * second lap), with a pit limiter around every lap boundary.
+     */
+    private static class RaceGenerator {
+        static final double BASE_LAT = 47.8230;
+        static final double BASE_LON = 13.1690;
+        static final double RADIUS_M = 400;
+        static final double LAP_M = 2 * Math.PI * RADIUS_M;
+        static final double CRUISE_MS = 40;
+        static final double PIT_LIMIT_MS = 16;
+        static final double PIT_LANE_HALF_LENGTH_M = 150;
+        static final double ACCEL_MS2 = 5;
+        static final double BRAKE_MS2 = 8;
+
+        final Random random;
+        final List<GpsFix> fixes = new ArrayList<>();
+        final List<Stop> stops = new ArrayList<>();
+        double distance;
+        double speed = 0;
+        long time = 100 * SECOND;
+        double speedlessShare = 0; // Of the fixes driving through the pit lane
+
+        RaceGenerator(long seed, double startLap) {
+            random = new Random(seed);
+            distance = startLap * LAP_M;
+        }
+
+        void driveTo(double lap) {
+            double target = lap * LAP_M;
+            while (target - distance > 0.5) {
+                double remaining = target - distance;
+                double lapPos = Math.abs(distance - Math.round(distance / LAP_M) * LAP_M);
+                double limit = lapPos < PIT_LANE_HALF_LENGTH_M ? PIT_LIMIT_MS : CRUISE_MS;
+                double max = Math.min(limit, Math.sqrt(2 * BRAKE_MS2 * remaining));
+                speed = Math.max(0.5, Math.min(max, speed + ACCEL_MS2));
+                distance += Math.min(speed, remaining);
+                if (lapPos < PIT_LANE_HALF_LENGTH_M && speedlessShare > 0 && random.nextDouble() < speedlessShare) {
+                    emit(Double.NaN);
+                } else {
+                    emit(speed + random.nextGaussian() * 0.3);
+                }
+            }
+            distance = target;
+            speed = 0;
+        }
+
+        void stand(int seconds, boolean pitStop) {
+            long start = time + SECOND; // First fix at zero speed
+            for (int i = 0; i < seconds; i++) {
+                double noise = Math.abs(random.nextGaussian() * 0.3);
+                if (random.nextDouble() < 0.08) {
+                    noise = 2 + random.nextDouble() * 1.5; // Multipath spike
+                }
+                emit(noise);
+            }
+            stops.add(new Stop(start, time, pitStop));
+        }
+
+        private void emit(double reportedSpeed) {
+            time += SECOND;
+            double angle = distance / RADIUS_M - Math.PI / 2; // Lap boundary at the bottom
+            double x = RADIUS_M * Math.cos(angle) + random.nextGaussian() * 2;
+            double y = RADIUS_M * Math.sin(angle) + random.nextGaussian() * 2;
+            double lat = BASE_LAT + y / 111_195.0;
+            double lon = BASE_LON + x / (111_195.0 * Math.cos(Math.toRadians(BASE_LAT)));
+            if (Double.isNaN(reportedSpeed)) {
+                fixes.add(new GpsFix().set(time, lat, lon, Float.NaN, 10f, 0f));
+            } else {
+                fixes.add(new GpsFix().set(time, lat, lon, (float) Math.max(0, reportedSpeed), 3f, 0.5f));
+            }
+        }
+
+        RaceScenario build() {
+            return new RaceScenario(fixes, stops);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StandstillTracker.
+ * Each sequence is a recording of 1 Hz fixes (speed in m/s, speed accuracy in m/s) and is
+ * also run through the previous detection rule (raw speed below 1.5 m/s for 5 s, reset by
+ * any single faster fix) to check that confirmation is no slower and false stops don't go up.
+ */
+public class StandstillTrackerTest {
+
+    private static final long DURATION_MS = 5000;
+    private static final long FIX_INTERVAL_NANOS = 1_000_000_000L;
+    private static final int NEVER = -1;
+
+    // Braking into the pit box, then standing still
+    private static final float[] CLEAN_STOP = {
+            20f, 15f, 10f, 5f, 2f, 0.5f, 0.2f, 0.1f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f
+    };
+
+    // Standing still with multipath spikes while the crew works on the car
+    private static final float[] SPIKY_STOP = {
+            12f, 6f, 1.2f, 0.3f, 0.1f, 0f, 2.2f, 0.2f, 3.4f, 0.1f, 0f, 0.4f, 2.9f, 0f, 0f, 0f, 0f, 0f
+    };
+
+    // Standing still with poor accuracy, readings jitter around the threshold
+    private static final float[] NOISY_STOP = {
+            8f, 3f, 1.1f, 1.7f, 0.6f, 1.9f, 1.2f, 0.8f, 1.6f, 0.9f, 1.3f, 0.7f, 1.8f, 1.0f, 0.5f
+    };
+
+    // Slowing down behind a crash on track, but never for long enough
+    private static final float[] BRIEF_SLOWDOWN = {
+            25f, 10f, 5f, 1.2f, 1.0f, 1.4f, 0.8f, 3f, 8f, 12f, 15f, 20f, 25f
+    };
+
+    // One slow reading, then crawling up the pit lane queue before really stopping at fix 9
+    private static final float[] CRAWL_THEN_STOP = {
+            10f, 5f, 1.4f, 2.0f, 2.2f, 1.9f, 2.1f, 1.8f, 1.6f, 0.3f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 0f
+    };
+
+    // Stop, then leaving the pit box
+    private static final float[] STOP_AND_GO = {
+            5f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 0f, 2f, 5f, 9f, 14f, 18f
+    };
+
+    // Test a clean stop is confirmed no later than before
+    @Test
+    public void testCleanStop() {
+        int legacy = legacyConfirmationIndex(CLEAN_STOP);
+        int filtered = confirmationIndex(CLEAN_STOP, 0.5f);
+
+        assertEquals(10, legacy);
+        assertTrue("confirmed at fix " + filtered, filtered != NEVER && filtered <= legacy);
+    }
+
+    // Test single spikes don't restart the timer
+    @Test
+    public void testSpikesDoNotRestartTimer() {
+        int legacy = legacyConfirmationIndex(SPIKY_STOP);
+        int filtered = confirmationIndex(SPIKY_STOP, 0.5f);
+
+        assertEquals(NEVER, legacy); // Restarted by every spike, never 5 s in a row
+        assertEquals(7, filtered);   // 5 s after the first slow fix
+    }
+
+    // Test jitter around the threshold with poor accuracy still confirms
+    @Test
+    public void testNoisyStop() {
+        int legacy = legacyConfirmationIndex(NOISY_STOP);
+        int filtered = confirmationIndex(NOISY_STOP, 2.0f);
+
+        assertEquals(NEVER, legacy);
+        // Timed from the last raw reading below the threshold before the filter settled,
+        // as a reading above it can't be told apart from crawling
+        assertEquals(11, filtered);
+    }
+
+    // Test unknown accuracy behaves like a moderate one
+    @Test
+    public void testUnknownAccuracy() {
+        assertEquals(11, confirmationIndex(NOISY_STOP, Float.NaN));
+        assertEquals(7, confirmationIndex(SPIKY_STOP, 0f));
+    }
+
+    // Test crawling between the thresholds doesn't count towards the stop
+    @Test
+    public void testCrawlIsNotTimed() {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        int confirmed = NEVER;
+        for (int i = 0; i < CRAWL_THEN_STOP.length && confirmed == NEVER; i++) {
+            if (tracker.onFix(i * FIX_INTERVAL_NANOS, CRAWL_THEN_STOP[i], 0.5f, true)
+                    == StandstillTracker.Event.STANDSTILL) {
+                confirmed = i;
+            }
+        }
+
+        assertEquals(14, confirmed); // 5 s after the first fix of the real stop
+        // 1.6 -> 0.3 m/s between fix 8 and 9
+        assertEquals(8_076_923_077L, tracker.getStoppedAtNanos(), 1000);
+    }
+
+    // Test a short slow-down on track is not reported as a stop
+    @Test
+    public void testBriefSlowdownNotReported() {
+        assertEquals(NEVER, legacyConfirmationIndex(BRIEF_SLOWDOWN));
+        assertEquals(NEVER, confirmationIndex(BRIEF_SLOWDOWN, 0.5f));
+    }
+
+    // Test movement is reported once after leaving
+    @Test
+    public void testMovementAfterStop() {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        int standstillAt = NEVER;
+        int movementAt = NEVER;
+        for (int i = 0; i < STOP_AND_GO.length; i++) {
+            StandstillTracker.Event event = tracker.onFix(i * FIX_INTERVAL_NANOS, STOP_AND_GO[i], 0.5f, true);
+            if (event == StandstillTracker.Event.STANDSTILL) {
+                assertEquals(NEVER, standstillAt);
+                standstillAt = i;
+            } else if (event == StandstillTracker.Event.MOVEMENT) {
+                assertEquals(NEVER, movementAt);
+                movementAt = i;
+            }
+        }
+
+        assertEquals(6, standstillAt);
+        assertTrue("movement at fix " + movementAt, movementAt >= 10 && movementAt <= 12);
+        assertFalse(tracker.isStill());
+        assertFalse(tracker.isReported());
+    }
+
+    // Test stop and departure are interpolated between the fixes around the threshold
+    @Test
+    public void testInterpolatedStopTimes() {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        for (int i = 0; i < STOP_AND_GO.length; i++) {
+            tracker.onFix(i * FIX_INTERVAL_NANOS, STOP_AND_GO[i], 0.5f, true);
+        }
+
+        // 5 -> 1 m/s between fix 0 and 1, 0 -> 2 m/s between fix 8 and 9
+        assertEquals(875_000_000L, tracker.getStoppedAtNanos());
+        assertEquals(8_750_000_000L, tracker.getMovedAtNanos());
+    }
+
+    // Test fixes that are not eligible (outside the pit lane) never confirm and end a stop
+    @Test
+    public void testIneligibleFixes() {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        for (int i = 0; i < CLEAN_STOP.length; i++) {
+            assertEquals(StandstillTracker.Event.NONE,
+                    tracker.onFix(i * FIX_INTERVAL_NANOS, CLEAN_STOP[i], 0.5f, false));
+        }
+
+        tracker.reset();
+        for (int i = 0; i < CLEAN_STOP.length; i++) {
+            tracker.onFix(i * FIX_INTERVAL_NANOS, CLEAN_STOP[i], 0.5f, true);
+        }
+        assertTrue(tracker.isReported());
+        assertEquals(StandstillTracker.Event.MOVEMENT,
+                tracker.onFix(CLEAN_STOP.length * FIX_INTERVAL_NANOS, 0f, 0.5f, false));
+    }
+
+    // Test irregular batched timestamps are judged by measurement time
+    @Test
+    public void testTimingUsesFixTimestamps() {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        assertEquals(StandstillTracker.Event.NONE, tracker.onFix(0, 0f, 0.5f, true));
+        assertEquals(StandstillTracker.Event.NONE, tracker.onFix(4_900_000_000L, 0f, 0.5f, true));
+        assertEquals(StandstillTracker.Event.STANDSTILL, tracker.onFix(5_000_000_000L, 0f, 0.5f, true));
+    }
+
+    private static int confirmationIndex(float[] speeds, float accuracy) {
+        StandstillTracker tracker = new StandstillTracker(DURATION_MS);
+        for (int i = 0; i < speeds.length; i++) {
+            if (tracker.onFix(i * FIX_INTERVAL_NANOS, speeds[i], accuracy, true)
+                    == StandstillTracker.Event.STANDSTILL) {
+                return i;
+            }
+        }
+        return NEVER;
+    }
+
+    /**
+     * The rule StandstillDetector used before the filter, for comparison.
+     */
+    private static int legacyConfirmationIndex(float[] speeds) {
+        long stillSince = -1;
+        for (int i = 0; i < speeds.length; i++) {
+            long now = i * FIX_INTERVAL_NANOS;
+            if (speeds[i] < StandstillTracker.ENTER_SPEED_MS) {
+                if (stillSince < 0) {
+                    stillSince = now;
+                } else if (now - stillSince >= DURATION_MS * 1_000_000L) {
+                    return i;
+                }
+            } else {
+                stillSince = -1;
+            }
+        }
+        return NEVER;
+    }
+}
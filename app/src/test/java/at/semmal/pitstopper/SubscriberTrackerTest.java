@@ -0,0 +1,61 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+public class SubscriberTrackerTest {
+
+    // Test MQTT wildcard matching
+    @Test
+    public void testMatches() {
+        assertTrue(SubscriberTracker.matches("pitstopper/#", "pitstopper/42/state/alert"));
+        assertTrue(SubscriberTracker.matches("pitstopper/+/state/alert", "pitstopper/42/state/alert"));
+        assertTrue(SubscriberTracker.matches("pitstopper/42/#", "pitstopper/42"));
+        assertFalse(SubscriberTracker.matches("pitstopper/+/state", "pitstopper/42/state/alert"));
+        assertFalse(SubscriberTracker.matches("#", "$SYS/broker/uptime"));
+    }
+
+    // Test unacknowledged reliable messages make a client lag and count its missed updates
+    @Test
+    public void testLagging() {
+        SubscriberTracker tracker = new SubscriberTracker();
+        tracker.onConnect("dash", "pitwall");
+        tracker.onSubscribe("dash", "pitstopper/#", 1);
+
+        tracker.onPublished("pitstopper/42/state/alert", true, 0);
+        tracker.onPublished("pitstopper/42/state/countdown", false, 1000);
+        tracker.onPublished("pitstopper/42/state/countdown", false, 3000);
+
+        SubscriberTracker.ClientStats stats = tracker.snapshot(3000).get(0);
+        assertEquals(1, stats.getQueueDepth());
+        assertEquals(3, stats.getRouted());
+        assertEquals(1, stats.getDropped());
+        assertTrue(stats.isLagging());
+
+        assertEquals(3000, tracker.onAcknowledged("pitwall", 3000));
+        stats = tracker.snapshot(3000).get(0);
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(1, stats.getMaxQueueDepth());
+        assertFalse(stats.isLagging());
+    }
+
+    // Test QoS 0 subscribers and other topics don't build a queue
+    @Test
+    public void testNoQueue() {
+        SubscriberTracker tracker = new SubscriberTracker();
+        tracker.onConnect("viewer", "pitwall");
+        tracker.onSubscribe("viewer", "pitstopper/+/state/alert", 0);
+
+        tracker.onPublished("pitstopper/42/state/alert", true, 0);
+        tracker.onPublished("pitstopper/42/telemetry/cars", true, 0);
+
+        List<SubscriberTracker.ClientStats> stats = tracker.snapshot(5000);
+        assertEquals(1, stats.get(0).getRouted());
+        assertEquals(0, stats.get(0).getQueueDepth());
+
+        tracker.onDisconnect("viewer");
+        assertTrue(tracker.snapshot(5000).isEmpty());
+    }
+}
@@ -0,0 +1,191 @@
+package at.semmal.pitstopper;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TelemetryCodec, RaceState and LeaderboardSnapshot.
+ */
+public class TelemetryCodecTest {
+
+    private final TelemetryCodec.Writer writer = new TelemetryCodec.Writer(16);
+    private final TelemetryCodec.Reader reader = new TelemetryCodec.Reader();
+
+    private TelemetryCodec.Reader read() {
+        return reader.wrap(writer.getBuffer(), 0, writer.getLength());
+    }
+
+    // Test varints roundtrip at the byte boundaries, and negative numbers via zigzag
+    @Test
+    public void testVarints() {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE};
+        for (long value : values) {
+            writer.reset();
+            writer.writeVarint(value);
+            assertEquals(value, read().readVarint());
+        }
+
+        writer.reset();
+        writer.writeVarint(127);
+        assertEquals(1, writer.getLength());
+        writer.writeVarint(128);
+        assertEquals(3, writer.getLength());
+
+        long[] signed = {0, -1, 1, -64, 63, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (long value : signed) {
+            writer.reset();
+            writer.writeSignedVarint(value);
+            assertEquals(value, read().readSignedVarint());
+        }
+        writer.reset();
+        writer.writeSignedVarint(-1);
+        assertEquals(1, writer.getLength());
+    }
+
+    // Test the race state roundtrips, with and without live timing
+    @Test
+    public void testRaceState() {
+        RaceState state = new RaceState();
+        state.setWindow(true, 245, 2);
+        state.setStandstill(true);
+        state.setLastPitStopMillis(47_215);
+        state.setTiming(3, 18, 0, 1_234, 2, LeaderboardSnapshot.GAP_UNKNOWN);
+        TelemetryCodec.encodeRaceState(state, writer);
+        assertTrue(writer.getLength() < 20);
+
+        RaceState decoded = new RaceState();
+        TelemetryCodec.decodeRaceState(read(), decoded);
+        assertTrue(decoded.isOnAlert());
+        assertTrue(decoded.isStandstill());
+        assertEquals(245, decoded.getCountdownSeconds());
+        assertEquals(2, decoded.getWindowIndex());
+        assertEquals(47_215, decoded.getLastPitStopMillis());
+        assertTrue(decoded.hasTiming());
+        assertEquals(3, decoded.getPosition());
+        assertEquals(18, decoded.getTotalCompetitors());
+        assertEquals(1_234, decoded.getGapAheadMillis());
+        assertEquals(2, decoded.getGapBehindLaps());
+        assertEquals(LeaderboardSnapshot.GAP_UNKNOWN, decoded.getGapBehindMillis());
+
+        TelemetryCodec.encodeRaceState(new RaceState(), writer);
+        TelemetryCodec.decodeRaceState(read(), decoded);
+        assertFalse(decoded.hasTiming());
+        assertEquals(-1, decoded.getWindowIndex());
+        assertEquals(LeaderboardSnapshot.GAP_UNKNOWN, decoded.getLastPitStopMillis());
+    }
+
+    // Test the leaderboard resolves car ids through the car table of the same epoch
+    @Test
+    public void testLeaderboard() {
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        snapshot.addEntry("7", "Leader", "LEAD");
+        snapshot.addEntry("42", "Driver", "+1.234");
+        snapshot.addEntry("13", "Backmarker", "1 Lap");
+
+        LeaderboardSnapshot received = new LeaderboardSnapshot();
+        TelemetryCodec.encodeLeaderboard(snapshot, writer);
+        assertFalse(TelemetryCodec.decodeLeaderboard(read(), received));
+
+        TelemetryCodec.encodeCarTable(snapshot, writer);
+        TelemetryCodec.decodeCarTable(read(), received);
+        TelemetryCodec.encodeLeaderboard(snapshot, writer);
+        assertTrue(TelemetryCodec.decodeLeaderboard(read(), received));
+        assertEquals(3, received.getSize());
+        assertEquals("Driver", received.getName(1));
+        assertEquals(1_234, received.getGapMillis(1));
+        assertEquals(1, received.getGapLaps(2));
+
+        // Same cars in a new order: no new car table needed
+        int epoch = snapshot.getTableEpoch();
+        snapshot.clearEntries();
+        snapshot.addEntry("42", "Driver", "LEAD");
+        snapshot.addEntry("7", "Leader", "0.5");
+        assertEquals(epoch, snapshot.getTableEpoch());
+        TelemetryCodec.encodeLeaderboard(snapshot, writer);
+        assertTrue(TelemetryCodec.decodeLeaderboard(read(), received));
+        assertEquals("7", received.getCarNumber(1));
+
+        // A rename does
+        snapshot.addEntry("13", "Renamed", "1 Lap");
+        assertNotEquals(epoch, snapshot.getTableEpoch());
+
+        StringBuilder json = new StringBuilder();
+        TelemetryCodec.toJson(received, json);
+        assertEquals("[{\"pos\":1,\"no\":\"42\",\"name\":\"Driver\",\"gap\":\"\"},"
+                + "{\"pos\":2,\"no\":\"7\",\"name\":\"Leader\",\"gap\":\"0.500\"}]", json.toString());
+    }
+
+    // Test newer versions and truncated messages are rejected, and appended fields ignored
+    @Test
+    public void testCompatibility() {
+        RaceState state = new RaceState();
+        state.setWindow(false, 60, 0);
+        TelemetryCodec.encodeRaceState(state, writer);
+        writer.writeVarint(12_345); // Field added by a later minor change
+
+        RaceState decoded = new RaceState();
+        TelemetryCodec.decodeRaceState(read(), decoded);
+        assertEquals(60, decoded.getCountdownSeconds());
+
+        writer.getBuffer()[0] = (byte) (TelemetryCodec.VERSION + 1);
+        try {
+            TelemetryCodec.decodeRaceState(read(), decoded);
+            fail("Newer version accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        writer.getBuffer()[0] = (byte) TelemetryCodec.VERSION;
+        try {
+            TelemetryCodec.decodeRaceState(reader.wrap(writer.getBuffer(), 0, 3), decoded);
+            fail("Truncated message accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Test negative lengths and car indexes, which varints can carry, are rejected
+    @Test
+    public void testNegativeValues() {
+        writer.reset();
+        writer.writeByte(TelemetryCodec.VERSION);
+        writer.writeByte(TelemetryCodec.TYPE_CAR_TABLE);
+        writer.writeVarint(1);
+        writer.writeVarint(1);
+        writer.writeVarint(-1); // String length
+        writer.writeVarint(0);
+        try {
+            TelemetryCodec.decodeCarTable(read(), new LeaderboardSnapshot());
+            fail("Negative string length accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        LeaderboardSnapshot snapshot = new LeaderboardSnapshot();
+        snapshot.addEntry("7", "Leader", "LEAD");
+        writer.reset();
+        writer.writeByte(TelemetryCodec.VERSION);
+        writer.writeByte(TelemetryCodec.TYPE_LEADERBOARD);
+        writer.writeVarint(snapshot.getTableEpoch());
+        writer.writeVarint(1);
+        writer.writeVarint(-1); // Car index
+        writer.writeVarint(0);
+        writer.writeVarint(0);
+        try {
+            TelemetryCodec.decodeLeaderboard(read(), snapshot);
+            fail("Negative car index accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Test SpeedHive gap strings are split into laps and milliseconds
+    @Test
+    public void testGapParsing() {
+        assertEquals(1_234, LeaderboardSnapshot.parseGapMillis("+1.234"));
+        assertEquals(62_345, LeaderboardSnapshot.parseGapMillis("1:02.345"));
+        assertEquals(LeaderboardSnapshot.GAP_UNKNOWN, LeaderboardSnapshot.parseGapMillis("LEAD"));
+        assertEquals(LeaderboardSnapshot.GAP_UNKNOWN, LeaderboardSnapshot.parseGapMillis("2 Laps"));
+        assertEquals(LeaderboardSnapshot.GAP_UNKNOWN, LeaderboardSnapshot.parseGapMillis(null));
+        assertEquals(2, LeaderboardSnapshot.parseGapLaps("2 Laps"));
+        assertEquals(0, LeaderboardSnapshot.parseGapLaps("1.234"));
+        assertEquals("2 Laps", LeaderboardSnapshot.formatGap(2, LeaderboardSnapshot.GAP_UNKNOWN));
+        assertEquals("62.345", LeaderboardSnapshot.formatGap(0, 62_345));
+    }
+}
@@ -0,0 +1,193 @@
+package at.semmal.pitstopper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Unit tests for TrackRecorder and TrackLogReader.
+ */
+public class TrackRecorderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("track", ".bin");
+        assertTrue(file.delete()); // Let the recorder create it
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    // Test fixes read back with the precision of the record format
+    @Test
+    public void testRoundTrip() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            recorder.write(1_000_000_000L, 47.8231234, 13.1695678, 12.34f, 4.6f, 0.35f);
+            recorder.write(2_000_000_000L, -33.8688197, 151.2092955, 0f, 0f, 0f);
+            assertEquals(2, recorder.getRecordCount());
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            assertEquals(2, reader.getRecordCount());
+            GpsFix fix = new GpsFix();
+
+            assertTrue(reader.next(fix));
+            assertEquals(1_000_000_000L, fix.getElapsedRealtimeNanos());
+            assertEquals(47.8231234, fix.getLatitude(), 1e-7);
+            assertEquals(13.1695678, fix.getLongitude(), 1e-7);
+            assertEquals(12.34f, fix.getSpeed(), 0.01f);
+            assertEquals(5f, fix.getAccuracy(), 0f);
+            assertEquals(0.4f, fix.getSpeedAccuracy(), 0.01f);
+
+            assertTrue(reader.next(fix));
+            assertEquals(-33.8688197, fix.getLatitude(), 1e-7);
+            assertEquals(151.2092955, fix.getLongitude(), 1e-7);
+
+            assertFalse(reader.next(fix));
+        }
+    }
+
+    // Test out-of-range values are clamped instead of wrapping around
+    @Test
+    public void testClamping() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            recorder.write(1L, 0, 0, 1000f, 999f, 50f);
+            recorder.write(2L, 0, 0, -1f, -1f, -1f);
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            GpsFix fix = new GpsFix();
+            reader.next(fix);
+            assertEquals(655.34f, fix.getSpeed(), 0.001f);
+            assertEquals(255f, fix.getAccuracy(), 0f);
+            assertEquals(25.5f, fix.getSpeedAccuracy(), 0.001f);
+            reader.next(fix);
+            assertEquals(0f, fix.getSpeed(), 0f);
+            assertEquals(0f, fix.getAccuracy(), 0f);
+        }
+    }
+
+    // Test a fix without speed is read back without speed, not as a stop
+    @Test
+    public void testUnknownSpeed() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            recorder.write(1L, 47.8, 13.1, Float.NaN, 80f, 0f);
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            GpsFix fix = new GpsFix();
+            reader.next(fix);
+            assertFalse(fix.hasSpeed());
+            assertEquals(80f, fix.getAccuracy(), 0f);
+        }
+    }
+
+    // Test reopening continues after the existing records
+    @Test
+    public void testReopenAppends() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            recorder.write(1L, 47.8, 13.1, 1f, 3f, 0f);
+        }
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            assertEquals(1, recorder.getRecordCount());
+            recorder.write(2L, 47.8, 13.1, 2f, 3f, 0f);
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            assertEquals(2, reader.getRecordCount());
+            GpsFix fix = new GpsFix();
+            reader.next(fix);
+            reader.next(fix);
+            assertEquals(2L, fix.getElapsedRealtimeNanos());
+        }
+    }
+
+    // Test a record torn by a crash ends the log and is overwritten on reopen
+    @Test
+    public void testTornTailRecord() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            for (int i = 1; i <= 3; i++) {
+                recorder.write(i, 47.8, 13.1, i, 3f, 0f);
+            }
+        }
+
+        // Simulate a crash after writing the fields but before the checksum of the last record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(TrackRecorder.HEADER_SIZE + 2 * TrackRecorder.RECORD_SIZE + 20);
+            raf.writeInt(0);
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            assertEquals(2, reader.getRecordCount());
+        }
+
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            assertEquals(2, recorder.getRecordCount());
+            recorder.write(4, 47.8, 13.1, 4f, 3f, 0f);
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            GpsFix fix = new GpsFix();
+            int n = 0;
+            while (reader.next(fix)) {
+                n++;
+            }
+            assertEquals(3, n);
+            assertEquals(4L, fix.getElapsedRealtimeNanos());
+        }
+    }
+
+    // Test the file grows when the preallocated capacity is used up
+    @Test
+    public void testGrowsBeyondCapacity() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file, 4)) {
+            for (int i = 1; i <= 10; i++) {
+                recorder.write(i, 47.8, 13.1, 0f, 0f, 0f);
+            }
+        }
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            assertEquals(10, reader.getRecordCount());
+        }
+        assertEquals(TrackRecorder.HEADER_SIZE + 12 * TrackRecorder.RECORD_SIZE, file.length());
+    }
+
+    // Test a full 24 hour race at 1 Hz stays a few MB
+    @Test
+    public void testFullRaceSize() throws IOException {
+        try (TrackRecorder recorder = TrackRecorder.open(file)) {
+            for (int i = 0; i < 24 * 3600; i++) {
+                recorder.write(i * 1_000_000_000L, 47.8 + i * 1e-7, 13.1, 30f, 3f, 0.5f);
+            }
+        }
+        assertTrue("size " + file.length(), file.length() < 3 * 1024 * 1024);
+
+        try (TrackLogReader reader = TrackLogReader.open(file)) {
+            assertEquals(24 * 3600, reader.getRecordCount());
+        }
+    }
+
+    // Test other files are rejected
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[128]);
+        }
+        TrackLogReader.open(file).close();
+    }
+
+    // Test the zeroed, preallocated part of the file never reads as a record
+    @Test
+    public void testZeroRecordIsInvalid() {
+        assertNotEquals(0, TrackRecorder.checksum(0, 0, 0, 0));
+    }
+}